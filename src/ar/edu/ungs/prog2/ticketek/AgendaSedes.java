@@ -0,0 +1,113 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Clase que representa la agenda de ocupación de las sedes: qué función ocupa cada sede en cada día.
+ * Permite detectar choques de funciones en O(log n) sin recorrer todos los espectáculos.
+ *
+ * IREP (Invariante de Representación):
+ * - ocupacion != null
+ * - Para todo nombreSede en ocupacion.keySet(): nombreSede != null && !nombreSede.isEmpty()
+ * - Para todo calendario en ocupacion.values(): calendario != null, ordenado por fecha
+ * - Para toda entrada (fecha, funcion) de un calendario de la sede S:
+ *   funcion != null && funcion.getFecha().equals(fecha) && funcion.getSede().getNombre().equals(S)
+ * - Una sede tiene a lo sumo una función por fecha (clave única en el calendario)
+ */
+public class AgendaSedes {
+    private Map<String, NavigableMap<Fecha, Funcion>> ocupacion;
+
+    /**
+     * Constructor que crea una agenda vacía.
+     */
+    public AgendaSedes() {
+        this.ocupacion = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Ocupa una sede en la fecha de una función, si la sede está libre ese día.
+     * La verificación y la ocupación son atómicas.
+     *
+     * @param funcion Función que ocupa la sede
+     * @return true si la sede quedó ocupada por la función, false si ya había otra función ese día
+     */
+    public boolean ocupar(Funcion funcion) {
+        NavigableMap<Fecha, Funcion> calendario = ocupacion.computeIfAbsent(funcion.getSede().getNombre(),
+                nombre -> new ConcurrentSkipListMap<>());
+        return calendario.putIfAbsent(funcion.getFecha(), funcion) == null;
+    }
+
+    /**
+     * Libera la sede de una función, si es esa función la que la ocupa.
+     *
+     * @param funcion Función a quitar de la agenda
+     */
+    public void liberar(Funcion funcion) {
+        NavigableMap<Fecha, Funcion> calendario = ocupacion.get(funcion.getSede().getNombre());
+        if (calendario != null) {
+            calendario.remove(funcion.getFecha(), funcion);
+        }
+    }
+
+    /**
+     * Indica si una sede está libre en una fecha.
+     *
+     * @param nombreSede Nombre de la sede
+     * @param fecha      Fecha a consultar
+     * @return true si no hay ninguna función en esa sede y fecha
+     */
+    public boolean estaLibre(String nombreSede, Fecha fecha) {
+        return funcionEn(nombreSede, fecha) == null;
+    }
+
+    /**
+     * Devuelve la función que ocupa una sede en una fecha.
+     *
+     * @param nombreSede Nombre de la sede
+     * @param fecha      Fecha a consultar
+     * @return Función que ocupa la sede ese día, o null si está libre
+     */
+    public Funcion funcionEn(String nombreSede, Fecha fecha) {
+        NavigableMap<Fecha, Funcion> calendario = ocupacion.get(nombreSede);
+        if (calendario == null) {
+            return null;
+        }
+        return calendario.get(fecha);
+    }
+
+    /**
+     * Devuelve las fechas en que una sede está libre dentro de un rango.
+     * Recorre los días del rango junto con las funciones de la sede en ese rango, sin consultar día por día.
+     *
+     * @param nombreSede Nombre de la sede
+     * @param desde      Primera fecha del rango (inclusive)
+     * @param hasta      Última fecha del rango (inclusive)
+     * @return Lista ordenada de fechas libres
+     */
+    public List<Fecha> fechasLibres(String nombreSede, Fecha desde, Fecha hasta) {
+        List<Fecha> libres = new ArrayList<>();
+        if (desde.compareTo(hasta) > 0) {
+            return libres;
+        }
+        NavigableMap<Fecha, Funcion> calendario = ocupacion.get(nombreSede);
+        Iterator<Fecha> ocupadas = calendario == null
+                ? new ArrayList<Fecha>().iterator()
+                : calendario.subMap(desde, true, hasta, true).keySet().iterator();
+        Fecha proximaOcupada = ocupadas.hasNext() ? ocupadas.next() : null;
+
+        for (Fecha dia = desde; dia.compareTo(hasta) <= 0; dia = dia.siguiente()) {
+            if (dia.equals(proximaOcupada)) {
+                proximaOcupada = ocupadas.hasNext() ? ocupadas.next() : null;
+            } else {
+                libres.add(dia);
+            }
+        }
+        return libres;
+    }
+}
@@ -0,0 +1,259 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directorio de inventarios de asientos mapeados en memoria, para sedes numeradas muy grandes.
+ * Cada función tiene su propio archivo (una región con un bit por asiento) que se mapea con
+ * {@link MappedByteBuffer}: los asientos no ocupan el heap y el sistema operativo se encarga de
+ * llevarlos a disco.
+ *
+ * El archivo es solo el almacenamiento de los bits, no la fuente de verdad de las ventas: las
+ * ventas son las entradas, que se reconstruyen desde la instantánea y el diario de ventas. Por eso
+ * al abrir un archivo sus bits se ponen en 0, y un reinicio vuelve a marcar los asientos vendidos
+ * con {@link Ticketek#recuperar(java.nio.file.Path, DiarioVentas, ArchivoAsientos)}: los bits nunca
+ * quedan vendidos sin una entrada que los respalde. Cada archivo tiene un único dueño: se abre con
+ * un cerrojo exclusivo (FileLock) que se mantiene mientras la función lo usa, y otro proceso u
+ * otro directorio sobre la misma carpeta no puede abrirlo a la vez. Al archivar la función el
+ * cerrojo se suelta y el archivo se borra.
+ *
+ * Como una sede tiene a lo sumo una función por día, el archivo de cada función se identifica
+ * por el nombre de la sede y el día de la función.
+ *
+ * Formato de cada archivo: encabezado (int MAGIA, int cantidad de sectores, int asientos por
+ * fila, int capacidad de cada sector), rellenado hasta múltiplo de 8 bytes, seguido de las
+ * palabras de 64 bits de cada sector, en orden de sector.
+ *
+ * IREP (Invariante de Representación):
+ * - directorio != null y existe
+ * - abiertos contiene, por archivo, el canal, el cerrojo exclusivo y el mapeo de cada inventario
+ *   abierto desde este directorio y todavía no liberado
+ * - El encabezado de cada archivo coincide con los sectores de la sede de su función
+ */
+public class ArchivoAsientos implements Closeable {
+    static final int MAGIA = 0x544B4153;
+
+    private final Path directorio;
+    private final Map<Path, Abierto> abiertos = new ConcurrentHashMap<>();
+
+    /**
+     * Abre (o crea) un directorio de inventarios mapeados.
+     *
+     * @param directorio Directorio donde se guardan los archivos de las funciones
+     * @throws RuntimeException si el directorio no puede crearse
+     */
+    public ArchivoAsientos(Path directorio) {
+        try {
+            this.directorio = Files.createDirectories(directorio);
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo crear el directorio de asientos: " + directorio, e);
+        }
+    }
+
+    /**
+     * Abre el inventario de la función de una sede en una fecha, con todos los asientos disponibles.
+     * El archivo queda tomado con un cerrojo exclusivo hasta que el inventario se libera.
+     *
+     * @param sede  Sede numerada de la función
+     * @param fecha Fecha de la función
+     * @return Inventario cuyos asientos viven en el archivo mapeado
+     * @throws RuntimeException si el archivo no puede abrirse, ya está en uso o no corresponde a los
+     *         sectores de la sede
+     */
+    public InventarioAsientos abrir(SedeNumerada sede, Fecha fecha) {
+        int[] capacidades = sede.getCapacidad();
+        int asientosPorFila = sede.getAsientosPorFila();
+        int encabezado = (4 * (3 + capacidades.length) + 7) & ~7;
+        long largo = encabezado;
+        for (int capacidad : capacidades) {
+            largo += 8L * ((capacidad + 63) >>> 6);
+        }
+
+        Path archivo = directorio.resolve(nombreArchivo(sede.getNombre(), fecha));
+        FileChannel canal = null;
+        FileLock cerrojo = null;
+        MappedByteBuffer mapa;
+        try {
+            canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                cerrojo = canal.tryLock();
+            } catch (OverlappingFileLockException e) {
+                cerrojo = null;
+            }
+            if (cerrojo == null) {
+                throw new RuntimeException("El archivo de asientos ya está en uso: " + archivo);
+            }
+            boolean nuevo = canal.size() == 0;
+            if (!nuevo && canal.size() != largo) {
+                throw new RuntimeException("El archivo de asientos no coincide con la sede: " + archivo);
+            }
+            mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, largo);
+            mapa.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapa.getInt(0) == 0) {
+                mapa.putInt(0, MAGIA).putInt(4, capacidades.length).putInt(8, asientosPorFila);
+                for (int s = 0; s < capacidades.length; s++) {
+                    mapa.putInt(12 + 4 * s, capacidades[s]);
+                }
+            } else if (!coincide(mapa, capacidades, asientosPorFila)) {
+                throw new RuntimeException("El archivo de asientos no coincide con la sede: " + archivo);
+            }
+        } catch (IOException e) {
+            cerrarEnSilencio(canal);
+            throw new RuntimeException("No se pudo abrir el archivo de asientos: " + archivo, e);
+        } catch (RuntimeException e) {
+            cerrarEnSilencio(canal);
+            throw e;
+        }
+
+        // Los asientos vendidos se reconstruyen desde las entradas, no desde el archivo
+        for (int i = encabezado; i < largo; i += 8) {
+            mapa.putLong(i, 0L);
+        }
+
+        LongBuffer[] sectores = new LongBuffer[capacidades.length];
+        int posicion = encabezado;
+        for (int s = 0; s < capacidades.length; s++) {
+            int bytes = 8 * ((capacidades[s] + 63) >>> 6);
+            ByteBuffer region = mapa.duplicate();
+            region.position(posicion).limit(posicion + bytes);
+            sectores[s] = region.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            posicion += bytes;
+        }
+        abiertos.put(archivo, new Abierto(canal, cerrojo, mapa));
+        return new InventarioAsientos(capacidades, asientosPorFila, sectores, () -> liberar(archivo));
+    }
+
+    /**
+     * Fuerza la escritura a disco de todos los inventarios abiertos.
+     */
+    public void sincronizar() {
+        for (Abierto abierto : abiertos.values()) {
+            abierto.mapa.force();
+        }
+    }
+
+    /**
+     * Sincroniza los inventarios abiertos, suelta sus cerrojos y deja de seguirlos. Los archivos
+     * no se borran; los mapeos se liberan cuando sus inventarios dejan de usarse.
+     */
+    @Override
+    public void close() {
+        sincronizar();
+        for (Path archivo : abiertos.keySet()) {
+            Abierto abierto = abiertos.remove(archivo);
+            if (abierto != null) {
+                cerrarEnSilencio(abierto.canal);
+            }
+        }
+    }
+
+    /**
+     * Suelta el cerrojo del archivo de una función que ya no usa sus asientos y lo borra. Si el
+     * sistema no permite borrar un archivo mapeado, se borra al terminar la máquina virtual.
+     *
+     * @param archivo Archivo de la función
+     */
+    private void liberar(Path archivo) {
+        Abierto abierto = abiertos.remove(archivo);
+        if (abierto == null) {
+            return;
+        }
+        cerrarEnSilencio(abierto.canal);
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            archivo.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Cierra un canal (y con él su cerrojo) ignorando los errores: se usa al liberar o al
+     * abandonar un archivo, cuando ya no queda nada que hacer con él.
+     *
+     * @param canal Canal a cerrar, o null
+     */
+    private static void cerrarEnSilencio(FileChannel canal) {
+        if (canal == null) {
+            return;
+        }
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // El cerrojo se suelta igual al cerrarse el canal
+        }
+    }
+
+    /**
+     * @return Directorio de los archivos de asientos
+     */
+    public Path getDirectorio() {
+        return directorio;
+    }
+
+    /**
+     * Verifica que el encabezado de un archivo corresponda a los sectores de una sede.
+     *
+     * @param mapa            Archivo mapeado
+     * @param capacidades     Capacidad de cada sector de la sede
+     * @param asientosPorFila Asientos por fila de la sede
+     * @return true si el encabezado coincide
+     */
+    private static boolean coincide(MappedByteBuffer mapa, int[] capacidades, int asientosPorFila) {
+        if (mapa.getInt(0) != MAGIA || mapa.getInt(4) != capacidades.length || mapa.getInt(8) != asientosPorFila) {
+            return false;
+        }
+        for (int s = 0; s < capacidades.length; s++) {
+            if (mapa.getInt(12 + 4 * s) != capacidades[s]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Arma el nombre del archivo de una función. Los caracteres que no son letras ni dígitos se
+     * reemplazan, y se agrega el hash del nombre de la sede para distinguir nombres parecidos.
+     *
+     * @param nombreSede Nombre de la sede
+     * @param fecha      Fecha de la función
+     * @return Nombre del archivo
+     */
+    private static String nombreArchivo(String nombreSede, Fecha fecha) {
+        StringBuilder nombre = new StringBuilder(nombreSede.length() + 24);
+        for (int i = 0; i < nombreSede.length(); i++) {
+            char c = nombreSede.charAt(i);
+            nombre.append(Character.isLetterOrDigit(c) && c < 128 ? c : '_');
+        }
+        return nombre.append('-').append(Integer.toHexString(nombreSede.hashCode()))
+                .append('-').append(fecha.getDiaEpoca()).append(".asientos").toString();
+    }
+
+    /**
+     * Archivo abierto de una función: el canal que sostiene el cerrojo exclusivo y su mapeo.
+     */
+    private static final class Abierto {
+        private final FileChannel canal;
+        private final FileLock cerrojo;
+        private final MappedByteBuffer mapa;
+
+        private Abierto(FileChannel canal, FileLock cerrojo, MappedByteBuffer mapa) {
+            this.canal = canal;
+            this.cerrojo = cerrojo;
+            this.mapa = mapa;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Clase que representa el calendario de funciones de un espectáculo, ordenado por fecha.
+ * Guarda las funciones en dos arreglos paralelos ordenados por día época (ver {@link Fecha#getDiaEpoca()}):
+ * un int[] con los días y un Funcion[] con las funciones. Buscar una función por fecha es una
+ * búsqueda binaria sobre el int[], O(log n) y sin crear objetos (las claves no se convierten
+ * a Integer), y las consultas por rango devuelven las funciones en orden cronológico.
+ *
+ * Los arreglos son de copia en escritura: cada alta o baja arma arreglos nuevos y los publica
+ * juntos en un único campo volatile, así las lecturas (una por venta) no toman cerrojos ni ven
+ * un estado a medio modificar, y los rangos son vistas de los arreglos publicados sin copiarlos.
+ * Las escrituras se serializan en el monitor del calendario y cuestan O(n); un espectáculo
+ * tiene pocas funciones comparado con la cantidad de ventas que las consultan.
+ *
+ * IREP (Invariante de Representación):
+ * - estado != null, estado.dias != null, estado.funciones != null
+ * - estado.dias.length == estado.funciones.length
+ * - estado.dias es estrictamente creciente (no hay dos funciones el mismo día)
+ * - Para todo i: estado.funciones[i] != null && estado.funciones[i].getFecha().getDiaEpoca() == estado.dias[i]
+ * - Los arreglos publicados en estado no se modifican nunca
+ */
+public class CalendarioFunciones {
+    private static final Estado VACIO = new Estado(new int[0], new Funcion[0]);
+
+    private volatile Estado estado = VACIO;
+
+    /**
+     * Agrega una función al calendario, si no hay otra en el mismo día.
+     *
+     * @param funcion Función a agregar
+     * @return true si se agregó, false si ya había una función ese día
+     */
+    public synchronized boolean agregar(Funcion funcion) {
+        Estado actual = estado;
+        int dia = funcion.getFecha().getDiaEpoca();
+        int posicion = Arrays.binarySearch(actual.dias, dia);
+        if (posicion >= 0) {
+            return false;
+        }
+        posicion = -posicion - 1;
+        int n = actual.dias.length;
+        int[] dias = new int[n + 1];
+        Funcion[] funciones = new Funcion[n + 1];
+        System.arraycopy(actual.dias, 0, dias, 0, posicion);
+        System.arraycopy(actual.funciones, 0, funciones, 0, posicion);
+        dias[posicion] = dia;
+        funciones[posicion] = funcion;
+        System.arraycopy(actual.dias, posicion, dias, posicion + 1, n - posicion);
+        System.arraycopy(actual.funciones, posicion, funciones, posicion + 1, n - posicion);
+        estado = new Estado(dias, funciones);
+        return true;
+    }
+
+    /**
+     * Quita una función del calendario.
+     *
+     * @param funcion Función a quitar
+     * @return true si la función estaba en el calendario
+     */
+    public synchronized boolean quitar(Funcion funcion) {
+        Estado actual = estado;
+        int posicion = Arrays.binarySearch(actual.dias, funcion.getFecha().getDiaEpoca());
+        if (posicion < 0 || actual.funciones[posicion] != funcion) {
+            return false;
+        }
+        int n = actual.dias.length;
+        if (n == 1) {
+            estado = VACIO;
+            return true;
+        }
+        int[] dias = new int[n - 1];
+        Funcion[] funciones = new Funcion[n - 1];
+        System.arraycopy(actual.dias, 0, dias, 0, posicion);
+        System.arraycopy(actual.funciones, 0, funciones, 0, posicion);
+        System.arraycopy(actual.dias, posicion + 1, dias, posicion, n - posicion - 1);
+        System.arraycopy(actual.funciones, posicion + 1, funciones, posicion, n - posicion - 1);
+        estado = new Estado(dias, funciones);
+        return true;
+    }
+
+    /**
+     * Busca la función de un día.
+     *
+     * @param diaEpoca Día época de la función
+     * @return Función de ese día, o null si no hay
+     */
+    public Funcion obtener(int diaEpoca) {
+        Estado actual = estado;
+        int posicion = Arrays.binarySearch(actual.dias, diaEpoca);
+        return posicion < 0 ? null : actual.funciones[posicion];
+    }
+
+    /**
+     * Devuelve las funciones entre dos fechas, en orden cronológico.
+     *
+     * @param desde Día época inicial (inclusive)
+     * @param hasta Día época final (inclusive)
+     * @return Lista no modificable de funciones del rango
+     */
+    public List<Funcion> entre(int desde, int hasta) {
+        if (desde > hasta) {
+            return List.of();
+        }
+        Estado actual = estado;
+        int inicio = primeraDesde(actual.dias, desde);
+        int fin = hasta == Integer.MAX_VALUE ? actual.dias.length : primeraDesde(actual.dias, hasta + 1);
+        return actual.vista(inicio, fin);
+    }
+
+    /**
+     * Devuelve la primera función a partir de un día.
+     *
+     * @param diaEpoca Día época desde el que se busca (inclusive)
+     * @return Primera función desde ese día, o null si no hay
+     */
+    public Funcion proximaDesde(int diaEpoca) {
+        Estado actual = estado;
+        int posicion = primeraDesde(actual.dias, diaEpoca);
+        return posicion < actual.funciones.length ? actual.funciones[posicion] : null;
+    }
+
+    /**
+     * @return Lista no modificable de todas las funciones, en orden cronológico
+     */
+    public List<Funcion> todas() {
+        Estado actual = estado;
+        return actual.vista(0, actual.funciones.length);
+    }
+
+    /**
+     * @return Cantidad de funciones del calendario
+     */
+    public int cantidad() {
+        return estado.dias.length;
+    }
+
+    /**
+     * @param dias     Días ordenados de forma estrictamente creciente
+     * @param diaEpoca Día buscado
+     * @return Posición del primer día mayor o igual a diaEpoca (dias.length si no hay)
+     */
+    private static int primeraDesde(int[] dias, int diaEpoca) {
+        int posicion = Arrays.binarySearch(dias, diaEpoca);
+        return posicion >= 0 ? posicion : -posicion - 1;
+    }
+
+    /**
+     * Arreglos paralelos publicados juntos; nunca se modifican después de construirse.
+     */
+    private static final class Estado {
+        private final int[] dias;
+        private final Funcion[] funciones;
+
+        private Estado(int[] dias, Funcion[] funciones) {
+            this.dias = dias;
+            this.funciones = funciones;
+        }
+
+        /**
+         * @param inicio Primera posición (inclusive)
+         * @param fin    Última posición (exclusive)
+         * @return Vista no modificable de las funciones del tramo, sin copiarlas
+         */
+        private List<Funcion> vista(int inicio, int fin) {
+            if (inicio >= fin) {
+                return List.of();
+            }
+            return Collections.unmodifiableList(Arrays.asList(funciones).subList(inicio, fin));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ar.edu.ungs.prog2.ticketek;
+
+/**
+ * Datos que comparten todas las entradas de una misma función: espectáculo, sede, fecha,
+ * nombres de los sectores y precio de cada sector. Cada entrada guarda una referencia a su
+ * contexto y el ordinal de su sector, en lugar de repetir esos datos. Los ordinales son los de
+ * {@link SedeNumerada#getIndiceSector(String)}, que los busca por nombre en O(1).
+ *
+ * IREP (Invariante de Representación):
+ * - fecha != null
+ * - sectores != null && precios != null && sectores.length == precios.length
+ * - nombreEspectaculo y nombreSede son != null, salvo en los contextos de búsqueda de {@link Entrada}
+ * - El contexto es inmutable: sectores y precios no se modifican ni se exponen
+ */
+public final class ContextoEntrada {
+    private final String nombreEspectaculo;
+    private final String nombreSede;
+    private final Fecha fecha;
+    private final String[] sectores;
+    private final double[] precios;
+
+    /**
+     * @param nombreEspectaculo Nombre del espectáculo
+     * @param nombreSede        Nombre de la sede
+     * @param fecha             Fecha de la función
+     * @param sectores          Nombres de los sectores, en orden de ordinal
+     * @param precios           Precio final de cada sector
+     */
+    ContextoEntrada(String nombreEspectaculo, String nombreSede, Fecha fecha, String[] sectores, double[] precios) {
+        this.nombreEspectaculo = nombreEspectaculo;
+        this.nombreSede = nombreSede;
+        this.fecha = fecha;
+        this.sectores = sectores.clone();
+        this.precios = precios.clone();
+    }
+
+    /**
+     * Crea el contexto de las entradas de una función.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo
+     * @param funcion           Función de las entradas
+     * @return Contexto con los sectores de la sede (o solo "Campo") y sus precios
+     */
+    static ContextoEntrada de(String nombreEspectaculo, Funcion funcion) {
+        Sede sede = funcion.getSede();
+        String[] sectores = sede.esNumerada() ? sede.getSectores() : new String[] { "Campo" };
+        double[] precios = new double[sectores.length];
+        for (int s = 0; s < sectores.length; s++) {
+            precios[s] = sede.esNumerada() ? funcion.devolverPrecio(s) : funcion.devolverPrecio(sectores[s]);
+        }
+        return new ContextoEntrada(nombreEspectaculo, sede.getNombre(), funcion.getFecha(), sectores, precios);
+    }
+
+    /**
+     * Devuelve un contexto igual a este pero con otra sede y fecha.
+     *
+     * @param nombreSede Nueva sede
+     * @param fecha      Nueva fecha
+     * @return Contexto nuevo
+     */
+    ContextoEntrada conSedeYFecha(String nombreSede, Fecha fecha) {
+        return new ContextoEntrada(nombreEspectaculo, nombreSede, fecha, sectores, precios);
+    }
+
+    /**
+     * @return Nombre del espectáculo
+     */
+    public String getNombreEspectaculo() {
+        return nombreEspectaculo;
+    }
+
+    /**
+     * @return Nombre de la sede
+     */
+    public String getNombreSede() {
+        return nombreSede;
+    }
+
+    /**
+     * @return Fecha de la función
+     */
+    public Fecha getFecha() {
+        return fecha;
+    }
+
+    /**
+     * @param ordinal Ordinal del sector
+     * @return Nombre del sector
+     */
+    public String getSector(int ordinal) {
+        return sectores[ordinal];
+    }
+
+    /**
+     * @param ordinal Ordinal del sector
+     * @return Precio final de una entrada del sector
+     */
+    public double getPrecio(int ordinal) {
+        return precios[ordinal];
+    }
+}
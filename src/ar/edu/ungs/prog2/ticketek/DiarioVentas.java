@@ -0,0 +1,589 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Diario de escritura anticipada (write-ahead log) de las operaciones de Ticketek.
+ * Cada registro de sedes, usuarios, espectáculos y funciones, cada venta y cada anulación se
+ * agrega al final de un archivo como un registro binario compacto. La operación recién se
+ * confirma al llamador cuando su registro está sincronizado en disco.
+ *
+ * Para no pagar una sincronización (fsync) por operación se usa confirmación en grupo
+ * (group commit): los registros se acumulan en un búfer y el primer hilo que necesita
+ * sincronizar escribe y sincroniza todo lo acumulado hasta ese momento, confirmando
+ * de una vez a todos los hilos cuyos registros entraron en el lote.
+ *
+ * Agregar un registro y esperar su sincronización son pasos separados (los métodos agregar
+ * devuelven la secuencia y sincronizarHasta espera): así el llamador fija el orden de los
+ * registros dentro de sus propios cerrojos y espera el disco después de soltarlos.
+ *
+ * Formato del archivo: encabezado (int MAGIA, short VERSION) seguido de registros
+ * [int largo][byte version][byte tipo][long secuencia][datos][int crc32], donde largo cuenta
+ * los bytes de version a datos y el crc32 se calcula sobre esos mismos bytes.
+ * Un registro incompleto o con crc inválido al final del archivo (escritura interrumpida)
+ * se descarta al abrir el diario. Un registro inválido seguido de más datos no es una escritura
+ * interrumpida sino un archivo dañado: truncarlo borraría registros ya confirmados, así que el
+ * diario no se abre. Desde la versión 2 los códigos de las entradas se guardan
+ * como dos long (mitad alta y baja del UUID); los registros de la versión 1 los guardan como texto.
+ * Desde la versión 3 el alta de un usuario guarda la huella de su contraseña (ver {@link Usuario})
+ * y no la contraseña en texto, que sí aparece en los registros de versiones anteriores.
+ *
+ * Si una escritura o una sincronización falla, el diario queda fuera de servicio: no se sabe
+ * qué parte del lote llegó al disco, así que ningún registro posterior se escribe ni se confirma,
+ * y tanto los hilos que esperaban ese lote como los siguientes reciben una excepción.
+ *
+ * IREP (Invariante de Representación):
+ * - canal != null y está abierto mientras el diario no se cierre
+ * - secuencia >= durable >= 0
+ * - Los registros con secuencia <= durable están escritos y sincronizados en el archivo
+ * - Si falla != null, durable no vuelve a avanzar y no se agregan registros
+ * - pendiente contiene, en orden de secuencia, los registros agregados que todavía no se escribieron
+ * - Las secuencias del archivo son consecutivas y crecientes
+ */
+public class DiarioVentas implements Closeable {
+    public static final byte SEDE_ESTADIO = 1;
+    public static final byte SEDE_TEATRO = 2;
+    public static final byte SEDE_MINIESTADIO = 3;
+    public static final byte USUARIO = 4;
+    public static final byte ESPECTACULO = 5;
+    public static final byte FUNCION = 6;
+    public static final byte VENTA = 7;
+    public static final byte ANULACION = 8;
+
+    static final int MAGIA = 0x544B4A31;
+    static final short VERSION = 3;
+    static final byte VERSION_CODIGOS_BINARIOS = 2;
+    static final byte VERSION_HUELLAS_CONTRASENIA = 3;
+    private static final int TAMANIO_ENCABEZADO = 6;
+    private static final int TAMANIO_CABECERA_REGISTRO = 1 + 1 + 8;
+
+    private FileChannel canal;
+    private ByteArrayOutputStream pendiente;
+    private long secuencia;
+    private volatile long durable;
+    private volatile IOException falla;
+    private final Object cerrojoSincronizacion = new Object();
+
+    /**
+     * Abre (o crea) un diario. Si el archivo ya existe, valida el encabezado, descarta
+     * un posible registro incompleto al final y continúa la numeración de secuencias.
+     *
+     * @param archivo Ruta del archivo del diario
+     * @throws RuntimeException si el archivo no puede abrirse, no es un diario válido o tiene
+     *         un registro dañado antes del final
+     */
+    public DiarioVentas(Path archivo) {
+        try {
+            this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (canal.size() == 0) {
+                ByteBuffer encabezado = ByteBuffer.allocate(TAMANIO_ENCABEZADO);
+                encabezado.putInt(MAGIA).putShort(VERSION).flip();
+                escribirCompleto(encabezado, 0);
+                canal.force(true);
+            } else {
+                long[] ultimo = new long[] { 0 };
+                long fin = recorrer(canal, registro -> ultimo[0] = registro.getSecuencia());
+                canal.truncate(fin);
+                this.secuencia = ultimo[0];
+            }
+            canal.position(canal.size());
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo abrir el diario de ventas: " + archivo, e);
+        }
+        this.durable = secuencia;
+        this.pendiente = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Agrega un registro al diario y espera a que esté sincronizado en disco.
+     *
+     * @param tipo  Tipo del registro (una de las constantes de esta clase)
+     * @param datos Contenido del registro, ya codificado
+     * @return Secuencia asignada al registro
+     * @throws RuntimeException si el registro no pudo escribirse o el diario está fuera de servicio
+     */
+    public long registrar(byte tipo, byte[] datos) {
+        long propia = agregar(tipo, datos);
+        sincronizarHasta(propia);
+        return propia;
+    }
+
+    /**
+     * Agrega un registro al final del lote pendiente, sin esperar a que se sincronice.
+     * El registro recién está confirmado cuando sincronizarHasta(secuencia) termina.
+     *
+     * @param tipo  Tipo del registro (una de las constantes de esta clase)
+     * @param datos Contenido del registro, ya codificado
+     * @return Secuencia asignada al registro
+     * @throws RuntimeException si el diario está fuera de servicio
+     */
+    public long agregar(byte tipo, byte[] datos) {
+        long propia;
+        synchronized (this) {
+            chequearEnServicio();
+            propia = ++secuencia;
+            ByteBuffer registro = ByteBuffer.allocate(4 + TAMANIO_CABECERA_REGISTRO + datos.length + 4);
+            registro.putInt(TAMANIO_CABECERA_REGISTRO + datos.length)
+                    .put((byte) VERSION).put(tipo).putLong(propia).put(datos);
+            CRC32 crc = new CRC32();
+            crc.update(registro.array(), 4, TAMANIO_CABECERA_REGISTRO + datos.length);
+            registro.putInt((int) crc.getValue());
+            pendiente.write(registro.array(), 0, registro.position());
+        }
+        return propia;
+    }
+
+    /**
+     * Agrega el alta de un estadio.
+     *
+     * @param nombre          Nombre del estadio
+     * @param direccion       Dirección
+     * @param capacidadMaxima Capacidad máxima
+     * @return Secuencia del registro, confirmado recién con sincronizarHasta
+     */
+    public long agregarEstadio(String nombre, String direccion, int capacidadMaxima) {
+        Codificador c = new Codificador();
+        c.texto(nombre).texto(direccion).entero(capacidadMaxima);
+        return agregar(SEDE_ESTADIO, c.bytes());
+    }
+
+    /**
+     * Agrega el alta de un teatro.
+     *
+     * @param nombre              Nombre del teatro
+     * @param direccion           Dirección
+     * @param capacidadMaxima     Capacidad máxima
+     * @param asientosPorFila     Asientos por fila
+     * @param sectores            Nombres de los sectores
+     * @param capacidad           Capacidad de cada sector
+     * @param porcentajeAdicional Recargo de cada sector
+     * @return Secuencia del registro, confirmado recién con sincronizarHasta
+     */
+    public long agregarTeatro(String nombre, String direccion, int capacidadMaxima, int asientosPorFila,
+                                String[] sectores, int[] capacidad, int[] porcentajeAdicional) {
+        Codificador c = new Codificador();
+        c.texto(nombre).texto(direccion).entero(capacidadMaxima).entero(asientosPorFila)
+                .sectores(sectores, capacidad, porcentajeAdicional);
+        return agregar(SEDE_TEATRO, c.bytes());
+    }
+
+    /**
+     * Agrega el alta de un miniestadio.
+     *
+     * @param nombre              Nombre del miniestadio
+     * @param direccion           Dirección
+     * @param capacidadMaxima     Capacidad máxima
+     * @param asientosPorFila     Asientos por fila
+     * @param cantidadPuestos     Cantidad de puestos
+     * @param precioConsumicion   Precio de la consumición
+     * @param sectores            Nombres de los sectores
+     * @param capacidad           Capacidad de cada sector
+     * @param porcentajeAdicional Recargo de cada sector
+     * @return Secuencia del registro, confirmado recién con sincronizarHasta
+     */
+    public long agregarMiniestadio(String nombre, String direccion, int capacidadMaxima, int asientosPorFila,
+                                     int cantidadPuestos, double precioConsumicion, String[] sectores,
+                                     int[] capacidad, int[] porcentajeAdicional) {
+        Codificador c = new Codificador();
+        c.texto(nombre).texto(direccion).entero(capacidadMaxima).entero(asientosPorFila)
+                .entero(cantidadPuestos).real(precioConsumicion)
+                .sectores(sectores, capacidad, porcentajeAdicional);
+        return agregar(SEDE_MINIESTADIO, c.bytes());
+    }
+
+    /**
+     * Agrega el alta de un usuario.
+     *
+     * @param email             Email del usuario
+     * @param nombre            Nombre
+     * @param apellido          Apellido
+     * @param huellaContrasenia Huella "sal:hash" de la contraseña, nunca la contraseña en texto
+     * @return Secuencia del registro, confirmado recién con sincronizarHasta
+     */
+    public long agregarUsuario(String email, String nombre, String apellido, String huellaContrasenia) {
+        Codificador c = new Codificador();
+        c.texto(email).texto(nombre).texto(apellido).texto(huellaContrasenia);
+        return agregar(USUARIO, c.bytes());
+    }
+
+    /**
+     * Agrega el alta de un espectáculo.
+     *
+     * @param nombre Nombre del espectáculo
+     * @return Secuencia del registro, confirmado recién con sincronizarHasta
+     */
+    public long agregarEspectaculo(String nombre) {
+        return agregar(ESPECTACULO, new Codificador().texto(nombre).bytes());
+    }
+
+    /**
+     * Agrega el alta de una función.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo
+     * @param fecha             Fecha de la función
+     * @param nombreSede        Nombre de la sede
+     * @param precioBase        Precio base
+     * @return Secuencia del registro, confirmado recién con sincronizarHasta
+     */
+    public long agregarFuncion(String nombreEspectaculo, Fecha fecha, String nombreSede, double precioBase) {
+        Codificador c = new Codificador();
+        c.texto(nombreEspectaculo).entero(fecha.getDiaEpoca()).texto(nombreSede).real(precioBase);
+        return agregar(FUNCION, c.bytes());
+    }
+
+    /**
+     * Agrega la venta de un grupo de entradas de una misma función y usuario.
+     * Se guardan los códigos para que las entradas conserven su identidad al reconstruir el sistema.
+     *
+     * @param entradas Entradas emitidas (no vacía)
+     * @return Secuencia del registro, confirmado recién con sincronizarHasta
+     */
+    public long agregarVenta(List<IEntrada> entradas) {
+        Entrada primera = (Entrada) entradas.get(0);
+        Codificador c = new Codificador();
+        c.texto(primera.getNombreEspectaculo()).entero(primera.getFecha().getDiaEpoca())
+                .texto(primera.getEmailUsuario()).texto(primera.devolverSector()).entero(entradas.size());
+        for (IEntrada entrada : entradas) {
+            Entrada e = (Entrada) entrada;
+            c.largo(e.getIdAlto()).largo(e.getIdBajo()).entero(Math.max(e.devolverAsiento(), 0));
+        }
+        return agregar(VENTA, c.bytes());
+    }
+
+    /**
+     * Agrega la anulación de una entrada.
+     *
+     * @param entrada Entrada anulada
+     * @return Secuencia del registro, confirmado recién con sincronizarHasta
+     */
+    public long agregarAnulacion(Entrada entrada) {
+        Codificador c = new Codificador();
+        c.texto(entrada.getEmailUsuario()).largo(entrada.getIdAlto()).largo(entrada.getIdBajo());
+        return agregar(ANULACION, c.bytes());
+    }
+
+    /**
+     * Recorre los registros válidos del diario desde el principio, en orden de secuencia.
+     * Solo incluye registros ya sincronizados.
+     *
+     * @param visitante Acción a aplicar a cada registro
+     * @throws RuntimeException si el archivo no puede leerse
+     */
+    public void recorrer(Consumer<Registro> visitante) {
+        synchronized (cerrojoSincronizacion) {
+            try {
+                recorrer(canal, visitante);
+            } catch (IOException e) {
+                throw new RuntimeException("No se pudo leer el diario de ventas", e);
+            }
+        }
+    }
+
+    /**
+     * @return Secuencia del último registro agregado, sincronizado o no
+     */
+    public synchronized long getSecuencia() {
+        return secuencia;
+    }
+
+    /**
+     * @return Secuencia del último registro sincronizado en disco
+     */
+    public long getSecuenciaDurable() {
+        return durable;
+    }
+
+    /**
+     * Sincroniza los registros pendientes y cierra el archivo.
+     *
+     * @throws IOException si el archivo no puede cerrarse
+     */
+    @Override
+    public void close() throws IOException {
+        long ultima;
+        synchronized (this) {
+            ultima = secuencia;
+        }
+        try {
+            sincronizarHasta(ultima);
+        } finally {
+            canal.close();
+        }
+    }
+
+    /**
+     * Garantiza que los registros hasta la secuencia dada estén sincronizados en disco.
+     * El hilo que toma el cerrojo escribe todo lo pendiente, incluso registros de otros hilos,
+     * y los que esperaban detrás encuentran su registro ya confirmado.
+     *
+     * Si la escritura falla, el diario queda fuera de servicio y durable no avanza: los
+     * registros del lote nunca se confirman.
+     *
+     * @param objetivo Secuencia que debe quedar sincronizada
+     * @throws RuntimeException si el lote no pudo escribirse o el diario ya estaba fuera de servicio
+     */
+    public void sincronizarHasta(long objetivo) {
+        if (durable >= objetivo) {
+            return;
+        }
+        synchronized (cerrojoSincronizacion) {
+            if (durable >= objetivo) {
+                return;
+            }
+            chequearEnServicio();
+            byte[] lote;
+            long ultima;
+            synchronized (this) {
+                lote = pendiente.toByteArray();
+                pendiente.reset();
+                ultima = secuencia;
+            }
+            try {
+                escribirCompleto(ByteBuffer.wrap(lote), canal.size());
+                canal.force(false);
+            } catch (IOException e) {
+                falla = e;
+                throw new RuntimeException("No se pudo escribir el diario de ventas", e);
+            }
+            durable = ultima;
+        }
+    }
+
+    /**
+     * @throws RuntimeException si una escritura anterior falló y el diario está fuera de servicio
+     */
+    private void chequearEnServicio() {
+        IOException causa = falla;
+        if (causa != null) {
+            throw new RuntimeException("El diario de ventas está fuera de servicio", causa);
+        }
+    }
+
+    /**
+     * Escribe un búfer completo en una posición del archivo.
+     *
+     * @param buffer   Datos a escribir
+     * @param posicion Posición inicial en el archivo
+     * @throws IOException si la escritura falla
+     */
+    private void escribirCompleto(ByteBuffer buffer, long posicion) throws IOException {
+        while (buffer.hasRemaining()) {
+            posicion += canal.write(buffer, posicion);
+        }
+    }
+
+    /**
+     * Recorre los registros válidos de un archivo de diario. El recorrido termina en el primer
+     * registro inválido solo si es una escritura interrumpida: el registro se extiende más allá
+     * del final del archivo o lo que le sigue hasta el final son ceros (bloques reservados que
+     * no llegaron a escribirse).
+     *
+     * @param canal     Canal del archivo
+     * @param visitante Acción a aplicar a cada registro válido
+     * @return Posición siguiente al último registro válido
+     * @throws IOException si el archivo no puede leerse, el encabezado no es válido o hay un
+     *         registro inválido seguido de datos
+     */
+    private static long recorrer(FileChannel canal, Consumer<Registro> visitante) throws IOException {
+        long tamanio = canal.size();
+        ByteBuffer encabezado = ByteBuffer.allocate(TAMANIO_ENCABEZADO);
+        if (leerCompleto(canal, encabezado, 0) < TAMANIO_ENCABEZADO
+                || encabezado.getInt(0) != MAGIA || encabezado.getShort(4) > VERSION) {
+            throw new IOException("El archivo no es un diario de ventas compatible");
+        }
+
+        long posicion = TAMANIO_ENCABEZADO;
+        ByteBuffer largo = ByteBuffer.allocate(4);
+        while (posicion + 4 <= tamanio) {
+            largo.clear();
+            leerCompleto(canal, largo, posicion);
+            int bytes = largo.getInt(0);
+            if (bytes < TAMANIO_CABECERA_REGISTRO) {
+                if (!soloCeros(canal, posicion + 4, tamanio)) {
+                    throw new IOException("Largo de registro inválido en la posición " + posicion + " del diario");
+                }
+                break;
+            }
+            if (posicion + 4 + bytes + 4 > tamanio) {
+                break;
+            }
+            ByteBuffer cuerpo = ByteBuffer.allocate(bytes + 4);
+            leerCompleto(canal, cuerpo, posicion + 4);
+            CRC32 crc = new CRC32();
+            crc.update(cuerpo.array(), 0, bytes);
+            if ((int) crc.getValue() != cuerpo.getInt(bytes)) {
+                if (!soloCeros(canal, posicion + 4 + bytes + 4, tamanio)) {
+                    throw new IOException("Registro dañado en la posición " + posicion + " del diario");
+                }
+                break;
+            }
+            byte[] datos = new byte[bytes - TAMANIO_CABECERA_REGISTRO];
+            System.arraycopy(cuerpo.array(), TAMANIO_CABECERA_REGISTRO, datos, 0, datos.length);
+            visitante.accept(new Registro(cuerpo.get(0), cuerpo.get(1), cuerpo.getLong(2), datos));
+            posicion += 4 + bytes + 4;
+        }
+        return posicion;
+    }
+
+    /**
+     * Indica si todos los bytes de un tramo del archivo son cero.
+     *
+     * @param canal Canal del archivo
+     * @param desde Posición inicial
+     * @param hasta Posición final (excluida)
+     * @return true si el tramo está vacío o solo contiene ceros
+     * @throws IOException si la lectura falla
+     */
+    private static boolean soloCeros(FileChannel canal, long desde, long hasta) throws IOException {
+        ByteBuffer bloque = ByteBuffer.allocate(1 << 12);
+        while (desde < hasta) {
+            bloque.clear().limit((int) Math.min(bloque.capacity(), hasta - desde));
+            int leidos = leerCompleto(canal, bloque, desde);
+            for (int i = 0; i < leidos; i++) {
+                if (bloque.get(i) != 0) {
+                    return false;
+                }
+            }
+            if (leidos == 0) {
+                break;
+            }
+            desde += leidos;
+        }
+        return true;
+    }
+
+    /**
+     * Lee desde una posición hasta llenar el búfer o llegar al final del archivo.
+     *
+     * @param canal    Canal del archivo
+     * @param buffer   Búfer a llenar
+     * @param posicion Posición inicial
+     * @return Cantidad de bytes leídos
+     * @throws IOException si la lectura falla
+     */
+    private static int leerCompleto(FileChannel canal, ByteBuffer buffer, long posicion) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int leidos = canal.read(buffer, posicion + total);
+            if (leidos < 0) {
+                break;
+            }
+            total += leidos;
+        }
+        return total;
+    }
+
+    /**
+     * Registro leído del diario.
+     */
+    public static final class Registro {
+        private final byte version;
+        private final byte tipo;
+        private final long secuencia;
+        private final byte[] datos;
+
+        private Registro(byte version, byte tipo, long secuencia, byte[] datos) {
+            this.version = version;
+            this.tipo = tipo;
+            this.secuencia = secuencia;
+            this.datos = datos;
+        }
+
+        /**
+         * @return Versión del formato con que se escribió el registro
+         */
+        public byte getVersion() {
+            return version;
+        }
+
+        /**
+         * @return Tipo del registro
+         */
+        public byte getTipo() {
+            return tipo;
+        }
+
+        /**
+         * @return Secuencia del registro
+         */
+        public long getSecuencia() {
+            return secuencia;
+        }
+
+        /**
+         * @return Flujo para leer el contenido del registro
+         */
+        public DataInputStream getDatos() {
+            return new DataInputStream(new ByteArrayInputStream(datos));
+        }
+    }
+
+    /**
+     * Ayudante para codificar el contenido de un registro.
+     */
+    private static final class Codificador {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream salida = new DataOutputStream(bytes);
+
+        private Codificador texto(String valor) {
+            try {
+                salida.writeUTF(valor);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return this;
+        }
+
+        private Codificador entero(int valor) {
+            try {
+                salida.writeInt(valor);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return this;
+        }
+
+        private Codificador largo(long valor) {
+            try {
+                salida.writeLong(valor);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return this;
+        }
+
+        private Codificador real(double valor) {
+            try {
+                salida.writeDouble(valor);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return this;
+        }
+
+        private Codificador sectores(String[] sectores, int[] capacidad, int[] porcentajeAdicional) {
+            entero(sectores.length);
+            for (int i = 0; i < sectores.length; i++) {
+                texto(sectores[i]).entero(capacidad[i]).entero(porcentajeAdicional[i]);
+            }
+            return this;
+        }
+
+        private byte[] bytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ar.edu.ungs.prog2.ticketek;
 
+import java.util.Comparator;
 import java.util.UUID;
 
 
@@ -7,33 +8,52 @@ import java.util.UUID;
  * Clase que representa una entrada comprada por un usuario.
  * Implementa la interfaz IEntrada.
  *
+ * La representación es compacta: el código es un identificador de 128 bits guardado en dos
+ * long, los datos comunes a la función (espectáculo, sede, fecha, sectores y precios) se
+ * comparten a través de un {@link ContextoEntrada}, el sector es un ordinal dentro de ese
+ * contexto y fila y asiento son enteros primitivos. Los textos (código, sector, ubicación)
+ * se arman solo cuando se piden.
+ *
  * IREP (Invariante de Representación):
- * - codigoEntrada != null && !codigoEntrada.isEmpty()
- * - nombreEspectaculo != null && !nombreEspectaculo.isEmpty()
- * - nombreSede != null && !nombreSede.isEmpty()
- * - fecha != null
- * - sector != null && !sector.isEmpty()
- * - valorFinal >= 0.0
+ * - (idAlto, idBajo) es único (generado por UUID, o recuperado del diario de ventas)
+ * - contexto != null, con nombre de espectáculo y de sede no vacíos y fecha != null
+ *   (salvo en las entradas de búsqueda creadas con sonda)
+ * - 0 <= ordinalSector < cantidad de sectores del contexto
+ * - contexto.getPrecio(ordinalSector) >= 0.0
  * - emailUsuario != null && !emailUsuario.isEmpty()
- * - Si sector.equals("Campo") entonces numAsiento == null && fila == null
- * - Si !sector.equals("Campo") entonces numAsiento != null && numAsiento > 0 && fila != null && fila > 0
- * - anulada es un valor booleano válido (true o false)
+ * - Si el sector es "Campo" entonces numAsiento == 0 && fila == 0
+ * - Si el sector no es "Campo" entonces numAsiento > 0 && fila > 0
  * - Si anulada == true, la entrada no puede ser reutilizada para nuevas operaciones de venta
- * - codigoEntrada es único (generado por UUID)
- * - devolverAsiento() devuelve -1 si numAsiento == null, sino devuelve numAsiento
- * - ubicacion() devuelve "CAMPO" si sector.equals("Campo"), sino devuelve formato "sector f:fila a:asiento"
+ * - devolverAsiento() y devolverFila() devuelven -1 si la entrada no tiene asiento numerado
+ * - ubicacion() devuelve "CAMPO" si el sector es "Campo", sino devuelve formato "sector f:fila a:asiento"
+ * - equals y hashCode dependen solo del código
+ * - La fecha del contexto no cambia mientras la entrada está en los conjuntos de Usuario ordenados
+ *   por {@link #POR_FECHA}: los cambiarSede (obsoletos) pasan por el titular, que saca la entrada
+ *   de su orden, la modifica y la vuelve a insertar
+ * - titular es el usuario que tiene la entrada entre las suyas, o null si no la tiene ninguno
+ * - versionAlta > 0 una vez emitida; versionBaja == 0 o versionBaja > versionAlta
  */
 public class Entrada implements IEntrada {
-    private String codigoEntrada;
-    private String nombreEspectaculo;
-    private String nombreSede;
-    private Fecha fecha;
-    private String sector;
-    private Integer numAsiento;
-    private double valorFinal;
-    private Integer fila;
-    private String emailUsuario;
-    private boolean anulada=false;
+    /**
+     * Orden por día de la función y, para desempatar, por código.
+     */
+    static final Comparator<Entrada> POR_FECHA = Comparator
+            .comparingInt((Entrada e) -> e.contexto.getFecha().getDiaEpoca())
+            .thenComparingLong(e -> e.idAlto)
+            .thenComparingLong(e -> e.idBajo);
+
+    private final long idAlto;
+    private final long idBajo;
+    private ContextoEntrada contexto;
+    private final String emailUsuario;
+    private final short ordinalSector;
+    private int fila;
+    private int numAsiento;
+    private volatile Usuario titular;
+    private volatile boolean anulada=false;
+    private volatile long versionAlta;
+    private volatile long versionBaja;
+
     /**
      * Constructor para una entrada sin asiento numerado (sector "Campo").
      *
@@ -45,15 +65,8 @@ public class Entrada implements IEntrada {
      */
     public Entrada(String nombreEspectaculo, String nombreSede,
                    Fecha fecha, double valorFinal, String emailUsuario) {
-        this.codigoEntrada = UUID.randomUUID().toString();
-        this.nombreEspectaculo = nombreEspectaculo;
-        this.nombreSede = nombreSede;
-        this.fecha = fecha;
-        this.sector = "Campo";
-        this.fila = null;
-        this.numAsiento = null;
-        this.valorFinal = valorFinal;
-        this.emailUsuario = emailUsuario;
+        this(UUID.randomUUID(), new ContextoEntrada(nombreEspectaculo, nombreSede, fecha,
+                new String[] { "Campo" }, new double[] { valorFinal }), 0, 0, 0, emailUsuario);
     }
 
     /**
@@ -70,24 +83,70 @@ public class Entrada implements IEntrada {
      */
     public Entrada(String nombreEspectaculo,
                    String nombreSede, Fecha fecha, String sector, int fila, int numAsiento, double valorFinal, String emailUsuario) {
-        this.codigoEntrada = UUID.randomUUID().toString();
-        this.nombreEspectaculo = nombreEspectaculo;
-        this.nombreSede = nombreSede;
-        this.fecha = fecha;
-        this.sector = sector;
+        this(UUID.randomUUID(), new ContextoEntrada(nombreEspectaculo, nombreSede, fecha,
+                new String[] { sector }, new double[] { valorFinal }), 0, fila, numAsiento, emailUsuario);
+    }
+
+    /**
+     * Constructor compacto, usado al emitir entradas de una función: el contexto lo comparten
+     * todas las entradas de la función.
+     *
+     * @param codigo        Código único de la entrada
+     * @param contexto      Datos compartidos de la función
+     * @param ordinalSector Ordinal del sector dentro del contexto
+     * @param fila          Fila del asiento, o 0 si no es numerado
+     * @param numAsiento    Número del asiento, o 0 si no es numerado
+     * @param emailUsuario  Email del usuario que compró la entrada
+     */
+    Entrada(UUID codigo, ContextoEntrada contexto, int ordinalSector, int fila, int numAsiento, String emailUsuario) {
+        this(codigo.getMostSignificantBits(), codigo.getLeastSignificantBits(), contexto, ordinalSector, fila,
+                numAsiento, emailUsuario);
+    }
+
+    /**
+     * Constructor compacto a partir de las dos mitades del código, usado al restaurar entradas
+     * guardadas en binario sin armar un UUID por entrada.
+     *
+     * @param idAlto        Mitad alta del código
+     * @param idBajo        Mitad baja del código
+     * @param contexto      Datos compartidos de la función
+     * @param ordinalSector Ordinal del sector dentro del contexto
+     * @param fila          Fila del asiento, o 0 si no es numerado
+     * @param numAsiento    Número del asiento, o 0 si no es numerado
+     * @param emailUsuario  Email del usuario que compró la entrada
+     */
+    Entrada(long idAlto, long idBajo, ContextoEntrada contexto, int ordinalSector, int fila, int numAsiento,
+            String emailUsuario) {
+        this.idAlto = idAlto;
+        this.idBajo = idBajo;
+        this.contexto = contexto;
+        this.ordinalSector = (short) ordinalSector;
         this.fila = fila;
         this.numAsiento = numAsiento;
-        this.valorFinal = valorFinal;
         this.emailUsuario = emailUsuario;
     }
 
+    /**
+     * Crea una entrada de búsqueda: solo sirve para consultar índices por código o por fecha.
+     *
+     * @param diaEpoca Día de la función, o cualquiera si la búsqueda es solo por código
+     * @param idAlto   Mitad alta del código
+     * @param idBajo   Mitad baja del código
+     * @return Entrada de búsqueda
+     */
+    static Entrada sonda(int diaEpoca, long idAlto, long idBajo) {
+        ContextoEntrada contexto = new ContextoEntrada(null, null, Fecha.desdeDiaEpoca(diaEpoca),
+                new String[0], new double[0]);
+        return new Entrada(new UUID(idAlto, idBajo), contexto, 0, 0, 0, null);
+    }
+
     /**
      * Devuelve el valor final de la entrada.
      *
      * @return valor final
      */
     public double devolverValor() {
-        return valorFinal;
+        return contexto.getPrecio(ordinalSector);
     }
 
     /**
@@ -96,7 +155,7 @@ public class Entrada implements IEntrada {
      * @return true si la fecha es futura, false en caso contrario
      */
     public boolean esFutura() {
-        return fecha.esFutura();
+        return contexto.getFecha().esFutura();
     }
 
     /**
@@ -114,7 +173,7 @@ public class Entrada implements IEntrada {
      * @return nombre de la sede
      */
     public String devolverSede() {
-        return nombreSede;
+        return contexto.getNombreSede();
     }
 
     /**
@@ -123,16 +182,16 @@ public class Entrada implements IEntrada {
      * @return sector
      */
     public String devolverSector() {
-        return sector;
+        return contexto.getSector(ordinalSector);
     }
 
     /**
      * Devuelve el número de asiento.
      *
-     * @return número de asiento, puede ser null si es sector "Campo"
+     * @return número de asiento, o -1 si es sector "Campo"
      */
     public int devolverAsiento() {
-    	if (numAsiento == null)
+    	if (numAsiento == 0)
     		return -1;
         return numAsiento;
     }
@@ -143,15 +202,17 @@ public class Entrada implements IEntrada {
      * @return código de la entrada
      */
     public String devolverCodigo() {
-        return codigoEntrada;
+        return new UUID(idAlto, idBajo).toString();
     }
 
     /**
      * Devuelve la fila del asiento.
      *
-     * @return número de fila, puede ser null
+     * @return número de fila, o -1 si es sector "Campo"
      */
     public int devolverFila() {
+        if (fila == 0)
+            return -1;
         return fila;
     }
 
@@ -161,7 +222,7 @@ public class Entrada implements IEntrada {
      * @return nombre del espectáculo
      */
     public String getNombreEspectaculo() {
-        return nombreEspectaculo;
+        return contexto.getNombreEspectaculo();
     }
 
     /**
@@ -170,7 +231,7 @@ public class Entrada implements IEntrada {
      * @return objeto Fecha
      */
     public Fecha getFecha() {
-        return fecha;
+        return contexto.getFecha();
     }
 
     /**
@@ -180,6 +241,7 @@ public class Entrada implements IEntrada {
      */
     @Override
     public String ubicacion() {
+        String sector = devolverSector();
         if (sector.equals("Campo"))
             return "CAMPO";
         else
@@ -193,11 +255,13 @@ public class Entrada implements IEntrada {
      */
     @Override
     public String toString() {
+        Fecha fecha = contexto.getFecha();
         String fechaStr = fecha.toString();
         if (!fecha.esFutura())
             fechaStr += " P";
 
-        return "- " + codigoEntrada + " - " + nombreEspectaculo + " - " + fechaStr + " - " + nombreSede + " - " + ubicacion();
+        return "- " + devolverCodigo() + " - " + contexto.getNombreEspectaculo() + " - " + fechaStr + " - "
+                + contexto.getNombreSede() + " - " + ubicacion();
     }
 
     /**
@@ -205,10 +269,12 @@ public class Entrada implements IEntrada {
      *
      * @param nombreSede2 Nueva sede
      * @param fecha2      Nueva fecha
+     * @deprecated La entrada sigue registrada en su función original; para cambiar de función usar
+     *             {@link Ticketek#cambiarEntrada(IEntrada, String, String)}, que emite una entrada nueva.
      */
+    @Deprecated
     public void cambiarSede(String nombreSede2, Fecha fecha2) {
-        this.nombreSede = nombreSede2;
-        this.fecha = fecha2;
+        reubicar(nombreSede2, fecha2, fila, numAsiento);
     }
 
     /**
@@ -217,11 +283,12 @@ public class Entrada implements IEntrada {
      * @param nombreSede2 Nuevo nombre de la sede
      * @param fecha2      Nueva fecha
      * @param nuevoAsiento Nuevo número de asiento
+     * @deprecated La entrada sigue registrada en su función original; para cambiar de función usar
+     *             {@link Ticketek#cambiarEntrada(IEntrada, String, String, String, int)}, que emite una entrada nueva.
      */
+    @Deprecated
     public void cambiarSede(String nombreSede2, Fecha fecha2, Integer nuevoAsiento) {
-        nombreSede = nombreSede2;
-        fecha = fecha2;
-        numAsiento = nuevoAsiento;
+        reubicar(nombreSede2, fecha2, fila, nuevoAsiento == null ? 0 : nuevoAsiento);
     }
 
     /**
@@ -231,12 +298,45 @@ public class Entrada implements IEntrada {
      * @param fecha2      Nueva fecha
      * @param fila        Nueva fila
      * @param asiento     Nuevo número de asiento
+     * @deprecated La entrada sigue registrada en su función original; para cambiar de función usar
+     *             {@link Ticketek#cambiarEntrada(IEntrada, String, String, String, int)}, que emite una entrada nueva.
      */
+    @Deprecated
     public void cambiarSede(String nombreSede2, Fecha fecha2, int fila, int asiento) {
-        this.nombreSede = nombreSede2;
-        this.fecha = fecha2;
-        this.fila = fila;
-        this.numAsiento = asiento;
+        reubicar(nombreSede2, fecha2, fila, asiento);
+    }
+
+    /**
+     * Aplica un cambio de sede, fecha y ubicación. Si la entrada pertenece a un usuario, el cambio
+     * pasa por él para que la entrada salga de su orden por fecha antes de cambiar y vuelva a entrar después.
+     *
+     * @param nombreSede Nueva sede
+     * @param fecha      Nueva fecha
+     * @param fila       Nueva fila
+     * @param asiento    Nuevo número de asiento
+     */
+    private void reubicar(String nombreSede, Fecha fecha, int fila, int asiento) {
+        ContextoEntrada nuevo = contexto.conSedeYFecha(nombreSede, fecha);
+        Runnable cambio = () -> {
+            this.contexto = nuevo;
+            this.fila = fila;
+            this.numAsiento = asiento;
+        };
+        Usuario duenio = titular;
+        if (duenio == null) {
+            cambio.run();
+        } else {
+            duenio.reubicar(this, cambio);
+        }
+    }
+
+    /**
+     * Registra qué usuario tiene la entrada entre las suyas.
+     *
+     * @param usuario Usuario titular, o null si la entrada ya no pertenece a ninguno
+     */
+    void asignarTitular(Usuario usuario) {
+        this.titular = usuario;
     }
 
     /**
@@ -246,7 +346,7 @@ public class Entrada implements IEntrada {
      */
     @Override
     public double precio() {
-        return valorFinal;
+        return contexto.getPrecio(ordinalSector);
     }
     
     /**
@@ -260,12 +360,94 @@ public class Entrada implements IEntrada {
 
     /**
      * Marca la entrada como anulada.
-     * Establece el estado de la entrada en anulada.
+     * Establece el estado de la entrada en anulada. Si dos hilos intentan anular
+     * la misma entrada, solo uno de ellos lo logra.
+     *
+     * @return true si la entrada se anuló en esta llamada, false si ya estaba anulada.
      */
-    public void anular() {
+    public synchronized boolean anular() {
+        if (anulada) {
+            return false;
+        }
         this.anulada = true;
+        return true;
     }
 
-    
-    
+    /**
+     * Registra la versión del estado de Ticketek en que se emitió la entrada.
+     * Las instantáneas la usan para saber si la entrada existía al tomarse.
+     *
+     * @param version Versión del estado al emitir la entrada
+     */
+    void marcarAlta(long version) {
+        this.versionAlta = version;
+    }
+
+    /**
+     * Deshace la anulación de una entrada cuyo registro en el diario falló: vuelve a quedar
+     * vigente y puede anularse de nuevo.
+     */
+    synchronized void revertirAnulacion() {
+        this.versionBaja = 0;
+        this.anulada = false;
+    }
+
+    /**
+     * Registra la versión del estado de Ticketek en que se anuló la entrada.
+     *
+     * @param version Versión del estado al anular la entrada
+     */
+    void marcarBaja(long version) {
+        this.versionBaja = version;
+    }
+
+    /**
+     * Indica si la entrada estaba vigente en una versión del estado de Ticketek.
+     *
+     * @param version Versión del estado
+     * @return true si la entrada ya estaba emitida y todavía no anulada en esa versión
+     */
+    boolean vigenteEn(long version) {
+        long baja = versionBaja;
+        return versionAlta <= version && (baja == 0 || baja > version);
+    }
+
+    /**
+     * @return Mitad alta del código de la entrada
+     */
+    long getIdAlto() {
+        return idAlto;
+    }
+
+    /**
+     * @return Mitad baja del código de la entrada
+     */
+    long getIdBajo() {
+        return idBajo;
+    }
+
+    /**
+     * @return Ordinal del sector de la entrada dentro de su contexto
+     */
+    int getOrdinalSector() {
+        return ordinalSector;
+    }
+
+    /**
+     * Dos entradas son iguales si tienen el mismo código.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Entrada))
+            return false;
+        Entrada otra = (Entrada) obj;
+        return idAlto == otra.idAlto && idBajo == otra.idBajo;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(idAlto ^ idBajo);
+    }
 }
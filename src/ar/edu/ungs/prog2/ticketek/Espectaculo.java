@@ -1,6 +1,8 @@
 package ar.edu.ungs.prog2.ticketek;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 /**
  * Clase que representa un espectáculo.
  * Contiene sedes, fechas, funciones y lleva el control de la recaudación.
@@ -9,26 +11,30 @@ import java.util.*;
  * - nombre != null && !nombre.isEmpty()
  * - sedes != null (puede estar vacía pero no null)
  * - fechas != null (puede estar vacía pero no null)
- * - funciones != null (puede estar vacía pero no null)
+ * - funciones != null (puede estar vacía pero no null), ordenado por fecha
  * - recaudacionPorSede != null
- * - Para toda fecha en funciones.keySet(): fecha != null && !fecha.isEmpty()
- * - Para toda funcion en funciones.values(): funcion != null
+ * - Para toda funcion en funciones.todas(): funcion != null
  * - Para todo nombreSede en recaudacionPorSede.keySet(): nombreSede != null && !nombreSede.isEmpty()
- * - Para todo valor en recaudacionPorSede.values(): valor >= 0.0
- * - recaudacionTotal >= 0.0
- * - recaudacionTotal == suma de todos los valores en recaudacionPorSede
- * - Las fechas en funciones.keySet() deben corresponder a fechas válidas
- * - No puede haber funciones duplicadas para la misma fecha (clave única en funciones)
+ * - Los montos se acumulan en centavos (long): cada precio se redondea a centavos una sola vez,
+ *   por lo que sumar y restar el mismo precio no deja diferencias de redondeo
+ * - Para todo acumulador en recaudacionPorSede.values(): acumulador.sum() >= 0
+ * - recaudacionTotal.sum() >= 0
+ * - recaudacionTotal.sum() == suma de los acumuladores de recaudacionPorSede, una vez terminadas las actualizaciones
+ * - No puede haber funciones duplicadas para la misma fecha
  * - getFuncion(fecha) debe ser consistente con getFuncion(fecha.toString())
+ * - funciones y recaudacionPorSede admiten actualizaciones concurrentes sin perder montos; los
+ *   acumuladores son LongAdder, por lo que las ventas concurrentes no compiten por una misma celda
+ * - versionAlta es la versión del estado de Ticketek en que se registró el espectáculo (0 antes de registrarlo)
  */
 public class Espectaculo {
 
     private String nombre;
     private List<Sede> sedes;
     private List<Fecha> fechas;
-    private Map<String, Funcion> funciones;
-    private Map<String, Double> recaudacionPorSede = new HashMap<>();
-    private double recaudacionTotal = 0;
+    private CalendarioFunciones funciones;
+    private Map<String, LongAdder> recaudacionPorSede = new ConcurrentHashMap<>();
+    private LongAdder recaudacionTotal = new LongAdder();
+    private volatile long versionAlta;
 
     /**
      * Constructor que inicializa un espectáculo con un nombre.
@@ -43,7 +49,7 @@ public class Espectaculo {
         this.nombre = nombre;
         this.sedes = new ArrayList<>();
         this.fechas = new ArrayList<>();
-        this.funciones = new HashMap<>();
+        this.funciones = new CalendarioFunciones();
     }
 
     /**
@@ -52,18 +58,34 @@ public class Espectaculo {
      * @param fecha      Fecha de la función
      * @param sede       Sede donde se realiza la función
      * @param precioBase Precio base de la función
+     * @return Función agregada
      * @throws IllegalArgumentException si ya existe una función para esa fecha
      */
-    public void agregarFuncion(Fecha fecha, Sede sede, double precioBase) {
-        if (funciones == null)
-            funciones = new HashMap<>();
+    public Funcion agregarFuncion(Fecha fecha, Sede sede, double precioBase) {
+        Funcion funcion = new Funcion(sede, fecha, precioBase);
+        agregarFuncion(funcion);
+        return funcion;
+    }
 
-        if (funciones.containsKey(fecha.toString())) {
+    /**
+     * Agrega una función ya creada al espectáculo.
+     * 
+     * @param funcion Función a agregar
+     * @throws IllegalArgumentException si ya existe una función para esa fecha
+     */
+    public void agregarFuncion(Funcion funcion) {
+        if (!funciones.agregar(funcion)) {
             throw new IllegalArgumentException("Ya existe una función en esa sede.");
         }
+    }
 
-        Funcion funcion = new Funcion(sede, fecha, precioBase);
-        funciones.put(fecha.toString(), funcion);
+    /**
+     * Quita una función del espectáculo. Se usa para deshacer un alta que no pudo registrarse.
+     * 
+     * @param funcion Función a quitar
+     */
+    void quitarFuncion(Funcion funcion) {
+        funciones.quitar(funcion);
     }
 
     /**
@@ -73,11 +95,16 @@ public class Espectaculo {
      * @return Monto recaudado para esa sede, 0 si no existe recaudación
      */
     public double getRecaudadoPorSede(String nombreSede) {
-        if (recaudacionPorSede.containsKey(nombreSede)) {
-            return recaudacionPorSede.get(nombreSede);
-        } else {
-            return 0.0;
-        }
+        return getCentavosPorSede(nombreSede) / 100.0;
+    }
+
+    /**
+     * @param nombreSede Nombre de la sede
+     * @return Centavos recaudados en esa sede, 0 si no existe recaudación
+     */
+    public long getCentavosPorSede(String nombreSede) {
+        LongAdder acumulador = recaudacionPorSede.get(nombreSede);
+        return acumulador == null ? 0 : acumulador.sum();
     }
 
     /**
@@ -88,14 +115,19 @@ public class Espectaculo {
      * @param monto      Monto a agregar
      */
     public void agregarRecaudacion(String nombreSede, double monto) {
-        if (recaudacionPorSede.containsKey(nombreSede)) {
-            double actual = recaudacionPorSede.get(nombreSede);
-            recaudacionPorSede.put(nombreSede, actual + monto);
-        } else {
-            recaudacionPorSede.put(nombreSede, monto);
-        }
+        agregarRecaudacion(nombreSede, monto, 1);
+    }
 
-        recaudacionTotal += monto;
+    /**
+     * Agrega a la recaudación de una sede varias entradas del mismo precio, con una sola
+     * actualización de cada acumulador.
+     * 
+     * @param nombreSede Nombre de la sede
+     * @param precio     Precio de cada entrada
+     * @param cantidad   Cantidad de entradas
+     */
+    public void agregarRecaudacion(String nombreSede, double precio, int cantidad) {
+        sumarCentavos(nombreSede, aCentavos(precio) * cantidad);
     }
     
     /**
@@ -106,9 +138,33 @@ public class Espectaculo {
      * @param monto      Monto a restar
      */
     public void restarRecaudacion(String nombreSede, double monto) {
-        double actual = recaudacionPorSede.get(nombreSede);
-        recaudacionPorSede.put(nombreSede, actual - monto);
-        recaudacionTotal -= monto;
+        sumarCentavos(nombreSede, -aCentavos(monto));
+    }
+
+    /**
+     * Convierte un monto a centavos, redondeando al centavo más cercano.
+     * 
+     * @param monto Monto en pesos
+     * @return Monto en centavos
+     */
+    static long aCentavos(double monto) {
+        return Math.round(monto * 100);
+    }
+
+    /**
+     * @param nombreSede Nombre de la sede
+     * @param centavos   Centavos a sumar (negativos para restar)
+     */
+    private void sumarCentavos(String nombreSede, long centavos) {
+        if (centavos == 0) {
+            return;
+        }
+        LongAdder acumulador = recaudacionPorSede.get(nombreSede);
+        if (acumulador == null) {
+            acumulador = recaudacionPorSede.computeIfAbsent(nombreSede, s -> new LongAdder());
+        }
+        acumulador.add(centavos);
+        recaudacionTotal.add(centavos);
     }
 
     /**
@@ -118,7 +174,13 @@ public class Espectaculo {
      * @return Objeto Funcion correspondiente o null si no existe
      */
     public Funcion getFuncion(String fechaStr) {
-        return funciones.get(fechaStr);
+        Fecha fecha;
+        try {
+            fecha = Fecha.desdeString(fechaStr);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return getFuncion(fecha);
     }
 
     /**
@@ -128,22 +190,78 @@ public class Espectaculo {
      * @return Objeto Funcion correspondiente o null si no existe
      */
     public Funcion getFuncion(Fecha fecha) {
-        return getFuncion(fecha.toString());
+        return funciones.obtener(fecha.getDiaEpoca());
     }
 
+    /**
+     * Devuelve las funciones entre dos fechas, en orden cronológico.
+     * 
+     * @param desde Fecha inicial (inclusive)
+     * @param hasta Fecha final (inclusive)
+     * @return Lista de funciones del rango
+     */
+    public List<Funcion> getFuncionesEntre(Fecha desde, Fecha hasta) {
+        return funciones.entre(desde.getDiaEpoca(), hasta.getDiaEpoca());
+    }
+
+    /**
+     * Devuelve las funciones que ya tuvieron lugar (anteriores a hoy) según el {@link Reloj}.
+     * Las funciones de hoy todavía no se consideran pasadas: siguen vendiéndose durante el día.
+     * 
+     * @return Lista de funciones pasadas, en orden cronológico
+     */
+    public List<Funcion> getFuncionesPasadas() {
+        return funciones.entre(Integer.MIN_VALUE, Reloj.hoy() - 1);
+    }
+
+    /**
+     * Devuelve la próxima función que todavía no tuvo lugar según el {@link Reloj}.
+     * 
+     * @return Primera función posterior a hoy, o null si no hay
+     */
+    public Funcion getProximaFuncion() {
+        return funciones.proximaDesde(Reloj.hoy() + 1);
+    }
+
+
+    /**
+     * Devuelve las entradas vigentes de todas las funciones del espectáculo.
+     * El costo es proporcional a la cantidad de entradas del espectáculo.
+     * 
+     * @return Lista con las entradas vigentes del espectáculo
+     */
+    public List<Entrada> listarEntradas() {
+        int total = 0;
+        List<Funcion> todas = funciones.todas();
+        for (Funcion funcion : todas) {
+            total += funcion.cantidadEntradas();
+        }
+        List<Entrada> resultado = new ArrayList<>(total);
+        for (Funcion funcion : todas) {
+            resultado.addAll(funcion.getEntradas());
+        }
+        return resultado;
+    }
 
     /**
      * @return La recaudación total acumulada por el espectáculo
      */
     public double getRecaudacionTotal() {
-        return recaudacionTotal;
+        return recaudacionTotal.sum() / 100.0;
     }
 
     /**
-     * @return Mapa de funciones, donde la clave es la fecha en String
+     * @return La recaudación total acumulada por el espectáculo, en centavos
      */
-    public Map<String, Funcion> getFunciones() {
-        return funciones;
+    public long getCentavosTotales() {
+        return recaudacionTotal.sum();
+    }
+
+    /**
+     * @return Lista no modificable de funciones, en orden cronológico
+     */
+    public List<Funcion> getFunciones() {
+        return funciones.todas();
     }
 
     /**
@@ -178,9 +296,25 @@ public class Espectaculo {
         StringBuilder sb = new StringBuilder();
         sb.append("Espectáculo: ").append(nombre).append("\n");
         sb.append("Funciones:\n");
-        for (Funcion funcion : funciones.values()) {
+        for (Funcion funcion : funciones.todas()) {
             sb.append("  - ").append(funcion).append("\n");
         }
         return sb.toString();
     }
+
+    /**
+     * Registra la versión del estado de Ticketek en que se dio de alta el espectáculo.
+     *
+     * @param version Versión del estado al dar de alta
+     */
+    void marcarAlta(long version) {
+        this.versionAlta = version;
+    }
+
+    /**
+     * @return Versión del estado de Ticketek en que se dio de alta el espectáculo
+     */
+    long getVersionAlta() {
+        return versionAlta;
+    }
 }
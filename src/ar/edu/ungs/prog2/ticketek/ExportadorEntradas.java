@@ -0,0 +1,466 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Exporta entradas, ocupación por función y recaudación por sede en CSV o NDJSON (un objeto
+ * JSON por línea), escribiendo cada fila directamente en el destino a medida que se recorre.
+ * A diferencia de listarEntradasEspectaculo, listarTodasLasEntradasDelUsuario o toString de
+ * Ticketek, no arma listas ni textos con todo el contenido: recorre las vistas de las funciones
+ * y de los usuarios, por lo que la memoria usada no depende de la cantidad de entradas.
+ *
+ * Los destinos {@link Writer} se envuelven en un buffer si no lo tienen; los destinos
+ * {@link WritableByteChannel} se escriben en UTF-8 por bloques de {@link #TAMANIO_BUFFER} bytes.
+ * Ningún destino se cierra: al terminar solo se vacía el buffer.
+ *
+ * Como las ventas siguen mientras se exporta, cada exportación refleja las entradas vigentes
+ * de cada función al momento de recorrerla.
+ *
+ * IREP (Invariante de Representación):
+ * - ticketek != null
+ * - formato != null
+ * - En CSV la primera línea es el encabezado con los nombres de las columnas, y los textos con
+ *   comas, comillas o saltos de línea van entre comillas
+ * - En NDJSON cada línea es un objeto con los mismos nombres de columnas como claves
+ * - Precios y recaudaciones se escriben en pesos con dos decimales fijos, desde los centavos
+ */
+public class ExportadorEntradas {
+    /**
+     * Formatos de exportación.
+     */
+    public enum Formato {
+        CSV, NDJSON
+    }
+
+    static final int TAMANIO_BUFFER = 1 << 16;
+
+    private static final String[] COLUMNAS_ENTRADAS = { "codigo", "espectaculo", "fecha", "sede", "sector",
+            "fila", "asiento", "precio", "email" };
+    private static final String[] COLUMNAS_OCUPACION = { "espectaculo", "fecha", "sede", "sector", "vendidos",
+            "capacidad" };
+    private static final String[] COLUMNAS_RECAUDACION = { "espectaculo", "sede", "recaudacion" };
+
+    private final Ticketek ticketek;
+    private final Formato formato;
+
+    /**
+     * @param ticketek Sistema a exportar
+     * @param formato  Formato de salida
+     * @throws IllegalArgumentException si alguno de los parámetros es null
+     */
+    public ExportadorEntradas(Ticketek ticketek, Formato formato) {
+        if (ticketek == null || formato == null) {
+            throw new IllegalArgumentException("El sistema y el formato no pueden ser nulos");
+        }
+        this.ticketek = ticketek;
+        this.formato = formato;
+    }
+
+    /**
+     * Exporta las entradas vigentes de todos los espectáculos.
+     *
+     * @param destino Destino de la exportación
+     * @return Cantidad de entradas exportadas
+     * @throws RuntimeException si la escritura falla
+     */
+    public long exportarEntradas(Writer destino) {
+        return exportar(destino, COLUMNAS_ENTRADAS, tabla -> {
+            long filas = 0;
+            for (Espectaculo espectaculo : ticketek.getEspectaculos().values()) {
+                filas += escribirEntradas(tabla, espectaculo);
+            }
+            return filas;
+        });
+    }
+
+    /**
+     * Exporta las entradas vigentes de todos los espectáculos a un canal, en UTF-8.
+     *
+     * @param destino Canal de destino
+     * @return Cantidad de entradas exportadas
+     * @throws RuntimeException si la escritura falla
+     */
+    public long exportarEntradas(WritableByteChannel destino) {
+        return exportarEntradas(escritor(destino));
+    }
+
+    /**
+     * Exporta las entradas vigentes de un espectáculo.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo
+     * @param destino           Destino de la exportación
+     * @return Cantidad de entradas exportadas
+     * @throws IllegalArgumentException si el espectáculo no existe
+     * @throws RuntimeException         si la escritura falla
+     */
+    public long exportarEntradasEspectaculo(String nombreEspectaculo, Writer destino) {
+        Espectaculo espectaculo = ticketek.getEspectaculo(nombreEspectaculo);
+        if (espectaculo == null) {
+            throw new IllegalArgumentException("El espectáculo no existe");
+        }
+        return exportar(destino, COLUMNAS_ENTRADAS, tabla -> escribirEntradas(tabla, espectaculo));
+    }
+
+    /**
+     * Exporta las entradas vigentes de un espectáculo a un canal, en UTF-8.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo
+     * @param destino           Canal de destino
+     * @return Cantidad de entradas exportadas
+     * @throws IllegalArgumentException si el espectáculo no existe
+     * @throws RuntimeException         si la escritura falla
+     */
+    public long exportarEntradasEspectaculo(String nombreEspectaculo, WritableByteChannel destino) {
+        return exportarEntradasEspectaculo(nombreEspectaculo, escritor(destino));
+    }
+
+    /**
+     * Exporta las entradas de un usuario, en orden cronológico.
+     *
+     * @param email   Email del usuario
+     * @param destino Destino de la exportación
+     * @return Cantidad de entradas exportadas
+     * @throws IllegalArgumentException si el usuario no existe
+     * @throws RuntimeException         si la escritura falla
+     */
+    public long exportarEntradasUsuario(String email, Writer destino) {
+        Usuario usuario = ticketek.getUsuario(email);
+        if (usuario == null) {
+            throw new IllegalArgumentException("El usuario no existe");
+        }
+        return exportar(destino, COLUMNAS_ENTRADAS, tabla -> escribirEntradas(tabla, usuario.listarEntradas()));
+    }
+
+    /**
+     * Exporta las entradas de un usuario a un canal, en UTF-8.
+     *
+     * @param email   Email del usuario
+     * @param destino Canal de destino
+     * @return Cantidad de entradas exportadas
+     * @throws IllegalArgumentException si el usuario no existe
+     * @throws RuntimeException         si la escritura falla
+     */
+    public long exportarEntradasUsuario(String email, WritableByteChannel destino) {
+        return exportarEntradasUsuario(email, escritor(destino));
+    }
+
+    /**
+     * Exporta la ocupación de cada sector de cada función: vendidos y capacidad.
+     * Las sedes no numeradas tienen un único sector "Campo".
+     *
+     * @param destino Destino de la exportación
+     * @return Cantidad de filas exportadas
+     * @throws RuntimeException si la escritura falla
+     */
+    public long exportarOcupacion(Writer destino) {
+        return exportar(destino, COLUMNAS_OCUPACION, tabla -> {
+            long filas = 0;
+            for (Espectaculo espectaculo : ticketek.getEspectaculos().values()) {
+                for (Funcion funcion : espectaculo.getFunciones()) {
+                    Sede sede = funcion.getSede();
+                    int[] vendidos = funcion.getVendidosPorSector();
+                    String[] sectores = sede.esNumerada() ? sede.getSectores() : new String[] { "Campo" };
+                    int[] capacidades = sede.esNumerada()
+                            ? ((SedeNumerada) sede).getCapacidad()
+                            : new int[] { funcion.getCapacidadTotal() };
+                    for (int s = 0; s < sectores.length; s++) {
+                        tabla.texto(espectaculo.getNombre()).fecha(funcion.getFecha()).texto(sede.getNombre())
+                                .texto(sectores[s]).numero(vendidos[s]).numero(capacidades[s]).fin();
+                        filas++;
+                    }
+                }
+            }
+            return filas;
+        });
+    }
+
+    /**
+     * Exporta la ocupación por sector de cada función a un canal, en UTF-8.
+     *
+     * @param destino Canal de destino
+     * @return Cantidad de filas exportadas
+     * @throws RuntimeException si la escritura falla
+     */
+    public long exportarOcupacion(WritableByteChannel destino) {
+        return exportarOcupacion(escritor(destino));
+    }
+
+    /**
+     * Exporta la recaudación de cada espectáculo en cada una de sus sedes.
+     *
+     * @param destino Destino de la exportación
+     * @return Cantidad de filas exportadas
+     * @throws RuntimeException si la escritura falla
+     */
+    public long exportarRecaudacion(Writer destino) {
+        return exportar(destino, COLUMNAS_RECAUDACION, tabla -> {
+            long filas = 0;
+            for (Espectaculo espectaculo : ticketek.getEspectaculos().values()) {
+                Set<String> vistas = new HashSet<>();
+                for (Funcion funcion : espectaculo.getFunciones()) {
+                    String nombreSede = funcion.getSede().getNombre();
+                    if (vistas.add(nombreSede)) {
+                        tabla.texto(espectaculo.getNombre()).texto(nombreSede)
+                                .importe(espectaculo.getCentavosPorSede(nombreSede)).fin();
+                        filas++;
+                    }
+                }
+            }
+            return filas;
+        });
+    }
+
+    /**
+     * Exporta la recaudación por espectáculo y sede a un canal, en UTF-8.
+     *
+     * @param destino Canal de destino
+     * @return Cantidad de filas exportadas
+     * @throws RuntimeException si la escritura falla
+     */
+    public long exportarRecaudacion(WritableByteChannel destino) {
+        return exportarRecaudacion(escritor(destino));
+    }
+
+    /**
+     * @return Formato de salida del exportador
+     */
+    public Formato getFormato() {
+        return formato;
+    }
+
+    /**
+     * Escribe las entradas vigentes de todas las funciones de un espectáculo.
+     *
+     * @param tabla       Tabla de salida
+     * @param espectaculo Espectáculo a exportar
+     * @return Cantidad de entradas escritas
+     * @throws IOException si la escritura falla
+     */
+    private static long escribirEntradas(Tabla tabla, Espectaculo espectaculo) throws IOException {
+        long filas = 0;
+        for (Funcion funcion : espectaculo.getFunciones()) {
+            filas += escribirEntradas(tabla, funcion.getEntradas());
+        }
+        return filas;
+    }
+
+    /**
+     * Escribe una fila por entrada.
+     *
+     * @param tabla    Tabla de salida
+     * @param entradas Entradas a exportar
+     * @return Cantidad de entradas escritas
+     * @throws IOException si la escritura falla
+     */
+    private static long escribirEntradas(Tabla tabla, Collection<Entrada> entradas) throws IOException {
+        long filas = 0;
+        for (Entrada entrada : entradas) {
+            tabla.texto(entrada.devolverCodigo()).texto(entrada.getNombreEspectaculo()).fecha(entrada.getFecha())
+                    .texto(entrada.devolverSede()).texto(entrada.devolverSector());
+            if (entrada.devolverAsiento() < 0) {
+                tabla.nulo().nulo();
+            } else {
+                tabla.numero(entrada.devolverFila()).numero(entrada.devolverAsiento());
+            }
+            tabla.importe(Espectaculo.aCentavos(entrada.precio())).texto(entrada.getEmailUsuario()).fin();
+            filas++;
+        }
+        return filas;
+    }
+
+    /**
+     * Abre una tabla sobre el destino, escribe sus filas y vacía el buffer.
+     *
+     * @param destino  Destino de la exportación
+     * @param columnas Nombres de las columnas
+     * @param filas    Escritura de las filas
+     * @return Cantidad de filas escritas
+     * @throws RuntimeException si la escritura falla
+     */
+    private long exportar(Writer destino, String[] columnas, Filas filas) {
+        if (destino == null) {
+            throw new IllegalArgumentException("El destino no puede ser nulo");
+        }
+        Writer salida = destino instanceof BufferedWriter ? destino : new BufferedWriter(destino, TAMANIO_BUFFER);
+        try {
+            long cantidad = filas.escribir(new Tabla(salida, columnas));
+            salida.flush();
+            return cantidad;
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo exportar: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param canal Canal de destino
+     * @return Escritor UTF-8 con buffer sobre el canal, que no se cierra al terminar la exportación
+     */
+    private static Writer escritor(WritableByteChannel canal) {
+        if (canal == null) {
+            throw new IllegalArgumentException("El destino no puede ser nulo");
+        }
+        return new BufferedWriter(Channels.newWriter(canal, StandardCharsets.UTF_8.newEncoder(), TAMANIO_BUFFER),
+                TAMANIO_BUFFER);
+    }
+
+    /**
+     * Escritura de las filas de una exportación.
+     */
+    @FunctionalInterface
+    private interface Filas {
+        long escribir(Tabla tabla) throws IOException;
+    }
+
+    /**
+     * Escribe filas campo por campo en el formato del exportador, sin armar textos intermedios.
+     */
+    private final class Tabla {
+        private final Writer salida;
+        private final String[] columnas;
+        private int columna;
+
+        private Tabla(Writer salida, String[] columnas) throws IOException {
+            this.salida = salida;
+            this.columnas = columnas;
+            if (formato == Formato.CSV) {
+                for (int c = 0; c < columnas.length; c++) {
+                    if (c > 0) {
+                        salida.write(',');
+                    }
+                    salida.write(columnas[c]);
+                }
+                salida.write('\n');
+            }
+        }
+
+        private Tabla texto(String valor) throws IOException {
+            separar();
+            if (formato == Formato.CSV) {
+                escribirCsv(valor);
+            } else {
+                escribirJson(valor);
+            }
+            return this;
+        }
+
+        private Tabla numero(long valor) throws IOException {
+            separar();
+            salida.write(Long.toString(valor));
+            return this;
+        }
+
+        /**
+         * Escribe un importe en pesos con dos decimales fijos ("10000000.50"), a partir de
+         * centavos exactos: nunca usa notación científica ni pierde centavos.
+         */
+        private Tabla importe(long centavos) throws IOException {
+            separar();
+            if (centavos < 0) {
+                salida.write('-');
+            }
+            long absoluto = Math.abs(centavos);
+            salida.write(Long.toString(absoluto / 100));
+            salida.write('.');
+            dosDigitos((int) (absoluto % 100));
+            return this;
+        }
+
+        private Tabla fecha(Fecha fecha) throws IOException {
+            separar();
+            if (formato == Formato.NDJSON) {
+                salida.write('"');
+            }
+            dosDigitos(fecha.getDia());
+            salida.write('/');
+            dosDigitos(fecha.getMes());
+            salida.write('/');
+            dosDigitos(fecha.getAnio() % 100);
+            if (formato == Formato.NDJSON) {
+                salida.write('"');
+            }
+            return this;
+        }
+
+        private Tabla nulo() throws IOException {
+            separar();
+            if (formato == Formato.NDJSON) {
+                salida.write("null");
+            }
+            return this;
+        }
+
+        private void fin() throws IOException {
+            if (formato == Formato.NDJSON) {
+                salida.write('}');
+            }
+            salida.write('\n');
+            columna = 0;
+        }
+
+        private void separar() throws IOException {
+            if (columna > 0) {
+                salida.write(',');
+            } else if (formato == Formato.NDJSON) {
+                salida.write('{');
+            }
+            if (formato == Formato.NDJSON) {
+                salida.write('"');
+                salida.write(columnas[columna]);
+                salida.write("\":");
+            }
+            columna++;
+        }
+
+        private void dosDigitos(int valor) throws IOException {
+            salida.write('0' + valor / 10);
+            salida.write('0' + valor % 10);
+        }
+
+        private void escribirCsv(String valor) throws IOException {
+            boolean comillas = false;
+            for (int i = 0; i < valor.length() && !comillas; i++) {
+                char c = valor.charAt(i);
+                comillas = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!comillas) {
+                salida.write(valor);
+                return;
+            }
+            salida.write('"');
+            for (int i = 0; i < valor.length(); i++) {
+                char c = valor.charAt(i);
+                if (c == '"') {
+                    salida.write('"');
+                }
+                salida.write(c);
+            }
+            salida.write('"');
+        }
+
+        private void escribirJson(String valor) throws IOException {
+            salida.write('"');
+            for (int i = 0; i < valor.length(); i++) {
+                char c = valor.charAt(i);
+                if (c == '"' || c == '\\') {
+                    salida.write('\\');
+                    salida.write(c);
+                } else if (c < 0x20) {
+                    salida.write("\\u00");
+                    salida.write(Character.forDigit(c >> 4, 16));
+                    salida.write(Character.forDigit(c & 0xF, 16));
+                } else {
+                    salida.write(c);
+                }
+            }
+            salida.write('"');
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package ar.edu.ungs.prog2.ticketek;
 
 import java.time.DateTimeException;
-import java.time.LocalDate;
 
 /**
  * Clase que representa una fecha simple con día, mes y año.
+ * Internamente guarda un único entero: la cantidad de días desde el 01/01/1970 (día época).
+ * Día, mes y año se obtienen del día época con aritmética entera, sin crear objetos.
  *
  * IREP (Invariante de Representación):
+ * - diaEpoca es el día época de la fecha (dia, mes, anio) que representa
  * - dia >= 1 && dia <= 31
  * - mes >= 1 && mes <= 12
  * - anio >= 1900 && anio <= 3000
@@ -18,11 +20,16 @@ import java.time.LocalDate;
  * - toString() devuelve formato "dd/mm/aa" donde aa son los últimos 2 dígitos del año
  * - enNumero() devuelve formato "ddmmaaaa" con año completo
  * - desdeString(String) valida que la fecha sea del calendario gregoriano antes de crear el objeto
+ * - equals/hashCode/compareTo se basan en diaEpoca; el orden es cronológico
+ * - CACHE.length == TAMANIO_CACHE (potencia de 2); CACHE[i] es null o una entrada cuyo texto
+ *   cumple ranura(texto) == i, asociada a la fecha que desdeString devuelve para ese texto
+ *   (las fechas y las entradas son inmutables, por lo que pueden compartirse entre hilos)
  */
-public class Fecha {
-    private int dia;
-    private int mes;
-    private int anio;
+public class Fecha implements Comparable<Fecha> {
+    private static final int TAMANIO_CACHE = 4096;
+    private static final EntradaCache[] CACHE = new EntradaCache[TAMANIO_CACHE];
+
+    private final int diaEpoca;
 
     /**
      * Constructor que crea una fecha con día, mes y año.
@@ -32,20 +39,111 @@ public class Fecha {
      * @param anio Año de la fecha
      */
     public Fecha(int dia, int mes, int anio) {
-        this.dia = dia;
-        this.mes = mes;
-        this.anio = anio;
+        this.diaEpoca = aDiaEpoca(dia, mes, anio);
+    }
+
+    /**
+     * Constructor que crea una fecha a partir de su día época.
+     * 
+     * @param diaEpoca Días transcurridos desde el 01/01/1970
+     */
+    private Fecha(int diaEpoca) {
+        this.diaEpoca = diaEpoca;
     }
 
     /**
-     * Indica si la fecha es futura con respecto a la fecha actual del sistema.
+     * Crea una fecha a partir de la cantidad de días transcurridos desde el 01/01/1970.
+     * 
+     * @param diaEpoca Días transcurridos desde el 01/01/1970
+     * @return Fecha correspondiente
+     */
+    public static Fecha desdeDiaEpoca(int diaEpoca) {
+        return new Fecha(diaEpoca);
+    }
+
+    /**
+     * Indica si la fecha es futura con respecto al día actual del {@link Reloj}.
      * 
      * @return true si la fecha es posterior a hoy, false en caso contrario
      */
     public boolean esFutura() {
-        LocalDate hoy = LocalDate.now();
-        LocalDate estaFecha = LocalDate.of(anio, mes, dia);
-        return estaFecha.isAfter(hoy);
+        return diaEpoca > Reloj.hoy();
+    }
+
+    /**
+     * Devuelve la fecha del día siguiente.
+     *
+     * @return Nueva fecha correspondiente al día siguiente
+     */
+    public Fecha siguiente() {
+        return new Fecha(diaEpoca + 1);
+    }
+
+    /**
+     * @return Días transcurridos desde el 01/01/1970
+     */
+    public int getDiaEpoca() {
+        return diaEpoca;
+    }
+
+    /**
+     * @return Día del mes (1 a 31)
+     */
+    public int getDia() {
+        int doa = diaDelAnioMarzo();
+        int mp = (5 * doa + 2) / 153;
+        return doa - (153 * mp + 2) / 5 + 1;
+    }
+
+    /**
+     * @return Mes (1 a 12)
+     */
+    public int getMes() {
+        int mp = (5 * diaDelAnioMarzo() + 2) / 153;
+        return mp < 10 ? mp + 3 : mp - 9;
+    }
+
+    /**
+     * @return Año con cuatro dígitos
+     */
+    public int getAnio() {
+        int z = diaEpoca + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        return yoe + era * 400 + (getMes() <= 2 ? 1 : 0);
+    }
+
+    /**
+     * Compara cronológicamente esta fecha con otra.
+     *
+     * @param otra Fecha a comparar
+     * @return negativo si esta fecha es anterior, 0 si son iguales, positivo si es posterior
+     */
+    @Override
+    public int compareTo(Fecha otra) {
+        return Integer.compare(diaEpoca, otra.diaEpoca);
+    }
+
+    /**
+     * Dos fechas son iguales si representan el mismo día.
+     *
+     * @param obj Objeto a comparar
+     * @return true si obj es una Fecha con el mismo día, mes y año
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Fecha)) return false;
+        return diaEpoca == ((Fecha) obj).diaEpoca;
+    }
+
+    /**
+     * @return Código hash consistente con equals
+     */
+    @Override
+    public int hashCode() {
+        return diaEpoca;
     }
 
     /**
@@ -54,7 +152,7 @@ public class Fecha {
      * @return String con la fecha en formato numérico
      */
     public String enNumero() {
-        return String.format("%02d%02d%04d", dia, mes, anio);
+        return String.format("%02d%02d%04d", getDia(), getMes(), getAnio());
     }
 
     /**
@@ -65,13 +163,47 @@ public class Fecha {
      */
     @Override
     public String toString() {
-        int anioCorto = anio % 100;
-        return String.format("%02d/%02d/%02d", dia, mes, anioCorto);
+        int anioCorto = getAnio() % 100;
+        return String.format("%02d/%02d/%02d", getDia(), getMes(), anioCorto);
+    }
+
+    /**
+     * Convierte una fecha del calendario gregoriano a días desde el 01/01/1970.
+     * Cuenta los años a partir de marzo para que el día bisiesto quede al final del año.
+     * 
+     * @param dia  Día de la fecha
+     * @param mes  Mes de la fecha
+     * @param anio Año de la fecha
+     * @return Día época correspondiente
+     */
+    private static int aDiaEpoca(int dia, int mes, int anio) {
+        int y = mes <= 2 ? anio - 1 : anio;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int mp = (mes + 9) % 12;
+        int doy = (153 * mp + 2) / 5 + dia - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * @return Día dentro del año contado desde el 1 de marzo (0 a 365)
+     */
+    private int diaDelAnioMarzo() {
+        int z = diaEpoca + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        return doe - (365 * yoe + yoe / 4 - yoe / 100);
     }
 
     /**
      * Método estático que crea un objeto Fecha a partir de un String en formato "dd/mm/aa".
      * Convierte el año de dos dígitos a cuatro dígitos (asumiendo siglo 2000).
+     * Día, mes y año pueden tener uno o dos dígitos. Los textos ya convertidos se guardan en una
+     * caché acotada de correspondencia directa: cada texto tiene una única ranura, elegida por su
+     * hash, y un texto nuevo solo reemplaza al que ocupaba su ranura. Así la caché nunca se vacía
+     * de golpe y las lecturas no toman cerrojos.
      * 
      * @param fechaStr Fecha en formato "dd/mm/aa"
      * @return Objeto Fecha correspondiente
@@ -79,15 +211,115 @@ public class Fecha {
      * @throws NumberFormatException si el formato es incorrecto
      */
     public static Fecha desdeString(String fechaStr) {
-        try {
-            String[] partes = fechaStr.split("/");
-            int dia = Integer.parseInt(partes[0]);
-            int mes = Integer.parseInt(partes[1]);
-            int anio = Integer.parseInt("20" + partes[2]);
-            LocalDate.of(anio, mes, dia);
-            return new Fecha(dia, mes, anio);
-        } catch (DateTimeException | NumberFormatException e) {
-            throw e; 
+        int ranura = ranura(fechaStr);
+        EntradaCache entrada = CACHE[ranura];
+        if (entrada != null && entrada.texto.equals(fechaStr)) {
+            return entrada.fecha;
+        }
+        Fecha fecha = analizar(fechaStr);
+        CACHE[ranura] = new EntradaCache(fechaStr, fecha);
+        return fecha;
+    }
+
+    /**
+     * @param fechaStr Texto de una fecha
+     * @return Ranura de la caché que le corresponde al texto
+     */
+    private static int ranura(String fechaStr) {
+        int h = fechaStr.hashCode();
+        return (h ^ (h >>> 16)) & (TAMANIO_CACHE - 1);
+    }
+
+    /**
+     * Analiza un texto "dd/mm/aa" carácter por carácter, sin crear arreglos ni cadenas intermedias.
+     * Cada campo tiene uno o dos dígitos; un año de un dígito se toma como 200a (por ejemplo,
+     * "1/2/5" es el 01/02/2005).
+     * 
+     * @param fechaStr Fecha en formato "dd/mm/aa"
+     * @return Objeto Fecha correspondiente
+     * @throws DateTimeException si la fecha no es válida
+     * @throws NumberFormatException si el formato es incorrecto
+     */
+    private static Fecha analizar(String fechaStr) {
+        int largo = fechaStr.length();
+        int pos = 0;
+        int dia = 0;
+        int mes = 0;
+        int anioCorto = 0;
+        int digitos = 0;
+        int campo = 0;
+
+        for (; pos < largo; pos++) {
+            char c = fechaStr.charAt(pos);
+            if (c == '/') {
+                if (digitos == 0 || campo == 2) {
+                    throw new NumberFormatException("Formato de fecha inválido: " + fechaStr);
+                }
+                campo++;
+                digitos = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (++digitos > 2) {
+                    throw new NumberFormatException("Formato de fecha inválido: " + fechaStr);
+                }
+                int valor = c - '0';
+                if (campo == 0) {
+                    dia = dia * 10 + valor;
+                } else if (campo == 1) {
+                    mes = mes * 10 + valor;
+                } else {
+                    anioCorto = anioCorto * 10 + valor;
+                }
+            } else {
+                throw new NumberFormatException("Formato de fecha inválido: " + fechaStr);
+            }
+        }
+        if (campo != 2 || digitos == 0) {
+            throw new NumberFormatException("Formato de fecha inválido: " + fechaStr);
+        }
+
+        int anio = 2000 + anioCorto;
+        if (mes < 1 || mes > 12) {
+            throw new DateTimeException("Mes inválido: " + mes);
+        }
+        if (dia < 1 || dia > diasDelMes(mes, anio)) {
+            throw new DateTimeException("Día inválido: " + dia + " para el mes " + mes);
+        }
+        return new Fecha(dia, mes, anio);
+    }
+
+    /**
+     * Texto ya analizado junto con su fecha. Los campos son final, por lo que una entrada leída
+     * de la caché por otro hilo siempre se ve completa.
+     */
+    private static final class EntradaCache {
+        private final String texto;
+        private final Fecha fecha;
+
+        private EntradaCache(String texto, Fecha fecha) {
+            this.texto = texto;
+            this.fecha = fecha;
+        }
+    }
+
+    /**
+     * Devuelve la cantidad de días de un mes del calendario gregoriano.
+     * 
+     * @param mes  Mes (1 a 12)
+     * @param anio Año con cuatro dígitos
+     * @return Cantidad de días del mes
+     */
+    private static int diasDelMes(int mes, int anio) {
+        switch (mes) {
+            case 2:
+                boolean bisiesto = (anio % 4 == 0 && anio % 100 != 0) || anio % 400 == 0;
+                return bisiesto ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
         }
     }
 }
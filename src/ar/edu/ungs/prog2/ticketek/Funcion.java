@@ -1,6 +1,7 @@
 package ar.edu.ungs.prog2.ticketek;
-import java.util.Iterator;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Clase que representa una función de un espectáculo en una sede y fecha específicas.
@@ -11,26 +12,42 @@ import java.util.*;
  * - fecha != null
  * - precioBase >= 0.0
  * - Si sede.esNumerada() == true entonces:
- *   - disponiblesNumerados != null
+ *   - inventario != null
  *   - disponiblesSinNumerar == null
- *   - Para todo sector en disponiblesNumerados.keySet(): sector != null
- *   - Para todo mapa de asientos en disponiblesNumerados.values(): mapa != null
- *   - Para todo número de asiento en cada mapa: número > 0
+ *   - inventario.cantidadSectores() == sede.getSectores().length
+ *   - Para todo ordinal s: inventario.getCapacidad(s) == sede.getCapacidad()[s]
  * - Si sede.esNumerada() == false entonces:
- *   - disponiblesNumerados == null
- *   - disponiblesSinNumerar != null && disponiblesSinNumerar >= 0
+ *   - inventario == null
+ *   - disponiblesSinNumerar != null
+ *   - 0 <= disponiblesSinNumerar.get() <= sede.getDisponiblesInicialesSinNumerar()
+ *   - disponiblesSinNumerar solo se modifica mediante compareAndSet, sin salir de esos límites
  * - esNumerada() == sede.esNumerada() (consistencia)
- * - Los sectores en disponiblesNumerados deben corresponder a sectores válidos de la sede
+ * - Los sectores del inventario se indexan por su ordinal en sede.getSectores()
  * - Las cantidades disponibles no pueden exceder las capacidades de la sede
  * - venderAsiento() y sumarAsiento() solo funcionan según el tipo de sede (numerada/no numerada)
  * - devolverPrecio(sector) == sede.calcularPrecioEntrada(precioBase, sector)
+ * - entradas != null, contiene las entradas vigentes (no anuladas) emitidas para esta función,
+ *   sin repetidas (las entradas son iguales si tienen el mismo código)
+ * - contextoEntradas es null hasta la primera emisión; luego es el contexto compartido por
+ *   las entradas emitidas para esta función
+ * - Si resumen != null la función está archivada: inventario == null, entradas es inmutable
+ *   y resumen refleja los vendidos, la recaudación y las entradas al momento de archivar
+ * - serie != null, registra las ventas y anulaciones hechas por los compradores en esta función
+ * - resumen se asigna antes de liberar el inventario, por lo que inventario == null implica resumen != null
+ *   (salvo en una función numerada descartada sin darse de alta, que ya no se usa)
+ * - versionAlta es la versión del estado de Ticketek en que se registró la función (0 antes de registrarla)
  */
 public class Funcion {
     private Sede sede;
     private Fecha fecha;
     private double precioBase;
-    private Map<String, Map<Integer, Boolean>> disponiblesNumerados;
-    private Integer disponiblesSinNumerar;
+    private volatile InventarioAsientos inventario;
+    private AtomicInteger disponiblesSinNumerar;
+    private volatile Set<Entrada> entradas;
+    private volatile ContextoEntrada contextoEntradas;
+    private final SerieTemporal serie = new SerieTemporal();
+    private volatile ResumenFuncion resumen;
+    private volatile long versionAlta;
 
     /**
      * Constructor que inicializa la función con sede, fecha y precio base.
@@ -47,6 +64,7 @@ public class Funcion {
         this.sede = sede;
         this.fecha = fecha;
         this.precioBase = precioBase;
+        this.entradas = ConcurrentHashMap.newKeySet();
         inicializarDisponibles();
     }
 
@@ -59,19 +77,14 @@ public class Funcion {
      * @throws IllegalArgumentException si el sector o asiento son inválidos
      */
     public boolean verificarDisponibilidad(String sector, int asiento) {
-        Map<Integer, Boolean> asientosDelSector = disponiblesNumerados.get(sector);
+        int indice = indiceSector(sector);
 
-        if (asientosDelSector == null) {
-        	System.out.println("-------------------------------------------------------------------------------------------------");
-            throw new IllegalArgumentException("Sector no válido: " + sector);
-        }
-
-        if (asiento <= 0 || asiento >= Collections.max(asientosDelSector.keySet())) {
+        if (!((SedeNumerada) sede).esAsientoValido(indice, asiento)) {
         	System.out.println("-------------------------------------------------------------------------------------------------");
             throw new IllegalArgumentException("Asiento fuera de rango");
         }
 
-        return asientosDelSector.get(asiento);
+        return inventarioVigente().estaDisponible(indice, asiento);
     }
 
     /**
@@ -81,59 +94,223 @@ public class Funcion {
      * @return true si hay suficientes entradas disponibles, false en caso contrario
      */
     public boolean verificarDisponibilidad(int cantidadSolicitada) {
-        Integer cantidadDisponible = disponiblesSinNumerar;
-
-        if (cantidadDisponible == null) return false;
+        if (disponiblesSinNumerar == null || resumen != null) return false;
 
-        return cantidadSolicitada <= cantidadDisponible;
+        return cantidadSolicitada <= disponiblesSinNumerar.get();
     }
 
     /**
      * Devuelve el mapa de asientos disponibles para un sector numerado.
+     * El mapa se construye a demanda a partir del inventario de la función.
      * 
      * @param sector Nombre del sector
      * @return Mapa con asiento -> disponibilidad (true=disponible)
      */
     public Map<Integer, Boolean> getDisponiblesSector(String sector) {
-        return disponiblesNumerados.get(sector);
+        return inventarioVigente().comoMapa(indiceSector(sector));
+    }
+
+    /**
+     * Devuelve la cantidad de asientos vendidos en un sector numerado.
+     * 
+     * @param sector Nombre del sector
+     * @return Cantidad de asientos vendidos
+     */
+    public int getVendidosSector(String sector) {
+        int indice = indiceSector(sector);
+        InventarioAsientos actual = inventario;
+        return actual == null ? resumen.getVendidos(indice) : actual.contarVendidos(indice);
+    }
+
+    /**
+     * Devuelve la cantidad de asientos disponibles en un sector numerado.
+     * 
+     * @param sector Nombre del sector
+     * @return Cantidad de asientos disponibles
+     */
+    public int getDisponiblesEnSector(String sector) {
+        int indice = indiceSector(sector);
+        InventarioAsientos actual = inventario;
+        return actual == null ? resumen.getCapacidad(indice) - resumen.getVendidos(indice) : actual.contarDisponibles(indice);
+    }
+
+    /**
+     * Devuelve la cantidad de entradas vendidas de la función en todos sus sectores.
+     * Se obtiene de los contadores de la función, sin recorrer los asientos.
+     * 
+     * @return Cantidad de entradas vendidas (incluye las retenidas)
+     */
+    public int getVendidosTotal() {
+        if (esNumerada()) {
+            InventarioAsientos actual = inventario;
+            return actual == null ? resumen.getVendidosTotal() : actual.contarVendidos();
+        }
+        return sede.getCapacidadMaxima() - disponiblesSinNumerar.get();
+    }
+
+    /**
+     * @return Capacidad total de la función
+     */
+    public int getCapacidadTotal() {
+        return sede.getCapacidadMaxima();
+    }
+
+    /**
+     * Devuelve la ocupación de la función, pensada para monitoreo.
+     * 
+     * @return Fracción de la capacidad vendida, entre 0.0 y 1.0
+     */
+    public double getOcupacion() {
+        return (double) getVendidosTotal() / getCapacidadTotal();
+    }
+
+    /**
+     * Devuelve la cantidad de vendidos de cada sector, en el orden de getSede().getSectores().
+     * Para sedes no numeradas devuelve un único valor correspondiente al campo.
+     * 
+     * @return Arreglo con los vendidos por sector
+     */
+    public int[] getVendidosPorSector() {
+        if (!esNumerada()) {
+            return new int[] { getVendidosTotal() };
+        }
+        InventarioAsientos actual = inventario;
+        if (actual == null) {
+            return resumen.getVendidosPorSector();
+        }
+        int[] resultado = new int[actual.cantidadSectores()];
+        for (int s = 0; s < resultado.length; s++) {
+            resultado[s] = actual.contarVendidos(s);
+        }
+        return resultado;
+    }
+
+    /**
+     * Devuelve el mapa de ocupación por fila y sector de una función numerada, calculado a partir
+     * del inventario. Pensado para tableros que lo consultan seguido: si se pasa el mapa de la
+     * consulta anterior se completa ese mismo mapa y solo se recalculan las filas que cambiaron.
+     * 
+     * Si la función fue archivada, el mapa se copia del que guarda su {@link ResumenFuncion}.
+     * 
+     * @param reutilizable Mapa a reutilizar, o null
+     * @return Mapa de ocupación de la función
+     * @throws UnsupportedOperationException si la sede no es numerada
+     */
+    public MapaOcupacion getMapaOcupacion(MapaOcupacion reutilizable) {
+        if (!esNumerada()) {
+            throw new UnsupportedOperationException("Este método es solo para sedes numeradas.");
+        }
+        InventarioAsientos actual = inventario;
+        return actual == null ? resumen.getMapaOcupacion(reutilizable) : actual.mapaOcupacion(reutilizable);
+    }
+
+    /**
+     * Archiva la función: guarda un resumen inmutable de vendidos, recaudación y entradas,
+     * libera el inventario de asientos y compacta el índice de entradas.
+     * Debe usarse solo con funciones pasadas, que ya no admiten ventas ni anulaciones.
+     * 
+     * @return true si la función se archivó en esta llamada, false si ya estaba archivada
+     */
+    public synchronized boolean archivar() {
+        if (resumen != null) {
+            return false;
+        }
+        long centavos = 0;
+        for (Entrada entrada : entradas) {
+            centavos += Espectaculo.aCentavos(entrada.precio());
+        }
+        double recaudacion = centavos / 100.0;
+        String[] sectores = esNumerada() ? sede.getSectores() : new String[] { "Campo" };
+        int[] capacidades = esNumerada()
+                ? ((SedeNumerada) sede).getCapacidad()
+                : new int[] { sede.getCapacidadMaxima() };
+
+        MapaOcupacion mapa = esNumerada() ? inventario.mapaOcupacion(null) : null;
+        resumen = new ResumenFuncion(sectores, getVendidosPorSector(), capacidades, recaudacion, entradas.size(), mapa);
+        entradas = Set.copyOf(entradas);
+        liberarAsientos();
+        return true;
+    }
+
+    /**
+     * Suelta el inventario de asientos: si estaba mapeado desde un archivo, el archivo se cierra
+     * y se borra. Se usa al archivar la función o al descartar una función que no llegó a darse de alta.
+     */
+    synchronized void liberarAsientos() {
+        InventarioAsientos anterior = inventario;
+        inventario = null;
+        if (anterior != null) {
+            anterior.liberar();
+        }
+    }
+
+    /**
+     * @return true si la función fue archivada
+     */
+    public boolean estaArchivada() {
+        return resumen != null;
+    }
+
+    /**
+     * @return Resumen de la función archivada, o null si no fue archivada
+     */
+    public ResumenFuncion getResumen() {
+        return resumen;
+    }
+
+    /**
+     * Indica si el sector pertenece a la sede numerada de la función.
+     * 
+     * @param sector Nombre del sector
+     * @return true si la sede es numerada y tiene ese sector
+     */
+    public boolean tieneSector(String sector) {
+        return esNumerada() && ((SedeNumerada) sede).getIndiceSector(sector) >= 0;
     }
 
     /**
      * Inicializa las disponibilidades de asientos según el tipo de sede.
-     * Para sedes numeradas, copia los asientos numerados; para no numeradas,
-     * inicializa la cantidad disponible.
+     * Para sedes numeradas, crea un inventario que comparte la plantilla de la sede (o que se mapea
+     * desde el archivo de asientos de la sede, si lo tiene); para no numeradas, inicializa la cantidad disponible.
      */
     private void inicializarDisponibles() {
         if (esNumerada()) {
-            this.disponiblesNumerados = new HashMap<>();
-            Map<String, Map<Integer, Boolean>> originales = sede.getDisponiblesInicialesNumerados();
-
-            Iterator<Map.Entry<String, Map<Integer, Boolean>>> iteratorSectores = 
-                originales.entrySet().iterator();
-            
-            while (iteratorSectores.hasNext()) {
-                Map.Entry<String, Map<Integer, Boolean>> entrySector = iteratorSectores.next();
-                String sector = entrySector.getKey();
-                Map<Integer, Boolean> butacasOriginales = entrySector.getValue();
-
-                Map<Integer, Boolean> copiaButacas = new HashMap<>();
-                
-                Iterator<Map.Entry<Integer, Boolean>> iteratorAsientos = 
-                    butacasOriginales.entrySet().iterator();
-                
-                while (iteratorAsientos.hasNext()) {
-                    Map.Entry<Integer, Boolean> entryAsiento = iteratorAsientos.next();
-                    copiaButacas.put(entryAsiento.getKey(), entryAsiento.getValue());
-                }
-
-                disponiblesNumerados.put(sector, copiaButacas);
-            }
-            
+            this.inventario = ((SedeNumerada) sede).crearInventario(fecha);
             this.disponiblesSinNumerar = null;
         } else {
-            this.disponiblesSinNumerar = sede.getDisponiblesInicialesSinNumerar();
-            this.disponiblesNumerados = null;
+            this.disponiblesSinNumerar = new AtomicInteger(sede.getDisponiblesInicialesSinNumerar());
+            this.inventario = null;
+        }
+    }
+
+    /**
+     * Devuelve el inventario de asientos de una función que no fue archivada.
+     * 
+     * @return Inventario de asientos
+     * @throws IllegalStateException si la función ya fue archivada
+     */
+    private InventarioAsientos inventarioVigente() {
+        InventarioAsientos actual = inventario;
+        if (actual == null) {
+            throw new IllegalStateException("La función del " + fecha + " ya fue archivada");
+        }
+        return actual;
+    }
+
+    /**
+     * Devuelve el ordinal de un sector de la sede numerada.
+     * 
+     * @param sector Nombre del sector
+     * @return Ordinal del sector
+     * @throws IllegalArgumentException si el sector no existe en la sede
+     */
+    private int indiceSector(String sector) {
+        int indice = ((SedeNumerada) sede).getIndiceSector(sector);
+        if (indice < 0) {
+        	System.out.println("-------------------------------------------------------------------------------------------------");
+            throw new IllegalArgumentException("Sector no válido: " + sector);
         }
+        return indice;
     }
 
 
@@ -152,7 +329,7 @@ public class Funcion {
      * @return Cantidad disponible o null si es numerada
      */
     public Integer getDisponiblesSinNumerar() {
-        return disponiblesSinNumerar;
+        return disponiblesSinNumerar == null ? null : disponiblesSinNumerar.get();
     }
 
     /**
@@ -165,6 +342,16 @@ public class Funcion {
         return sede.calcularPrecioEntrada(precioBase, sector);
     }
 
+    /**
+     * Calcula el precio de la entrada para un sector numerado dado por su ordinal.
+     * 
+     * @param ordinalSector Ordinal del sector en la sede
+     * @return Precio calculado
+     */
+    public double devolverPrecio(int ordinalSector) {
+        return ((SedeNumerada) sede).calcularPrecioEntrada(precioBase, ordinalSector);
+    }
+
     /**
      * @return La sede donde se realiza la función
      */
@@ -189,10 +376,94 @@ public class Funcion {
     }
 
     /**
-     * @return Mapa con la disponibilidad de asientos numerados
+     * @return Inventario de asientos numerados, o null si la sede no es numerada o la función fue archivada
+     */
+    public InventarioAsientos getInventario() {
+        return inventario;
+    }
+
+    /**
+     * Registra una entrada emitida para esta función.
+     * 
+     * @param entrada Entrada emitida
+     * @throws IllegalStateException si la función ya fue archivada
+     */
+    public void registrarEntrada(Entrada entrada) {
+        chequearVigente();
+        entradas.add(entrada);
+    }
+
+    /**
+     * Registra de una vez las entradas emitidas al restaurar la función.
+     * 
+     * @param emitidas Entradas emitidas
+     * @throws IllegalStateException si la función ya fue archivada
+     */
+    void registrarEntradas(Collection<Entrada> emitidas) {
+        chequearVigente();
+        entradas.addAll(emitidas);
+    }
+
+    /**
+     * Quita una entrada anulada del índice de la función.
+     * 
+     * @param entrada Entrada anulada
+     * @throws IllegalStateException si la función ya fue archivada
+     */
+    public void quitarEntrada(Entrada entrada) {
+        chequearVigente();
+        entradas.remove(entrada);
+    }
+
+    /**
+     * @throws IllegalStateException si la función ya fue archivada (su índice de entradas es inmutable)
+     */
+    private void chequearVigente() {
+        if (resumen != null) {
+            throw new IllegalStateException("La función del " + fecha + " ya fue archivada");
+        }
+    }
+
+    /**
+     * @return Vista no modificable de las entradas vigentes de la función
+     */
+    public Collection<Entrada> getEntradas() {
+        return Collections.unmodifiableCollection(entradas);
+    }
+
+    /**
+     * Devuelve el contexto que comparten las entradas de esta función. Se crea en la primera
+     * emisión, porque la función no conoce el nombre de su espectáculo.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo de la función
+     * @return Contexto de las entradas de la función
      */
-    public Map<String, Map<Integer, Boolean>> getDisponiblesNumerados() {
-        return disponiblesNumerados;
+    ContextoEntrada contextoEntradas(String nombreEspectaculo) {
+        ContextoEntrada contexto = contextoEntradas;
+        if (contexto == null) {
+            synchronized (this) {
+                contexto = contextoEntradas;
+                if (contexto == null) {
+                    contexto = ContextoEntrada.de(nombreEspectaculo, this);
+                    contextoEntradas = contexto;
+                }
+            }
+        }
+        return contexto;
+    }
+
+    /**
+     * @return Serie temporal de las ventas y anulaciones de la función
+     */
+    public SerieTemporal getSerie() {
+        return serie;
+    }
+
+    /**
+     * @return Cantidad de entradas vigentes de la función
+     */
+    public int cantidadEntradas() {
+        return entradas.size();
     }
 
     /**
@@ -207,7 +478,7 @@ public class Funcion {
      * 
      * @param sector Nombre del sector
      * @param asiento Número de asiento
-     * @return true si la venta fue exitosa
+     * @return true si la venta fue exitosa, false si el asiento ya estaba vendido
      * @throws UnsupportedOperationException si la sede no es numerada
      */
     public boolean venderAsiento(String sector, int asiento) {
@@ -215,8 +486,62 @@ public class Funcion {
             throw new UnsupportedOperationException("Este método es solo para sedes numeradas.");
         }
 
-        disponiblesNumerados.get(sector).put(asiento, false);
-        return true;
+        return inventarioVigente().vender(indiceSector(sector), asiento);
+    }
+
+    /**
+     * Vende varios asientos numerados de un sector de forma atómica.
+     * La verificación de disponibilidad y la venta se hacen bajo el cerrojo del sector,
+     * por lo que un asiento nunca se vende dos veces.
+     * 
+     * @param sector   Nombre del sector
+     * @param asientos Números de asiento
+     * @return true si se vendieron todos los asientos, false si alguno ya estaba vendido
+     * @throws UnsupportedOperationException si la sede no es numerada
+     * @throws IllegalArgumentException si el sector o algún asiento son inválidos
+     */
+    public boolean venderAsientos(String sector, int[] asientos) {
+        if (!esNumerada()) {
+            throw new UnsupportedOperationException("Este método es solo para sedes numeradas.");
+        }
+
+        return inventarioVigente().venderTodos(indiceSector(sector), asientos);
+    }
+
+    /**
+     * Marca como vendidos los asientos de un sector al restaurar la función, actualizando
+     * los índices del inventario una sola vez (ver {@link InventarioAsientos#restaurarVendidos}).
+     * 
+     * @param ordinalSector Ordinal del sector
+     * @param asientos      Números de asiento
+     * @return true si se vendieron todos los asientos, false si alguno ya estaba vendido
+     * @throws UnsupportedOperationException si la sede no es numerada
+     * @throws IllegalStateException si la función ya fue archivada
+     */
+    boolean restaurarAsientos(int ordinalSector, int[] asientos) {
+        if (!esNumerada()) {
+            throw new UnsupportedOperationException("Este método es solo para sedes numeradas.");
+        }
+
+        return inventarioVigente().restaurarVendidos(ordinalSector, asientos);
+    }
+
+    /**
+     * Vende los mejores asientos juntos disponibles en un sector: una racha contigua en una
+     * sola fila lo más adelante posible o, si no la hay, rachas de filas consecutivas.
+     * 
+     * @param sector   Nombre del sector
+     * @param cantidad Cantidad de asientos pedidos
+     * @return Números de asiento vendidos, o null si no hay una ubicación posible
+     * @throws UnsupportedOperationException si la sede no es numerada
+     * @throws IllegalArgumentException si el sector es inválido o la cantidad no es positiva
+     */
+    public int[] venderMejoresAsientos(String sector, int cantidad) {
+        if (!esNumerada()) {
+            throw new UnsupportedOperationException("Este método es solo para sedes numeradas.");
+        }
+
+        return inventarioVigente().venderMejoresAsientos(indiceSector(sector), cantidad);
     }
 
     /**
@@ -231,41 +556,66 @@ public class Funcion {
             throw new UnsupportedOperationException("Este método es solo para sedes numeradas.");
         }
 
-        disponiblesNumerados.get(sector).put(asiento, true);
+        inventarioVigente().liberar(indiceSector(sector), asiento);
     }
 
     /**
      * Vende una cantidad de entradas en sedes sin numerar.
+     * La reserva del cupo es atómica y sin bloqueo (compareAndSet): se venden
+     * todas las entradas pedidas o ninguna, sin frenar a otros compradores.
      * 
      * @param cantidad Cantidad de entradas a vender
      * @return true si hay disponibilidad y la venta fue exitosa
+     * @throws IllegalArgumentException si la cantidad no es positiva
      * @throws UnsupportedOperationException si la sede es numerada
+     * @throws IllegalStateException si la función ya fue archivada
      */
     public boolean venderAsiento(int cantidad) {
         if (esNumerada()) {
             throw new UnsupportedOperationException("Este método es solo para sedes sin numeración.");
         }
-
-        Integer disponibles = disponiblesSinNumerar;
-        if (disponibles == null || disponibles < cantidad) {
-            return false;
+        if (resumen != null) {
+            throw new IllegalStateException("La función del " + fecha + " ya fue archivada");
+        }
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad de entradas debe ser positiva");
         }
 
-        disponiblesSinNumerar = disponibles - cantidad;
-        return true;
+        while (true) {
+            int disponibles = disponiblesSinNumerar.get();
+            if (disponibles < cantidad) {
+                return false;
+            }
+            if (disponiblesSinNumerar.compareAndSet(disponibles, disponibles - cantidad)) {
+                return true;
+            }
+        }
     }
 
     /**
      * Suma entradas disponibles para sedes sin numerar.
+     * Igual que la venta, la devolución es atómica (compareAndSet) y no deja pasar el cupo
+     * por encima de la capacidad: devolver dos veces las mismas entradas es un error.
      * 
      * @param cantidad Cantidad a sumar
+     * @throws IllegalArgumentException si la cantidad no es positiva o se devolverían más
+     *         entradas que las vendidas
      */
     public void sumarAsiento(int cantidad) {
         if (esNumerada()) return;
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad de entradas debe ser positiva");
+        }
 
-        Integer disponibles = disponiblesSinNumerar;
-        if (disponibles != null) {
-            disponiblesSinNumerar = disponibles + cantidad;
+        int capacidad = sede.getDisponiblesInicialesSinNumerar();
+        while (true) {
+            int disponibles = disponiblesSinNumerar.get();
+            if (disponibles > capacidad - cantidad) {
+                throw new IllegalArgumentException("No se pueden devolver más entradas que las vendidas");
+            }
+            if (disponiblesSinNumerar.compareAndSet(disponibles, disponibles + cantidad)) {
+                return;
+            }
         }
     }
 
@@ -278,4 +628,20 @@ public class Funcion {
     public String toString() {
         return "Función en " + sede.getNombre() + " el " + fecha.toString();
     }
+
+    /**
+     * Registra la versión del estado de Ticketek en que se dio de alta la función.
+     *
+     * @param version Versión del estado al dar de alta
+     */
+    void marcarAlta(long version) {
+        this.versionAlta = version;
+    }
+
+    /**
+     * @return Versión del estado de Ticketek en que se dio de alta la función
+     */
+    long getVersionAlta() {
+        return versionAlta;
+    }
 }
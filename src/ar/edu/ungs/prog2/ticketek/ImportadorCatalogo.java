@@ -0,0 +1,623 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Importa en bloque el catálogo de Ticketek (sedes, usuarios, espectáculos y funciones) desde
+ * un archivo CSV o NDJSON, en lugar de registrarlos uno por uno.
+ *
+ * Cada registro tiene un campo "tipo": estadio, teatro, miniestadio, usuario, espectaculo o
+ * funcion. Los demás campos se nombran como los parámetros de los métodos de registro:
+ * nombre, direccion, capacidad, asientosPorFila, puestos, precioConsumicion, sectores,
+ * capacidades, porcentajes, email, apellido, contrasenia, espectaculo, fecha (dd/mm/aa),
+ * sede y precio. En CSV la primera línea es el encabezado con los nombres de las columnas y
+ * los arreglos se separan con ';' dentro de su campo; en NDJSON los arreglos son arreglos JSON.
+ *
+ * La importación se hace en tres pasadas:
+ * 1. Las líneas se interpretan en paralelo.
+ * 2. Los conflictos se validan en una sola pasada, agrupando las claves en mapas hash:
+ *    nombres y emails repetidos dentro del lote o ya registrados, funciones repetidas en
+ *    la misma sede y fecha, y funciones cuyo espectáculo o sede no existe.
+ * 3. Se reserva la capacidad de los mapas de Ticketek y se registran los registros válidos,
+ *    en paralelo dentro de cada tipo y en orden de dependencia entre tipos (sedes, usuarios
+ *    y espectáculos antes que funciones).
+ * Un registro inválido se informa con su número de línea y no frena al resto del lote.
+ *
+ * IREP (Invariante de Representación):
+ * - ticketek != null
+ * - Todo registro del archivo termina importado o informado como rechazado, nunca ambas cosas
+ * - Las altas pasan por los métodos de registro de Ticketek, por lo que se registran en su diario
+ */
+public class ImportadorCatalogo {
+    private static final String TIPO_ESTADIO = "estadio";
+    private static final String TIPO_TEATRO = "teatro";
+    private static final String TIPO_MINIESTADIO = "miniestadio";
+    private static final String TIPO_USUARIO = "usuario";
+    private static final String TIPO_ESPECTACULO = "espectaculo";
+    private static final String TIPO_FUNCION = "funcion";
+
+    private final Ticketek ticketek;
+
+    /**
+     * @param ticketek Sistema donde se importa el catálogo
+     * @throws IllegalArgumentException si ticketek es null
+     */
+    public ImportadorCatalogo(Ticketek ticketek) {
+        if (ticketek == null) {
+            throw new IllegalArgumentException("El sistema no puede ser nulo");
+        }
+        this.ticketek = ticketek;
+    }
+
+    /**
+     * Importa el catálogo de un archivo en UTF-8.
+     *
+     * @param archivo Archivo a importar
+     * @param formato Formato del archivo
+     * @return Resultado de la importación
+     * @throws RuntimeException si el archivo no puede leerse
+     */
+    public Resultado importar(Path archivo, ExportadorEntradas.Formato formato) {
+        List<String> lineas;
+        try {
+            lineas = Files.readAllLines(archivo, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo leer el catálogo: " + archivo, e);
+        }
+        return importar(lineas, formato);
+    }
+
+    /**
+     * Importa el catálogo a partir de sus líneas.
+     *
+     * @param lineas  Líneas del archivo, incluido el encabezado en CSV
+     * @param formato Formato de las líneas
+     * @return Resultado de la importación
+     */
+    public Resultado importar(List<String> lineas, ExportadorEntradas.Formato formato) {
+        Queue<Rechazo> rechazos = new ConcurrentLinkedQueue<>();
+        String[] columnas = null;
+        int primera = 0;
+        if (formato == ExportadorEntradas.Formato.CSV && !lineas.isEmpty()) {
+            columnas = dividirCsv(lineas.get(0)).toArray(new String[0]);
+            primera = 1;
+        }
+
+        String[] encabezado = columnas;
+        List<Registro> registros = IntStream.range(primera, lineas.size()).parallel()
+                .mapToObj(i -> interpretar(i + 1, lineas.get(i), encabezado, rechazos))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        Map<String, List<Registro>> porTipo = validar(registros, rechazos);
+
+        ticketek.reservarCapacidad(porTipo.get(TIPO_ESTADIO).size(), porTipo.get(TIPO_USUARIO).size(),
+                porTipo.get(TIPO_ESPECTACULO).size());
+        AtomicInteger importados = new AtomicInteger();
+        for (String tipo : new String[] { TIPO_ESTADIO, TIPO_USUARIO, TIPO_ESPECTACULO, TIPO_FUNCION }) {
+            porTipo.get(tipo).parallelStream().forEach(registro -> {
+                try {
+                    registro.alta.accept(ticketek);
+                    importados.incrementAndGet();
+                } catch (RuntimeException e) {
+                    rechazos.add(new Rechazo(registro.linea, e.getMessage()));
+                }
+            });
+        }
+
+        List<Rechazo> ordenados = new ArrayList<>(rechazos);
+        ordenados.sort(Comparator.comparingInt(Rechazo::getLinea));
+        return new Resultado(importados.get(), ordenados);
+    }
+
+    /**
+     * Valida en una pasada los conflictos entre registros y con el sistema, y agrupa los
+     * registros válidos por tipo. Las tres clases de sede se agrupan juntas.
+     *
+     * @param registros Registros interpretados
+     * @param rechazos  Cola donde se agregan los registros rechazados
+     * @return Registros válidos, por tipo
+     */
+    private Map<String, List<Registro>> validar(List<Registro> registros, Queue<Rechazo> rechazos) {
+        Map<String, List<Registro>> porTipo = new HashMap<>();
+        for (String tipo : new String[] { TIPO_ESTADIO, TIPO_USUARIO, TIPO_ESPECTACULO, TIPO_FUNCION }) {
+            porTipo.put(tipo, new ArrayList<>());
+        }
+        Map<String, Integer> sedes = new HashMap<>(registros.size() * 2);
+        Map<String, Integer> usuarios = new HashMap<>(registros.size() * 2);
+        Map<String, Integer> espectaculos = new HashMap<>(registros.size() * 2);
+        Map<String, Integer> funcionesPorSede = new HashMap<>(registros.size() * 2);
+        Map<String, Integer> funcionesPorEspectaculo = new HashMap<>(registros.size() * 2);
+
+        List<Registro> ordenados = new ArrayList<>(registros);
+        ordenados.sort(Comparator.comparingInt(r -> r.linea));
+        List<Registro> funciones = new ArrayList<>();
+        for (Registro registro : ordenados) {
+            String conflicto;
+            switch (registro.tipo) {
+                case TIPO_ESTADIO:
+                    conflicto = reclamar(sedes, registro, ticketek.getSede(registro.clave) != null, "La sede");
+                    break;
+                case TIPO_USUARIO:
+                    conflicto = reclamar(usuarios, registro, ticketek.getUsuario(registro.clave) != null, "El usuario");
+                    break;
+                case TIPO_ESPECTACULO:
+                    conflicto = reclamar(espectaculos, registro, ticketek.getEspectaculo(registro.clave) != null,
+                            "El espectáculo");
+                    break;
+                default:
+                    funciones.add(registro);
+                    continue;
+            }
+            if (conflicto == null) {
+                porTipo.get(registro.tipo).add(registro);
+            } else {
+                rechazos.add(new Rechazo(registro.linea, conflicto));
+            }
+        }
+
+        for (Registro funcion : funciones) {
+            String conflicto = null;
+            if (!espectaculos.containsKey(funcion.clave) && ticketek.getEspectaculo(funcion.clave) == null) {
+                conflicto = "Espectáculo no encontrado: " + funcion.clave;
+            } else if (!sedes.containsKey(funcion.sede) && ticketek.getSede(funcion.sede) == null) {
+                conflicto = "Sede no encontrada: " + funcion.sede;
+            } else {
+                Integer otra = funcionesPorSede.putIfAbsent(funcion.sede + '\0' + funcion.dia, funcion.linea);
+                if (otra != null) {
+                    conflicto = "Ya hay una función en la sede " + funcion.sede + " para esa fecha (línea " + otra + ")";
+                } else {
+                    otra = funcionesPorEspectaculo.putIfAbsent(funcion.clave + '\0' + funcion.dia, funcion.linea);
+                    if (otra != null) {
+                        funcionesPorSede.remove(funcion.sede + '\0' + funcion.dia);
+                        conflicto = "El espectáculo " + funcion.clave + " ya tiene una función en esa fecha (línea "
+                                + otra + ")";
+                    }
+                }
+            }
+            if (conflicto == null) {
+                porTipo.get(TIPO_FUNCION).add(funcion);
+            } else {
+                rechazos.add(new Rechazo(funcion.linea, conflicto));
+            }
+        }
+        return porTipo;
+    }
+
+    /**
+     * Reclama una clave para un registro: falla si ya la tomó otro registro del lote o si ya
+     * está registrada en el sistema.
+     *
+     * @param claves     Claves tomadas, con la línea del registro que las tomó
+     * @param registro   Registro que reclama su clave
+     * @param registrada true si la clave ya existe en el sistema
+     * @param que        Descripción del registro para el mensaje
+     * @return Mensaje del conflicto, o null si la clave quedó tomada por el registro
+     */
+    private static String reclamar(Map<String, Integer> claves, Registro registro, boolean registrada, String que) {
+        if (registrada) {
+            return que + " ya está registrado: " + registro.clave;
+        }
+        Integer otra = claves.putIfAbsent(registro.clave, registro.linea);
+        if (otra != null) {
+            return que + " " + registro.clave + " está repetido (línea " + otra + ")";
+        }
+        return null;
+    }
+
+    /**
+     * Interpreta una línea. Las líneas vacías se ignoran; las inválidas se rechazan.
+     *
+     * @param linea    Número de línea, desde 1
+     * @param texto    Contenido de la línea
+     * @param columnas Nombres de las columnas en CSV, o null en NDJSON
+     * @param rechazos Cola donde se agregan los registros rechazados
+     * @return Registro interpretado, o null si la línea está vacía o es inválida
+     */
+    private static Registro interpretar(int linea, String texto, String[] columnas, Queue<Rechazo> rechazos) {
+        if (texto.isBlank()) {
+            return null;
+        }
+        try {
+            return crearRegistro(linea, columnas == null ? leerObjeto(texto) : leerFila(columnas, texto));
+        } catch (RuntimeException e) {
+            rechazos.add(new Rechazo(linea, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Arma el registro de un conjunto de campos, con sus claves y su alta.
+     *
+     * @param linea  Número de línea
+     * @param campos Campos del registro
+     * @return Registro listo para validar
+     * @throws IllegalArgumentException si faltan campos o alguno es inválido
+     */
+    private static Registro crearRegistro(int linea, Map<String, String> campos) {
+        String tipo = campo(campos, "tipo");
+        switch (tipo) {
+            case TIPO_ESTADIO: {
+                String nombre = campo(campos, "nombre");
+                String direccion = campo(campos, "direccion");
+                int capacidad = entero(campos, "capacidad");
+                return new Registro(linea, TIPO_ESTADIO, nombre, null, 0,
+                        t -> t.registrarSede(nombre, direccion, capacidad));
+            }
+            case TIPO_TEATRO: {
+                String nombre = campo(campos, "nombre");
+                String direccion = campo(campos, "direccion");
+                int capacidad = entero(campos, "capacidad");
+                int asientosPorFila = entero(campos, "asientosPorFila");
+                String[] sectores = arreglo(campos, "sectores");
+                int[] capacidades = enteros(campos, "capacidades");
+                int[] porcentajes = enteros(campos, "porcentajes");
+                return new Registro(linea, TIPO_ESTADIO, nombre, null, 0, t -> t.registrarSede(nombre, direccion,
+                        capacidad, asientosPorFila, sectores, capacidades, porcentajes));
+            }
+            case TIPO_MINIESTADIO: {
+                String nombre = campo(campos, "nombre");
+                String direccion = campo(campos, "direccion");
+                int capacidad = entero(campos, "capacidad");
+                int asientosPorFila = entero(campos, "asientosPorFila");
+                int puestos = entero(campos, "puestos");
+                double precioConsumicion = decimal(campos, "precioConsumicion");
+                String[] sectores = arreglo(campos, "sectores");
+                int[] capacidades = enteros(campos, "capacidades");
+                int[] porcentajes = enteros(campos, "porcentajes");
+                return new Registro(linea, TIPO_ESTADIO, nombre, null, 0, t -> t.registrarSede(nombre, direccion,
+                        capacidad, asientosPorFila, puestos, precioConsumicion, sectores, capacidades, porcentajes));
+            }
+            case TIPO_USUARIO: {
+                String email = campo(campos, "email");
+                String nombre = campo(campos, "nombre");
+                String apellido = campo(campos, "apellido");
+                String contrasenia = campo(campos, "contrasenia");
+                return new Registro(linea, TIPO_USUARIO, email, null, 0,
+                        t -> t.registrarUsuario(email, nombre, apellido, contrasenia));
+            }
+            case TIPO_ESPECTACULO: {
+                String nombre = campo(campos, "nombre");
+                return new Registro(linea, TIPO_ESPECTACULO, nombre, null, 0, t -> t.registrarEspectaculo(nombre));
+            }
+            case TIPO_FUNCION: {
+                String espectaculo = campo(campos, "espectaculo");
+                String sede = campo(campos, "sede");
+                double precio = decimal(campos, "precio");
+                Fecha fecha;
+                try {
+                    fecha = Fecha.desdeString(campo(campos, "fecha"));
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("Fecha inválida: " + campos.get("fecha"));
+                }
+                return new Registro(linea, TIPO_FUNCION, espectaculo, sede, fecha.getDiaEpoca(),
+                        t -> t.agregarFuncion(espectaculo, fecha, sede, precio));
+            }
+            default:
+                throw new IllegalArgumentException("Tipo de registro desconocido: " + tipo);
+        }
+    }
+
+    private static String campo(Map<String, String> campos, String nombre) {
+        String valor = campos.get(nombre);
+        if (valor == null || valor.isEmpty()) {
+            throw new IllegalArgumentException("Falta el campo " + nombre);
+        }
+        return valor;
+    }
+
+    private static int entero(Map<String, String> campos, String nombre) {
+        try {
+            return Integer.parseInt(campo(campos, nombre).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El campo " + nombre + " no es un entero: " + campos.get(nombre));
+        }
+    }
+
+    private static double decimal(Map<String, String> campos, String nombre) {
+        try {
+            return Double.parseDouble(campo(campos, nombre).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El campo " + nombre + " no es un número: " + campos.get(nombre));
+        }
+    }
+
+    private static String[] arreglo(Map<String, String> campos, String nombre) {
+        return campo(campos, nombre).split(";", -1);
+    }
+
+    private static int[] enteros(Map<String, String> campos, String nombre) {
+        String[] valores = arreglo(campos, nombre);
+        int[] resultado = new int[valores.length];
+        try {
+            for (int i = 0; i < valores.length; i++) {
+                resultado[i] = Integer.parseInt(valores[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El campo " + nombre + " no es una lista de enteros: " + campos.get(nombre));
+        }
+        return resultado;
+    }
+
+    /**
+     * @param columnas Nombres de las columnas
+     * @param texto    Línea CSV
+     * @return Campos de la línea por nombre de columna
+     */
+    private static Map<String, String> leerFila(String[] columnas, String texto) {
+        List<String> valores = dividirCsv(texto);
+        if (valores.size() > columnas.length) {
+            throw new IllegalArgumentException("La línea tiene más campos que el encabezado");
+        }
+        Map<String, String> campos = new HashMap<>();
+        for (int c = 0; c < valores.size(); c++) {
+            campos.put(columnas[c], valores.get(c));
+        }
+        return campos;
+    }
+
+    /**
+     * Divide una línea CSV en campos. Los campos entre comillas pueden tener comas, y dos
+     * comillas seguidas dentro de ellos representan una comilla.
+     *
+     * @param texto Línea CSV
+     * @return Campos de la línea
+     */
+    static List<String> dividirCsv(String texto) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (entreComillas) {
+                if (c == '"' && i + 1 < texto.length() && texto.charAt(i + 1) == '"') {
+                    actual.append('"');
+                    i++;
+                } else if (c == '"') {
+                    entreComillas = false;
+                } else {
+                    actual.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == ',') {
+                campos.add(actual.toString());
+                actual.setLength(0);
+            } else {
+                actual.append(c);
+            }
+        }
+        if (entreComillas) {
+            throw new IllegalArgumentException("Comillas sin cerrar");
+        }
+        campos.add(actual.toString());
+        return campos;
+    }
+
+    /**
+     * Lee un objeto JSON plano: sus valores son textos, números, booleanos, null o arreglos
+     * de esos valores. Los arreglos se devuelven con sus elementos separados por ';'.
+     *
+     * @param texto Objeto JSON en una línea
+     * @return Campos del objeto; los null no se incluyen
+     * @throws IllegalArgumentException si el objeto no es válido
+     */
+    static Map<String, String> leerObjeto(String texto) {
+        LectorJson lector = new LectorJson(texto);
+        Map<String, String> campos = new HashMap<>();
+        lector.esperar('{');
+        if (!lector.consumir('}')) {
+            do {
+                String nombre = lector.texto();
+                lector.esperar(':');
+                String valor;
+                if (lector.consumir('[')) {
+                    StringBuilder elementos = new StringBuilder();
+                    if (!lector.consumir(']')) {
+                        do {
+                            if (elementos.length() > 0) {
+                                elementos.append(';');
+                            }
+                            elementos.append(lector.escalar());
+                        } while (lector.consumir(','));
+                        lector.esperar(']');
+                    }
+                    valor = elementos.toString();
+                } else {
+                    valor = lector.escalar();
+                }
+                if (valor != null) {
+                    campos.put(nombre, valor);
+                }
+            } while (lector.consumir(','));
+            lector.esperar('}');
+        }
+        lector.fin();
+        return campos;
+    }
+
+    /**
+     * Lector de los elementos de un objeto JSON plano.
+     */
+    private static final class LectorJson {
+        private final String texto;
+        private int pos;
+
+        private LectorJson(String texto) {
+            this.texto = texto;
+        }
+
+        private void saltarEspacios() {
+            while (pos < texto.length() && Character.isWhitespace(texto.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private boolean consumir(char c) {
+            saltarEspacios();
+            if (pos < texto.length() && texto.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void esperar(char c) {
+            if (!consumir(c)) {
+                throw new IllegalArgumentException("JSON inválido: se esperaba '" + c + "' en la posición " + pos);
+            }
+        }
+
+        private void fin() {
+            saltarEspacios();
+            if (pos != texto.length()) {
+                throw new IllegalArgumentException("JSON inválido: sobra texto en la posición " + pos);
+            }
+        }
+
+        private String escalar() {
+            saltarEspacios();
+            if (pos < texto.length() && texto.charAt(pos) == '"') {
+                return texto();
+            }
+            int inicio = pos;
+            while (pos < texto.length() && ",]} \t".indexOf(texto.charAt(pos)) < 0) {
+                pos++;
+            }
+            String valor = texto.substring(inicio, pos);
+            if (valor.isEmpty()) {
+                throw new IllegalArgumentException("JSON inválido: falta un valor en la posición " + inicio);
+            }
+            return valor.equals("null") ? null : valor;
+        }
+
+        private String texto() {
+            esperar('"');
+            StringBuilder valor = new StringBuilder();
+            while (pos < texto.length()) {
+                char c = texto.charAt(pos++);
+                if (c == '"') {
+                    return valor.toString();
+                }
+                if (c == '\\' && pos < texto.length()) {
+                    char e = texto.charAt(pos++);
+                    switch (e) {
+                        case 'n': valor.append('\n'); break;
+                        case 't': valor.append('\t'); break;
+                        case 'r': valor.append('\r'); break;
+                        case 'b': valor.append('\b'); break;
+                        case 'f': valor.append('\f'); break;
+                        case 'u':
+                            if (pos + 4 > texto.length()) {
+                                throw new IllegalArgumentException("JSON inválido: escape incompleto");
+                            }
+                            valor.append((char) Integer.parseInt(texto.substring(pos, pos + 4), 16));
+                            pos += 4;
+                            break;
+                        default: valor.append(e);
+                    }
+                } else {
+                    valor.append(c);
+                }
+            }
+            throw new IllegalArgumentException("JSON inválido: texto sin cerrar");
+        }
+    }
+
+    /**
+     * Registro interpretado: su tipo, las claves que se validan y el alta a aplicar.
+     * Las sedes de las tres clases usan el tipo {@code estadio} para validarse juntas.
+     */
+    private static final class Registro {
+        private final int linea;
+        private final String tipo;
+        private final String clave;
+        private final String sede;
+        private final int dia;
+        private final Consumer<Ticketek> alta;
+
+        private Registro(int linea, String tipo, String clave, String sede, int dia, Consumer<Ticketek> alta) {
+            this.linea = linea;
+            this.tipo = tipo;
+            this.clave = clave;
+            this.sede = sede;
+            this.dia = dia;
+            this.alta = alta;
+        }
+    }
+
+    /**
+     * Registro que no pudo importarse.
+     */
+    public static final class Rechazo {
+        private final int linea;
+        private final String motivo;
+
+        Rechazo(int linea, String motivo) {
+            this.linea = linea;
+            this.motivo = motivo;
+        }
+
+        /**
+         * @return Número de línea del registro, desde 1
+         */
+        public int getLinea() {
+            return linea;
+        }
+
+        /**
+         * @return Motivo del rechazo
+         */
+        public String getMotivo() {
+            return motivo;
+        }
+
+        @Override
+        public String toString() {
+            return "línea " + linea + ": " + motivo;
+        }
+    }
+
+    /**
+     * Resultado de una importación.
+     */
+    public static final class Resultado {
+        private final int importados;
+        private final List<Rechazo> rechazos;
+
+        Resultado(int importados, List<Rechazo> rechazos) {
+            this.importados = importados;
+            this.rechazos = Collections.unmodifiableList(rechazos);
+        }
+
+        /**
+         * @return Cantidad de registros importados
+         */
+        public int getImportados() {
+            return importados;
+        }
+
+        /**
+         * @return Registros rechazados, en orden de línea
+         */
+        public List<Rechazo> getRechazos() {
+            return rechazos;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Instantánea binaria del estado de Ticketek, pensada para reconstruir el sistema rápido
+ * después de un reinicio: se carga la instantánea y se aplica solo la cola del diario de ventas.
+ *
+ * Formato del archivo: encabezado (int MAGIA, short VERSION), long con la secuencia del diario
+ * incluida en la instantánea, las sedes y los usuarios con el mismo formato que los registros
+ * del diario, y una sección por espectáculo precedida por su largo en bytes. Cada sección tiene
+ * el nombre del espectáculo y sus funciones (día, sede, precio base, si está archivada y sus
+ * entradas vigentes). Desde la versión 3 cada entrada ocupa 22 bytes: las dos mitades del código
+ * (long), la posición de su dueño en la sección de usuarios (int), el ordinal del sector (short)
+ * y el asiento (int, 0 si no es numerado); las versiones anteriores guardan código, email y sector
+ * como texto. Las secciones son independientes, por lo que se escriben y se cargan en paralelo,
+ * y cada función se restaura de una vez (ver {@link Ticketek#restaurarEntradas}).
+ * Desde la versión 2 los usuarios se guardan con la huella de su contraseña, nunca con la
+ * contraseña en texto (que sí aparece en las instantáneas de la versión 1).
+ *
+ * El inventario de asientos de cada función no se guarda aparte: se reconstruye a partir de las
+ * entradas vigentes, así nunca puede quedar en desacuerdo con ellas y las retenciones (que no
+ * sobreviven a un reinicio) no dejan asientos ocupados.
+ *
+ * IREP (Invariante de Representación):
+ * - Clase sin estado: solo agrupa la escritura y la lectura del formato
+ * - Una instantánea escrita contiene exactamente las entradas vigentes en la versión de su captura
+ * - El archivo se reemplaza de forma atómica: nunca queda una instantánea a medio escribir
+ */
+public final class Instantanea {
+    static final int MAGIA = 0x544B5331;
+    static final short VERSION = 3;
+    static final short VERSION_HUELLAS_CONTRASENIA = 2;
+    static final short VERSION_ENTRADAS_BINARIAS = 3;
+
+    private Instantanea() {
+    }
+
+    /**
+     * Escribe una instantánea a partir de una captura. Las entradas se leen de las funciones
+     * mientras siguen las ventas y se filtran por la versión de la captura; las anuladas después
+     * de la captura se toman de la cola de anuladas, porque pueden haber desaparecido ya de su función.
+     *
+     * @param captura  Punto de corte de la instantánea
+     * @param anuladas Entradas anuladas desde la captura (se siguen agregando mientras se escribe)
+     * @param archivo  Ruta del archivo de la instantánea
+     * @throws RuntimeException si el archivo no pudo escribirse
+     */
+    static void escribir(Captura captura, Queue<Entrada> anuladas, Path archivo) {
+        Map<Funcion, List<Entrada>> leidas = new IdentityHashMap<>();
+        for (List<Funcion> funciones : captura.funciones) {
+            for (Funcion funcion : funciones) {
+                leidas.put(funcion, new ArrayList<>(funcion.getEntradas()));
+            }
+        }
+
+        // Una entrada que no apareció al recorrer su función ya se había agregado a la cola,
+        // porque anular la encola antes de quitarla; por eso la cola se lee después del recorrido.
+        Set<Entrada> quitadas = Collections.newSetFromMap(new IdentityHashMap<>());
+        quitadas.addAll(anuladas);
+        Map<String, Espectaculo> porNombre = new HashMap<>();
+        for (Espectaculo espectaculo : captura.espectaculos) {
+            porNombre.put(espectaculo.getNombre(), espectaculo);
+        }
+        Map<Funcion, List<Entrada>> quitadasPorFuncion = new IdentityHashMap<>();
+        for (Entrada entrada : quitadas) {
+            Espectaculo espectaculo = porNombre.get(entrada.getNombreEspectaculo());
+            Funcion funcion = espectaculo == null ? null : espectaculo.getFuncion(entrada.getFecha());
+            if (funcion != null) {
+                quitadasPorFuncion.computeIfAbsent(funcion, f -> new ArrayList<>()).add(entrada);
+            }
+        }
+
+        Map<String, Integer> indiceUsuarios = new HashMap<>(captura.usuarios.size() * 2);
+        for (int i = 0; i < captura.usuarios.size(); i++) {
+            indiceUsuarios.put(captura.usuarios.get(i).getEmail(), i);
+        }
+        List<byte[]> secciones = IntStream.range(0, captura.espectaculos.size()).parallel()
+                .mapToObj(i -> codificarEspectaculo(captura.espectaculos.get(i), captura.funciones.get(i), leidas,
+                        quitadas, quitadasPorFuncion, indiceUsuarios, captura.version))
+                .collect(Collectors.toList());
+
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(canal),
+                    1 << 16));
+            salida.writeInt(MAGIA);
+            salida.writeShort(VERSION);
+            salida.writeLong(captura.secuenciaDiario);
+
+            salida.writeInt(captura.sedes.size());
+            for (Sede sede : captura.sedes) {
+                escribirSede(salida, sede);
+            }
+            salida.writeInt(captura.usuarios.size());
+            for (Usuario usuario : captura.usuarios) {
+                salida.writeUTF(usuario.getEmail());
+                salida.writeUTF(usuario.getNombre());
+                salida.writeUTF(usuario.getApellido());
+                salida.writeUTF(usuario.getHuellaContrasenia());
+            }
+            salida.writeInt(secciones.size());
+            for (byte[] seccion : secciones) {
+                salida.writeInt(seccion.length);
+                salida.write(seccion);
+            }
+            salida.flush();
+            canal.force(true);
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo escribir la instantánea", e);
+        }
+
+        try {
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo reemplazar la instantánea", e);
+        }
+    }
+
+    /**
+     * Carga una instantánea en un sistema vacío. Las sedes y los usuarios se cargan primero;
+     * después cada espectáculo se carga en paralelo con sus funciones y entradas.
+     *
+     * @param archivo Ruta del archivo de la instantánea
+     * @param destino Sistema vacío, sin diario
+     * @return Secuencia del diario incluida en la instantánea
+     * @throws RuntimeException si el archivo no puede leerse o no es una instantánea válida
+     */
+    static long cargar(Path archivo, Ticketek destino) {
+        long secuencia;
+        short version;
+        Usuario[] usuarios;
+        List<byte[]> secciones;
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo),
+                1 << 16))) {
+            if (entrada.readInt() != MAGIA || (version = entrada.readShort()) > VERSION) {
+                throw new RuntimeException("El archivo no es una instantánea compatible: " + archivo);
+            }
+            secuencia = entrada.readLong();
+
+            int cantidadSedes = entrada.readInt();
+            for (int i = 0; i < cantidadSedes; i++) {
+                destino.aplicar(entrada.readByte(), entrada);
+            }
+            int cantidadUsuarios = entrada.readInt();
+            usuarios = new Usuario[cantidadUsuarios];
+            for (int i = 0; i < cantidadUsuarios; i++) {
+                String email = entrada.readUTF();
+                String nombre = entrada.readUTF();
+                String apellido = entrada.readUTF();
+                if (version < VERSION_HUELLAS_CONTRASENIA) {
+                    destino.registrarUsuario(email, nombre, apellido, entrada.readUTF());
+                    usuarios[i] = destino.getUsuario(email);
+                } else {
+                    usuarios[i] = destino.restaurarUsuario(email, nombre, apellido, entrada.readUTF());
+                }
+            }
+            int cantidadEspectaculos = entrada.readInt();
+            secciones = new ArrayList<>(cantidadEspectaculos);
+            for (int i = 0; i < cantidadEspectaculos; i++) {
+                byte[] seccion = new byte[entrada.readInt()];
+                entrada.readFully(seccion);
+                secciones.add(seccion);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo leer la instantánea", e);
+        }
+
+        short versionLeida = version;
+        secciones.parallelStream().forEach(seccion -> cargarEspectaculo(seccion, destino, usuarios, versionLeida));
+        return secuencia;
+    }
+
+    /**
+     * Codifica la sección de un espectáculo con sus funciones y sus entradas vigentes en la versión dada.
+     *
+     * @param espectaculo        Espectáculo
+     * @param funciones          Funciones del espectáculo al momento de la captura
+     * @param leidas             Entradas leídas de cada función
+     * @param quitadas           Entradas anuladas desde la captura
+     * @param quitadasPorFuncion Entradas anuladas desde la captura, agrupadas por función
+     * @param indiceUsuarios     Posición de cada usuario (por email) en la sección de usuarios
+     * @param version            Versión del estado de la captura
+     * @return Bytes de la sección
+     */
+    private static byte[] codificarEspectaculo(Espectaculo espectaculo, List<Funcion> funciones,
+                                               Map<Funcion, List<Entrada>> leidas, Set<Entrada> quitadas,
+                                               Map<Funcion, List<Entrada>> quitadasPorFuncion,
+                                               Map<String, Integer> indiceUsuarios, long version) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream salida = new DataOutputStream(bytes);
+        try {
+            salida.writeUTF(espectaculo.getNombre());
+            salida.writeInt(funciones.size());
+            for (Funcion funcion : funciones) {
+                List<Entrada> vigentes = new ArrayList<>(funcion.cantidadEntradas());
+                for (Entrada entrada : leidas.get(funcion)) {
+                    if (!quitadas.contains(entrada) && entrada.vigenteEn(version)) {
+                        vigentes.add(entrada);
+                    }
+                }
+                for (Entrada entrada : quitadasPorFuncion.getOrDefault(funcion, Collections.emptyList())) {
+                    if (entrada.vigenteEn(version)) {
+                        vigentes.add(entrada);
+                    }
+                }
+
+                salida.writeInt(funcion.getFecha().getDiaEpoca());
+                salida.writeUTF(funcion.getSede().getNombre());
+                salida.writeDouble(funcion.getPrecioBase());
+                salida.writeBoolean(funcion.estaArchivada());
+                salida.writeInt(vigentes.size());
+                for (Entrada entrada : vigentes) {
+                    Integer usuario = indiceUsuarios.get(entrada.getEmailUsuario());
+                    if (usuario == null) {
+                        throw new RuntimeException("La entrada " + entrada.devolverCodigo()
+                                + " pertenece a un usuario fuera de la instantánea");
+                    }
+                    salida.writeLong(entrada.getIdAlto());
+                    salida.writeLong(entrada.getIdBajo());
+                    salida.writeInt(usuario);
+                    salida.writeShort(entrada.getOrdinalSector());
+                    salida.writeInt(Math.max(entrada.devolverAsiento(), 0));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Carga la sección de un espectáculo: lo registra, agrega sus funciones, vuelve a emitir
+     * las entradas de cada función de una vez con sus códigos originales y archiva las funciones
+     * que estaban archivadas.
+     *
+     * @param seccion  Bytes de la sección
+     * @param destino  Sistema donde se carga
+     * @param usuarios Usuarios de la instantánea, en el orden de su sección
+     * @param version  Versión del formato de la instantánea
+     */
+    private static void cargarEspectaculo(byte[] seccion, Ticketek destino, Usuario[] usuarios, short version) {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(seccion));
+        try {
+            String nombre = entrada.readUTF();
+            destino.registrarEspectaculo(nombre);
+            Espectaculo espectaculo = destino.getEspectaculo(nombre);
+            int cantidadFunciones = entrada.readInt();
+            for (int f = 0; f < cantidadFunciones; f++) {
+                Fecha fecha = Fecha.desdeDiaEpoca(entrada.readInt());
+                destino.agregarFuncion(nombre, fecha, entrada.readUTF(), entrada.readDouble());
+                Funcion funcion = espectaculo.getFuncion(fecha);
+                boolean archivada = entrada.readBoolean();
+                int cantidadEntradas = entrada.readInt();
+                Usuario[] titulares = new Usuario[cantidadEntradas];
+                int[] ordinales = new int[cantidadEntradas];
+                int[] asientos = new int[cantidadEntradas];
+                long[] idsAlto = new long[cantidadEntradas];
+                long[] idsBajo = new long[cantidadEntradas];
+                for (int i = 0; i < cantidadEntradas; i++) {
+                    if (version < VERSION_ENTRADAS_BINARIAS) {
+                        UUID codigo = UUID.fromString(entrada.readUTF());
+                        idsAlto[i] = codigo.getMostSignificantBits();
+                        idsBajo[i] = codigo.getLeastSignificantBits();
+                        titulares[i] = destino.getUsuario(entrada.readUTF());
+                        String sector = entrada.readUTF();
+                        ordinales[i] = funcion.esNumerada() ? ((SedeNumerada) funcion.getSede()).getIndiceSector(sector) : 0;
+                    } else {
+                        idsAlto[i] = entrada.readLong();
+                        idsBajo[i] = entrada.readLong();
+                        int usuario = entrada.readInt();
+                        titulares[i] = usuario >= 0 && usuario < usuarios.length ? usuarios[usuario] : null;
+                        ordinales[i] = entrada.readShort();
+                    }
+                    asientos[i] = entrada.readInt();
+                    if (titulares[i] == null) {
+                        throw new RuntimeException("Entrada de " + nombre + " sin usuario en la instantánea");
+                    }
+                }
+                destino.restaurarEntradas(espectaculo, funcion, titulares, ordinales, asientos, idsAlto, idsBajo);
+                if (archivada) {
+                    funcion.archivar();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Sección de la instantánea incompleta", e);
+        }
+    }
+
+    /**
+     * Escribe una sede con su tipo y el mismo formato que su registro en el diario de ventas.
+     *
+     * @param salida Flujo de escritura
+     * @param sede   Sede a escribir
+     * @throws IOException si la escritura falla
+     */
+    private static void escribirSede(DataOutputStream salida, Sede sede) throws IOException {
+        if (!(sede instanceof SedeNumerada)) {
+            salida.writeByte(DiarioVentas.SEDE_ESTADIO);
+            salida.writeUTF(sede.getNombre());
+            salida.writeUTF(sede.getDireccion());
+            salida.writeInt(sede.getCapacidadMaxima());
+            return;
+        }
+
+        SedeNumerada numerada = (SedeNumerada) sede;
+        salida.writeByte(sede instanceof Miniestadio ? DiarioVentas.SEDE_MINIESTADIO : DiarioVentas.SEDE_TEATRO);
+        salida.writeUTF(sede.getNombre());
+        salida.writeUTF(sede.getDireccion());
+        salida.writeInt(sede.getCapacidadMaxima());
+        salida.writeInt(numerada.getAsientosPorFila());
+        if (sede instanceof Miniestadio) {
+            salida.writeInt(((Miniestadio) sede).getCantidadPuestos());
+            salida.writeDouble(((Miniestadio) sede).getPrecioConsumicion());
+        }
+        String[] sectores = numerada.getSectores();
+        salida.writeInt(sectores.length);
+        for (int i = 0; i < sectores.length; i++) {
+            salida.writeUTF(sectores[i]);
+            salida.writeInt(numerada.getCapacidad()[i]);
+            salida.writeInt(numerada.getPorcentajeAdicional()[i]);
+        }
+    }
+
+    /**
+     * Punto de corte de una instantánea: la versión del estado, la secuencia del diario y las
+     * sedes, usuarios, espectáculos y funciones dados de alta hasta esa versión. Solo la versión
+     * y la secuencia se fijan con las ventas detenidas; el catálogo se copia después de los mapas
+     * concurrentes, descartando lo dado de alta en versiones posteriores.
+     */
+    static final class Captura {
+        private final long version;
+        private final long secuenciaDiario;
+        private final List<Sede> sedes;
+        private final List<Usuario> usuarios;
+        private final List<Espectaculo> espectaculos;
+        private final List<List<Funcion>> funciones;
+
+        /**
+         * @param version         Versión del estado de Ticketek
+         * @param secuenciaDiario Secuencia del último registro del diario incluido
+         * @param sedes           Sedes registradas, incluso las registradas después del corte
+         * @param usuarios        Usuarios registrados, incluso los registrados después del corte
+         * @param espectaculos    Espectáculos registrados, incluso los registrados después del corte
+         */
+        Captura(long version, long secuenciaDiario, Collection<Sede> sedes, Collection<Usuario> usuarios,
+                Collection<Espectaculo> espectaculos) {
+            this.version = version;
+            this.secuenciaDiario = secuenciaDiario;
+            this.sedes = sedes.stream().filter(s -> s.getVersionAlta() <= version).collect(Collectors.toList());
+            this.usuarios = usuarios.stream().filter(u -> u.getVersionAlta() <= version)
+                    .collect(Collectors.toList());
+            this.espectaculos = espectaculos.stream().filter(e -> e.getVersionAlta() <= version)
+                    .collect(Collectors.toList());
+            this.funciones = this.espectaculos.stream()
+                    .map(e -> e.getFunciones().stream().filter(f -> f.getVersionAlta() <= version)
+                            .collect(Collectors.toList()))
+                    .collect(Collectors.toList());
+        }
+    }
+}
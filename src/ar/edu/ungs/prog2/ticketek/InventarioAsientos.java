@@ -0,0 +1,932 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Clase que representa el inventario de asientos numerados de una función.
+ * Guarda un bit por asiento y por sector (1 = vendido, 0 = disponible),
+ * indexando los sectores por su ordinal dentro de la sede.
+ * Las modificaciones de cada sector se sincronizan sobre un cerrojo propio del sector,
+ * de modo que ventas en sectores distintos no compiten entre sí.
+ * Además mantiene, por sector, un árbol de segmentos con el largo de la racha libre más
+ * larga de cada fila, que permite buscar los mejores asientos juntos sin recorrer asiento por asiento.
+ * Sobre las mismas hojas lleva un segundo árbol de tramos: para cada rango de filas guarda la suma
+ * de las rachas de las filas con lugar del principio y del final del rango, la mejor suma de filas
+ * consecutivas con lugar y, si ninguna fila del rango está completa, la suma total. Con él la
+ * búsqueda en varias filas consecutivas también baja por el árbol en O(log filas).
+ * Un inventario puede crearse como copia de una plantilla: comparte los arreglos de la plantilla
+ * y recién hace una copia privada de un sector la primera vez que lo modifica (copy-on-write).
+ * La cantidad de vendidos de cada sector se lleva en un contador que se actualiza junto con los bits,
+ * por lo que consultar la ocupación cuesta O(1) por sector.
+ * Los bits pueden guardarse en el heap o en una región de un archivo mapeado en memoria
+ * (ver {@link ArchivoAsientos}); en ese caso los contadores y las rachas se reconstruyen
+ * a partir de los bits al abrir el inventario.
+ * Para el mapa de ocupación ({@link MapaOcupacion}) guarda, por sector, los vendidos de cada fila
+ * calculados con popcount sobre las palabras de la fila, y un bit de "sucia" por fila que se
+ * enciende en cada venta o liberación: al pedir el mapa solo se recalculan las filas sucias.
+ * Estas estructuras se crean recién con el primer pedido del mapa de cada sector.
+ *
+ * IREP (Invariante de Representación):
+ * - capacidades != null && capacidades.length > 0
+ * - Exactamente uno de vendidos y mapeados es != null, y su largo es capacidades.length
+ * - cerrojos != null && cerrojos.length == capacidades.length
+ * - Para todo sector s: capacidades[s] > 0
+ * - Para todo sector s: vendidos[s].length (o mapeados[s].capacity()) == (capacidades[s] + 63) / 64
+ * - El asiento n (1..capacidades[s]) del sector s corresponde al bit (n - 1) de las palabras del sector
+ * - Los bits posteriores a capacidades[s] en la última palabra del sector están siempre en 0
+ * - contarVendidos(s) + contarDisponibles(s) == capacidades[s]
+ * - cantidadVendidos.length() == capacidades.length y cantidadVendidos.get(s) == cantidad de bits en 1 del sector s;
+ *   solo se modifica con el cerrojo del sector tomado
+ * - asientosPorFila > 0; la fila f (desde 0) del sector s abarca los asientos f * asientosPorFila + 1
+ *   hasta min((f + 1) * asientosPorFila, capacidades[s])
+ * - hojas[s] es la menor potencia de 2 mayor o igual a la cantidad de filas del sector s
+ * - rachas[s][hojas[s] + f] == largo de la racha de asientos libres más larga de la fila f
+ *   (0 para las hojas que no corresponden a filas)
+ * - Para todo nodo interno i: rachas[s][i] == max(rachas[s][2i], rachas[s][2i + 1])
+ * - tramos[s] tiene CAMPOS_TRAMO enteros por nodo del árbol de rachas; para el rango de filas del nodo
+ *   (las hojas que no corresponden a filas cuentan como filas completas):
+ *   PREFIJO es la suma de las rachas de las filas con lugar (racha > 0) desde el principio hasta la
+ *   primera fila completa, SUFIJO lo mismo desde el final, MEJOR la mayor suma de rachas de filas
+ *   consecutivas con lugar, y SUMA la suma de todas las rachas si ninguna fila está completa, o -1
+ * - propio.length == capacidades.length
+ * - Si propio[s] == false, vendidos[s], rachas[s] y tramos[s] pertenecen a la plantilla y no se modifican
+ * - Si mapeados != null, propio[s] == true para todo sector (un inventario mapeado no comparte sus bits)
+ * - vendidosPorFila.length == filasSucias.length == capacidades.length; vendidosPorFila[s] y
+ *   filasSucias[s] son ambos null (el mapa del sector nunca se pidió) o ambos != null
+ * - Si vendidosPorFila[s] != null: para toda fila f con el bit f de filasSucias[s] en 0,
+ *   vendidosPorFila[s][f] == cantidad de asientos vendidos de la fila f
+ * - vendidosPorFila y filasSucias solo se leen y modifican con el cerrojo del sector tomado
+ * - capacidades y hojas nunca se modifican luego de construir el inventario, por lo que pueden compartirse
+ * - liberacion es null salvo en un inventario mapeado que todavía no se liberó
+ */
+public final class InventarioAsientos {
+    private static final int PREFIJO = 0;
+    private static final int SUFIJO = 1;
+    private static final int MEJOR = 2;
+    private static final int SUMA = 3;
+    private static final int CAMPOS_TRAMO = 4;
+
+    private int[] capacidades;
+    private long[][] vendidos;
+    private LongBuffer[] mapeados;
+    private Object[] cerrojos;
+    private int asientosPorFila;
+    private int[] hojas;
+    private int[][] rachas;
+    private int[][] tramos;
+    private boolean[] propio;
+    private AtomicIntegerArray cantidadVendidos;
+    private int[][] vendidosPorFila;
+    private long[][] filasSucias;
+    private final AtomicReference<Runnable> liberacion = new AtomicReference<>();
+
+    /**
+     * Constructor que crea un inventario con todos los asientos disponibles.
+     *
+     * @param capacidades     Capacidad de cada sector, en el orden de los sectores de la sede
+     * @param asientosPorFila Cantidad de asientos por fila
+     * @throws IllegalArgumentException si no hay sectores o alguna capacidad no es positiva
+     */
+    public InventarioAsientos(int[] capacidades, int asientosPorFila) {
+        inicializar(capacidades, asientosPorFila);
+        this.vendidos = new long[capacidades.length][];
+        for (int s = 0; s < capacidades.length; s++) {
+            vendidos[s] = new long[(capacidades[s] + 63) >>> 6];
+            inicializarRachas(s);
+        }
+    }
+
+    /**
+     * Constructor que crea un inventario sobre palabras guardadas fuera del heap, por ejemplo
+     * en un archivo mapeado en memoria. Conserva los asientos que ya estuvieran vendidos y
+     * reconstruye a partir de ellos los contadores y las rachas por fila.
+     *
+     * @param capacidades     Capacidad de cada sector, en el orden de los sectores de la sede
+     * @param asientosPorFila Cantidad de asientos por fila
+     * @param sectores        Palabras de cada sector, con (capacidad + 63) / 64 palabras cada una
+     * @param liberacion      Acción que libera las palabras cuando la función deja de usarlas, o null
+     * @throws IllegalArgumentException si no hay sectores, alguna capacidad no es positiva
+     *         o las palabras de algún sector no alcanzan para su capacidad
+     */
+    InventarioAsientos(int[] capacidades, int asientosPorFila, LongBuffer[] sectores, Runnable liberacion) {
+        inicializar(capacidades, asientosPorFila);
+        this.liberacion.set(liberacion);
+        if (sectores == null || sectores.length != capacidades.length) {
+            throw new IllegalArgumentException("Debe indicarse una región por sector");
+        }
+        this.mapeados = sectores.clone();
+        for (int s = 0; s < capacidades.length; s++) {
+            int palabras = (capacidades[s] + 63) >>> 6;
+            if (mapeados[s].capacity() != palabras) {
+                throw new IllegalArgumentException("La región del sector no coincide con su capacidad");
+            }
+            int sobrantes = palabras * 64 - capacidades[s];
+            if (sobrantes > 0) {
+                guardarPalabra(s, palabras - 1, palabra(s, palabras - 1) & (-1L >>> sobrantes));
+            }
+            int cantidad = 0;
+            for (int i = 0; i < palabras; i++) {
+                cantidad += Long.bitCount(palabra(s, i));
+            }
+            cantidadVendidos.set(s, cantidad);
+            inicializarRachas(s);
+            if (cantidad > 0) {
+                reconstruirRachas(s);
+            }
+        }
+    }
+
+    /**
+     * Libera las palabras de un inventario mapeado (por ejemplo, cierra y borra su archivo).
+     * Solo la primera llamada tiene efecto; en un inventario del heap no hace nada.
+     * El inventario no debe usarse después de liberarlo.
+     */
+    void liberar() {
+        Runnable accion = liberacion.getAndSet(null);
+        if (accion != null) {
+            accion.run();
+        }
+    }
+
+    /**
+     * Constructor que crea un inventario a partir de una plantilla, sin copiar sus asientos.
+     * Cada sector sigue apuntando a los arreglos de la plantilla hasta su primera modificación,
+     * por lo que crear el inventario cuesta O(sectores) y no O(asientos).
+     *
+     * @param plantilla Inventario cuyos asientos se toman como estado inicial; no se modifica
+     */
+    public InventarioAsientos(InventarioAsientos plantilla) {
+        if (plantilla.mapeados != null) {
+            throw new IllegalArgumentException("Un inventario mapeado no puede usarse como plantilla");
+        }
+        int sectores = plantilla.capacidades.length;
+        this.capacidades = plantilla.capacidades;
+        this.asientosPorFila = plantilla.asientosPorFila;
+        this.hojas = plantilla.hojas;
+        this.vendidos = plantilla.vendidos.clone();
+        this.rachas = plantilla.rachas.clone();
+        this.tramos = plantilla.tramos.clone();
+        this.propio = new boolean[sectores];
+        this.cerrojos = new Object[sectores];
+        this.cantidadVendidos = new AtomicIntegerArray(sectores);
+        this.vendidosPorFila = new int[sectores][];
+        this.filasSucias = new long[sectores][];
+        for (int s = 0; s < sectores; s++) {
+            cerrojos[s] = new Object();
+            cantidadVendidos.set(s, plantilla.cantidadVendidos.get(s));
+        }
+    }
+
+    /**
+     * Verifica si un asiento está disponible.
+     *
+     * @param sector  Ordinal del sector
+     * @param asiento Número de asiento (comenzando en 1)
+     * @return true si el asiento está disponible, false si está vendido
+     * @throws IllegalArgumentException si el sector o el asiento están fuera de rango
+     */
+    public boolean estaDisponible(int sector, int asiento) {
+        chequearAsiento(sector, asiento);
+        int bit = asiento - 1;
+        return (palabra(sector, bit >>> 6) & (1L << bit)) == 0;
+    }
+
+    /**
+     * Marca un asiento como vendido.
+     *
+     * @param sector  Ordinal del sector
+     * @param asiento Número de asiento (comenzando en 1)
+     * @return true si el asiento estaba disponible, false si ya estaba vendido
+     * @throws IllegalArgumentException si el sector o el asiento están fuera de rango
+     */
+    public boolean vender(int sector, int asiento) {
+        chequearAsiento(sector, asiento);
+        synchronized (cerrojos[sector]) {
+            return marcarVendido(sector, asiento);
+        }
+    }
+
+    /**
+     * Vende un conjunto de asientos de un mismo sector de forma atómica:
+     * o se venden todos, o no se vende ninguno.
+     *
+     * @param sector   Ordinal del sector
+     * @param asientos Números de asiento (comenzando en 1)
+     * @return true si todos los asientos estaban disponibles y se vendieron,
+     *         false si alguno ya estaba vendido (en ese caso no se modifica nada)
+     * @throws IllegalArgumentException si el sector o algún asiento están fuera de rango
+     */
+    public boolean venderTodos(int sector, int[] asientos) {
+        for (int asiento : asientos) {
+            chequearAsiento(sector, asiento);
+        }
+        synchronized (cerrojos[sector]) {
+            for (int i = 0; i < asientos.length; i++) {
+                if (!marcarVendido(sector, asientos[i])) {
+                    for (int j = 0; j < i; j++) {
+                        marcarDisponible(sector, asientos[j]);
+                    }
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Marca como vendidos muchos asientos de un sector de una vez, como al restaurar una
+     * instantánea: pone los bits y recién al final actualiza el contador, las rachas y el mapa
+     * de ocupación del sector, en lugar de hacerlo asiento por asiento.
+     *
+     * @param sector   Ordinal del sector
+     * @param asientos Números de asiento (comenzando en 1)
+     * @return true si todos los asientos estaban disponibles y se vendieron,
+     *         false si alguno ya estaba vendido (en ese caso no se modifica nada)
+     * @throws IllegalArgumentException si el sector o algún asiento están fuera de rango
+     */
+    public boolean restaurarVendidos(int sector, int[] asientos) {
+        for (int asiento : asientos) {
+            chequearAsiento(sector, asiento);
+        }
+        if (asientos.length == 0) {
+            return true;
+        }
+        synchronized (cerrojos[sector]) {
+            materializar(sector);
+            for (int i = 0; i < asientos.length; i++) {
+                int bit = asientos[i] - 1;
+                long palabra = palabra(sector, bit >>> 6);
+                if ((palabra & (1L << bit)) != 0) {
+                    for (int j = 0; j < i; j++) {
+                        int previo = asientos[j] - 1;
+                        guardarPalabra(sector, previo >>> 6, palabra(sector, previo >>> 6) & ~(1L << previo));
+                    }
+                    return false;
+                }
+                guardarPalabra(sector, bit >>> 6, palabra | (1L << bit));
+            }
+            cantidadVendidos.addAndGet(sector, asientos.length);
+            reconstruirRachas(sector);
+            if (filasSucias[sector] != null) {
+                Arrays.fill(filasSucias[sector], -1L);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Busca y vende de forma atómica la mejor ubicación de asientos juntos en un sector.
+     * Prefiere una racha contigua dentro de una sola fila, lo más adelante posible; si
+     * ninguna fila alcanza, toma las rachas más largas de filas consecutivas, también
+     * desde adelante. La búsqueda usa el índice de rachas por fila y no recorre asiento por asiento.
+     *
+     * @param sector   Ordinal del sector
+     * @param cantidad Cantidad de asientos pedidos
+     * @return Números de asiento vendidos, o null si no hay una ubicación posible
+     * @throws IllegalArgumentException si el sector es inválido o la cantidad no es positiva
+     */
+    public int[] venderMejoresAsientos(int sector, int cantidad) {
+        chequearSector(sector);
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad de asientos debe ser mayor que cero");
+        }
+        synchronized (cerrojos[sector]) {
+            int[] asientos = buscarEnUnaFila(sector, cantidad);
+            if (asientos == null) {
+                asientos = buscarEnFilasConsecutivas(sector, cantidad);
+            }
+            if (asientos != null) {
+                for (int asiento : asientos) {
+                    marcarVendido(sector, asiento);
+                }
+            }
+            return asientos;
+        }
+    }
+
+    /**
+     * Marca un asiento como disponible nuevamente.
+     *
+     * @param sector  Ordinal del sector
+     * @param asiento Número de asiento (comenzando en 1)
+     * @return true si el asiento estaba vendido, false si ya estaba disponible
+     * @throws IllegalArgumentException si el sector o el asiento están fuera de rango
+     */
+    public boolean liberar(int sector, int asiento) {
+        chequearAsiento(sector, asiento);
+        synchronized (cerrojos[sector]) {
+            return marcarDisponible(sector, asiento);
+        }
+    }
+
+    /**
+     * Cuenta los asientos vendidos de un sector mediante popcount.
+     *
+     * @param sector Ordinal del sector
+     * @return Cantidad de asientos vendidos en el sector
+     */
+    public int contarVendidos(int sector) {
+        chequearSector(sector);
+        return cantidadVendidos.get(sector);
+    }
+
+    /**
+     * Cuenta los asientos disponibles de un sector.
+     *
+     * @param sector Ordinal del sector
+     * @return Cantidad de asientos disponibles en el sector
+     */
+    public int contarDisponibles(int sector) {
+        return capacidades[sector] - contarVendidos(sector);
+    }
+
+    /**
+     * Cuenta los asientos vendidos en todos los sectores.
+     *
+     * @return Cantidad total de asientos vendidos
+     */
+    public int contarVendidos() {
+        int total = 0;
+        for (int s = 0; s < cantidadVendidos.length(); s++) {
+            total += cantidadVendidos.get(s);
+        }
+        return total;
+    }
+
+    /**
+     * Devuelve la disponibilidad de un sector como mapa asiento -> disponible.
+     * El mapa se construye a demanda y no refleja cambios posteriores.
+     *
+     * @param sector Ordinal del sector
+     * @return Mapa con asiento -> disponibilidad (true=disponible)
+     */
+    public Map<Integer, Boolean> comoMapa(int sector) {
+        chequearSector(sector);
+        Map<Integer, Boolean> mapa = new HashMap<>();
+        for (int asiento = 1; asiento <= capacidades[sector]; asiento++) {
+            mapa.put(asiento, estaDisponible(sector, asiento));
+        }
+        return mapa;
+    }
+
+    /**
+     * Devuelve el largo de la racha de asientos libres más larga de una fila.
+     *
+     * @param sector Ordinal del sector
+     * @param fila   Número de fila (comenzando en 1)
+     * @return Largo de la racha libre más larga de la fila
+     */
+    public int getRachaLibreFila(int sector, int fila) {
+        chequearSector(sector);
+        if (fila <= 0 || fila > cantidadFilas(sector)) {
+            throw new IllegalArgumentException("Fila fuera de rango");
+        }
+        return rachas[sector][hojas[sector] + fila - 1];
+    }
+
+    /**
+     * Completa el mapa de ocupación por fila de todos los sectores. Solo se recalculan, con popcount,
+     * las filas que cambiaron desde el pedido anterior.
+     *
+     * @param destino Mapa a completar, o null para crear uno nuevo; si no tiene la forma de este
+     *                inventario se crea uno nuevo
+     * @return Mapa completado (el mismo destino si pudo reutilizarse)
+     */
+    public MapaOcupacion mapaOcupacion(MapaOcupacion destino) {
+        if (destino == null || !destino.tieneForma(capacidades, asientosPorFila)) {
+            destino = new MapaOcupacion(capacidades, asientosPorFila);
+        }
+        for (int s = 0; s < capacidades.length; s++) {
+            synchronized (cerrojos[s]) {
+                actualizarVendidosPorFila(s);
+                destino.copiar(s, vendidosPorFila[s]);
+            }
+        }
+        return destino;
+    }
+
+    /**
+     * Indica si un sector ya tiene su copia privada de asientos o si todavía comparte la plantilla.
+     *
+     * @param sector Ordinal del sector
+     * @return true si el sector ya fue materializado
+     */
+    public boolean sectorMaterializado(int sector) {
+        chequearSector(sector);
+        return propio[sector];
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @return Cantidad de filas del sector
+     */
+    public int cantidadFilas(int sector) {
+        return (capacidades[sector] + asientosPorFila - 1) / asientosPorFila;
+    }
+
+    /**
+     * @return Cantidad de asientos por fila
+     */
+    public int getAsientosPorFila() {
+        return asientosPorFila;
+    }
+
+    /**
+     * @return Cantidad de sectores del inventario
+     */
+    public int cantidadSectores() {
+        return capacidades.length;
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @return Capacidad del sector
+     */
+    public int getCapacidad(int sector) {
+        chequearSector(sector);
+        return capacidades[sector];
+    }
+
+    /**
+     * Pone en 1 el bit de un asiento. Debe llamarse con el cerrojo del sector tomado.
+     *
+     * @param sector  Ordinal del sector
+     * @param asiento Número de asiento
+     * @return true si el asiento estaba disponible
+     */
+    private boolean marcarVendido(int sector, int asiento) {
+        int bit = asiento - 1;
+        long mascara = 1L << bit;
+        long palabra = palabra(sector, bit >>> 6);
+        if ((palabra & mascara) != 0) {
+            return false;
+        }
+        materializar(sector);
+        guardarPalabra(sector, bit >>> 6, palabra | mascara);
+        cantidadVendidos.incrementAndGet(sector);
+        actualizarRacha(sector, bit / asientosPorFila);
+        marcarFilaSucia(sector, bit / asientosPorFila);
+        return true;
+    }
+
+    /**
+     * Pone en 0 el bit de un asiento. Debe llamarse con el cerrojo del sector tomado.
+     *
+     * @param sector  Ordinal del sector
+     * @param asiento Número de asiento
+     * @return true si el asiento estaba vendido
+     */
+    private boolean marcarDisponible(int sector, int asiento) {
+        int bit = asiento - 1;
+        long mascara = 1L << bit;
+        long palabra = palabra(sector, bit >>> 6);
+        if ((palabra & mascara) == 0) {
+            return false;
+        }
+        materializar(sector);
+        guardarPalabra(sector, bit >>> 6, palabra & ~mascara);
+        cantidadVendidos.decrementAndGet(sector);
+        actualizarRacha(sector, bit / asientosPorFila);
+        marcarFilaSucia(sector, bit / asientosPorFila);
+        return true;
+    }
+
+    /**
+     * Marca una fila para que se recalculen sus vendidos en el próximo mapa de ocupación.
+     * Debe llamarse con el cerrojo del sector tomado.
+     *
+     * @param sector Ordinal del sector
+     * @param fila   Fila (desde 0)
+     */
+    private void marcarFilaSucia(int sector, int fila) {
+        long[] sucias = filasSucias[sector];
+        if (sucias != null) {
+            sucias[fila >>> 6] |= 1L << fila;
+        }
+    }
+
+    /**
+     * Recalcula los vendidos de las filas sucias de un sector; la primera vez crea las
+     * estructuras con todas las filas sucias. Debe llamarse con el cerrojo del sector tomado.
+     *
+     * @param sector Ordinal del sector
+     */
+    private void actualizarVendidosPorFila(int sector) {
+        int filas = cantidadFilas(sector);
+        if (vendidosPorFila[sector] == null) {
+            vendidosPorFila[sector] = new int[filas];
+            filasSucias[sector] = new long[(filas + 63) >>> 6];
+            Arrays.fill(filasSucias[sector], -1L);
+        }
+        int[] porFila = vendidosPorFila[sector];
+        long[] sucias = filasSucias[sector];
+        for (int i = 0; i < sucias.length; i++) {
+            long pendientes = sucias[i];
+            while (pendientes != 0) {
+                int fila = (i << 6) + Long.numberOfTrailingZeros(pendientes);
+                pendientes &= pendientes - 1;
+                if (fila < filas) {
+                    porFila[fila] = contarBits(sector, fila * asientosPorFila, finFila(sector, fila));
+                }
+            }
+            sucias[i] = 0;
+        }
+    }
+
+    /**
+     * Cuenta los bits en 1 de un rango con popcount, de a 64 bits por vez.
+     *
+     * @param sector Ordinal del sector
+     * @param desde  Primer bit del rango (inclusive)
+     * @param hasta  Último bit del rango (exclusive)
+     * @return Cantidad de asientos vendidos en el rango
+     */
+    private int contarBits(int sector, int desde, int hasta) {
+        int total = 0;
+        for (int indice = desde >>> 6; (indice << 6) < hasta; indice++) {
+            long palabra = palabra(sector, indice);
+            if ((indice << 6) < desde) {
+                palabra &= -1L << desde;
+            }
+            int restantes = hasta - (indice << 6);
+            if (restantes < 64) {
+                palabra &= (1L << restantes) - 1;
+            }
+            total += Long.bitCount(palabra);
+        }
+        return total;
+    }
+
+    /**
+     * Lee una palabra de 64 asientos de un sector, del heap o de la región mapeada.
+     *
+     * @param sector Ordinal del sector
+     * @param indice Índice de la palabra
+     * @return Palabra con un bit por asiento (1 = vendido)
+     */
+    private long palabra(int sector, int indice) {
+        return mapeados == null ? vendidos[sector][indice] : mapeados[sector].get(indice);
+    }
+
+    /**
+     * Escribe una palabra de 64 asientos de un sector. Debe llamarse con el cerrojo del sector
+     * tomado y, si el inventario está en el heap, con el sector ya materializado.
+     *
+     * @param sector Ordinal del sector
+     * @param indice Índice de la palabra
+     * @param valor  Palabra a escribir
+     */
+    private void guardarPalabra(int sector, int indice, long valor) {
+        if (mapeados == null) {
+            vendidos[sector][indice] = valor;
+        } else {
+            mapeados[sector].put(indice, valor);
+        }
+    }
+
+    /**
+     * Hace la copia privada de los asientos y rachas de un sector si todavía comparte los de la plantilla.
+     * Debe llamarse con el cerrojo del sector tomado.
+     *
+     * @param sector Ordinal del sector
+     */
+    private void materializar(int sector) {
+        if (!propio[sector]) {
+            vendidos[sector] = vendidos[sector].clone();
+            rachas[sector] = rachas[sector].clone();
+            tramos[sector] = tramos[sector].clone();
+            propio[sector] = true;
+        }
+    }
+
+    /**
+     * Valida los parámetros y crea las estructuras comunes a los dos tipos de almacenamiento:
+     * cerrojos, contadores y espacio para las rachas.
+     *
+     * @param capacidades     Capacidad de cada sector
+     * @param asientosPorFila Cantidad de asientos por fila
+     * @throws IllegalArgumentException si no hay sectores o alguna capacidad no es positiva
+     */
+    private void inicializar(int[] capacidades, int asientosPorFila) {
+        if (capacidades == null || capacidades.length == 0) {
+            throw new IllegalArgumentException("Debe indicarse al menos un sector");
+        }
+        if (asientosPorFila <= 0) {
+            throw new IllegalArgumentException("La cantidad de asientos por fila debe ser mayor que cero");
+        }
+        this.capacidades = capacidades.clone();
+        this.asientosPorFila = asientosPorFila;
+        this.cerrojos = new Object[capacidades.length];
+        this.hojas = new int[capacidades.length];
+        this.rachas = new int[capacidades.length][];
+        this.tramos = new int[capacidades.length][];
+        for (int s = 0; s < capacidades.length; s++) {
+            if (capacidades[s] <= 0) {
+                throw new IllegalArgumentException("La capacidad del sector debe ser mayor que cero");
+            }
+            cerrojos[s] = new Object();
+        }
+        this.propio = new boolean[capacidades.length];
+        Arrays.fill(propio, true);
+        this.cantidadVendidos = new AtomicIntegerArray(capacidades.length);
+        this.vendidosPorFila = new int[capacidades.length][];
+        this.filasSucias = new long[capacidades.length][];
+    }
+
+    /**
+     * Recalcula todas las rachas de un sector a partir de sus bits.
+     *
+     * @param sector Ordinal del sector
+     */
+    private void reconstruirRachas(int sector) {
+        int[] arbol = rachas[sector];
+        int tamanio = hojas[sector];
+        for (int fila = 0; fila < cantidadFilas(sector); fila++) {
+            int racha = (int) rachaMasLarga(sector, fila);
+            arbol[tamanio + fila] = racha;
+            hojaTramo(tramos[sector], tamanio + fila, racha);
+        }
+        for (int i = tamanio - 1; i >= 1; i--) {
+            arbol[i] = Math.max(arbol[2 * i], arbol[2 * i + 1]);
+            combinarTramos(tramos[sector], i);
+        }
+    }
+
+    /**
+     * Crea el árbol de rachas de un sector con todas las filas libres.
+     *
+     * @param sector Ordinal del sector
+     */
+    private void inicializarRachas(int sector) {
+        int filas = cantidadFilas(sector);
+        int tamanio = Integer.highestOneBit(filas);
+        if (tamanio < filas) {
+            tamanio <<= 1;
+        }
+        hojas[sector] = tamanio;
+        rachas[sector] = new int[2 * tamanio];
+        tramos[sector] = new int[2 * tamanio * CAMPOS_TRAMO];
+        for (int hoja = 0; hoja < tamanio; hoja++) {
+            int racha = hoja < filas ? finFila(sector, hoja) - hoja * asientosPorFila : 0;
+            rachas[sector][tamanio + hoja] = racha;
+            hojaTramo(tramos[sector], tamanio + hoja, racha);
+        }
+        for (int i = tamanio - 1; i >= 1; i--) {
+            rachas[sector][i] = Math.max(rachas[sector][2 * i], rachas[sector][2 * i + 1]);
+            combinarTramos(tramos[sector], i);
+        }
+    }
+
+    /**
+     * Recalcula la racha libre más larga de una fila y propaga el cambio hacia la raíz en los
+     * dos árboles. Debe llamarse con el cerrojo del sector tomado.
+     *
+     * @param sector Ordinal del sector
+     * @param fila   Fila (desde 0)
+     */
+    private void actualizarRacha(int sector, int fila) {
+        int[] arbol = rachas[sector];
+        int[] tramo = tramos[sector];
+        int nodo = hojas[sector] + fila;
+        int racha = (int) rachaMasLarga(sector, fila);
+        if (arbol[nodo] == racha) {
+            return;
+        }
+        arbol[nodo] = racha;
+        hojaTramo(tramo, nodo, racha);
+        for (nodo >>>= 1; nodo >= 1; nodo >>>= 1) {
+            int maximo = Math.max(arbol[2 * nodo], arbol[2 * nodo + 1]);
+            boolean cambioRacha = arbol[nodo] != maximo;
+            arbol[nodo] = maximo;
+            if (!combinarTramos(tramo, nodo) && !cambioRacha) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Carga en el árbol de tramos la hoja de una fila.
+     *
+     * @param tramo Árbol de tramos del sector
+     * @param nodo  Nodo hoja
+     * @param racha Racha libre más larga de la fila (0 si está completa o no existe)
+     */
+    private static void hojaTramo(int[] tramo, int nodo, int racha) {
+        int base = nodo * CAMPOS_TRAMO;
+        tramo[base + PREFIJO] = racha;
+        tramo[base + SUFIJO] = racha;
+        tramo[base + MEJOR] = racha;
+        tramo[base + SUMA] = racha > 0 ? racha : -1;
+    }
+
+    /**
+     * Recalcula un nodo interno del árbol de tramos a partir de sus dos hijos.
+     *
+     * @param tramo Árbol de tramos del sector
+     * @param nodo  Nodo interno
+     * @return true si el nodo cambió
+     */
+    private static boolean combinarTramos(int[] tramo, int nodo) {
+        int base = nodo * CAMPOS_TRAMO;
+        int izquierdo = 2 * nodo * CAMPOS_TRAMO;
+        int derecho = izquierdo + CAMPOS_TRAMO;
+        int sumaIzquierdo = tramo[izquierdo + SUMA];
+        int sumaDerecho = tramo[derecho + SUMA];
+        int prefijo = sumaIzquierdo >= 0 ? sumaIzquierdo + tramo[derecho + PREFIJO] : tramo[izquierdo + PREFIJO];
+        int sufijo = sumaDerecho >= 0 ? sumaDerecho + tramo[izquierdo + SUFIJO] : tramo[derecho + SUFIJO];
+        int mejor = Math.max(Math.max(tramo[izquierdo + MEJOR], tramo[derecho + MEJOR]),
+                tramo[izquierdo + SUFIJO] + tramo[derecho + PREFIJO]);
+        int suma = sumaIzquierdo >= 0 && sumaDerecho >= 0 ? sumaIzquierdo + sumaDerecho : -1;
+        if (tramo[base + PREFIJO] == prefijo && tramo[base + SUFIJO] == sufijo && tramo[base + MEJOR] == mejor
+                && tramo[base + SUMA] == suma) {
+            return false;
+        }
+        tramo[base + PREFIJO] = prefijo;
+        tramo[base + SUFIJO] = sufijo;
+        tramo[base + MEJOR] = mejor;
+        tramo[base + SUMA] = suma;
+        return true;
+    }
+
+    /**
+     * Busca la primera fila (la más adelante) con una racha libre de al menos la cantidad pedida
+     * y devuelve los primeros asientos de esa racha.
+     *
+     * @param sector   Ordinal del sector
+     * @param cantidad Cantidad de asientos pedidos
+     * @return Números de asiento, o null si ninguna fila tiene una racha suficiente
+     */
+    private int[] buscarEnUnaFila(int sector, int cantidad) {
+        int[] arbol = rachas[sector];
+        if (arbol[1] < cantidad) {
+            return null;
+        }
+        int nodo = 1;
+        while (nodo < hojas[sector]) {
+            nodo = arbol[2 * nodo] >= cantidad ? 2 * nodo : 2 * nodo + 1;
+        }
+        int fila = nodo - hojas[sector];
+
+        int inicio = fila * asientosPorFila;
+        int fin = finFila(sector, fila);
+        int libre = siguienteBit(sector, inicio, fin, false);
+        while (libre < fin) {
+            int ocupado = siguienteBit(sector, libre, fin, true);
+            if (ocupado - libre >= cantidad) {
+                return asientosDesde(libre, cantidad);
+            }
+            libre = siguienteBit(sector, ocupado, fin, false);
+        }
+        return null;
+    }
+
+    /**
+     * Busca el primer grupo de filas consecutivas, desde adelante, cuyas rachas libres más
+     * largas suman al menos la cantidad pedida, y arma la ubicación con esas rachas.
+     * Baja por el árbol de tramos buscando la primera fila en la que la suma de las rachas de
+     * su grupo de filas con lugar alcanza la cantidad; desde ahí vuelve hasta el principio del
+     * grupo, recorriendo solo filas que forman parte de la ubicación.
+     *
+     * @param sector   Ordinal del sector
+     * @param cantidad Cantidad de asientos pedidos
+     * @return Números de asiento, o null si no hay filas consecutivas suficientes
+     */
+    private int[] buscarEnFilasConsecutivas(int sector, int cantidad) {
+        int[] tramo = tramos[sector];
+        if (tramo[CAMPOS_TRAMO + MEJOR] < cantidad) {
+            return null;
+        }
+        int nodo = 1;
+        int anterior = 0;
+        while (nodo < hojas[sector]) {
+            int izquierdo = 2 * nodo * CAMPOS_TRAMO;
+            if (Math.max(tramo[izquierdo + MEJOR], anterior + tramo[izquierdo + PREFIJO]) >= cantidad) {
+                nodo = 2 * nodo;
+            } else {
+                anterior = tramo[izquierdo + SUMA] >= 0 ? anterior + tramo[izquierdo + SUMA] : tramo[izquierdo + SUFIJO];
+                nodo = 2 * nodo + 1;
+            }
+        }
+
+        int[] arbol = rachas[sector];
+        int primera = nodo - hojas[sector];
+        while (primera > 0 && arbol[hojas[sector] + primera - 1] > 0) {
+            primera--;
+        }
+        int[] asientos = new int[cantidad];
+        int tomados = 0;
+        for (int f = primera; tomados < cantidad; f++) {
+            long mejor = rachaMasLarga(sector, f);
+            int inicio = (int) (mejor >>> 32);
+            int cuantos = Math.min((int) mejor, cantidad - tomados);
+            for (int i = 0; i < cuantos; i++) {
+                asientos[tomados++] = inicio + i + 1;
+            }
+        }
+        return asientos;
+    }
+
+    /**
+     * Calcula la racha libre más larga de una fila, sin crear objetos.
+     *
+     * @param sector Ordinal del sector
+     * @param fila   Fila (desde 0)
+     * @return Bit de inicio de la racha en los 32 bits altos y su largo en los 32 bajos
+     *         (largo 0 si la fila está completa)
+     */
+    private long rachaMasLarga(int sector, int fila) {
+        int fin = finFila(sector, fila);
+        int mejorInicio = 0;
+        int mejorLargo = 0;
+        int libre = siguienteBit(sector, fila * asientosPorFila, fin, false);
+        while (libre < fin) {
+            int ocupado = siguienteBit(sector, libre, fin, true);
+            if (ocupado - libre > mejorLargo) {
+                mejorInicio = libre;
+                mejorLargo = ocupado - libre;
+            }
+            libre = siguienteBit(sector, ocupado, fin, false);
+        }
+        return ((long) mejorInicio << 32) | mejorLargo;
+    }
+
+    /**
+     * Busca el siguiente bit con el valor pedido dentro de un rango, de a 64 bits por vez.
+     *
+     * @param sector         Ordinal del sector
+     * @param desde          Primer bit del rango (inclusive)
+     * @param hasta          Último bit del rango (exclusive)
+     * @param buscarVendido  true para buscar un asiento vendido, false para uno libre
+     * @return Posición del bit encontrado, o hasta si no hay ninguno en el rango
+     */
+    private int siguienteBit(int sector, int desde, int hasta, boolean buscarVendido) {
+        if (desde >= hasta) {
+            return hasta;
+        }
+        int indice = desde >>> 6;
+        long palabra = (buscarVendido ? palabra(sector, indice) : ~palabra(sector, indice)) & (-1L << desde);
+        while (true) {
+            if (palabra != 0) {
+                return Math.min((indice << 6) + Long.numberOfTrailingZeros(palabra), hasta);
+            }
+            indice++;
+            if ((indice << 6) >= hasta) {
+                return hasta;
+            }
+            palabra = buscarVendido ? palabra(sector, indice) : ~palabra(sector, indice);
+        }
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @param fila   Fila (desde 0)
+     * @return Bit siguiente al último asiento de la fila
+     */
+    private int finFila(int sector, int fila) {
+        return Math.min((fila + 1) * asientosPorFila, capacidades[sector]);
+    }
+
+    /**
+     * @param bitInicial Bit del primer asiento
+     * @param cantidad   Cantidad de asientos consecutivos
+     * @return Números de asiento consecutivos a partir del bit indicado
+     */
+    private int[] asientosDesde(int bitInicial, int cantidad) {
+        int[] asientos = new int[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            asientos[i] = bitInicial + i + 1;
+        }
+        return asientos;
+    }
+
+    /**
+     * Verifica que el ordinal del sector sea válido.
+     *
+     * @param sector Ordinal del sector
+     * @throws IllegalArgumentException si el sector está fuera de rango
+     */
+    private void chequearSector(int sector) {
+        if (sector < 0 || sector >= capacidades.length) {
+            throw new IllegalArgumentException("Sector no válido: " + sector);
+        }
+    }
+
+    /**
+     * Verifica que el sector y el número de asiento sean válidos.
+     *
+     * @param sector  Ordinal del sector
+     * @param asiento Número de asiento
+     * @throws IllegalArgumentException si el sector o el asiento están fuera de rango
+     */
+    private void chequearAsiento(int sector, int asiento) {
+        chequearSector(sector);
+        if (asiento <= 0 || asiento > capacidades[sector]) {
+            throw new IllegalArgumentException("Asiento fuera de rango");
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de calor de la ocupación de una función numerada: cantidad de asientos vendidos en
+ * cada fila de cada sector. Las filas de todos los sectores se guardan en un único arreglo de
+ * enteros, uno a continuación del otro, para que el mapa sea compacto y pueda reutilizarse:
+ * un tablero que consulta muchas funciones cada segundo pasa el mismo mapa en cada consulta
+ * (ver {@link Funcion#getMapaOcupacion(MapaOcupacion)}) y no genera basura.
+ *
+ * IREP (Invariante de Representación):
+ * - capacidades != null && capacidades.length > 0, asientosPorFila > 0
+ * - inicioSector.length == capacidades.length + 1, inicioSector[0] == 0
+ * - inicioSector[s + 1] - inicioSector[s] == cantidad de filas del sector s
+ * - vendidos.length == inicioSector[capacidades.length]
+ * - 0 <= vendidos[inicioSector[s] + f] <= getCapacidadFila(s, f + 1)
+ */
+public final class MapaOcupacion {
+    private final int[] capacidades;
+    private final int asientosPorFila;
+    private final int[] inicioSector;
+    private final int[] vendidos;
+
+    /**
+     * Crea un mapa vacío con la forma de un inventario.
+     *
+     * @param capacidades     Capacidad de cada sector
+     * @param asientosPorFila Cantidad de asientos por fila
+     */
+    MapaOcupacion(int[] capacidades, int asientosPorFila) {
+        this.capacidades = capacidades.clone();
+        this.asientosPorFila = asientosPorFila;
+        this.inicioSector = new int[capacidades.length + 1];
+        for (int s = 0; s < capacidades.length; s++) {
+            inicioSector[s + 1] = inicioSector[s] + (capacidades[s] + asientosPorFila - 1) / asientosPorFila;
+        }
+        this.vendidos = new int[inicioSector[capacidades.length]];
+    }
+
+    /**
+     * @param capacidades     Capacidad de cada sector
+     * @param asientosPorFila Cantidad de asientos por fila
+     * @return true si el mapa puede reutilizarse para un inventario con esa forma
+     */
+    boolean tieneForma(int[] capacidades, int asientosPorFila) {
+        return this.asientosPorFila == asientosPorFila && Arrays.equals(this.capacidades, capacidades);
+    }
+
+    /**
+     * Copia los vendidos por fila de un sector.
+     *
+     * @param sector Ordinal del sector
+     * @param filas  Vendidos de cada fila del sector
+     */
+    void copiar(int sector, int[] filas) {
+        System.arraycopy(filas, 0, vendidos, inicioSector[sector], inicioSector[sector + 1] - inicioSector[sector]);
+    }
+
+    /**
+     * Copia este mapa en otro con la misma forma.
+     *
+     * @param destino Mapa a completar, o null para crear uno nuevo; si no tiene la misma forma
+     *                se crea uno nuevo
+     * @return Mapa completado (el mismo destino si pudo reutilizarse)
+     */
+    MapaOcupacion copiarEn(MapaOcupacion destino) {
+        if (destino == null || !destino.tieneForma(capacidades, asientosPorFila)) {
+            destino = new MapaOcupacion(capacidades, asientosPorFila);
+        }
+        System.arraycopy(vendidos, 0, destino.vendidos, 0, vendidos.length);
+        return destino;
+    }
+
+    /**
+     * @return Cantidad de sectores
+     */
+    public int cantidadSectores() {
+        return capacidades.length;
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @return Cantidad de filas del sector
+     */
+    public int cantidadFilas(int sector) {
+        return inicioSector[sector + 1] - inicioSector[sector];
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @param fila   Número de fila (comenzando en 1)
+     * @return Asientos vendidos en la fila
+     */
+    public int getVendidos(int sector, int fila) {
+        return vendidos[indice(sector, fila)];
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @param fila   Número de fila (comenzando en 1)
+     * @return Cantidad de asientos de la fila (la última fila de un sector puede ser más corta)
+     */
+    public int getCapacidadFila(int sector, int fila) {
+        indice(sector, fila);
+        return Math.min(fila * asientosPorFila, capacidades[sector]) - (fila - 1) * asientosPorFila;
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @param fila   Número de fila (comenzando en 1)
+     * @return Fracción de la fila vendida, entre 0.0 y 1.0
+     */
+    public double getOcupacion(int sector, int fila) {
+        return (double) getVendidos(sector, fila) / getCapacidadFila(sector, fila);
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @return Asientos vendidos en el sector, según las filas del mapa
+     */
+    public int getVendidosSector(int sector) {
+        int total = 0;
+        for (int i = inicioSector[sector]; i < inicioSector[sector + 1]; i++) {
+            total += vendidos[i];
+        }
+        return total;
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @param fila   Número de fila (comenzando en 1)
+     * @return Posición de la fila en el arreglo de vendidos
+     * @throws IllegalArgumentException si el sector o la fila están fuera de rango
+     */
+    private int indice(int sector, int fila) {
+        if (sector < 0 || sector >= capacidades.length || fila <= 0 || fila > cantidadFilas(sector)) {
+            throw new IllegalArgumentException("Fila fuera de rango");
+        }
+        return inicioSector[sector] + fila - 1;
+    }
+}
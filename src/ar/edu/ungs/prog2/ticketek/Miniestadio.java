@@ -73,19 +73,27 @@ public class Miniestadio extends SedeNumerada {
      * - El porcentaje adicional por sector
      * - El costo fijo de consumición
      *
-     * @param precioBase Precio base de la entrada
-     * @param sector     Nombre del sector
+     * @param precioBase    Precio base de la entrada
+     * @param ordinalSector Ordinal del sector
      * @return Precio total de la entrada para ese sector
-     * @throws IllegalArgumentException si el sector no existe
      */
     @Override
-    public double calcularPrecioEntrada(double precioBase, String sector) {
-        for (int i = 0; i < this.getSectores().length; i++) {
-            if (this.getSectores()[i].equals(sector)) {
-                return precioBase + (precioBase * (this.getPorcentajeAdicional()[i] / 100.0)) + precioConsumicion;
-            }
-        }
-        throw new IllegalArgumentException("El sector no es válido para la sede");
+    public double calcularPrecioEntrada(double precioBase, int ordinalSector) {
+        return precioBase + (precioBase * (this.getPorcentajeAdicional()[ordinalSector] / 100.0)) + precioConsumicion;
+    }
+
+    /**
+     * @return Cantidad de puestos de venta o consumo
+     */
+    public int getCantidadPuestos() {
+        return cantidadPuestos;
+    }
+
+    /**
+     * @return Precio fijo adicional por consumición
+     */
+    public double getPrecioConsumicion() {
+        return precioConsumicion;
     }
 
     /**
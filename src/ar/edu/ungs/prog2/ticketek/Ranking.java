@@ -0,0 +1,257 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Tabla de posiciones que se mantiene al día con cada cambio, en lugar de recorrer y ordenar
+ * todo el catálogo en cada consulta.
+ *
+ * Las escrituras no toman cerrojos: cada clave tiene su celda con un LongAdder, y un cambio solo
+ * suma en el acumulador y, si la celda no estaba marcada, la encola como pendiente. Las claves
+ * cuyo valor se calcula (por ejemplo, la ocupación de una función) solo se marcan, y el cálculo
+ * se hace al leer. Las lecturas toman el monitor de la tabla, aplican los pendientes al TreeSet
+ * ordenado (O(log n) por clave que cambió, una vez por lectura aunque haya cambiado muchas
+ * veces) y recorren los N primeros.
+ *
+ * Los empates se ordenan por antigüedad: primero la clave que entró antes a la tabla.
+ *
+ * IREP (Invariante de Representación):
+ * - celdas != null && pendientes != null && orden != null
+ * - Para toda clave k en celdas.keySet(): celdas.get(k).clave == k
+ * - Las llegadas de las celdas son únicas y crecientes
+ * - Toda celda cuyo valor cambió desde la última vez que se aplicó tiene pendiente == true y
+ *   está en pendientes (una celda está a lo sumo una vez en pendientes)
+ * - orden contiene exactamente las posiciones publicadas de las celdas aplicadas alguna vez
+ *   que siguen en celdas; orden y las posiciones publicadas solo se leen y modifican con el
+ *   monitor de la tabla tomado
+ * - Las posiciones son inmutables: aplicar un valor nuevo reemplaza la posición en orden
+ *
+ * @param <K> Tipo de las claves (nombres, funciones, etc.)
+ */
+public class Ranking<K> {
+    private static final Comparator<Posicion<?>> MAYOR_PRIMERO = Comparator
+            .comparingLong((Posicion<?> p) -> p.valor).reversed()
+            .thenComparingLong(p -> p.llegada);
+
+    private final ConcurrentHashMap<K, Celda<K>> celdas = new ConcurrentHashMap<>();
+    private final Queue<Celda<K>> pendientes = new ConcurrentLinkedQueue<>();
+    private final AtomicLong llegadas = new AtomicLong();
+    private final TreeSet<Posicion<K>> orden = new TreeSet<>(MAYOR_PRIMERO);
+
+    /**
+     * Agrega una clave con valor 0 si todavía no está en la tabla. Su valor cambia con sumar.
+     *
+     * @param clave Clave a agregar
+     */
+    public void agregar(K clave) {
+        celda(clave);
+    }
+
+    /**
+     * Agrega una clave cuyo valor se calcula, si todavía no está en la tabla. El cálculo se hace
+     * al leer la tabla, solo si la clave se marcó desde la lectura anterior.
+     *
+     * @param clave   Clave a agregar
+     * @param calculo Cálculo del valor actual de la clave
+     */
+    public void agregar(K clave, LongSupplier calculo) {
+        celdas.computeIfAbsent(clave, k -> nuevaCelda(k, calculo));
+    }
+
+    /**
+     * Suma una variación al valor de una clave; si la clave no estaba, empieza en 0.
+     *
+     * @param clave     Clave a actualizar
+     * @param variacion Variación del valor (negativa para restar)
+     */
+    public void sumar(K clave, long variacion) {
+        Celda<K> celda = celda(clave);
+        celda.suma.add(variacion);
+        marcar(celda);
+    }
+
+    /**
+     * Marca que el valor calculado de una clave puede haber cambiado. No hace nada si la clave
+     * no está en la tabla.
+     *
+     * @param clave Clave a marcar
+     */
+    public void marcar(K clave) {
+        Celda<K> celda = celdas.get(clave);
+        if (celda != null) {
+            marcar(celda);
+        }
+    }
+
+    /**
+     * @param clave Clave a quitar de la tabla
+     */
+    public synchronized void quitar(K clave) {
+        Celda<K> celda = celdas.remove(clave);
+        if (celda != null && celda.publicada != null) {
+            orden.remove(celda.publicada);
+            celda.publicada = null;
+        }
+    }
+
+    /**
+     * @param cantidad Cantidad de posiciones pedidas
+     * @return Las primeras posiciones, de mayor a menor valor (menos si la tabla es más corta)
+     * @throws IllegalArgumentException si la cantidad es negativa
+     */
+    public synchronized List<Posicion<K>> primeros(int cantidad) {
+        if (cantidad < 0) {
+            throw new IllegalArgumentException("La cantidad no puede ser negativa");
+        }
+        aplicarPendientes();
+        List<Posicion<K>> resultado = new ArrayList<>(Math.min(cantidad, orden.size()));
+        Iterator<Posicion<K>> iterador = orden.iterator();
+        while (resultado.size() < cantidad && iterador.hasNext()) {
+            resultado.add(iterador.next());
+        }
+        return resultado;
+    }
+
+    /**
+     * @param clave Clave buscada
+     * @return Valor actual de la clave, o 0 si no está en la tabla
+     */
+    public long getValor(K clave) {
+        Celda<K> celda = celdas.get(clave);
+        return celda == null ? 0 : celda.valor();
+    }
+
+    /**
+     * @return Cantidad de claves en la tabla
+     */
+    public int tamanio() {
+        return celdas.size();
+    }
+
+    /**
+     * @param clave Clave buscada
+     * @return Celda de la clave, creada con valor 0 si no estaba
+     */
+    private Celda<K> celda(K clave) {
+        Celda<K> celda = celdas.get(clave);
+        return celda != null ? celda : celdas.computeIfAbsent(clave, k -> nuevaCelda(k, null));
+    }
+
+    /**
+     * Crea la celda de una clave nueva y la encola para que aparezca en la próxima lectura.
+     */
+    private Celda<K> nuevaCelda(K clave, LongSupplier calculo) {
+        Celda<K> celda = new Celda<>(clave, calculo, llegadas.getAndIncrement());
+        celda.pendiente.set(true);
+        pendientes.add(celda);
+        return celda;
+    }
+
+    /**
+     * Encola una celda si no estaba pendiente. Leer la marca antes de intentar cambiarla evita
+     * competir por ella cuando una clave cambia muchas veces entre dos lecturas.
+     *
+     * @param celda Celda cuyo valor cambió
+     */
+    private void marcar(Celda<K> celda) {
+        if (!celda.pendiente.get() && celda.pendiente.compareAndSet(false, true)) {
+            pendientes.add(celda);
+        }
+    }
+
+    /**
+     * Aplica al orden los valores de las celdas pendientes. La marca se limpia antes de leer el
+     * valor: un cambio concurrente posterior vuelve a encolar la celda y no se pierde.
+     * Se llama con el monitor de la tabla tomado.
+     */
+    private void aplicarPendientes() {
+        Celda<K> celda;
+        while ((celda = pendientes.poll()) != null) {
+            celda.pendiente.set(false);
+            if (celdas.get(celda.clave) != celda) {
+                continue;
+            }
+            long valor = celda.valor();
+            Posicion<K> actual = celda.publicada;
+            if (actual != null) {
+                if (actual.valor == valor) {
+                    continue;
+                }
+                orden.remove(actual);
+            }
+            Posicion<K> nueva = new Posicion<>(celda.clave, valor, celda.llegada);
+            orden.add(nueva);
+            celda.publicada = nueva;
+        }
+    }
+
+    /**
+     * Estado de una clave: su acumulador o su cálculo, su marca de pendiente y la posición que
+     * ocupa en el orden.
+     */
+    private static final class Celda<K> {
+        private final K clave;
+        private final LongSupplier calculo;
+        private final long llegada;
+        private final LongAdder suma = new LongAdder();
+        private final AtomicBoolean pendiente = new AtomicBoolean();
+        private Posicion<K> publicada;
+
+        private Celda(K clave, LongSupplier calculo, long llegada) {
+            this.clave = clave;
+            this.calculo = calculo;
+            this.llegada = llegada;
+        }
+
+        private long valor() {
+            return calculo != null ? calculo.getAsLong() : suma.sum();
+        }
+    }
+
+    /**
+     * Posición de una clave en la tabla, con su valor en el momento de la consulta.
+     *
+     * @param <K> Tipo de la clave
+     */
+    public static final class Posicion<K> {
+        private final K clave;
+        private final long valor;
+        private final long llegada;
+
+        private Posicion(K clave, long valor, long llegada) {
+            this.clave = clave;
+            this.valor = valor;
+            this.llegada = llegada;
+        }
+
+        /**
+         * @return Clave de la posición
+         */
+        public K getClave() {
+            return clave;
+        }
+
+        /**
+         * @return Valor de la clave
+         */
+        public long getValor() {
+            return valor;
+        }
+
+        @Override
+        public String toString() {
+            return clave + ": " + valor;
+        }
+    }
+}
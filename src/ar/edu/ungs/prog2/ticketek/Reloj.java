@@ -0,0 +1,116 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Clase que centraliza la hora del sistema para Ticketek.
+ * El reloj puede reemplazarse (por ejemplo, por uno fijo en las pruebas) y el día actual
+ * se guarda en caché hasta la próxima medianoche, de modo que consultar "hoy" solo lee
+ * el reloj y compara dos números, sin crear objetos ni consultar la zona horaria.
+ *
+ * IREP (Invariante de Representación):
+ * - reloj != null
+ * - cache != null
+ * - cache.hoy es el día (contado desde 01/01/1970) del instante reloj.millis() para todo
+ *   instante en [cache.inicio, cache.fin), en la zona del reloj
+ */
+public final class Reloj {
+    private static volatile Clock reloj = Clock.systemDefaultZone();
+    private static volatile DiaCacheado cache = new DiaCacheado(0, Long.MIN_VALUE, Long.MIN_VALUE);
+
+    private Reloj() {
+    }
+
+    /**
+     * Reemplaza el reloj usado por el sistema y descarta el día en caché.
+     *
+     * @param nuevoReloj Reloj a usar
+     * @throws IllegalArgumentException si el reloj es null
+     */
+    public static void usar(Clock nuevoReloj) {
+        if (nuevoReloj == null) {
+            throw new IllegalArgumentException("El reloj no puede ser null");
+        }
+        reloj = nuevoReloj;
+        cache = new DiaCacheado(0, Long.MIN_VALUE, Long.MIN_VALUE);
+    }
+
+    /**
+     * Vuelve a usar el reloj del sistema en la zona horaria por defecto.
+     */
+    public static void restablecer() {
+        usar(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @return Instante actual en milisegundos según el reloj en uso
+     */
+    public static long millis() {
+        return reloj.millis();
+    }
+
+    /**
+     * Devuelve el día actual contado en días desde el 01/01/1970.
+     * Solo recalcula el día cuando el reloj cruza la medianoche (o retrocede).
+     *
+     * @return Día actual según el reloj en uso
+     */
+    public static int hoy() {
+        Clock actual = reloj;
+        long ahora = actual.millis();
+        DiaCacheado dia = cache;
+        if (ahora >= dia.inicio && ahora < dia.fin) {
+            return dia.hoy;
+        }
+        return recalcular(actual, ahora);
+    }
+
+    /**
+     * @return Instante en milisegundos de la medianoche con que empezó el día actual, en la zona del reloj
+     */
+    public static long inicioDeHoy() {
+        int hoy = hoy();
+        DiaCacheado dia = cache;
+        if (dia.hoy == hoy) {
+            return dia.inicio;
+        }
+        return LocalDate.ofEpochDay(hoy).atStartOfDay(reloj.getZone()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Calcula el día correspondiente a un instante y lo deja en caché junto con sus límites.
+     *
+     * @param actual Reloj en uso
+     * @param ahora  Instante en milisegundos
+     * @return Día correspondiente al instante
+     */
+    private static int recalcular(Clock actual, long ahora) {
+        ZoneId zona = actual.getZone();
+        LocalDate fecha = LocalDate.ofInstant(Instant.ofEpochMilli(ahora), zona);
+        long inicio = fecha.atStartOfDay(zona).toInstant().toEpochMilli();
+        long fin = fecha.plusDays(1).atStartOfDay(zona).toInstant().toEpochMilli();
+        int hoy = (int) fecha.toEpochDay();
+        if (actual == reloj) {
+            cache = new DiaCacheado(hoy, inicio, fin);
+        }
+        return hoy;
+    }
+
+    /**
+     * Día en caché junto con el intervalo de instantes para el que es válido.
+     */
+    private static final class DiaCacheado {
+        private final int hoy;
+        private final long inicio;
+        private final long fin;
+
+        private DiaCacheado(int hoy, long inicio, long fin) {
+            this.hoy = hoy;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+    }
+}
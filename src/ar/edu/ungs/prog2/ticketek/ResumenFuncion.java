@@ -0,0 +1,156 @@
+package ar.edu.ungs.prog2.ticketek;
+
+/**
+ * Clase inmutable que resume una función archivada: vendidos y capacidad por sector,
+ * recaudación y cantidad de entradas. Reemplaza al inventario de asientos de las funciones
+ * pasadas, que ya no pueden venderse ni anularse.
+ *
+ * IREP (Invariante de Representación):
+ * - sectores != null && sectores.length > 0
+ * - vendidos.length == capacidades.length == sectores.length
+ * - Para todo s: 0 <= vendidos[s] <= capacidades[s]
+ * - recaudacion >= 0.0
+ * - cantidadEntradas >= 0
+ * - ocupacion es null (sede sin numerar) o el mapa por fila de la función al archivarse, con
+ *   ocupacion.getVendidosSector(s) == vendidos[s]
+ * - Ningún arreglo ni el mapa se modifican luego de construir el resumen (el mapa solo se copia)
+ */
+public final class ResumenFuncion {
+    private final String[] sectores;
+    private final int[] vendidos;
+    private final int[] capacidades;
+    private final double recaudacion;
+    private final int cantidadEntradas;
+    private final MapaOcupacion ocupacion;
+
+    /**
+     * Constructor que crea el resumen de una función.
+     *
+     * @param sectores         Nombres de los sectores, en el orden de la sede
+     * @param vendidos         Asientos vendidos por sector
+     * @param capacidades      Capacidad de cada sector
+     * @param recaudacion      Monto recaudado por las entradas vigentes de la función
+     * @param cantidadEntradas Cantidad de entradas vigentes de la función
+     * @throws IllegalArgumentException si los arreglos no tienen el mismo largo
+     */
+    public ResumenFuncion(String[] sectores, int[] vendidos, int[] capacidades, double recaudacion, int cantidadEntradas) {
+        this(sectores, vendidos, capacidades, recaudacion, cantidadEntradas, null);
+    }
+
+    /**
+     * Constructor que crea el resumen de una función numerada, con su mapa de ocupación por fila.
+     *
+     * @param sectores         Nombres de los sectores, en el orden de la sede
+     * @param vendidos         Asientos vendidos por sector
+     * @param capacidades      Capacidad de cada sector
+     * @param recaudacion      Monto recaudado por las entradas vigentes de la función
+     * @param cantidadEntradas Cantidad de entradas vigentes de la función
+     * @param ocupacion        Mapa de ocupación por fila, o null si la sede no es numerada
+     * @throws IllegalArgumentException si los arreglos no tienen el mismo largo
+     */
+    ResumenFuncion(String[] sectores, int[] vendidos, int[] capacidades, double recaudacion, int cantidadEntradas,
+                   MapaOcupacion ocupacion) {
+        if (sectores == null || vendidos == null || capacidades == null
+                || vendidos.length != sectores.length || capacidades.length != sectores.length) {
+            throw new IllegalArgumentException("El resumen necesita vendidos y capacidad para cada sector");
+        }
+        this.sectores = sectores.clone();
+        this.vendidos = vendidos.clone();
+        this.capacidades = capacidades.clone();
+        this.recaudacion = recaudacion;
+        this.cantidadEntradas = cantidadEntradas;
+        this.ocupacion = ocupacion == null ? null : ocupacion.copiarEn(null);
+    }
+
+    /**
+     * Copia el mapa de ocupación por fila guardado al archivar la función.
+     *
+     * @param destino Mapa a completar, o null para crear uno nuevo
+     * @return Mapa completado (el mismo destino si tiene la forma de la función)
+     * @throws UnsupportedOperationException si la función no es numerada
+     */
+    public MapaOcupacion getMapaOcupacion(MapaOcupacion destino) {
+        if (ocupacion == null) {
+            throw new UnsupportedOperationException("Este método es solo para sedes numeradas.");
+        }
+        return ocupacion.copiarEn(destino);
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @return Asientos vendidos en el sector
+     */
+    public int getVendidos(int sector) {
+        return vendidos[sector];
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @return Capacidad del sector
+     */
+    public int getCapacidad(int sector) {
+        return capacidades[sector];
+    }
+
+    /**
+     * @return Copia de los vendidos por sector
+     */
+    public int[] getVendidosPorSector() {
+        return vendidos.clone();
+    }
+
+    /**
+     * @return Total de asientos vendidos
+     */
+    public int getVendidosTotal() {
+        int total = 0;
+        for (int v : vendidos) {
+            total += v;
+        }
+        return total;
+    }
+
+    /**
+     * @return Cantidad de sectores
+     */
+    public int cantidadSectores() {
+        return sectores.length;
+    }
+
+    /**
+     * @param sector Ordinal del sector
+     * @return Nombre del sector
+     */
+    public String getSector(int sector) {
+        return sectores[sector];
+    }
+
+    /**
+     * @return Monto recaudado por la función
+     */
+    public double getRecaudacion() {
+        return recaudacion;
+    }
+
+    /**
+     * @return Cantidad de entradas de la función
+     */
+    public int getCantidadEntradas() {
+        return cantidadEntradas;
+    }
+
+    /**
+     * @return Representación del resumen en formato "sector: vendidos/capacidad | ..."
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < sectores.length; s++) {
+            if (s > 0) {
+                sb.append(" | ");
+            }
+            sb.append(sectores[s]).append(": ").append(vendidos[s]).append("/").append(capacidades[s]);
+        }
+        return sb.toString();
+    }
+}
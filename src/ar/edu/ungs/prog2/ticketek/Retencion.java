@@ -0,0 +1,183 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.util.UUID;
+
+/**
+ * Clase que representa una retención temporal de entradas mientras el comprador paga.
+ * Los asientos (o el cupo sin numerar) retenidos ya están descontados de la función,
+ * por lo que ningún otro comprador los ve disponibles hasta que la retención se libere.
+ *
+ * IREP (Invariante de Representación):
+ * - codigo != null && !codigo.isEmpty() (generado por UUID)
+ * - espectaculo != null && funcion != null
+ * - emailUsuario != null && !emailUsuario.isEmpty()
+ * - Si funcion.esNumerada() entonces sector != null && asientos != null && asientos.length > 0
+ * - Si !funcion.esNumerada() entonces sector == null && asientos == null && cantidad > 0
+ * - estado pasa de ACTIVA a CONFIRMADA o LIBERADA una única vez
+ * - anterior y siguiente solo los modifica la RuedaTemporizadora que contiene la retención
+ */
+public class Retencion {
+    private static final int ACTIVA = 0;
+    private static final int CONFIRMADA = 1;
+    private static final int LIBERADA = 2;
+
+    private String codigo;
+    private Espectaculo espectaculo;
+    private Funcion funcion;
+    private String emailUsuario;
+    private String sector;
+    private int[] asientos;
+    private int cantidad;
+    private long tickVencimiento;
+    private int estado = ACTIVA;
+
+    Retencion anterior;
+    Retencion siguiente;
+    int ranura = -1;
+
+    /**
+     * Constructor para una retención de entradas sin numerar.
+     *
+     * @param espectaculo  Espectáculo de la función
+     * @param funcion      Función sobre la que se retienen entradas
+     * @param emailUsuario Email del usuario que retiene
+     * @param cantidad     Cantidad de entradas retenidas
+     */
+    public Retencion(Espectaculo espectaculo, Funcion funcion, String emailUsuario, int cantidad) {
+        this.codigo = UUID.randomUUID().toString();
+        this.espectaculo = espectaculo;
+        this.funcion = funcion;
+        this.emailUsuario = emailUsuario;
+        this.sector = null;
+        this.asientos = null;
+        this.cantidad = cantidad;
+    }
+
+    /**
+     * Constructor para una retención de asientos numerados.
+     *
+     * @param espectaculo  Espectáculo de la función
+     * @param funcion      Función sobre la que se retienen asientos
+     * @param emailUsuario Email del usuario que retiene
+     * @param sector       Sector de los asientos
+     * @param asientos     Números de asiento retenidos
+     */
+    public Retencion(Espectaculo espectaculo, Funcion funcion, String emailUsuario, String sector, int[] asientos) {
+        this.codigo = UUID.randomUUID().toString();
+        this.espectaculo = espectaculo;
+        this.funcion = funcion;
+        this.emailUsuario = emailUsuario;
+        this.sector = sector;
+        this.asientos = asientos.clone();
+        this.cantidad = asientos.length;
+    }
+
+    /**
+     * Marca la retención como confirmada, si todavía estaba activa.
+     *
+     * @return true si la retención pasó de activa a confirmada en esta llamada
+     */
+    public synchronized boolean confirmar() {
+        if (estado != ACTIVA) {
+            return false;
+        }
+        estado = CONFIRMADA;
+        return true;
+    }
+
+    /**
+     * Marca la retención como liberada, si todavía estaba activa.
+     *
+     * @return true si la retención pasó de activa a liberada en esta llamada
+     */
+    public synchronized boolean liberar() {
+        if (estado != ACTIVA) {
+            return false;
+        }
+        estado = LIBERADA;
+        return true;
+    }
+
+    /**
+     * Devuelve a la función los asientos o el cupo retenido.
+     */
+    public void devolverAsientos() {
+        if (funcion.esNumerada()) {
+            for (int asiento : asientos) {
+                funcion.sumarAsiento(sector, asiento);
+            }
+        } else {
+            funcion.sumarAsiento(cantidad);
+        }
+    }
+
+    /**
+     * @return true si la retención sigue activa
+     */
+    public synchronized boolean estaActiva() {
+        return estado == ACTIVA;
+    }
+
+    /**
+     * @return Código único de la retención
+     */
+    public String getCodigo() {
+        return codigo;
+    }
+
+    /**
+     * @return Espectáculo de la retención
+     */
+    public Espectaculo getEspectaculo() {
+        return espectaculo;
+    }
+
+    /**
+     * @return Función de la retención
+     */
+    public Funcion getFuncion() {
+        return funcion;
+    }
+
+    /**
+     * @return Email del usuario que retuvo las entradas
+     */
+    public String getEmailUsuario() {
+        return emailUsuario;
+    }
+
+    /**
+     * @return Sector retenido, o null si la función no es numerada
+     */
+    public String getSector() {
+        return sector;
+    }
+
+    /**
+     * @return Copia de los asientos retenidos, o null si la función no es numerada
+     */
+    public int[] getAsientos() {
+        return asientos == null ? null : asientos.clone();
+    }
+
+    /**
+     * @return Cantidad de entradas retenidas
+     */
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    /**
+     * @return Tick de la rueda en el que vence la retención
+     */
+    public long getTickVencimiento() {
+        return tickVencimiento;
+    }
+
+    /**
+     * @param tickVencimiento Tick de la rueda en el que vence la retención
+     */
+    void setTickVencimiento(long tickVencimiento) {
+        this.tickVencimiento = tickVencimiento;
+    }
+}
@@ -0,0 +1,189 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rueda de tiempo con hash (hashed timing wheel) para el vencimiento de retenciones.
+ * Cada retención se ubica en la ranura (tickVencimiento mod ranuras) dentro de una lista
+ * doblemente enlazada, por lo que agregar y quitar cuestan O(1). Avanzar la rueda solo
+ * recorre las ranuras de los ticks transcurridos; no hay un barrido de todas las funciones.
+ *
+ * Como avanzar se llama en cada venta y consulta, la rueda publica en un campo volatile una
+ * cota inferior del próximo vencimiento: mientras no se alcance, avanzar vuelve sin tomar el
+ * monitor ni crear objetos.
+ *
+ * IREP (Invariante de Representación):
+ * - duracionTick > 0
+ * - ranuras != null && ranuras.length es potencia de 2
+ * - mascara == ranuras.length - 1
+ * - Toda retención r contenida en la rueda cumple r.ranura == (r.getTickVencimiento() & mascara)
+ *   y r.getTickVencimiento() > tickActual
+ * - Las listas de cada ranura son consistentes (r.siguiente.anterior == r)
+ * - cantidad == número de retenciones contenidas en la rueda
+ * - Si cantidad == 0, proximoVencimiento == Long.MAX_VALUE; si no, proximoVencimiento es menor
+ *   o igual al menor r.getTickVencimiento() de las retenciones contenidas
+ * - Todos los campos salvo proximoVencimiento se leen y modifican con el monitor de la rueda tomado
+ */
+public class RuedaTemporizadora {
+    private long duracionTick;
+    private Retencion[] ranuras;
+    private int mascara;
+    private long tickActual;
+    private int cantidad;
+    private volatile long proximoVencimiento = Long.MAX_VALUE;
+
+    /**
+     * Constructor que crea una rueda vacía.
+     *
+     * @param duracionTick  Duración de cada tick en milisegundos
+     * @param cantidadRanuras Cantidad de ranuras (se redondea a la potencia de 2 siguiente)
+     * @param ahora         Instante inicial en milisegundos
+     * @throws IllegalArgumentException si la duración o la cantidad de ranuras no son positivas
+     */
+    public RuedaTemporizadora(long duracionTick, int cantidadRanuras, long ahora) {
+        if (duracionTick <= 0 || cantidadRanuras <= 0) {
+            throw new IllegalArgumentException("La rueda necesita ticks y ranuras positivos");
+        }
+        int tamanio = Integer.highestOneBit(cantidadRanuras);
+        if (tamanio < cantidadRanuras) {
+            tamanio <<= 1;
+        }
+        this.duracionTick = duracionTick;
+        this.ranuras = new Retencion[tamanio];
+        this.mascara = tamanio - 1;
+        this.tickActual = ahora / duracionTick;
+    }
+
+    /**
+     * Agrega una retención que vence después de un tiempo dado.
+     *
+     * @param retencion Retención a agregar
+     * @param ahora     Instante actual en milisegundos
+     * @param ttl       Tiempo de vida en milisegundos
+     */
+    public synchronized void agregar(Retencion retencion, long ahora, long ttl) {
+        long tick = Math.max((ahora + ttl + duracionTick - 1) / duracionTick, tickActual + 1);
+        retencion.setTickVencimiento(tick);
+        int ranura = (int) (tick & mascara);
+        retencion.ranura = ranura;
+        retencion.anterior = null;
+        retencion.siguiente = ranuras[ranura];
+        if (ranuras[ranura] != null) {
+            ranuras[ranura].anterior = retencion;
+        }
+        ranuras[ranura] = retencion;
+        cantidad++;
+        if (tick < proximoVencimiento) {
+            proximoVencimiento = tick;
+        }
+    }
+
+    /**
+     * Quita una retención de la rueda antes de su vencimiento.
+     *
+     * @param retencion Retención a quitar
+     * @return true si la retención estaba en la rueda
+     */
+    public synchronized boolean quitar(Retencion retencion) {
+        if (retencion.ranura < 0) {
+            return false;
+        }
+        desenlazar(retencion);
+        if (cantidad == 0) {
+            proximoVencimiento = Long.MAX_VALUE;
+        }
+        return true;
+    }
+
+    /**
+     * Avanza la rueda hasta el instante dado y devuelve las retenciones vencidas,
+     * que quedan fuera de la rueda.
+     *
+     * @param ahora Instante actual en milisegundos
+     * @return Lista de retenciones vencidas (vacía e inmutable si no venció ninguna)
+     */
+    public List<Retencion> avanzar(long ahora) {
+        long objetivo = ahora / duracionTick;
+        if (objetivo < proximoVencimiento) {
+            return Collections.emptyList();
+        }
+
+        synchronized (this) {
+            if (objetivo <= tickActual || cantidad == 0) {
+                tickActual = Math.max(tickActual, objetivo);
+                actualizarProximoVencimiento();
+                return Collections.emptyList();
+            }
+
+            List<Retencion> vencidas = new ArrayList<>();
+            if (objetivo - tickActual >= ranuras.length) {
+                for (int ranura = 0; ranura < ranuras.length; ranura++) {
+                    recolectar(ranura, objetivo, vencidas);
+                }
+            } else {
+                for (long tick = tickActual + 1; tick <= objetivo; tick++) {
+                    recolectar((int) (tick & mascara), tick, vencidas);
+                }
+            }
+            tickActual = objetivo;
+            actualizarProximoVencimiento();
+            return vencidas;
+        }
+    }
+
+    /**
+     * Publica la cota del próximo vencimiento luego de avanzar: las retenciones que quedan
+     * vencen después de tickActual. Se llama con el monitor de la rueda tomado.
+     */
+    private void actualizarProximoVencimiento() {
+        proximoVencimiento = cantidad == 0 ? Long.MAX_VALUE : tickActual + 1;
+    }
+
+    /**
+     * @return Cantidad de retenciones pendientes en la rueda
+     */
+    public synchronized int cantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Mueve a la lista de vencidas las retenciones de una ranura que vencen hasta el tick dado.
+     *
+     * @param ranura   Ranura a recorrer
+     * @param tick     Tick alcanzado
+     * @param vencidas Lista donde se acumulan las retenciones vencidas
+     */
+    private void recolectar(int ranura, long tick, List<Retencion> vencidas) {
+        Retencion actual = ranuras[ranura];
+        while (actual != null) {
+            Retencion siguiente = actual.siguiente;
+            if (actual.getTickVencimiento() <= tick) {
+                desenlazar(actual);
+                vencidas.add(actual);
+            }
+            actual = siguiente;
+        }
+    }
+
+    /**
+     * Saca una retención de la lista de su ranura.
+     *
+     * @param retencion Retención a desenlazar
+     */
+    private void desenlazar(Retencion retencion) {
+        if (retencion.anterior != null) {
+            retencion.anterior.siguiente = retencion.siguiente;
+        } else {
+            ranuras[retencion.ranura] = retencion.siguiente;
+        }
+        if (retencion.siguiente != null) {
+            retencion.siguiente.anterior = retencion.anterior;
+        }
+        retencion.anterior = null;
+        retencion.siguiente = null;
+        retencion.ranura = -1;
+        cantidad--;
+    }
+}
@@ -14,12 +14,16 @@ import java.util.Map;
  * - tipo debe ser uno de los valores válidos: "Teatro", "Estadio", etc.
  * - La capacidad máxima debe ser consistente con la suma de capacidades de todos los sectores
  * - esNumerada() devuelve true para todos los tipos excepto "Estadio"
+ * - serie != null, registra las ventas y anulaciones de todas las funciones de la sede
+ * - versionAlta es la versión del estado de Ticketek en que se registró la sede (0 antes de registrarla)
  */
 public abstract class Sede {
     private String nombre;
     private String tipo;
     private int capacidadMaxima;
     private String direccion;
+    private final SerieTemporal serie = new SerieTemporal();
+    private volatile long versionAlta;
 
     /**
      * Constructor que inicializa una sede con nombre, tipo, capacidad y dirección.
@@ -86,6 +90,13 @@ public abstract class Sede {
      */
     public abstract int getCapacidadSector(String nombreSector);
 
+    /**
+     * @return Serie temporal de las ventas y anulaciones de la sede, sumando todas sus funciones
+     */
+    public SerieTemporal getSerie() {
+        return serie;
+    }
+
     /**
      * @return Nombre de la sede
      */
@@ -151,6 +162,19 @@ public abstract class Sede {
     @Override
     public abstract String toString();
 
-}
-
+    /**
+     * Registra la versión del estado de Ticketek en que se dio de alta la sede.
+     *
+     * @param version Versión del estado al dar de alta
+     */
+    void marcarAlta(long version) {
+        this.versionAlta = version;
+    }
 
+    /**
+     * @return Versión del estado de Ticketek en que se dio de alta la sede
+     */
+    long getVersionAlta() {
+        return versionAlta;
+    }
+}
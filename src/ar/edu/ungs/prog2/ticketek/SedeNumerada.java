@@ -13,17 +13,23 @@ import java.util.Map;
  * - sectores != null y sectores.length > 0
  * - capacidad.length == sectores.length
  * - porcentajeAdicional.length == sectores.length
- * - Ningún nombre de sector debe ser vacío
+ * - Ningún nombre de sector debe ser vacío ni repetirse
  * - La capacidad de cada sector debe estar entre asientosPorFila y capacidadMaxima
  * - La suma de todas las capacidades de sectores debe ser igual a capacidadMaxima
- * - sectoresPorNombre contiene una clave por cada sector con sus asientos como disponibles
+ * - plantillaAsientos != null, tiene un sector por cada elemento de sectores con su capacidad,
+ *   y todos sus asientos están disponibles
+ * - plantillaAsientos nunca se modifica: las funciones la comparten y copian cada sector recién al vender
+ * - ordinales != null y para todo i: ordinales.get(sectores[i]) == i (los nombres de sector no se repiten)
+ * - Si archivoAsientos != null, los inventarios de las funciones nuevas se mapean desde ese directorio
  */
 public abstract class SedeNumerada extends Sede {
     private int asientosPorFila;
     private String[] sectores;
     private int[] capacidad;
     private int[] porcentajeAdicional;
-    private Map<String, Map<Integer, Boolean>> sectoresPorNombre;
+    private InventarioAsientos plantillaAsientos;
+    private Map<String, Integer> ordinales;
+    private volatile ArchivoAsientos archivoAsientos;
 
     /**
      * Constructor que inicializa una sede numerada con sus sectores, capacidades y recargos.
@@ -48,7 +54,6 @@ public abstract class SedeNumerada extends Sede {
         this.sectores = sectores;
         this.capacidad = capacidad;
         this.porcentajeAdicional = porcentajeAdicional;
-        this.sectoresPorNombre = new HashMap<>();
         inicializarSectores();
     }
     
@@ -73,10 +78,14 @@ public abstract class SedeNumerada extends Sede {
             throw new IllegalArgumentException("Los porcentajes deben coincidir con los sectores");
 
         int sumaSectores = 0;
+        Map<String, Integer> vistos = new HashMap<>();
         for (int i = 0; i < sectores.length; i++) {
             if (sectores[i] == null || sectores[i].isEmpty()) {
                 throw new IllegalArgumentException("El nombre de los sectores no puede ser vacío");
             }
+            if (vistos.put(sectores[i], i) != null) {
+                throw new IllegalArgumentException("El nombre de los sectores no puede repetirse");
+            }
             if (!(capacidad[i] <= capacidadMaxima && capacidad[i] >= asientosPorFila)) {
                 throw new IllegalArgumentException("La capacidad del sector debe ser mayor o igual a los asientos por fila y menor o igual a la capacidad máxima");
             }
@@ -90,29 +99,62 @@ public abstract class SedeNumerada extends Sede {
 
 
     /**
-     * Inicializa los sectores y sus asientos como disponibles.
+     * Inicializa la plantilla de asientos de la sede, con todos los asientos disponibles,
+     * y la tabla de ordinales por nombre de sector.
      */
     protected void inicializarSectores() {
+        this.plantillaAsientos = new InventarioAsientos(capacidad, asientosPorFila);
+        this.ordinales = new HashMap<>(sectores.length * 2);
         for (int i = 0; i < sectores.length; i++) {
-            Map<Integer, Boolean> mapaAsientos = new HashMap<>();
-            for (int num = 1; num <= capacidad[i]; num++) {
-                mapaAsientos.put(num, true);
-            }
-            sectoresPorNombre.put(sectores[i], mapaAsientos);
+            ordinales.put(sectores[i], i);
         }
     }
 
     /**
-     * Devuelve una copia del mapa de sectores con sus asientos disponibles.
+     * Crea el inventario de asientos de una nueva función. El inventario comparte la
+     * plantilla de la sede y solo copia un sector cuando se vende en él por primera vez,
+     * por lo que registrar una función cuesta O(sectores) y no O(asientos).
+     *
+     * @return Inventario nuevo con todos los asientos disponibles
+     */
+    public InventarioAsientos crearInventario() {
+        return new InventarioAsientos(plantillaAsientos);
+    }
+
+    /**
+     * Crea el inventario de asientos de la función de una fecha. Si la sede guarda sus asientos
+     * en un {@link ArchivoAsientos}, el inventario se mapea desde el archivo de esa función con
+     * todos los asientos disponibles (el archivo no conserva ventas de una ejecución anterior:
+     * se reconstruyen desde la instantánea y el diario); si no, se crea en el heap a partir de la plantilla.
+     *
+     * @param fecha Fecha de la función
+     * @return Inventario de la función
+     */
+    public InventarioAsientos crearInventario(Fecha fecha) {
+        ArchivoAsientos archivo = archivoAsientos;
+        return archivo == null ? crearInventario() : archivo.abrir(this, fecha);
+    }
+
+    /**
+     * Indica dónde guardar los asientos de las funciones que se creen a partir de ahora.
+     *
+     * @param archivoAsientos Directorio de inventarios mapeados, o null para usar el heap
+     */
+    public void setArchivoAsientos(ArchivoAsientos archivoAsientos) {
+        this.archivoAsientos = archivoAsientos;
+    }
+
+    /**
+     * Devuelve el mapa de sectores con sus asientos disponibles.
+     * El mapa se construye a demanda a partir de la plantilla de la sede.
      *
      * @return Mapa sector -> (asiento -> disponibilidad)
      */
     @Override
     public Map<String, Map<Integer, Boolean>> getDisponiblesInicialesNumerados() {
         Map<String, Map<Integer, Boolean>> copia = new HashMap<>();
-        for (String sector : sectoresPorNombre.keySet()) {
-            Map<Integer, Boolean> copiaButacas = new HashMap<>(sectoresPorNombre.get(sector));
-            copia.put(sector, copiaButacas);
+        for (int i = 0; i < sectores.length; i++) {
+            copia.put(sectores[i], plantillaAsientos.comoMapa(i));
         }
         return copia;
     }
@@ -136,14 +178,71 @@ public abstract class SedeNumerada extends Sede {
      */
     @Override
     public int getCapacidadSector(String nombreSector) {
-        for (int i = 0; i < sectores.length; i++) {
-            if (sectores[i].equals(nombreSector)) {
-                return capacidad[i];
-            }
+        int ordinal = getIndiceSector(nombreSector);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Sector no válido: " + nombreSector);
         }
-        throw new IllegalArgumentException("Sector no válido: " + nombreSector);
+        return capacidad[ordinal];
+    }
+
+    /**
+     * Devuelve la capacidad de un sector dado por su ordinal.
+     *
+     * @param ordinalSector Ordinal del sector
+     * @return Capacidad del sector
+     */
+    public int getCapacidadSector(int ordinalSector) {
+        return capacidad[ordinalSector];
     }
 
+    /**
+     * Indica si un número de asiento existe en un sector.
+     *
+     * @param ordinalSector Ordinal del sector
+     * @param asiento       Número de asiento (comenzando en 1)
+     * @return true si 1 <= asiento <= capacidad del sector
+     */
+    public boolean esAsientoValido(int ordinalSector, int asiento) {
+        return asiento > 0 && asiento <= capacidad[ordinalSector];
+    }
+
+    /**
+     * Devuelve el ordinal (posición en getSectores()) de un sector dado.
+     *
+     * @param nombreSector Nombre del sector
+     * @return Ordinal del sector, o -1 si el sector no existe
+     */
+    public int getIndiceSector(String nombreSector) {
+        Integer ordinal = ordinales.get(nombreSector);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Calcula el precio final de una entrada para un sector dado por su nombre.
+     *
+     * @param precioBase Precio base de la entrada
+     * @param sector     Nombre del sector
+     * @return Precio final de la entrada en el sector indicado
+     * @throws IllegalArgumentException si el sector no existe en la sede
+     */
+    @Override
+    public double calcularPrecioEntrada(double precioBase, String sector) {
+        int ordinal = getIndiceSector(sector);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("El sector no es válido para la sede");
+        }
+        return calcularPrecioEntrada(precioBase, ordinal);
+    }
+
+    /**
+     * Calcula el precio final de una entrada para un sector dado por su ordinal.
+     *
+     * @param precioBase    Precio base de la entrada
+     * @param ordinalSector Ordinal del sector
+     * @return Precio final de la entrada en el sector indicado
+     */
+    public abstract double calcularPrecioEntrada(double precioBase, int ordinalSector);
+
     /**
      * Devuelve el array de sectores disponibles en la sede.
      *
@@ -185,10 +284,4 @@ public abstract class SedeNumerada extends Sede {
         return porcentajeAdicional;
     }
 
-    /**
-     * @return Mapa de sectores con sus asientos y disponibilidad
-     */
-    public Map<String, Map<Integer, Boolean>> getSectoresPorNombre() {
-        return sectoresPorNombre;
-    }
 }
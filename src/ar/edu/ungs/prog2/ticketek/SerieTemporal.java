@@ -0,0 +1,229 @@
+package ar.edu.ungs.prog2.ticketek;
+
+import java.util.Arrays;
+
+/**
+ * Serie temporal en memoria de las ventas y anulaciones de una función o de una sede.
+ * Guarda tres resoluciones en anillos de tamaño fijo: los últimos 60 segundos, los últimos
+ * 60 minutos y las últimas 48 horas. Cada evento se suma a la vez en el segundo, el minuto y la
+ * hora en que ocurre, por lo que las resoluciones más gruesas son el acumulado de las más finas
+ * y no hace falta recorrer segundos para responder por minutos u horas.
+ *
+ * Cada casillero guarda el período al que corresponde (segundo, minuto u hora contados desde
+ * 01/01/1970); al reutilizarse para un período nuevo se vacía. Así el registro no crea objetos
+ * y las consultas recorren a lo sumo los casilleros de una resolución.
+ *
+ * IREP (Invariante de Representación):
+ * - Cada resolución tiene periodos, ventas, anulaciones y centavos del mismo largo
+ * - Para todo casillero i de una resolución con periodos[i] == p: ventas[i], anulaciones[i] y
+ *   centavos[i] acumulan los eventos ocurridos en el período p
+ * - periodos[i] % largo == i, o periodos[i] == -1 si el casillero nunca se usó
+ * - ventas[i] >= 0 y anulaciones[i] >= 0; centavos[i] es la recaudación neta (ventas menos anulaciones)
+ * - Todas las lecturas y escrituras se hacen con el monitor de la serie tomado
+ */
+public class SerieTemporal {
+    static final int SEGUNDOS = 60;
+    static final int MINUTOS = 60;
+    static final int HORAS = 48;
+
+    private static final long MILLIS_SEGUNDO = 1000;
+    private static final long MILLIS_MINUTO = 60 * MILLIS_SEGUNDO;
+    private static final long MILLIS_HORA = 60 * MILLIS_MINUTO;
+
+    private final Resolucion porSegundo = new Resolucion(SEGUNDOS, MILLIS_SEGUNDO);
+    private final Resolucion porMinuto = new Resolucion(MINUTOS, MILLIS_MINUTO);
+    private final Resolucion porHora = new Resolucion(HORAS, MILLIS_HORA);
+
+    /**
+     * Registra la venta de varias entradas en el instante actual del {@link Reloj}.
+     *
+     * @param cantidad Cantidad de entradas vendidas
+     * @param centavos Recaudación de la venta, en centavos
+     */
+    public void registrarVenta(int cantidad, long centavos) {
+        registrar(Reloj.millis(), cantidad, 0, centavos);
+    }
+
+    /**
+     * Registra la anulación de una entrada en el instante actual del {@link Reloj}.
+     *
+     * @param centavos Precio de la entrada anulada, en centavos
+     */
+    public void registrarAnulacion(long centavos) {
+        registrar(Reloj.millis(), 0, 1, -centavos);
+    }
+
+    /**
+     * Registra un evento en las tres resoluciones.
+     *
+     * @param ahora       Instante del evento, en milisegundos
+     * @param ventas      Entradas vendidas
+     * @param anulaciones Entradas anuladas
+     * @param centavos    Variación de la recaudación, en centavos
+     */
+    synchronized void registrar(long ahora, int ventas, int anulaciones, long centavos) {
+        porSegundo.sumar(ahora, ventas, anulaciones, centavos);
+        porMinuto.sumar(ahora, ventas, anulaciones, centavos);
+        porHora.sumar(ahora, ventas, anulaciones, centavos);
+    }
+
+    /**
+     * @param segundos Cantidad de segundos hacia atrás, incluido el actual (entre 1 y 60)
+     * @return Entradas vendidas en los últimos segundos
+     */
+    public synchronized long ventasUltimosSegundos(int segundos) {
+        return porSegundo.ventas(Reloj.millis(), segundos);
+    }
+
+    /**
+     * @param minutos Cantidad de minutos hacia atrás, incluido el actual (entre 1 y 60)
+     * @return Entradas vendidas en los últimos minutos
+     */
+    public synchronized long ventasUltimosMinutos(int minutos) {
+        return porMinuto.ventas(Reloj.millis(), minutos);
+    }
+
+    /**
+     * @param minutos Cantidad de minutos hacia atrás, incluido el actual (entre 1 y 60)
+     * @return Entradas anuladas en los últimos minutos
+     */
+    public synchronized long anulacionesUltimosMinutos(int minutos) {
+        return porMinuto.anulaciones(Reloj.millis(), minutos);
+    }
+
+    /**
+     * Velocidad de venta reciente, por ejemplo "entradas por minuto en los últimos 5 minutos".
+     *
+     * @param minutos Cantidad de minutos hacia atrás, incluido el actual (entre 1 y 60)
+     * @return Promedio de entradas vendidas por minuto en ese período
+     */
+    public double velocidadVentasPorMinuto(int minutos) {
+        return (double) ventasUltimosMinutos(minutos) / minutos;
+    }
+
+    /**
+     * @param minutos Cantidad de minutos hacia atrás, incluido el actual (entre 1 y 60)
+     * @return Recaudación neta de los últimos minutos, en centavos
+     */
+    public synchronized long centavosUltimosMinutos(int minutos) {
+        return porMinuto.centavos(Reloj.millis(), minutos);
+    }
+
+    /**
+     * @param horas Cantidad de horas hacia atrás, incluida la actual (entre 1 y 48)
+     * @return Entradas vendidas en las últimas horas
+     */
+    public synchronized long ventasUltimasHoras(int horas) {
+        return porHora.ventas(Reloj.millis(), horas);
+    }
+
+    /**
+     * Recaudación neta de cada hora del día actual, desde la medianoche hasta la hora actual.
+     * Las horas se cuentan desde la medianoche en la zona del {@link Reloj}. Los casilleros por
+     * hora están alineados a horas enteras desde 01/01/1970, que coinciden con las horas locales
+     * en zonas con desfase de horas enteras, como la de Buenos Aires.
+     *
+     * @return Arreglo con la recaudación en centavos de cada hora de hoy; la posición 0 es la
+     *         hora que empieza a la medianoche
+     */
+    public synchronized long[] centavosPorHoraHoy() {
+        long ahora = Reloj.millis();
+        long inicio = Reloj.inicioDeHoy();
+        int horas = (int) ((ahora - inicio) / MILLIS_HORA) + 1;
+        long[] resultado = new long[horas];
+        for (int h = 0; h < horas; h++) {
+            resultado[h] = porHora.centavosEn(inicio + h * MILLIS_HORA);
+        }
+        return resultado;
+    }
+
+    /**
+     * Anillo de casilleros de una resolución.
+     */
+    private static final class Resolucion {
+        private final long duracion;
+        private final long[] periodos;
+        private final long[] ventas;
+        private final long[] anulaciones;
+        private final long[] centavos;
+
+        private Resolucion(int largo, long duracion) {
+            this.duracion = duracion;
+            this.periodos = new long[largo];
+            this.ventas = new long[largo];
+            this.anulaciones = new long[largo];
+            this.centavos = new long[largo];
+            Arrays.fill(periodos, -1);
+        }
+
+        private void sumar(long ahora, int cantidadVentas, int cantidadAnulaciones, long monto) {
+            long periodo = Math.floorDiv(ahora, duracion);
+            int i = (int) Math.floorMod(periodo, (long) periodos.length);
+            if (periodos[i] != periodo) {
+                periodos[i] = periodo;
+                ventas[i] = 0;
+                anulaciones[i] = 0;
+                centavos[i] = 0;
+            }
+            ventas[i] += cantidadVentas;
+            anulaciones[i] += cantidadAnulaciones;
+            centavos[i] += monto;
+        }
+
+        /**
+         * @param periodo Período buscado
+         * @return Casillero del período, o -1 si el período ya no está en el anillo o no tuvo eventos
+         */
+        private int casillero(long periodo) {
+            int i = (int) Math.floorMod(periodo, (long) periodos.length);
+            return periodos[i] == periodo ? i : -1;
+        }
+
+        private void validar(int cantidad) {
+            if (cantidad < 1 || cantidad > periodos.length) {
+                throw new IllegalArgumentException("La cantidad de períodos debe estar entre 1 y " + periodos.length);
+            }
+        }
+
+        private long ventas(long ahora, int cantidad) {
+            validar(cantidad);
+            long actual = Math.floorDiv(ahora, duracion);
+            long total = 0;
+            for (long p = actual - cantidad + 1; p <= actual; p++) {
+                int i = casillero(p);
+                if (i >= 0) {
+                    total += ventas[i];
+                }
+            }
+            return total;
+        }
+
+        private long anulaciones(long ahora, int cantidad) {
+            validar(cantidad);
+            long actual = Math.floorDiv(ahora, duracion);
+            long total = 0;
+            for (long p = actual - cantidad + 1; p <= actual; p++) {
+                int i = casillero(p);
+                if (i >= 0) {
+                    total += anulaciones[i];
+                }
+            }
+            return total;
+        }
+
+        private long centavos(long ahora, int cantidad) {
+            validar(cantidad);
+            long actual = Math.floorDiv(ahora, duracion);
+            long total = 0;
+            for (long p = actual - cantidad + 1; p <= actual; p++) {
+                total += centavosEn(p * duracion);
+            }
+            return total;
+        }
+
+        private long centavosEn(long instante) {
+            int i = casillero(Math.floorDiv(instante, duracion));
+            return i >= 0 ? centavos[i] : 0;
+        }
+    }
+}
@@ -33,19 +33,13 @@ public class Teatro extends SedeNumerada {
      * Calcula el precio final de una entrada para un sector del teatro.
      * Aplica un porcentaje adicional al precio base según el sector.
      *
-     * @param precioBase Precio base de la entrada
-     * @param sector     Nombre del sector
+     * @param precioBase    Precio base de la entrada
+     * @param ordinalSector Ordinal del sector
      * @return Precio final de la entrada en el sector indicado
-     * @throws IllegalArgumentException si el sector no existe en el teatro
      */
     @Override
-    public double calcularPrecioEntrada(double precioBase, String sector) {
-        for (int i = 0; i < this.getSectores().length; i++) {
-            if (this.getSectores()[i].equals(sector)) {
-                return precioBase + precioBase * (this.getPorcentajeAdicional()[i] / 100.0);
-            }
-        }
-        throw new IllegalArgumentException("El sector no es válido para la sede");
+    public double calcularPrecioEntrada(double precioBase, int ordinalSector) {
+        return precioBase + precioBase * (this.getPorcentajeAdicional()[ordinalSector] / 100.0);
     }
 
     /**
@@ -1,7 +1,20 @@
 package ar.edu.ungs.prog2.ticketek;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.DateTimeException;
 import java.util.*;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
 
 /**
  * Clase principal del sistema de gestión de entradas para espectáculos.
@@ -23,20 +36,105 @@ import java.util.Iterator;
  * - Para todo espectaculo en espectaculos.values(): espectaculo != null
  * - autenticarUsuario(email, contraseña) es consistente con usuarios.get(email).verificarContrasenia()
  * - Las funciones de espectáculos no pueden solaparse en la misma sede y fecha
+ * - agenda contiene exactamente las funciones de todos los espectáculos, indexadas por sede y fecha
  * - Todas las entradas vendidas deben estar asociadas a usuarios y funciones existentes
+ * - Ningún asiento numerado ni cupo sin numerar se vende dos veces, aun con ventas concurrentes:
+ *   la verificación y el registro de la venta son atómicos por función (o por sector de la función)
+ * - Para toda retención r en retenciones.values(): r.estaActiva() y r está en ruedaRetenciones
+ * - Los asientos de una retención activa están descontados de su función y no figuran en ningún usuario
+ * - Si diario != null, toda alta, venta y anulación confirmada al llamador está sincronizada en el diario
+ * - Las altas, ventas y anulaciones se aplican en memoria y se agregan al diario con el cerrojo de
+ *   lectura de cerrojoEstado tomado; la sincronización del diario se espera después de soltarlo, y
+ *   si falla la operación se deshace. Una instantánea toma el de escritura solo para fijar
+ *   versionEstado y la secuencia del diario
+ * - Toda sede, usuario, espectáculo, función y entrada registrados tienen versionAlta <= versionEstado,
+ *   y toda entrada anulada, versionBaja <= versionEstado
+ * - Si archivoAsientos != null, toda sede numerada registrada guarda en él los asientos de sus funciones nuevas
+ * - Si anuladasDuranteInstantanea != null, contiene las entradas anuladas desde que empezó la instantánea en curso
+ * - rankingEspectaculos y rankingSedes contienen todos los espectáculos y sedes registrados, con su
+ *   recaudación en centavos; rankingFunciones contiene todas las funciones, con su ocupación en
+ *   millonésimas (las retenciones vigentes cuentan como vendidas). Cada venta, anulación y
+ *   retención publica su cambio sin tomar cerrojos; las tablas lo ordenan al consultarse, sin
+ *   recorrer el catálogo
  */
 public class Ticketek implements ITicketek {
-    private Map<String, Usuario> usuarios;
-    private Map<String, Sede> sedes;
-    private Map<String, Espectaculo> espectaculos;
+    private volatile Map<String, Usuario> usuarios;
+    private volatile Map<String, Sede> sedes;
+    private volatile Map<String, Espectaculo> espectaculos;
+    private Map<String, Retencion> retenciones;
+    private AgendaSedes agenda;
+    private RuedaTemporizadora ruedaRetenciones;
+    private DiarioVentas diario;
+    private volatile ArchivoAsientos archivoAsientos;
+    private final ReentrantReadWriteLock cerrojoEstado = new ReentrantReadWriteLock();
+    private final AtomicLong versionEstado = new AtomicLong();
+    private volatile Queue<Entrada> anuladasDuranteInstantanea;
+    private final Object cerrojoInstantanea = new Object();
+    private ScheduledExecutorService programadorInstantaneas;
+    private final Ranking<String> rankingEspectaculos = new Ranking<>();
+    private final Ranking<Funcion> rankingFunciones = new Ranking<>();
+    private final Ranking<String> rankingSedes = new Ranking<>();
+
+    private static final long DURACION_TICK_RETENCIONES = 1000;
+    private static final int RANURAS_RETENCIONES = 1024;
 
     /**
      * Constructor que inicializa un nuevo sistema Ticketek.
      */
     public Ticketek() {
-        this.usuarios = new HashMap<>();
-        this.espectaculos = new HashMap<>();
-        this.sedes = new HashMap<>();
+        this.usuarios = new ConcurrentHashMap<>();
+        this.espectaculos = new ConcurrentHashMap<>();
+        this.sedes = new ConcurrentHashMap<>();
+        this.retenciones = new ConcurrentHashMap<>();
+        this.agenda = new AgendaSedes();
+        this.ruedaRetenciones = new RuedaTemporizadora(DURACION_TICK_RETENCIONES, RANURAS_RETENCIONES,
+                Reloj.millis());
+    }
+
+    /**
+     * Constructor que inicializa un nuevo sistema Ticketek que registra sus operaciones en un diario.
+     * Cada alta, venta y anulación se confirma recién cuando su registro está sincronizado en disco.
+     * 
+     * @param diario Diario de ventas donde se registran las operaciones.
+     */
+    public Ticketek(DiarioVentas diario) {
+        this();
+        this.diario = diario;
+    }
+
+    /**
+     * Prepara los mapas del sistema para recibir muchas altas de una vez, como en una importación
+     * del catálogo: los reemplaza por mapas con lugar para los registros actuales más los
+     * anunciados, para que no se redimensionen durante la carga. Toma el cerrojo de escritura,
+     * por lo que no se mezcla con altas en curso.
+     *
+     * @param cantidadSedes        Sedes que se van a registrar
+     * @param cantidadUsuarios     Usuarios que se van a registrar
+     * @param cantidadEspectaculos Espectáculos que se van a registrar
+     */
+    void reservarCapacidad(int cantidadSedes, int cantidadUsuarios, int cantidadEspectaculos) {
+        cerrojoEstado.writeLock().lock();
+        try {
+            sedes = conCapacidad(sedes, cantidadSedes);
+            usuarios = conCapacidad(usuarios, cantidadUsuarios);
+            espectaculos = conCapacidad(espectaculos, cantidadEspectaculos);
+        } finally {
+            cerrojoEstado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param actual    Mapa actual
+     * @param adicional Cantidad de claves que se van a agregar
+     * @return El mismo mapa si no hay nada que agregar; si no, una copia con lugar para todas las claves
+     */
+    private static <V> Map<String, V> conCapacidad(Map<String, V> actual, int adicional) {
+        if (adicional <= 0) {
+            return actual;
+        }
+        Map<String, V> nuevo = new ConcurrentHashMap<>(actual.size() + adicional);
+        nuevo.putAll(actual);
+        return nuevo;
     }
 
     /**
@@ -54,7 +152,20 @@ public class Ticketek implements ITicketek {
             throw new IllegalArgumentException("Ya existe una sede con el nombre: " + nombre);
         }
         Estadio estadio = new Estadio(nombre, capacidadMaxima, direccion);
-        sedes.put(nombre, estadio);
+        Runnable deshacer = () -> deshacerAltaSede(estadio);
+        long secuencia;
+        cerrojoEstado.readLock().lock();
+        try {
+            estadio.marcarAlta(versionEstado.incrementAndGet());
+            if (sedes.putIfAbsent(nombre, estadio) != null) {
+                throw new IllegalArgumentException("Ya existe una sede con el nombre: " + nombre);
+            }
+            rankingSedes.agregar(nombre);
+            secuencia = agregarAlDiario(() -> diario.agregarEstadio(nombre, direccion, capacidadMaxima), deshacer);
+        } finally {
+            cerrojoEstado.readLock().unlock();
+        }
+        confirmarEnDiario(secuencia, deshacer);
 	}
   
     /**
@@ -80,7 +191,22 @@ public class Ticketek implements ITicketek {
 
            Teatro teatro = new Teatro(nombre, direccion, capacidadMaxima, asientosPorFila,
        			sectores, capacidad, porcentajeAdicional);
-           sedes.put(nombre, teatro);
+           teatro.setArchivoAsientos(archivoAsientos);
+           Runnable deshacer = () -> deshacerAltaSede(teatro);
+           long secuencia;
+           cerrojoEstado.readLock().lock();
+           try {
+               teatro.marcarAlta(versionEstado.incrementAndGet());
+               if (sedes.putIfAbsent(nombre, teatro) != null) {
+                   throw new IllegalArgumentException("Ya existe una sede con el nombre: " + nombre);
+               }
+               rankingSedes.agregar(nombre);
+               secuencia = agregarAlDiario(() -> diario.agregarTeatro(nombre, direccion, capacidadMaxima,
+                       asientosPorFila, sectores, capacidad, porcentajeAdicional), deshacer);
+           } finally {
+               cerrojoEstado.readLock().unlock();
+           }
+           confirmarEnDiario(secuencia, deshacer);
 	}
     
     /**
@@ -109,10 +235,84 @@ public class Ticketek implements ITicketek {
 
         Miniestadio miniestadio = new Miniestadio(nombre, direccion, capacidadMaxima, asientosPorFila, cantidadPuestos,
         							precioConsumicion, sectores, capacidad, porcentajeAdicional);
-        sedes.put(nombre, miniestadio);
+        miniestadio.setArchivoAsientos(archivoAsientos);
+        Runnable deshacer = () -> deshacerAltaSede(miniestadio);
+        long secuencia;
+        cerrojoEstado.readLock().lock();
+        try {
+            miniestadio.marcarAlta(versionEstado.incrementAndGet());
+            if (sedes.putIfAbsent(nombre, miniestadio) != null) {
+                throw new IllegalArgumentException("Ya existe una sede con el nombre: " + nombre);
+            }
+            rankingSedes.agregar(nombre);
+            secuencia = agregarAlDiario(() -> diario.agregarMiniestadio(nombre, direccion, capacidadMaxima,
+                    asientosPorFila, cantidadPuestos, precioConsumicion, sectores, capacidad, porcentajeAdicional),
+                    deshacer);
+        } finally {
+            cerrojoEstado.readLock().unlock();
+        }
+        confirmarEnDiario(secuencia, deshacer);
 		
 	}
 
+    /**
+     * Quita una sede recién registrada cuyo registro en el diario falló.
+     *
+     * @param sede Sede a quitar.
+     */
+    private void deshacerAltaSede(Sede sede) {
+        sedes.remove(sede.getNombre(), sede);
+        rankingSedes.quitar(sede.getNombre());
+    }
+
+    /**
+     * Agrega al diario el registro de una operación recién aplicada en memoria. Se llama con el
+     * cerrojo de estado tomado en lectura, para que el orden de los registros coincida con el de
+     * las versiones del estado; la sincronización se espera después, con confirmarEnDiario.
+     *
+     * @param registro Agrega el registro y devuelve su secuencia.
+     * @param deshacer Revierte la operación en memoria si el diario está fuera de servicio.
+     * @return Secuencia del registro, o 0 si el sistema no tiene diario.
+     * @throws RuntimeException si el diario está fuera de servicio.
+     */
+    private long agregarAlDiario(LongSupplier registro, Runnable deshacer) {
+        if (diario == null) {
+            return 0;
+        }
+        try {
+            return registro.getAsLong();
+        } catch (RuntimeException e) {
+            deshacer.run();
+            throw e;
+        }
+    }
+
+    /**
+     * Espera, ya sin el cerrojo de estado, a que el registro de una operación quede sincronizado
+     * en el diario: una sincronización lenta no demora la toma de instantáneas. Si falla, la
+     * operación se deshace con el cerrojo de estado tomado en lectura y el error se propaga.
+     *
+     * @param secuencia Secuencia del registro, o 0 si no se registró.
+     * @param deshacer  Revierte la operación en memoria.
+     * @throws RuntimeException si el registro no pudo sincronizarse.
+     */
+    private void confirmarEnDiario(long secuencia, Runnable deshacer) {
+        if (secuencia == 0) {
+            return;
+        }
+        try {
+            diario.sincronizarHasta(secuencia);
+        } catch (RuntimeException e) {
+            cerrojoEstado.readLock().lock();
+            try {
+                deshacer.run();
+            } finally {
+                cerrojoEstado.readLock().unlock();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Registra un nuevo usuario en el sistema.
      * 
@@ -129,10 +329,33 @@ public class Ticketek implements ITicketek {
             throw new IllegalArgumentException("Ya existe un usuario con el email: " + email);
         }
 
-        Usuario usuario = new Usuario(email, nombre, apellido, contrasenia);
-        usuarios.put(email, usuario);
+        registrarUsuario(new Usuario(email, nombre, apellido, contrasenia));
 		
 	}
+
+    /**
+     * Da de alta un usuario ya construido. En el diario se registra la huella de su contraseña.
+     *
+     * @param usuario Usuario a registrar.
+     * @throws IllegalArgumentException Si ya existe un usuario con el mismo email.
+     */
+    private void registrarUsuario(Usuario usuario) {
+        String email = usuario.getEmail();
+        Runnable deshacer = () -> usuarios.remove(email, usuario);
+        long secuencia;
+        cerrojoEstado.readLock().lock();
+        try {
+            usuario.marcarAlta(versionEstado.incrementAndGet());
+            if (usuarios.putIfAbsent(email, usuario) != null) {
+                throw new IllegalArgumentException("Ya existe un usuario con el email: " + email);
+            }
+            secuencia = agregarAlDiario(() -> diario.agregarUsuario(email, usuario.getNombre(), usuario.getApellido(),
+                    usuario.getHuellaContrasenia()), deshacer);
+        } finally {
+            cerrojoEstado.readLock().unlock();
+        }
+        confirmarEnDiario(secuencia, deshacer);
+    }
    
 
     /**
@@ -144,7 +367,23 @@ public class Ticketek implements ITicketek {
 	public void registrarEspectaculo(String nombre) {
     	if(!(espectaculos.get(nombre) == null))
     		throw new IllegalArgumentException("El espectáculo ya existe");
-		espectaculos.put(nombre, new Espectaculo(nombre));
+		Espectaculo espectaculo = new Espectaculo(nombre);
+		Runnable deshacer = () -> {
+			espectaculos.remove(nombre, espectaculo);
+			rankingEspectaculos.quitar(nombre);
+		};
+		long secuencia;
+		cerrojoEstado.readLock().lock();
+		try {
+			espectaculo.marcarAlta(versionEstado.incrementAndGet());
+			if (espectaculos.putIfAbsent(nombre, espectaculo) != null)
+				throw new IllegalArgumentException("El espectáculo ya existe");
+			rankingEspectaculos.agregar(nombre);
+			secuencia = agregarAlDiario(() -> diario.agregarEspectaculo(nombre), deshacer);
+		} finally {
+			cerrojoEstado.readLock().unlock();
+		}
+		confirmarEnDiario(secuencia, deshacer);
 	}
     
     /**
@@ -159,15 +398,28 @@ public class Ticketek implements ITicketek {
      */
     @Override
 	public void agregarFuncion(String nombreEspectaculo, String fechaStr, String nombreSede, double precioBase) {
+		Fecha fecha;
 		try {
-			Fecha.desdeString(fechaStr);
+			fecha = Fecha.desdeString(fechaStr);
 		} catch (DateTimeException e) {
 			System.err.println("Fecha inválida: " + fechaStr + ". No se agregó la función.");
 	        return;
 		}
-		
-		Fecha fecha = Fecha.desdeString(fechaStr);
 
+		agregarFuncion(nombreEspectaculo, fecha, nombreSede, precioBase);
+	}
+
+    /**
+     * Agrega una función a un espectáculo ya registrado, con la fecha ya interpretada.
+     * 
+     * @param nombreEspectaculo Nombre del espectáculo.
+     * @param fecha Fecha de la función.
+     * @param nombreSede Nombre de la sede donde se realizará la función.
+     * @param precioBase Precio base de la función.
+     * @throws IllegalArgumentException Si el espectáculo o la sede no existen,
+     *         o si ya hay una función programada en esa sede para la fecha dada.
+     */
+	void agregarFuncion(String nombreEspectaculo, Fecha fecha, String nombreSede, double precioBase) {
 		Espectaculo espectaculo = espectaculos.get(nombreEspectaculo);
 		if (espectaculo == null) {
 			throw new IllegalArgumentException("Espectáculo no encontrado: " + nombreEspectaculo);
@@ -178,12 +430,43 @@ public class Ticketek implements ITicketek {
 			throw new IllegalArgumentException("Sede no encontrada: " + nombreSede);
 		}
 
-		if (!verificarDisponibilidad(nombreSede, fecha)) {
+		// Se controla antes de crear la función para no abrir el archivo de asientos de una función ocupada
+		if (!agenda.estaLibre(nombreSede, fecha)) {
 			throw new IllegalArgumentException(
-					"Ya hay una función programada en la sede " + nombreSede + " para la fecha " + fechaStr);
+					"Ya hay una función programada en la sede " + nombreSede + " para la fecha " + fecha);
 		}
 
-		espectaculo.agregarFuncion(fecha, sede, precioBase);
+		Funcion funcion = new Funcion(sede, fecha, precioBase);
+		Runnable deshacer = () -> {
+			rankingFunciones.quitar(funcion);
+			espectaculo.quitarFuncion(funcion);
+			agenda.liberar(funcion);
+			funcion.liberarAsientos();
+		};
+		long secuencia;
+		cerrojoEstado.readLock().lock();
+		try {
+			funcion.marcarAlta(versionEstado.incrementAndGet());
+			if (!agenda.ocupar(funcion)) {
+				funcion.liberarAsientos();
+				throw new IllegalArgumentException(
+						"Ya hay una función programada en la sede " + nombreSede + " para la fecha " + fecha);
+			}
+
+			try {
+				espectaculo.agregarFuncion(funcion);
+			} catch (IllegalArgumentException e) {
+				agenda.liberar(funcion);
+				funcion.liberarAsientos();
+				throw e;
+			}
+			rankingFunciones.agregar(funcion, () -> ocupacionEnMillonesimas(funcion));
+			secuencia = agregarAlDiario(() -> diario.agregarFuncion(nombreEspectaculo, fecha, nombreSede, precioBase),
+					deshacer);
+		} finally {
+			cerrojoEstado.readLock().unlock();
+		}
+		confirmarEnDiario(secuencia, deshacer);
 	}
     
 
@@ -206,6 +489,7 @@ public class Ticketek implements ITicketek {
     public List<IEntrada> venderEntrada(String nombreEspectaculo, String fecha, String email, String contrasenia,
                                          int cantidadEntradas) {
     	try {
+            expirarRetenciones(Reloj.millis());
             chequeosVenta(nombreEspectaculo, fecha, email, contrasenia);
             
             Espectaculo espectaculo = espectaculos.get(nombreEspectaculo);
@@ -213,26 +497,11 @@ public class Ticketek implements ITicketek {
             Usuario usuario = usuarios.get(email);
             
             
-            if (!funcion.verificarDisponibilidad(cantidadEntradas)) {
+            if (!funcion.venderAsiento(cantidadEntradas)) {
                 throw new IllegalArgumentException("Solo hay " + funcion.getDisponiblesSinNumerar() + " entradas disponibles.");
             }
 
-            String sector = "Campo";
-            Fecha fechaObj = Fecha.desdeString(fecha);
-            String nombreSede = funcion.getSede().getNombre();
-            double precio = funcion.devolverPrecio(sector);
-            List<IEntrada> listaEntradas = new ArrayList<>();
-
-            for (int i = 0; i < cantidadEntradas; i++) {
-                Entrada entrada = new Entrada(nombreEspectaculo, nombreSede, fechaObj, precio, email);
-                usuario.comprarEntrada(entrada.devolverCodigo(), entrada);
-                listaEntradas.add(entrada);
-                espectaculo.agregarRecaudacion(nombreSede, precio);        
-            }
-
-            funcion.venderAsiento(cantidadEntradas);
-
-            return listaEntradas;
+            return emitirEntradas(espectaculo, funcion, usuario, cantidadEntradas);
         } catch (RuntimeException e) {
             System.err.println("Error al vender entrada: " + e.getMessage());
             throw e;
@@ -243,40 +512,16 @@ public class Ticketek implements ITicketek {
     @Override
     public List<IEntrada> venderEntrada(String nombreEspectaculo, String fecha, String email, String contrasenia, String sector, int[] asientos) {
     	try {
-    		
+    		expirarRetenciones(Reloj.millis());
     		chequeosVenta(nombreEspectaculo, fecha, email, contrasenia);
             
             Espectaculo espectaculo = espectaculos.get(nombreEspectaculo);
             Funcion funcion = espectaculo.getFuncion(fecha);
             Usuario usuario = usuarios.get(email);
             
-            for (int asiento : asientos) {
-                if (!funcion.verificarDisponibilidad(sector, asiento)) {
-                    throw new IllegalArgumentException("El asiento " + asiento + " del sector " + sector + " no está disponible.");
-                }
-            }
-
-            Fecha fechaObj = Fecha.desdeString(fecha);
-            Sede sede = funcion.getSede();
-            int asientosPorFila = (sede instanceof Teatro)
-                    ? ((Teatro) sede).getAsientosPorFila()
-                    : ((Miniestadio) sede).getAsientosPorFila();
+            reservarAsientos(funcion, sector, asientos);
 
-            String nombreSede = sede.getNombre();
-            double precio = funcion.devolverPrecio(sector);
-            
-            List<IEntrada> listaEntradas = new ArrayList<>();
-
-            for (int asiento : asientos) {
-                int fila = (asiento - 1) / asientosPorFila + 1;
-                Entrada entrada = new Entrada(nombreEspectaculo, nombreSede, fechaObj, sector, fila, asiento, precio, email);
-                usuario.comprarEntrada(entrada.devolverCodigo(), entrada);
-                listaEntradas.add(entrada);
-                funcion.venderAsiento(sector, asiento);
-                espectaculo.agregarRecaudacion(nombreSede, precio);
-            }
-
-            return listaEntradas;
+            return emitirEntradas(espectaculo, funcion, usuario, sector, asientos);
 
         } catch (IllegalArgumentException e) {
             System.err.println("Error al vender entrada: " + e.getMessage());
@@ -285,9 +530,43 @@ public class Ticketek implements ITicketek {
     }
     
     /**
-     * Lista todas las funciones de un espectáculo.
+     * Vende los mejores asientos juntos disponibles de un sector, sin que el comprador
+     * tenga que indicar los números de asiento. Se prefiere una sola fila, lo más adelante
+     * posible; si ninguna fila alcanza, se usan filas consecutivas.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo.
+     * @param fecha             Fecha de la función en formato dd/mm/YY.
+     * @param email             Email del usuario que realiza la compra.
+     * @param contrasenia       Contraseña del usuario.
+     * @param sector            Sector donde se buscan los asientos.
+     * @param cantidadEntradas  Cantidad de asientos juntos pedidos.
+     * @return Lista de entradas vendidas.
+     * @throws IllegalArgumentException si algún dato es inválido o no hay asientos juntos suficientes.
+     * @throws RuntimeException si la autenticación del usuario falla.
+     */
+    public List<IEntrada> venderMejoresEntradas(String nombreEspectaculo, String fecha, String email,
+                                                String contrasenia, String sector, int cantidadEntradas) {
+        expirarRetenciones(Reloj.millis());
+        chequeosVenta(nombreEspectaculo, fecha, email, contrasenia);
+
+        Espectaculo espectaculo = espectaculos.get(nombreEspectaculo);
+        Funcion funcion = espectaculo.getFuncion(fecha);
+        Usuario usuario = usuarios.get(email);
+
+        int[] asientos = funcion.venderMejoresAsientos(sector, cantidadEntradas);
+        if (asientos == null) {
+            throw new IllegalArgumentException("No hay " + cantidadEntradas + " asientos juntos disponibles en el sector " + sector);
+        }
+
+        return emitirEntradas(espectaculo, funcion, usuario, sector, asientos);
+    }
+
+    /**
+     * Lista todas las funciones de un espectáculo, en orden cronológico.
      * Para sedes sin numerar, muestra la cantidad de entradas vendidas y la capacidad.
      * Para sedes numeradas, indica que es una sede numerada.
+     * Las entradas retenidas por una retención vigente se cuentan como vendidas.
+     * Los vendidos de cada sector se leen de los contadores de la función, sin recorrer los asientos.
      * 
      * @param nombreEspectaculo Nombre del espectáculo.
      * @return Cadena con la lista de funciones o mensaje si no se encuentra el espectáculo.
@@ -295,6 +574,7 @@ public class Ticketek implements ITicketek {
     
     @Override
     public String listarFunciones(String nombreEspectaculo) {
+        expirarRetenciones(Reloj.millis());
         Espectaculo espectaculoBuscado = espectaculos.get(nombreEspectaculo);
 
         if (espectaculoBuscado == null) {
@@ -303,7 +583,7 @@ public class Ticketek implements ITicketek {
 
         StringBuilder resultado = new StringBuilder();
       
-        Iterator<Funcion> iterator = espectaculoBuscado.getFunciones().values().iterator();
+        Iterator<Funcion> iterator = espectaculoBuscado.getFunciones().iterator();
 
         while (iterator.hasNext()) {
             Funcion funcion = iterator.next();
@@ -324,31 +604,15 @@ public class Ticketek implements ITicketek {
                 int vendidas = capacidad - disponibles;
                 resultado.append(vendidas).append("/").append(capacidad);
             } else {
-                Map<String, Map<Integer, Boolean>> sectoresDisponibles = funcion.getDisponiblesNumerados();
-                if (sectoresDisponibles != null) {
-                    boolean primero = true;
-                    for (String sector : sede.getSectores()) {
-                        int capacidadSector = sede.getCapacidadSector(sector);
-                        Map<Integer, Boolean> asientosSector = sectoresDisponibles.get(sector);
-                        int disponibles = 0;
-
-                        if (asientosSector != null && !asientosSector.isEmpty()) {
-                            for (boolean disponible : asientosSector.values()) {
-                                if (disponible) disponibles++;
-                            }
-                        } else {
-                            disponibles = capacidadSector;
-                        }
-
-                        int vendidas = capacidadSector - disponibles;
-
-                        if (!primero) {
-                            resultado.append(" | ");
-                        } else {
-                            primero = false;
-                        }
-                        resultado.append(sector).append(": ").append(vendidas).append("/").append(capacidadSector);
+                String[] sectores = sede.getSectores();
+                int[] capacidades = ((SedeNumerada) sede).getCapacidad();
+                int[] vendidos = funcion.getVendidosPorSector();
+                for (int s = 0; s < sectores.length; s++) {
+                    if (s > 0) {
+                        resultado.append(" | ");
                     }
+                    resultado.append(sectores[s]).append(": ")
+                            .append(vendidos[s]).append("/").append(capacidades[s]);
                 }
             }
 
@@ -381,13 +645,7 @@ public class Ticketek implements ITicketek {
         
         Usuario usuario = usuarios.get(email);
         
-        List<Entrada> listaEntradas = usuario.listarEntradasFuturas();
-        List<IEntrada> listaIEntradas = new ArrayList<>();
-
-        for (Entrada entrada : listaEntradas) {
-            listaIEntradas.add(entrada);
-        }
-		return listaIEntradas;
+        return new ArrayList<>(usuario.listarEntradasFuturas());
 	}
 	
     /**
@@ -409,13 +667,7 @@ public class Ticketek implements ITicketek {
         }
         
         Usuario usuario = usuarios.get(email);
-        List<Entrada> listaEntradas = usuario.listarEntradas();
-        List<IEntrada> listaIEntradas = new ArrayList<>();
-
-        for (Entrada entrada : listaEntradas) {
-            listaIEntradas.add(entrada);
-        }
-		return listaIEntradas;
+        return new ArrayList<>(usuario.listarEntradas());
 	}
 	
     /**
@@ -439,6 +691,40 @@ public class Ticketek implements ITicketek {
     	if (!chequeosAnular(entrada, contrasenia))
     		throw new RuntimeException("El espectáculo ya tuvo lugar.");
     	Entrada e = (Entrada) entrada;
+    	anular(e);
+    	long centavos = Espectaculo.aCentavos(e.precio());
+    	Funcion funcion = espectaculos.get(e.getNombreEspectaculo()).getFuncion(e.getFecha());
+    	funcion.getSerie().registrarAnulacion(centavos);
+    	funcion.getSede().getSerie().registrarAnulacion(centavos);
+    	return true;
+	}
+
+    /**
+     * Registra una venta en la serie temporal de la función y en la de su sede.
+     * Las ventas reconstruidas desde el diario o una instantánea no se registran, porque no
+     * ocurrieron ahora.
+     *
+     * @param funcion  Función de la venta.
+     * @param cantidad Cantidad de entradas vendidas.
+     * @param precio   Precio de cada entrada.
+     */
+    private void registrarVentaEnSeries(Funcion funcion, int cantidad, double precio) {
+        long centavos = Espectaculo.aCentavos(precio) * cantidad;
+        funcion.getSerie().registrarVenta(cantidad, centavos);
+        funcion.getSede().getSerie().registrarVenta(cantidad, centavos);
+    }
+
+    /**
+     * Anula una entrada ya verificada: la quita del usuario y de la función, devuelve el asiento
+     * y descuenta la recaudación. No controla la contraseña ni la fecha de la función.
+     * El asiento se devuelve recién cuando la anulación quedó registrada en el diario: si el
+     * registro falla, la anulación se revierte sin que nadie haya podido comprar ese asiento.
+     *
+     * @param e Entrada a anular.
+     * @return {@code true} si la entrada fue anulada.
+     * @throws RuntimeException si la entrada ya estaba anulada o la anulación no pudo registrarse.
+     */
+	private boolean anular(Entrada e) {
         Usuario usuario = usuarios.get(e.getEmailUsuario());
         Espectaculo espectaculo = espectaculos.get(e.getNombreEspectaculo());
         Funcion funcion = espectaculo.getFuncion(e.getFecha());
@@ -447,21 +733,50 @@ public class Ticketek implements ITicketek {
         int asiento = e.devolverAsiento();
         double precio = e.precio();
         String nombreSede = e.devolverSede();
-	    
-	    if (funcion.getDisponiblesNumerados() == null) {
-	    	funcion.sumarAsiento(1);
-	        espectaculo.restarRecaudacion(nombreSede,precio);
-	    	
-	    }else {
-	    	if (funcion.getDisponiblesNumerados().containsKey(sector)) {
-		    	funcion.sumarAsiento(sector, asiento);
+
+	    boolean devuelveAsiento = !funcion.esNumerada() || funcion.tieneSector(sector);
+	    Runnable deshacer = () -> {
+	        if (devuelveAsiento) {
+	            espectaculo.agregarRecaudacion(nombreSede, precio);
+	            sumarEnRankings(espectaculo.getNombre(), nombreSede, Espectaculo.aCentavos(precio));
+	        }
+	        funcion.registrarEntrada(e);
+	        usuario.comprarEntrada(e);
+	        e.revertirAnulacion();
+	    };
+	    long secuencia;
+	    cerrojoEstado.readLock().lock();
+	    try {
+		    if (!e.anular()) {
+		        throw new RuntimeException("La entrada ya fue anulada anteriormente");
+		    }
+		    e.marcarBaja(versionEstado.incrementAndGet());
+		    Queue<Entrada> anuladas = anuladasDuranteInstantanea;
+		    if (anuladas != null) {
+		        anuladas.add(e);
+		    }
+		    usuario.reembolsarEntrada(e);
+		    funcion.quitarEntrada(e);
+		    
+		    if (devuelveAsiento) {
 		        espectaculo.restarRecaudacion(nombreSede,precio);
+		        sumarEnRankings(espectaculo.getNombre(), nombreSede, -Espectaculo.aCentavos(precio));
 		    }
+		    secuencia = agregarAlDiario(() -> diario.agregarAnulacion(e), deshacer);
+	    } finally {
+	        cerrojoEstado.readLock().unlock();
 	    }
+	    confirmarEnDiario(secuencia, deshacer);
+
+	    if (devuelveAsiento) {
+	        if (funcion.esNumerada()) {
+	            funcion.sumarAsiento(sector, asiento);
+	        } else {
+	            funcion.sumarAsiento(1);
+	        }
+	    }
+	    actualizarOcupacion(funcion);
 
-	    usuario.reembolsarEntrada(e.devolverCodigo());
-	    e.anular(); 
-	    
 	    return true;
 	}
 	
@@ -648,36 +963,880 @@ public class Ticketek implements ITicketek {
     /**
      * Devuelve una lista con todas las entradas vendidas correspondientes a un espectáculo específico.
      *
-     * Este método recorre todas las entradas de todos los usuarios registrados en el sistema
-     * y filtra aquellas que correspondan al nombre del espectáculo indicado.
+     * Las entradas se obtienen del índice que cada función del espectáculo mantiene al vender
+     * y anular, por lo que el costo es proporcional a las entradas del espectáculo y no a todas
+     * las entradas del sistema.
      *
      * @param nombreEspectaculo Nombre del espectáculo cuyas entradas se desean listar
      * @return Lista de entradas correspondientes al espectáculo especificado
      */
     @Override
 	public List<IEntrada> listarEntradasEspectaculo(String nombreEspectaculo) {
-	    List<IEntrada> resultado = new ArrayList<>();
-       
-	    Iterator<Usuario> iteratorUsuarios = usuarios.values().iterator();
-	    
-	    while (iteratorUsuarios.hasNext()) {
-	        Usuario usuario = iteratorUsuarios.next();
-	        
-	        Iterator<Entrada> iteratorEntradas = usuario.listarEntradas().iterator();
-	        
-	        while (iteratorEntradas.hasNext()) {
-	            Entrada entrada = iteratorEntradas.next();
-	            if (entrada.getNombreEspectaculo().equals(nombreEspectaculo)) {
-	                resultado.add(entrada);
-	            }
-	        }
+	    Espectaculo espectaculo = espectaculos.get(nombreEspectaculo);
+	    if (espectaculo == null) {
+	        return new ArrayList<>();
 	    }
-	    
-	    return resultado;
+	    return new ArrayList<>(espectaculo.listarEntradas());
 	}
+    /**
+     * Devuelve los espectáculos que más recaudaron, de mayor a menor. La tabla se actualiza con
+     * cada venta y anulación, por lo que la consulta no recorre el catálogo.
+     *
+     * @param cantidad Cantidad de posiciones pedidas.
+     * @return Posiciones con el nombre del espectáculo y su recaudación en centavos.
+     * @throws IllegalArgumentException si la cantidad es negativa.
+     */
+    public List<Ranking.Posicion<String>> topEspectaculosPorRecaudacion(int cantidad) {
+        return rankingEspectaculos.primeros(cantidad);
+    }
+
+    /**
+     * Devuelve las funciones con mayor ocupación, de mayor a menor. Los asientos retenidos
+     * cuentan como ocupados, igual que en {@link Funcion#getVendidosTotal()}.
+     *
+     * @param cantidad Cantidad de posiciones pedidas.
+     * @return Posiciones con la función y su ocupación en millonésimas (1.000.000 es llena).
+     * @throws IllegalArgumentException si la cantidad es negativa.
+     */
+    public List<Ranking.Posicion<Funcion>> topFuncionesPorOcupacion(int cantidad) {
+        return rankingFunciones.primeros(cantidad);
+    }
+
+    /**
+     * Devuelve las sedes que más recaudaron sumando todos los espectáculos, de mayor a menor.
+     *
+     * @param cantidad Cantidad de posiciones pedidas.
+     * @return Posiciones con el nombre de la sede y su recaudación en centavos.
+     * @throws IllegalArgumentException si la cantidad es negativa.
+     */
+    public List<Ranking.Posicion<String>> topSedesPorRecaudacion(int cantidad) {
+        return rankingSedes.primeros(cantidad);
+    }
 	
+    /**
+     * Retiene entradas sin numerar mientras el usuario completa el pago.
+     * Las entradas retenidas dejan de estar disponibles para otros compradores y se
+     * liberan automáticamente si la retención no se confirma antes de vencer.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo.
+     * @param fecha             Fecha de la función en formato dd/mm/YY.
+     * @param email             Email del usuario.
+     * @param contrasenia       Contraseña del usuario.
+     * @param cantidadEntradas  Cantidad de entradas a retener.
+     * @param duracionMillis    Tiempo de vida de la retención en milisegundos.
+     * @return Código de la retención, necesario para confirmarla o liberarla.
+     * @throws IllegalArgumentException si algún dato es inválido o no hay suficientes entradas disponibles.
+     * @throws RuntimeException si la autenticación del usuario falla.
+     */
+    public String retenerEntradas(String nombreEspectaculo, String fecha, String email, String contrasenia,
+                                  int cantidadEntradas, long duracionMillis) {
+        long ahora = Reloj.millis();
+        expirarRetenciones(ahora);
+        chequeosVenta(nombreEspectaculo, fecha, email, contrasenia);
+        if (cantidadEntradas <= 0 || duracionMillis <= 0) {
+            throw new IllegalArgumentException("La cantidad y la duración de la retención deben ser positivas");
+        }
+
+        Espectaculo espectaculo = espectaculos.get(nombreEspectaculo);
+        Funcion funcion = espectaculo.getFuncion(fecha);
+        if (!funcion.venderAsiento(cantidadEntradas)) {
+            throw new IllegalArgumentException("Solo hay " + funcion.getDisponiblesSinNumerar() + " entradas disponibles.");
+        }
+
+        Retencion retencion = new Retencion(espectaculo, funcion, email, cantidadEntradas);
+        registrarRetencion(retencion, ahora, duracionMillis);
+        return retencion.getCodigo();
+    }
+
+    /**
+     * Retiene asientos numerados mientras el usuario completa el pago.
+     * Los asientos retenidos dejan de estar disponibles para otros compradores y se
+     * liberan automáticamente si la retención no se confirma antes de vencer.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo.
+     * @param fecha             Fecha de la función en formato dd/mm/YY.
+     * @param email             Email del usuario.
+     * @param contrasenia       Contraseña del usuario.
+     * @param sector            Sector de los asientos.
+     * @param asientos          Números de asiento a retener.
+     * @param duracionMillis    Tiempo de vida de la retención en milisegundos.
+     * @return Código de la retención, necesario para confirmarla o liberarla.
+     * @throws IllegalArgumentException si algún dato es inválido o algún asiento no está disponible.
+     * @throws RuntimeException si la autenticación del usuario falla.
+     */
+    public String retenerEntradas(String nombreEspectaculo, String fecha, String email, String contrasenia,
+                                  String sector, int[] asientos, long duracionMillis) {
+        long ahora = Reloj.millis();
+        expirarRetenciones(ahora);
+        chequeosVenta(nombreEspectaculo, fecha, email, contrasenia);
+        if (asientos == null || asientos.length == 0 || duracionMillis <= 0) {
+            throw new IllegalArgumentException("Los asientos y la duración de la retención deben ser positivos");
+        }
+
+        Espectaculo espectaculo = espectaculos.get(nombreEspectaculo);
+        Funcion funcion = espectaculo.getFuncion(fecha);
+        reservarAsientos(funcion, sector, asientos);
+
+        Retencion retencion = new Retencion(espectaculo, funcion, email, sector, asientos);
+        registrarRetencion(retencion, ahora, duracionMillis);
+        return retencion.getCodigo();
+    }
+
+    /**
+     * Confirma una retención vigente y emite las entradas al usuario,
+     * igual que si se hubieran vendido con venderEntrada.
+     *
+     * @param codigoRetencion Código devuelto por retenerEntradas.
+     * @param contrasenia     Contraseña del usuario que retuvo las entradas.
+     * @return Lista de entradas emitidas.
+     * @throws RuntimeException si la retención no existe, ya venció o la contraseña es incorrecta.
+     */
+    public List<IEntrada> confirmarRetencion(String codigoRetencion, String contrasenia) {
+        expirarRetenciones(Reloj.millis());
+        Retencion retencion = buscarRetencion(codigoRetencion, contrasenia);
+
+        if (!retencion.confirmar()) {
+            throw new RuntimeException("La retención ya no está vigente: " + codigoRetencion);
+        }
+        ruedaRetenciones.quitar(retencion);
+        retenciones.remove(codigoRetencion);
+
+        Usuario usuario = usuarios.get(retencion.getEmailUsuario());
+        if (retencion.getFuncion().esNumerada()) {
+            return emitirEntradas(retencion.getEspectaculo(), retencion.getFuncion(), usuario,
+                    retencion.getSector(), retencion.getAsientos());
+        }
+        return emitirEntradas(retencion.getEspectaculo(), retencion.getFuncion(), usuario, retencion.getCantidad());
+    }
+
+    /**
+     * Libera una retención vigente antes de su vencimiento, devolviendo los asientos a la función.
+     *
+     * @param codigoRetencion Código devuelto por retenerEntradas.
+     * @param contrasenia     Contraseña del usuario que retuvo las entradas.
+     * @return true si la retención se liberó, false si ya había sido confirmada o liberada.
+     * @throws RuntimeException si la retención no existe o la contraseña es incorrecta.
+     */
+    public boolean liberarRetencion(String codigoRetencion, String contrasenia) {
+        expirarRetenciones(Reloj.millis());
+        Retencion retencion = buscarRetencion(codigoRetencion, contrasenia);
+
+        if (!retencion.liberar()) {
+            return false;
+        }
+        ruedaRetenciones.quitar(retencion);
+        retenciones.remove(codigoRetencion);
+        retencion.devolverAsientos();
+        actualizarOcupacion(retencion.getFuncion());
+        return true;
+    }
+
 	// ----------------------------------------------------------- AUXILIARES -----------------------------------------------------------------------
 
+    /**
+     * Verifica y vende de forma atómica un conjunto de asientos numerados de una función.
+     *
+     * @param funcion  Función donde se venden los asientos.
+     * @param sector   Sector de los asientos.
+     * @param asientos Números de asiento.
+     * @throws IllegalArgumentException si el sector o algún asiento son inválidos o no están disponibles.
+     */
+    private void reservarAsientos(Funcion funcion, String sector, int[] asientos) {
+        for (int asiento : asientos) {
+            if (!funcion.verificarDisponibilidad(sector, asiento)) {
+                throw new IllegalArgumentException("El asiento " + asiento + " del sector " + sector + " no está disponible.");
+            }
+        }
+
+        if (!funcion.venderAsientos(sector, asientos)) {
+            throw new IllegalArgumentException("Alguno de los asientos solicitados del sector " + sector + " ya fue vendido.");
+        }
+    }
+
+    /**
+     * Crea las entradas sin numerar ya descontadas de la función y las asigna al usuario.
+     *
+     * @param espectaculo Espectáculo de la función.
+     * @param funcion     Función de las entradas.
+     * @param usuario     Usuario comprador.
+     * @param cantidad    Cantidad de entradas.
+     * @return Lista de entradas emitidas.
+     */
+    private List<IEntrada> emitirEntradas(Espectaculo espectaculo, Funcion funcion, Usuario usuario, int cantidad) {
+        return emitirEntradas(espectaculo, funcion, usuario, cantidad, null);
+    }
+
+    /**
+     * Crea las entradas sin numerar ya descontadas de la función y las asigna al usuario.
+     *
+     * @param espectaculo Espectáculo de la función.
+     * @param funcion     Función de las entradas.
+     * @param usuario     Usuario comprador.
+     * @param cantidad    Cantidad de entradas.
+     * @param codigos     Códigos de las entradas, o null para generar códigos nuevos.
+     * @return Lista de entradas emitidas.
+     * @throws RuntimeException si la venta no pudo registrarse en el diario; en ese caso la venta
+     *         se deshace y los asientos vuelven a la función.
+     */
+    private List<IEntrada> emitirEntradas(Espectaculo espectaculo, Funcion funcion, Usuario usuario, int cantidad,
+                                          UUID[] codigos) {
+        String nombreSede = funcion.getSede().getNombre();
+        ContextoEntrada contexto = funcion.contextoEntradas(espectaculo.getNombre());
+        double precio = contexto.getPrecio(0);
+        List<IEntrada> listaEntradas = new ArrayList<>(cantidad);
+        Runnable deshacer = () -> deshacerVenta(espectaculo, funcion, usuario, listaEntradas, precio);
+        long secuencia;
+
+        cerrojoEstado.readLock().lock();
+        try {
+            long version = versionEstado.incrementAndGet();
+            for (int i = 0; i < cantidad; i++) {
+                UUID codigo = codigos == null ? UUID.randomUUID() : codigos[i];
+                Entrada entrada = new Entrada(codigo, contexto, 0, 0, 0, usuario.getEmail());
+                entrada.marcarAlta(version);
+                usuario.comprarEntrada(entrada);
+                funcion.registrarEntrada(entrada);
+                listaEntradas.add(entrada);
+            }
+            espectaculo.agregarRecaudacion(nombreSede, precio, listaEntradas.size());
+            sumarEnRankings(espectaculo.getNombre(), nombreSede, Espectaculo.aCentavos(precio) * listaEntradas.size());
+            actualizarOcupacion(funcion);
+            secuencia = listaEntradas.isEmpty() ? 0 : agregarAlDiario(() -> diario.agregarVenta(listaEntradas), deshacer);
+        } finally {
+            cerrojoEstado.readLock().unlock();
+        }
+        confirmarEnDiario(secuencia, deshacer);
+        if (codigos == null) {
+            registrarVentaEnSeries(funcion, listaEntradas.size(), precio);
+        }
+
+        return listaEntradas;
+    }
+
+    /**
+     * Crea las entradas numeradas ya descontadas de la función y las asigna al usuario.
+     *
+     * @param espectaculo Espectáculo de la función.
+     * @param funcion     Función de las entradas.
+     * @param usuario     Usuario comprador.
+     * @param sector      Sector de los asientos.
+     * @param asientos    Números de asiento.
+     * @return Lista de entradas emitidas.
+     */
+    private List<IEntrada> emitirEntradas(Espectaculo espectaculo, Funcion funcion, Usuario usuario,
+                                          String sector, int[] asientos) {
+        return emitirEntradas(espectaculo, funcion, usuario, sector, asientos, null);
+    }
+
+    /**
+     * Crea las entradas numeradas ya descontadas de la función y las asigna al usuario.
+     *
+     * @param espectaculo Espectáculo de la función.
+     * @param funcion     Función de las entradas.
+     * @param usuario     Usuario comprador.
+     * @param sector      Sector de los asientos.
+     * @param asientos    Números de asiento.
+     * @param codigos     Códigos de las entradas, o null para generar códigos nuevos.
+     * @return Lista de entradas emitidas.
+     * @throws RuntimeException si la venta no pudo registrarse en el diario; en ese caso la venta
+     *         se deshace y los asientos vuelven a la función.
+     */
+    private List<IEntrada> emitirEntradas(Espectaculo espectaculo, Funcion funcion, Usuario usuario,
+                                          String sector, int[] asientos, UUID[] codigos) {
+        Sede sede = funcion.getSede();
+        int asientosPorFila = (sede instanceof Teatro)
+                ? ((Teatro) sede).getAsientosPorFila()
+                : ((Miniestadio) sede).getAsientosPorFila();
+
+        String nombreSede = sede.getNombre();
+        ContextoEntrada contexto = funcion.contextoEntradas(espectaculo.getNombre());
+        int ordinal = ((SedeNumerada) sede).getIndiceSector(sector);
+        double precio = contexto.getPrecio(ordinal);
+        
+        List<IEntrada> listaEntradas = new ArrayList<>(asientos.length);
+        Runnable deshacer = () -> deshacerVenta(espectaculo, funcion, usuario, listaEntradas, precio);
+        long secuencia;
+
+        cerrojoEstado.readLock().lock();
+        try {
+            long version = versionEstado.incrementAndGet();
+            for (int i = 0; i < asientos.length; i++) {
+                int asiento = asientos[i];
+                int fila = (asiento - 1) / asientosPorFila + 1;
+                UUID codigo = codigos == null ? UUID.randomUUID() : codigos[i];
+                Entrada entrada = new Entrada(codigo, contexto, ordinal, fila, asiento, usuario.getEmail());
+                entrada.marcarAlta(version);
+                usuario.comprarEntrada(entrada);
+                funcion.registrarEntrada(entrada);
+                listaEntradas.add(entrada);
+            }
+            espectaculo.agregarRecaudacion(nombreSede, precio, listaEntradas.size());
+            sumarEnRankings(espectaculo.getNombre(), nombreSede, Espectaculo.aCentavos(precio) * listaEntradas.size());
+            actualizarOcupacion(funcion);
+            secuencia = listaEntradas.isEmpty() ? 0 : agregarAlDiario(() -> diario.agregarVenta(listaEntradas), deshacer);
+        } finally {
+            cerrojoEstado.readLock().unlock();
+        }
+        confirmarEnDiario(secuencia, deshacer);
+        if (codigos == null) {
+            registrarVentaEnSeries(funcion, listaEntradas.size(), precio);
+        }
+
+        return listaEntradas;
+    }
+
+    /**
+     * Deshace una venta cuyo registro en el diario falló: da de baja las entradas sin registrarlas,
+     * las quita del usuario y de la función, devuelve los asientos y descuenta la recaudación.
+     * Se llama con el cerrojo de estado tomado en lectura.
+     *
+     * @param espectaculo Espectáculo de la función.
+     * @param funcion     Función de las entradas.
+     * @param usuario     Usuario comprador.
+     * @param entradas    Entradas emitidas.
+     * @param precio      Precio de cada entrada.
+     */
+    private void deshacerVenta(Espectaculo espectaculo, Funcion funcion, Usuario usuario, List<IEntrada> entradas,
+                               double precio) {
+        String nombreSede = funcion.getSede().getNombre();
+        long version = versionEstado.incrementAndGet();
+        for (IEntrada entrada : entradas) {
+            Entrada e = (Entrada) entrada;
+            e.anular();
+            e.marcarBaja(version);
+            usuario.reembolsarEntrada(e);
+            funcion.quitarEntrada(e);
+            if (funcion.esNumerada()) {
+                funcion.sumarAsiento(e.devolverSector(), e.devolverAsiento());
+            }
+            espectaculo.restarRecaudacion(nombreSede, precio);
+        }
+        if (!funcion.esNumerada()) {
+            funcion.sumarAsiento(entradas.size());
+        }
+        sumarEnRankings(espectaculo.getNombre(), nombreSede, -Espectaculo.aCentavos(precio) * entradas.size());
+        actualizarOcupacion(funcion);
+    }
+
+    /**
+     * Registra una retención en el índice por código y en la rueda de vencimientos.
+     *
+     * @param retencion      Retención a registrar.
+     * @param ahora          Instante actual en milisegundos.
+     * @param duracionMillis Tiempo de vida de la retención en milisegundos.
+     */
+    private void registrarRetencion(Retencion retencion, long ahora, long duracionMillis) {
+        retenciones.put(retencion.getCodigo(), retencion);
+        ruedaRetenciones.agregar(retencion, ahora, duracionMillis);
+        actualizarOcupacion(retencion.getFuncion());
+    }
+
+    /**
+     * Suma una variación de recaudación a las tablas de espectáculos y de sedes.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo.
+     * @param nombreSede        Nombre de la sede.
+     * @param centavos          Variación de la recaudación en centavos (negativa al anular).
+     */
+    private void sumarEnRankings(String nombreEspectaculo, String nombreSede, long centavos) {
+        rankingEspectaculos.sumar(nombreEspectaculo, centavos);
+        rankingSedes.sumar(nombreSede, centavos);
+    }
+
+    /**
+     * Marca que la ocupación de una función cambió. No toma cerrojos ni cuenta asientos: la
+     * ocupación se recalcula al consultar la tabla, una vez por función que cambió.
+     *
+     * @param funcion Función cuyos vendidos cambiaron.
+     */
+    private void actualizarOcupacion(Funcion funcion) {
+        rankingFunciones.marcar(funcion);
+    }
+
+    /**
+     * Calcula la ocupación de una función en millonésimas, para ordenar con enteros sin perder
+     * las diferencias entre funciones grandes.
+     *
+     * @param funcion Función a medir.
+     * @return Ocupación entre 0 y 1.000.000 (0 si la función no tiene capacidad).
+     */
+    private static long ocupacionEnMillonesimas(Funcion funcion) {
+        int capacidad = funcion.getCapacidadTotal();
+        return capacidad <= 0 ? 0 : (long) funcion.getVendidosTotal() * 1_000_000 / capacidad;
+    }
+
+    /**
+     * Busca una retención vigente y autentica a su usuario.
+     *
+     * @param codigoRetencion Código de la retención.
+     * @param contrasenia     Contraseña del usuario.
+     * @return Retención encontrada.
+     * @throws RuntimeException si la retención no existe o la contraseña es incorrecta.
+     */
+    private Retencion buscarRetencion(String codigoRetencion, String contrasenia) {
+        Retencion retencion = codigoRetencion == null ? null : retenciones.get(codigoRetencion);
+        if (retencion == null) {
+            throw new RuntimeException("Retención inexistente o vencida: " + codigoRetencion);
+        }
+        if (!autenticarUsuario(retencion.getEmailUsuario(), contrasenia)) {
+            throw new RuntimeException("Contraseña incorrecta");
+        }
+        return retencion;
+    }
+
+    /**
+     * Archiva las funciones que ya tuvieron lugar: cada una guarda un resumen inmutable de
+     * vendidos por sector, recaudación y entradas, y libera su inventario de asientos.
+     * Los listados y la recaudación siguen devolviendo los mismos resultados.
+     * Las funciones con retenciones vigentes se archivan en una pasada posterior.
+     *
+     * @return Cantidad de funciones archivadas en esta pasada.
+     */
+    public int archivarFuncionesPasadas() {
+        expirarRetenciones(Reloj.millis());
+        Set<Funcion> conRetenciones = new HashSet<>();
+        for (Retencion retencion : retenciones.values()) {
+            if (retencion.estaActiva()) {
+                conRetenciones.add(retencion.getFuncion());
+            }
+        }
+
+        int archivadas = 0;
+        for (Espectaculo espectaculo : espectaculos.values()) {
+            for (Funcion funcion : espectaculo.getFuncionesPasadas()) {
+                if (!conRetenciones.contains(funcion) && funcion.archivar()) {
+                    archivadas++;
+                }
+            }
+        }
+        return archivadas;
+    }
+
+    /**
+     * Hace que las funciones nuevas de las sedes numeradas guarden sus asientos en archivos
+     * mapeados en memoria en lugar del heap. Las funciones ya creadas no cambian.
+     * Los archivos no conservan ventas entre reinicios (ver {@link ArchivoAsientos}): para
+     * reconstruir un sistema con asientos mapeados se usa
+     * {@link #recuperar(Path, DiarioVentas, ArchivoAsientos)}.
+     *
+     * @param archivo Directorio de inventarios mapeados, o null para volver a usar el heap.
+     */
+    public void usarAsientosMapeados(ArchivoAsientos archivo) {
+        this.archivoAsientos = archivo;
+        for (Sede sede : sedes.values()) {
+            if (sede instanceof SedeNumerada) {
+                ((SedeNumerada) sede).setArchivoAsientos(archivo);
+            }
+        }
+    }
+
+    /**
+     * Guarda una instantánea consistente del sistema en un archivo: sedes, usuarios, espectáculos,
+     * funciones y entradas vigentes, junto con la secuencia del diario hasta la que llega.
+     * Las ventas solo se detienen mientras se fija el punto de corte (la versión del estado y la
+     * secuencia del diario); el catálogo se copia y el archivo se escribe después, con las ventas
+     * en curso, filtrando sedes, usuarios, espectáculos, funciones y entradas por su versión.
+     *
+     * @param archivo Ruta del archivo de la instantánea; se reemplaza de forma atómica.
+     * @throws RuntimeException si la instantánea no pudo escribirse.
+     */
+    public void guardarInstantanea(Path archivo) {
+        synchronized (cerrojoInstantanea) {
+            Queue<Entrada> anuladas = new ConcurrentLinkedQueue<>();
+            long version;
+            long secuencia;
+            cerrojoEstado.writeLock().lock();
+            try {
+                version = versionEstado.get();
+                secuencia = diario == null ? 0 : diario.getSecuencia();
+                anuladasDuranteInstantanea = anuladas;
+            } finally {
+                cerrojoEstado.writeLock().unlock();
+            }
+
+            try {
+                // Las operaciones hasta el corte ya están en memoria, pero su registro puede no estar
+                // sincronizado todavía: la instantánea no puede adelantarse al diario
+                if (diario != null) {
+                    diario.sincronizarHasta(secuencia);
+                }
+                Instantanea.Captura captura = new Instantanea.Captura(version, secuencia, sedes.values(),
+                        usuarios.values(), espectaculos.values());
+                Instantanea.escribir(captura, anuladas, archivo);
+            } finally {
+                anuladasDuranteInstantanea = null;
+            }
+        }
+    }
+
+    /**
+     * Programa instantáneas periódicas en un hilo de fondo. Un error al guardar una instantánea
+     * se informa y no cancela las siguientes.
+     *
+     * @param archivo       Ruta del archivo de la instantánea.
+     * @param periodoMillis Tiempo entre instantáneas en milisegundos.
+     * @return Tarea programada, que puede cancelarse para dejar de tomar instantáneas.
+     * @throws IllegalArgumentException si el periodo no es positivo.
+     */
+    public synchronized ScheduledFuture<?> programarInstantaneas(Path archivo, long periodoMillis) {
+        if (periodoMillis <= 0) {
+            throw new IllegalArgumentException("El periodo de las instantáneas debe ser positivo");
+        }
+        if (programadorInstantaneas == null) {
+            programadorInstantaneas = Executors.newSingleThreadScheduledExecutor(tarea -> {
+                Thread hilo = new Thread(tarea, "ticketek-instantaneas");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+        return programadorInstantaneas.scheduleWithFixedDelay(() -> {
+            try {
+                guardarInstantanea(archivo);
+            } catch (RuntimeException e) {
+                System.err.println("Error al guardar la instantánea: " + e.getMessage());
+            }
+        }, periodoMillis, periodoMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reconstruye un sistema a partir de la última instantánea y de la cola del diario:
+     * carga la instantánea (cada espectáculo en paralelo) y aplica solo los registros del
+     * diario posteriores a ella. El sistema devuelto sigue registrando en el diario.
+     *
+     * @param archivoInstantanea Ruta de la instantánea; si no existe se aplica el diario completo.
+     * @param diario             Diario de ventas, o null para cargar solo la instantánea.
+     * @return Sistema reconstruido.
+     * @throws RuntimeException si la instantánea o el diario no pueden leerse o no son consistentes.
+     */
+    public static Ticketek recuperar(Path archivoInstantanea, DiarioVentas diario) {
+        return recuperar(archivoInstantanea, diario, null);
+    }
+
+    /**
+     * Reconstruye un sistema como {@link #recuperar(Path, DiarioVentas)}, guardando los asientos
+     * de las sedes numeradas en archivos mapeados. Los archivos se abren vacíos y sus asientos
+     * vendidos se vuelven a marcar a partir de las entradas de la instantánea y del diario, que
+     * son la fuente de verdad.
+     *
+     * @param archivoInstantanea Ruta de la instantánea; si no existe se aplica el diario completo.
+     * @param diario             Diario de ventas, o null para cargar solo la instantánea.
+     * @param asientos           Directorio de inventarios mapeados, o null para usar el heap.
+     * @return Sistema reconstruido.
+     * @throws RuntimeException si la instantánea o el diario no pueden leerse o no son consistentes,
+     *         o si algún archivo de asientos está en uso.
+     */
+    public static Ticketek recuperar(Path archivoInstantanea, DiarioVentas diario, ArchivoAsientos asientos) {
+        Ticketek sistema = new Ticketek();
+        sistema.usarAsientosMapeados(asientos);
+        long desde = archivoInstantanea != null && Files.exists(archivoInstantanea)
+                ? Instantanea.cargar(archivoInstantanea, sistema)
+                : 0;
+        if (diario != null) {
+            diario.recorrer(registro -> {
+                if (registro.getSecuencia() > desde) {
+                    sistema.aplicar(registro.getTipo(), registro.getVersion(), registro.getDatos());
+                }
+            });
+        }
+        sistema.diario = diario;
+        return sistema;
+    }
+
+    /**
+     * Aplica una operación codificada con el formato actual de los registros del diario de ventas,
+     * sin volver a registrarla.
+     *
+     * @param tipo  Tipo del registro (una de las constantes de {@link DiarioVentas}).
+     * @param datos Contenido del registro.
+     * @throws RuntimeException si el contenido no puede leerse o la operación no es aplicable.
+     */
+    void aplicar(byte tipo, DataInputStream datos) {
+        aplicar(tipo, (byte) DiarioVentas.VERSION, datos);
+    }
+
+    /**
+     * Aplica una operación codificada con el formato de los registros del diario de ventas,
+     * sin volver a registrarla.
+     *
+     * @param tipo    Tipo del registro (una de las constantes de {@link DiarioVentas}).
+     * @param version Versión del formato con que se escribió el registro.
+     * @param datos   Contenido del registro.
+     * @throws RuntimeException si el contenido no puede leerse o la operación no es aplicable.
+     */
+    void aplicar(byte tipo, byte version, DataInputStream datos) {
+        try {
+            switch (tipo) {
+                case DiarioVentas.SEDE_ESTADIO:
+                    registrarSede(datos.readUTF(), datos.readUTF(), datos.readInt());
+                    break;
+                case DiarioVentas.SEDE_TEATRO: {
+                    String nombre = datos.readUTF();
+                    String direccion = datos.readUTF();
+                    int capacidadMaxima = datos.readInt();
+                    int asientosPorFila = datos.readInt();
+                    int cantidadSectores = datos.readInt();
+                    String[] sectores = new String[cantidadSectores];
+                    int[] capacidad = new int[cantidadSectores];
+                    int[] porcentajeAdicional = new int[cantidadSectores];
+                    leerSectores(datos, sectores, capacidad, porcentajeAdicional);
+                    registrarSede(nombre, direccion, capacidadMaxima, asientosPorFila, sectores, capacidad,
+                            porcentajeAdicional);
+                    break;
+                }
+                case DiarioVentas.SEDE_MINIESTADIO: {
+                    String nombre = datos.readUTF();
+                    String direccion = datos.readUTF();
+                    int capacidadMaxima = datos.readInt();
+                    int asientosPorFila = datos.readInt();
+                    int cantidadPuestos = datos.readInt();
+                    double precioConsumicion = datos.readDouble();
+                    int cantidadSectores = datos.readInt();
+                    String[] sectores = new String[cantidadSectores];
+                    int[] capacidad = new int[cantidadSectores];
+                    int[] porcentajeAdicional = new int[cantidadSectores];
+                    leerSectores(datos, sectores, capacidad, porcentajeAdicional);
+                    registrarSede(nombre, direccion, capacidadMaxima, asientosPorFila, cantidadPuestos,
+                            precioConsumicion, sectores, capacidad, porcentajeAdicional);
+                    break;
+                }
+                case DiarioVentas.USUARIO:
+                    if (version < DiarioVentas.VERSION_HUELLAS_CONTRASENIA) {
+                        registrarUsuario(datos.readUTF(), datos.readUTF(), datos.readUTF(), datos.readUTF());
+                    } else {
+                        restaurarUsuario(datos.readUTF(), datos.readUTF(), datos.readUTF(), datos.readUTF());
+                    }
+                    break;
+                case DiarioVentas.ESPECTACULO:
+                    registrarEspectaculo(datos.readUTF());
+                    break;
+                case DiarioVentas.FUNCION:
+                    agregarFuncion(datos.readUTF(), Fecha.desdeDiaEpoca(datos.readInt()), datos.readUTF(),
+                            datos.readDouble());
+                    break;
+                case DiarioVentas.VENTA: {
+                    String nombreEspectaculo = datos.readUTF();
+                    int diaEpoca = datos.readInt();
+                    String email = datos.readUTF();
+                    String sector = datos.readUTF();
+                    int cantidad = datos.readInt();
+                    UUID[] codigos = new UUID[cantidad];
+                    int[] asientos = new int[cantidad];
+                    for (int i = 0; i < cantidad; i++) {
+                        codigos[i] = leerCodigo(datos, version);
+                        asientos[i] = datos.readInt();
+                    }
+                    restaurarVenta(nombreEspectaculo, diaEpoca, email, sector, codigos, asientos);
+                    break;
+                }
+                case DiarioVentas.ANULACION:
+                    restaurarAnulacion(datos.readUTF(), leerCodigo(datos, version));
+                    break;
+                default:
+                    throw new RuntimeException("Tipo de registro desconocido: " + tipo);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Registro del diario incompleto", e);
+        }
+    }
+
+    /**
+     * Vuelve a emitir entradas ya vendidas, con sus códigos originales, sin controlar
+     * contraseña ni fecha y sin registrarlas en el diario.
+     *
+     * @param nombreEspectaculo Nombre del espectáculo.
+     * @param diaEpoca          Fecha de la función, en días desde el 01/01/1970.
+     * @param email             Email del comprador.
+     * @param sector            Sector de las entradas ("Campo" si la sede no es numerada).
+     * @param codigos           Códigos de las entradas.
+     * @param asientos          Asientos de las entradas (ignorados si la sede no es numerada).
+     * @throws RuntimeException si el espectáculo, la función o el usuario no existen, o los asientos ya están vendidos.
+     */
+    void restaurarVenta(String nombreEspectaculo, int diaEpoca, String email, String sector, UUID[] codigos,
+                        int[] asientos) {
+        Espectaculo espectaculo = espectaculos.get(nombreEspectaculo);
+        Funcion funcion = espectaculo == null ? null : espectaculo.getFuncion(Fecha.desdeDiaEpoca(diaEpoca));
+        Usuario usuario = usuarios.get(email);
+        if (funcion == null || usuario == null) {
+            throw new RuntimeException("Venta inconsistente de " + nombreEspectaculo + " para " + email);
+        }
+
+        if (funcion.esNumerada()) {
+            reservarAsientos(funcion, sector, asientos);
+            emitirEntradas(espectaculo, funcion, usuario, sector, asientos, codigos);
+        } else {
+            if (!funcion.venderAsiento(codigos.length)) {
+                throw new RuntimeException("Venta inconsistente de " + nombreEspectaculo + ": no hay cupo");
+            }
+            emitirEntradas(espectaculo, funcion, usuario, codigos.length, codigos);
+        }
+    }
+
+    /**
+     * Vuelve a dar de alta un usuario a partir de la huella de su contraseña.
+     *
+     * @param email             Email único del usuario.
+     * @param nombre            Nombre del usuario.
+     * @param apellido          Apellido del usuario.
+     * @param huellaContrasenia Huella "sal:hash" de la contraseña.
+     * @return Usuario registrado.
+     * @throws IllegalArgumentException Si el email ya existe o algún dato es inválido.
+     */
+    Usuario restaurarUsuario(String email, String nombre, String apellido, String huellaContrasenia) {
+        Usuario usuario = Usuario.restaurar(email, nombre, apellido, huellaContrasenia);
+        registrarUsuario(usuario);
+        return usuario;
+    }
+
+    /**
+     * Vuelve a emitir de una vez todas las entradas vigentes de una función, con sus códigos
+     * originales, sin controlar contraseña ni fecha y sin registrarlas en el diario. A diferencia
+     * de restaurarVenta, que repite una venta, marca los asientos una vez por sector (o descuenta
+     * el cupo una vez), crea todas las entradas con el mismo contexto y una sola versión del estado,
+     * y suma recaudación y rankings una vez por función. Las series de ventas no se tocan, igual
+     * que al restaurar ventas del diario.
+     *
+     * @param espectaculo Espectáculo de la función.
+     * @param funcion     Función de las entradas.
+     * @param titulares   Usuario dueño de cada entrada.
+     * @param ordinales   Ordinal del sector de cada entrada (0 si la sede no es numerada).
+     * @param asientos    Asiento de cada entrada (ignorado si la sede no es numerada).
+     * @param idsAlto     Mitad alta del código de cada entrada.
+     * @param idsBajo     Mitad baja del código de cada entrada.
+     * @throws RuntimeException si algún sector no existe o los asientos (o el cupo) ya están vendidos.
+     */
+    void restaurarEntradas(Espectaculo espectaculo, Funcion funcion, Usuario[] titulares, int[] ordinales,
+                           int[] asientos, long[] idsAlto, long[] idsBajo) {
+        int cantidad = titulares.length;
+        if (cantidad == 0) {
+            return;
+        }
+        Sede sede = funcion.getSede();
+        ContextoEntrada contexto = funcion.contextoEntradas(espectaculo.getNombre());
+        int sectores = sede.esNumerada() ? sede.getSectores().length : 1;
+        int[] porSector = new int[sectores];
+        for (int ordinal : ordinales) {
+            if (ordinal < 0 || ordinal >= sectores) {
+                throw new RuntimeException("Venta inconsistente de " + espectaculo.getNombre() + ": sector " + ordinal);
+            }
+            porSector[ordinal]++;
+        }
+
+        int asientosPorFila = 0;
+        if (funcion.esNumerada()) {
+            asientosPorFila = ((SedeNumerada) sede).getAsientosPorFila();
+            int[][] asientosPorSector = new int[sectores][];
+            int[] llenos = new int[sectores];
+            for (int s = 0; s < sectores; s++) {
+                asientosPorSector[s] = new int[porSector[s]];
+            }
+            for (int i = 0; i < cantidad; i++) {
+                asientosPorSector[ordinales[i]][llenos[ordinales[i]]++] = asientos[i];
+            }
+            for (int s = 0; s < sectores; s++) {
+                if (!funcion.restaurarAsientos(s, asientosPorSector[s])) {
+                    throw new RuntimeException("Venta inconsistente de " + espectaculo.getNombre()
+                            + ": asientos ya vendidos en " + sede.getSectores()[s]);
+                }
+            }
+        } else if (!funcion.venderAsiento(cantidad)) {
+            throw new RuntimeException("Venta inconsistente de " + espectaculo.getNombre() + ": no hay cupo");
+        }
+
+        List<Entrada> emitidas = new ArrayList<>(cantidad);
+        long centavos = 0;
+        cerrojoEstado.readLock().lock();
+        try {
+            long version = versionEstado.incrementAndGet();
+            for (int i = 0; i < cantidad; i++) {
+                int asiento = asientosPorFila == 0 ? 0 : asientos[i];
+                int fila = asientosPorFila == 0 ? 0 : (asiento - 1) / asientosPorFila + 1;
+                Entrada entrada = new Entrada(idsAlto[i], idsBajo[i], contexto, ordinales[i], fila, asiento,
+                        titulares[i].getEmail());
+                entrada.marcarAlta(version);
+                titulares[i].comprarEntrada(entrada);
+                emitidas.add(entrada);
+            }
+            funcion.registrarEntradas(emitidas);
+            for (int s = 0; s < sectores; s++) {
+                if (porSector[s] > 0) {
+                    espectaculo.agregarRecaudacion(sede.getNombre(), contexto.getPrecio(s), porSector[s]);
+                    centavos += Espectaculo.aCentavos(contexto.getPrecio(s)) * porSector[s];
+                }
+            }
+            sumarEnRankings(espectaculo.getNombre(), sede.getNombre(), centavos);
+            actualizarOcupacion(funcion);
+        } finally {
+            cerrojoEstado.readLock().unlock();
+        }
+    }
+
+    /**
+     * Vuelve a anular una entrada, sin controlar contraseña ni fecha y sin registrarla en el diario.
+     *
+     * @param email  Email del dueño de la entrada.
+     * @param codigo Código de la entrada.
+     * @throws RuntimeException si la entrada no existe.
+     */
+    private void restaurarAnulacion(String email, UUID codigo) {
+        Usuario usuario = usuarios.get(email);
+        Entrada entrada = usuario == null ? null : usuario.getEntrada(codigo);
+        if (entrada == null) {
+            throw new RuntimeException("Anulación inconsistente: no existe la entrada " + codigo);
+        }
+        anular(entrada);
+    }
+
+    /**
+     * Lee el código de una entrada: dos long desde la versión {@link DiarioVentas#VERSION_CODIGOS_BINARIOS}
+     * del formato, texto en los registros anteriores.
+     *
+     * @param datos   Flujo de lectura.
+     * @param version Versión del formato con que se escribió el registro.
+     * @return Código de la entrada.
+     * @throws IOException si el flujo termina antes de tiempo.
+     */
+    private static UUID leerCodigo(DataInputStream datos, byte version) throws IOException {
+        if (version < DiarioVentas.VERSION_CODIGOS_BINARIOS) {
+            return UUID.fromString(datos.readUTF());
+        }
+        return new UUID(datos.readLong(), datos.readLong());
+    }
+
+    /**
+     * Lee los sectores de una sede numerada codificados como (nombre, capacidad, porcentaje).
+     *
+     * @param datos               Flujo de lectura.
+     * @param sectores            Arreglo a completar con los nombres.
+     * @param capacidad           Arreglo a completar con las capacidades.
+     * @param porcentajeAdicional Arreglo a completar con los recargos.
+     * @throws IOException si el flujo termina antes de tiempo.
+     */
+    private static void leerSectores(DataInputStream datos, String[] sectores, int[] capacidad,
+                                     int[] porcentajeAdicional) throws IOException {
+        for (int i = 0; i < sectores.length; i++) {
+            sectores[i] = datos.readUTF();
+            capacidad[i] = datos.readInt();
+            porcentajeAdicional[i] = datos.readInt();
+        }
+    }
+
+    /**
+     * Avanza la rueda de retenciones hasta el instante dado y devuelve a sus funciones
+     * los asientos de las retenciones vencidas. Solo recorre las ranuras de los ticks
+     * transcurridos desde la última llamada.
+     *
+     * @param ahora Instante actual en milisegundos.
+     */
+    void expirarRetenciones(long ahora) {
+        for (Retencion retencion : ruedaRetenciones.avanzar(ahora)) {
+            retenciones.remove(retencion.getCodigo());
+            if (retencion.liberar()) {
+                retencion.devolverAsientos();
+                actualizarOcupacion(retencion.getFuncion());
+            }
+        }
+    }
+
     /**
      * Verifica que un usuario exista y la contraseña sea correcta.
      * 
@@ -695,29 +1854,41 @@ public class Ticketek implements ITicketek {
 
     /**
      * Verifica que no haya ningún espectáculo programado en una sede en una fecha.
+     * Consulta la agenda de sedes, sin recorrer los espectáculos.
      * 
      * @param nombreSede Nombre de la sede.
      * @param fecha Fecha a verificar.
      * @return true si la sede está disponible en esa fecha, false en caso contrario.
      */
     public boolean verificarDisponibilidad(String nombreSede, Fecha fecha) {
-       
-        Iterator<Espectaculo> iteratorEspectaculos = espectaculos.values().iterator();
-        
-        while (iteratorEspectaculos.hasNext()) {
-            Espectaculo espectaculo = iteratorEspectaculos.next();
-            
-            Iterator<Funcion> iteratorFunciones = espectaculo.getFunciones().values().iterator();
-            
-            while (iteratorFunciones.hasNext()) {
-                Funcion funcion = iteratorFunciones.next();
-                if (funcion.getSede().getNombre().equals(nombreSede) && funcion.getFecha().equals(fecha)) {
-                    return false; // Se encontró conflicto
-                }
-            }
-        }
+        return agenda.estaLibre(nombreSede, fecha);
+    }
 
-        return true;
+    /**
+     * Devuelve la función que ocupa una sede en una fecha.
+     * 
+     * @param nombreSede Nombre de la sede.
+     * @param fecha Fecha en formato dd/mm/YY.
+     * @return Función programada en esa sede y fecha, o null si la sede está libre.
+     */
+    public Funcion funcionEnSede(String nombreSede, String fecha) {
+        return agenda.funcionEn(nombreSede, Fecha.desdeString(fecha));
+    }
+
+    /**
+     * Devuelve las fechas en que una sede no tiene funciones dentro de un rango.
+     * 
+     * @param nombreSede Nombre de la sede.
+     * @param desde Primera fecha del rango en formato dd/mm/YY (inclusive).
+     * @param hasta Última fecha del rango en formato dd/mm/YY (inclusive).
+     * @return Lista ordenada de fechas libres.
+     * @throws IllegalArgumentException si la sede no existe.
+     */
+    public List<Fecha> fechasLibres(String nombreSede, String desde, String hasta) {
+        if (!sedes.containsKey(nombreSede)) {
+            throw new IllegalArgumentException("Sede no encontrada: " + nombreSede);
+        }
+        return agenda.fechasLibres(nombreSede, Fecha.desdeString(desde), Fecha.desdeString(hasta));
     }
     
     /**
@@ -757,6 +1928,9 @@ public class Ticketek implements ITicketek {
         if (funcion == null) {
             throw new IllegalArgumentException("La función de '" + nombreEspectaculo +"' no existe para la fecha" + fecha);
         }
+        if (funcion.estaArchivada()) {
+            throw new IllegalArgumentException("La función de '" + nombreEspectaculo + "' del " + fecha + " ya fue archivada");
+        }
         
         
         Usuario usuario = usuarios.get(email);
@@ -778,7 +1952,8 @@ public class Ticketek implements ITicketek {
 	 * @param entrada       Entrada a anular
 	 * @param contrasenia   Contraseña del usuario
 	 * @return              true si la entrada puede anularse (es de una función futura), false en caso contrario
-	 * @throws RuntimeException si la entrada es nula, ya fue anulada, el usuario no existe o la contraseña es incorrecta
+	 * @throws RuntimeException si la entrada es nula, ya fue anulada, su función fue archivada,
+	 *         el usuario no existe o la contraseña es incorrecta
 	 */
 	public boolean chequeosAnular(IEntrada entrada, String contrasenia) {
     	
@@ -789,6 +1964,7 @@ public class Ticketek implements ITicketek {
         if (entradaConcreta.estaAnulada()) {
             throw new RuntimeException("La entrada ya fue anulada anteriormente");
         }
+        chequearNoArchivada(entradaConcreta);
 	    String emailUsuario = entradaConcreta.getEmailUsuario();
 	    Usuario usuario = usuarios.get(emailUsuario);
 	    if (usuario == null) {
@@ -813,10 +1989,11 @@ public class Ticketek implements ITicketek {
 	 *
 	 * @param entrada       Entrada que se desea cambiar
 	 * @param contrasenia   Contraseña del usuario asociado a la entrada
-	 * @throws RuntimeException si la función ya ocurrió o la contraseña es incorrecta
+	 * @throws RuntimeException si la función ya ocurrió o fue archivada, o la contraseña es incorrecta
 	 */
 	public void chequeosCambio(IEntrada entrada, String contrasenia) {
 		Entrada e = (Entrada) entrada;
+		chequearNoArchivada(e);
 
 	    if (!e.esFutura()) {
 	        throw new RuntimeException("La entrada ya no se puede cambiar (fecha pasada)");
@@ -828,6 +2005,21 @@ public class Ticketek implements ITicketek {
 	        throw new RuntimeException("Contraseña incorrecta");
 	    }
 	}
+
+	/**
+	 * Verifica que la función de una entrada no haya sido archivada: una función archivada
+	 * ya no admite anulaciones ni cambios.
+	 *
+	 * @param entrada Entrada a verificar
+	 * @throws RuntimeException si la función de la entrada fue archivada
+	 */
+	private void chequearNoArchivada(Entrada entrada) {
+	    Espectaculo espectaculo = espectaculos.get(entrada.getNombreEspectaculo());
+	    Funcion funcion = espectaculo == null ? null : espectaculo.getFuncion(entrada.getFecha());
+	    if (funcion != null && funcion.estaArchivada()) {
+	        throw new RuntimeException("La función del " + entrada.getFecha() + " ya fue archivada");
+	    }
+	}
 	
     
     /**
@@ -898,7 +2090,7 @@ public class Ticketek implements ITicketek {
         for (Usuario usuario : usuarios.values()) {
             sb.append(usuario).append("\n");
 
-            List<IEntrada> entradas = listarTodasLasEntradasDelUsuario(usuario.getEmail(), usuario.getContrasenia());
+            List<IEntrada> entradas = new ArrayList<>(usuario.listarEntradas());
             if (entradas.isEmpty()) {
                 sb.append("  (Sin entradas)\n");
             } else {
@@ -7,8 +7,27 @@ import org.junit.runners.MethodSorters;
 
 import static org.junit.Assert.*;
 
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class TicketekTest{
@@ -23,6 +42,8 @@ public class TicketekTest{
     private List<IEntrada> entradasJavierColdplay;
     @Before
     public void init() {
+        // Los datos de prueba son de 2025: se fija el día para que "futura" no dependa de cuándo se corre
+        Reloj.usar(Clock.fixed(Instant.parse("2025-06-01T12:00:00Z"), ZoneId.of("America/Argentina/Buenos_Aires")));
     	ticketek = new Ticketek();
 
         ticketek.registrarUsuario("nores@campus.ungs.edu.ar", "Jose", "Nores", "1234");
@@ -71,6 +92,11 @@ public class TicketekTest{
         ticketek.venderEntrada("Ballet Clásico", "01/03/25", "nores@campus.ungs.edu.ar", "1234", "Baja", new int[]{1, 2, 3, 4});
     }
 
+    @After
+    public void restaurarReloj() {
+        Reloj.restablecer();
+    }
+
    
     private void registrarEspectaculo(String nombre, String[] fechas, String[] sedes, double precioBase) {
 		ticketek.registrarEspectaculo(nombre);
@@ -292,7 +318,1145 @@ public class TicketekTest{
         assertEquals(6, ticketek.listarEntradasEspectaculo("Coldplay en vivo").size());
     }
 
-    
-   
+    @Test
+    public void ej16_ventaConcurrenteNoVendeDosVecesElMismoAsiento() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<List<IEntrada>>> ventas = new LinkedList<>();
+        for (int i = 0; i < 8; i++) {
+            ventas.add(pool.submit(() -> ticketek.venderEntrada("El Rey Leon", "29/07/25",
+                    "nores@campus.ungs.edu.ar", "1234", "VIP", new int[]{5, 6})));
+        }
+        int exitosas = 0;
+        for (Future<List<IEntrada>> venta : ventas) {
+            if (!venta.get().isEmpty())
+                exitosas++;
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertEquals(1, exitosas);
+        assertTrue(ticketek.listarFunciones("El Rey Leon").contains("(29/07/25) Teatro Gran Rex - VIP: 2/100"));
+    }
+
+    @Test
+    public void ej16_ventaConcurrenteEstadioRespetaLaCapacidad() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> ventas = new LinkedList<>();
+        for (int i = 0; i < 16; i++) {
+            ventas.add(pool.submit(() -> {
+                try {
+                    return ticketek.venderEntrada("Coldplay en vivo", "31/07/25",
+                            "javierm@campus.ungs.edu.ar", "1234", 20).size() == 20;
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            }));
+        }
+        int exitosas = 0;
+        for (Future<Boolean> venta : ventas) {
+            if (venta.get())
+                exitosas++;
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertEquals(10, exitosas);
+        assertTrue(ticketek.listarFunciones("Coldplay en vivo").contains("(31/07/25) La bombonera - 200/200"));
+    }
+
+    @Test
+    public void ej17_retencionBloqueaAsientosHastaConfirmar() {
+        Ticketek sistema = (Ticketek) ticketek;
+        String codigo = sistema.retenerEntradas("El Rey Leon", "29/07/25", "nores@campus.ungs.edu.ar", "1234",
+                "VIP", new int[]{7, 8}, 60000);
+
+        assertTrue(ticketek.venderEntrada("El Rey Leon", "29/07/25", "javierm@campus.ungs.edu.ar", "1234",
+                "VIP", new int[]{8}).isEmpty());
+
+        List<IEntrada> confirmadas = sistema.confirmarRetencion(codigo, "1234");
+        assertEquals(2, confirmadas.size());
+        assertEquals("VIP f:1 a:7", confirmadas.get(0).ubicacion());
+    }
+
+    @Test
+    public void ej17_retencionVencidaLiberaLasEntradas() {
+        Ticketek sistema = (Ticketek) ticketek;
+        String codigo = sistema.retenerEntradas("Coldplay en vivo", "31/07/25", "javierm@campus.ungs.edu.ar", "1234",
+                200, 1000);
+        assertTrue(ticketek.listarFunciones("Coldplay en vivo").contains("(31/07/25) La bombonera - 200/200"));
+
+        sistema.expirarRetenciones(Reloj.millis() + 5000);
+
+        assertTrue(ticketek.listarFunciones("Coldplay en vivo").contains("(31/07/25) La bombonera - 0/200"));
+        try {
+            sistema.confirmarRetencion(codigo, "1234");
+            fail("La retención vencida no debería poder confirmarse");
+        } catch (RuntimeException e) {
+            // esperado
+        }
+    }
+
+    @Test
+    public void ej18_venderMejoresAsientosJuntos() {
+        // En "La sirenita" del 28/07/25 ya se vendieron los asientos 1 a 4 del sector Comun (fila 1)
+        List<IEntrada> entradas = ((Ticketek) ticketek).venderMejoresEntradas("La sirenita", "28/07/25",
+                "nores@campus.ungs.edu.ar", "1234", "Comun", 3);
+
+        assertEquals(3, entradas.size());
+        assertEquals("Comun f:1 a:5", entradas.get(0).ubicacion());
+        assertEquals("Comun f:1 a:7", entradas.get(2).ubicacion());
+
+        // 30 asientos juntos no entran en la fila 1, pasan a la fila 2
+        entradas = ((Ticketek) ticketek).venderMejoresEntradas("La sirenita", "28/07/25",
+                "nores@campus.ungs.edu.ar", "1234", "Comun", 30);
+        assertEquals("Comun f:2 a:31", entradas.get(0).ubicacion());
+    }
+
+    @Test
+    public void ej19_agendaDetectaChoquesEntreEspectaculos() {
+        // "Coldplay en vivo" ya ocupa La bombonera el 28/07/25
+        assertFalse(((Ticketek) ticketek).verificarDisponibilidad("La bombonera", Fecha.desdeString("28/07/25")));
+        assertThrows(IllegalArgumentException.class, () ->
+            ticketek.agregarFuncion("El Rey Leon", "28/07/25", "La bombonera", 100.0));
+
+        List<Fecha> libres = ((Ticketek) ticketek).fechasLibres("La bombonera", "27/07/25", "29/07/25");
+        assertFalse(libres.contains(Fecha.desdeString("28/07/25")));
+        assertTrue(libres.contains(Fecha.desdeString("27/07/25")));
+    }
+
+    @Test
+    public void ej20_listarEntradasEspectaculoSigueVentasYAnulaciones() {
+        ticketek.agregarFuncion("La sirenita", "10/10/30", "Teatro San Martín", 50000.0);
+        int antes = ticketek.listarEntradasEspectaculo("La sirenita").size();
+
+        List<IEntrada> vendidas = ticketek.venderEntrada("La sirenita", "10/10/30",
+                "nores@campus.ungs.edu.ar", "1234", "Comun", new int[]{1, 2});
+        assertEquals(antes + 2, ticketek.listarEntradasEspectaculo("La sirenita").size());
+
+        assertTrue(ticketek.anularEntrada(vendidas.get(0), "1234"));
+        List<IEntrada> entradas = ticketek.listarEntradasEspectaculo("La sirenita");
+        assertEquals(antes + 1, entradas.size());
+        assertFalse(entradas.contains(vendidas.get(0)));
+        assertTrue(entradas.contains(vendidas.get(1)));
+    }
+
+    @Test
+    public void ej21_contadoresDeOcupacionPorSector() {
+        Funcion funcion = ((Ticketek) ticketek).funcionEnSede("Teatro Gran Rex", "28/07/25");
+        // Comun tiene vendidos los asientos 1 a 4
+        assertEquals(4, funcion.getVendidosPorSector()[1]);
+        assertEquals(4, funcion.getVendidosTotal());
+
+        ticketek.venderEntrada("La sirenita", "28/07/25", "nores@campus.ungs.edu.ar", "1234", "VIP", new int[]{7, 8});
+        assertEquals(2, funcion.getVendidosPorSector()[0]);
+        assertEquals(6.0 / 1000, funcion.getOcupacion(), 1e-9);
+
+        Funcion campo = ((Ticketek) ticketek).funcionEnSede("La bombonera", "30/07/25");
+        assertEquals(3, campo.getVendidosTotal());
+    }
+
+    @Test
+    public void ej22_funcionesEnOrdenCronologico() {
+        String listado = ticketek.listarFunciones("Stand up Comedy");
+        assertTrue(listado.startsWith(" - (10/04/25)"));
+        assertTrue(listado.indexOf("(28/07/25)") < listado.indexOf("(01/08/25)"));
+
+        Espectaculo standUp = ((Ticketek) ticketek).getEspectaculos().get("Stand up Comedy");
+        List<Funcion> rango = standUp.getFuncionesEntre(Fecha.desdeString("28/07/25"), Fecha.desdeString("31/07/25"));
+        assertEquals(3, rango.size());
+        assertEquals(Fecha.desdeString("28/07/25"), rango.get(0).getFecha());
+        assertEquals(Fecha.desdeString("31/07/25"), rango.get(2).getFecha());
+
+        // El reloj de las pruebas está fijado en el 01/06/25
+        assertEquals(Fecha.desdeString("25/07/25"), standUp.getProximaFuncion().getFecha());
+    }
+
+    @Test
+    public void ej23_entradasPasadasYFuturasComoVistas() {
+        Usuario nores = ((Ticketek) ticketek).getUsuarios().get("nores@campus.ungs.edu.ar");
+        // Stand up Comedy del 10/04/25 y Ballet Clásico del 01/03/25, 4 entradas cada uno
+        assertEquals(8, nores.listarEntradasPasadas().size());
+        assertEquals(nores.cantidadEntradas(), nores.listarEntradasPasadas().size() + nores.listarEntradasFuturas().size());
+        assertEquals("01/03/25", nores.listarEntradasPasadas().iterator().next().getFecha().toString());
+
+        int futuras = nores.listarEntradasFuturas().size();
+        Collection<Entrada> vista = nores.listarEntradasFuturas();
+        ticketek.venderEntrada("Coldplay en vivo", "25/07/25", "nores@campus.ungs.edu.ar", "1234", 2);
+        assertEquals(futuras + 2, vista.size());
+    }
+
+    @Test
+    public void ej24_archivarFuncionesPasadasConservaLosListados() {
+        Ticketek sistema = (Ticketek) ticketek;
+        String funcionesAntes = ticketek.listarFunciones("Stand up Comedy");
+        double recaudadoAntes = ticketek.totalRecaudado("Stand up Comedy");
+        int entradasAntes = ticketek.listarEntradasEspectaculo("Ballet Clásico").size();
+        int entradasUsuarioAntes = ticketek.listarTodasLasEntradasDelUsuario("nores@campus.ungs.edu.ar", "1234").size();
+
+        // Con el reloj en 01/06/25 solo pasaron Stand up Comedy del 10/04/25 y Ballet Clásico del 01/03/25
+        assertEquals(2, sistema.archivarFuncionesPasadas());
+        assertEquals(0, sistema.archivarFuncionesPasadas());
+
+        Funcion archivada = sistema.funcionEnSede("Mini Arena Norte", "10/04/25");
+        assertTrue(archivada.estaArchivada());
+        assertNull(archivada.getInventario());
+        assertEquals(8, archivada.getResumen().getCantidadEntradas());
+
+        assertEquals(funcionesAntes, ticketek.listarFunciones("Stand up Comedy"));
+        assertEquals(recaudadoAntes, ticketek.totalRecaudado("Stand up Comedy"), 1e-9);
+        assertEquals(entradasAntes, ticketek.listarEntradasEspectaculo("Ballet Clásico").size());
+        assertEquals(entradasUsuarioAntes, ticketek.listarTodasLasEntradasDelUsuario("nores@campus.ungs.edu.ar", "1234").size());
+    }
+
+    @Test
+    public void ej25_diarioRegistraVentasYDescartaRegistrosIncompletos() throws Exception {
+        Path archivo = Files.createTempFile("ticketek", ".diario");
+        try {
+            DiarioVentas diario = new DiarioVentas(archivo);
+            Ticketek sistema = new Ticketek(diario);
+            sistema.registrarUsuario("ana@mail.com", "Ana", "Perez", "1234");
+            sistema.registrarSede("Estadio Norte", "calle 9", 1000);
+            sistema.registrarEspectaculo("Recital");
+            sistema.agregarFuncion("Recital", "10/10/25", "Estadio Norte", 100.0);
+
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            List<Future<?>> ventas = new LinkedList<>();
+            for (int i = 0; i < 40; i++) {
+                ventas.add(pool.submit(() -> sistema.venderEntrada("Recital", "10/10/25", "ana@mail.com", "1234", 1)));
+            }
+            for (Future<?> venta : ventas) {
+                venta.get();
+            }
+            pool.shutdown();
+            IEntrada anulada = sistema.listarTodasLasEntradasDelUsuario("ana@mail.com", "1234").get(0);
+            sistema.anularEntrada(anulada, "1234");
+            diario.close();
+
+            // Un registro a medio escribir al final del archivo se descarta al reabrir
+            Files.write(archivo, new byte[] { 0, 0, 0, 40, 1, 7 }, StandardOpenOption.APPEND);
+
+            int[] porTipo = new int[16];
+            long[] ultima = new long[1];
+            DiarioVentas reabierto = new DiarioVentas(archivo);
+            reabierto.recorrer(registro -> {
+                porTipo[registro.getTipo()]++;
+                assertEquals(ultima[0] + 1, registro.getSecuencia());
+                ultima[0] = registro.getSecuencia();
+            });
+            assertEquals(40, porTipo[DiarioVentas.VENTA]);
+            assertEquals(1, porTipo[DiarioVentas.ANULACION]);
+            assertEquals(45, reabierto.getSecuenciaDurable());
+            reabierto.close();
+        } finally {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    @Test
+    public void ej26_instantaneaYColaDelDiarioReconstruyenElSistema() throws Exception {
+        Path carpeta = Files.createTempDirectory("ticketek");
+        Path archivoDiario = carpeta.resolve("ventas.diario");
+        Path archivoInstantanea = carpeta.resolve("estado.instantanea");
+        try {
+            DiarioVentas diario = new DiarioVentas(archivoDiario);
+            Ticketek sistema = new Ticketek(diario);
+            sistema.registrarUsuario("ana@mail.com", "Ana", "Perez", "1234");
+            sistema.registrarUsuario("beto@mail.com", "Beto", "Gomez", "1234");
+            sistema.registrarSede("Estadio Norte", "calle 9", 1000);
+            sistema.registrarSede("Teatro Sur", "calle 10", 1000, asientosPorFilaTeatro, sectores_teatro, capacidad_teatro, porcentajeAdicionalTeatro);
+            sistema.registrarSede("Mini Oeste", "calle 11", 500, asientosPorFilaTeatro, 30, 20000.0, sectores_teatro, capacidad_miniestadio, porcentajeAdicionalTeatro);
+            sistema.registrarEspectaculo("Recital");
+            sistema.registrarEspectaculo("Obra");
+            sistema.agregarFuncion("Recital", "10/10/25", "Estadio Norte", 100.0);
+            sistema.agregarFuncion("Obra", "11/10/25", "Teatro Sur", 200.0);
+            sistema.agregarFuncion("Obra", "12/10/25", "Mini Oeste", 300.0);
+            List<IEntrada> vip = sistema.venderEntrada("Obra", "11/10/25", "beto@mail.com", "1234", "VIP", new int[]{1, 2, 3});
+            sistema.venderEntrada("Obra", "12/10/25", "ana@mail.com", "1234", "Alta", new int[]{5});
+
+            // La instantánea se toma mientras siguen las ventas
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            List<Future<?>> ventas = new LinkedList<>();
+            for (int i = 0; i < 40; i++) {
+                ventas.add(pool.submit(() -> sistema.venderEntrada("Recital", "10/10/25", "ana@mail.com", "1234", 1)));
+            }
+            sistema.guardarInstantanea(archivoInstantanea);
+            for (Future<?> venta : ventas) {
+                venta.get();
+            }
+            pool.shutdown();
+
+            // Operaciones posteriores a la instantánea: solo quedan en la cola del diario
+            sistema.venderEntrada("Obra", "11/10/25", "beto@mail.com", "1234", "VIP", new int[]{10, 11});
+            sistema.anularEntrada(vip.get(0), "1234");
+            diario.close();
+
+            DiarioVentas reabierto = new DiarioVentas(archivoDiario);
+            Ticketek recuperado = Ticketek.recuperar(archivoInstantanea, reabierto);
+            assertEquals(sistema.listarFunciones("Recital"), recuperado.listarFunciones("Recital"));
+            assertEquals(sistema.listarFunciones("Obra"), recuperado.listarFunciones("Obra"));
+            assertEquals(sistema.totalRecaudado("Obra"), recuperado.totalRecaudado("Obra"), 0.01);
+            assertEquals(sistema.totalRecaudado("Recital"), recuperado.totalRecaudado("Recital"), 0.01);
+            assertEquals(codigos(sistema.listarTodasLasEntradasDelUsuario("ana@mail.com", "1234")),
+                    codigos(recuperado.listarTodasLasEntradasDelUsuario("ana@mail.com", "1234")));
+            assertEquals(codigos(sistema.listarTodasLasEntradasDelUsuario("beto@mail.com", "1234")),
+                    codigos(recuperado.listarTodasLasEntradasDelUsuario("beto@mail.com", "1234")));
+
+            // El sistema recuperado conserva los asientos vendidos y sigue registrando en el diario
+            assertTrue(recuperado.venderEntrada("Obra", "11/10/25", "beto@mail.com", "1234", "VIP", new int[]{10}).isEmpty());
+            assertTrue(recuperado.venderEntrada("Obra", "11/10/25", "beto@mail.com", "1234", "VIP", new int[]{2}).isEmpty());
+            assertTrue(recuperado.venderEntrada("Obra", "12/10/25", "ana@mail.com", "1234", "Alta", new int[]{5}).isEmpty());
+            assertEquals(1, recuperado.venderEntrada("Obra", "11/10/25", "beto@mail.com", "1234", "VIP", new int[]{1}).size());
+            reabierto.close();
+        } finally {
+            Files.deleteIfExists(archivoDiario);
+            Files.deleteIfExists(archivoInstantanea);
+            Files.deleteIfExists(carpeta);
+        }
+    }
+
+    @Test
+    public void ej27_asientosMapeadosTienenUnSoloDuenioYSeReconstruyenDesdeElDiario() throws Exception {
+        Path carpeta = Files.createTempDirectory("asientos");
+        Path archivoDiario = Files.createTempFile("ticketek", ".diario");
+        try {
+            DiarioVentas diario = new DiarioVentas(archivoDiario);
+            ArchivoAsientos archivo = new ArchivoAsientos(carpeta);
+            Ticketek sistema = new Ticketek(diario);
+            sistema.usarAsientosMapeados(archivo);
+            sistema.registrarUsuario("ana@mail.com", "Ana", "Perez", "1234");
+            sistema.registrarSede("Teatro Sur", "calle 10", 1000, asientosPorFilaTeatro, sectores_teatro, capacidad_teatro, porcentajeAdicionalTeatro);
+            sistema.registrarEspectaculo("Obra");
+            sistema.agregarFuncion("Obra", "11/10/25", "Teatro Sur", 200.0);
+            List<IEntrada> vendidas = sistema.venderEntrada("Obra", "11/10/25", "ana@mail.com", "1234", "VIP", new int[]{1, 2, 3});
+            sistema.anularEntrada(vendidas.get(0), "1234");
+
+            // Mientras la función lo usa, nadie más puede abrir su archivo
+            Ticketek intruso = new Ticketek();
+            intruso.usarAsientosMapeados(new ArchivoAsientos(carpeta));
+            intruso.registrarSede("Teatro Sur", "calle 10", 1000, asientosPorFilaTeatro, sectores_teatro, capacidad_teatro, porcentajeAdicionalTeatro);
+            intruso.registrarEspectaculo("Obra");
+            assertTrue(assertThrows(RuntimeException.class, () -> intruso.agregarFuncion("Obra", "11/10/25", "Teatro Sur", 200.0))
+                    .getMessage().contains("en uso"));
+            diario.close();
+            archivo.close();
+
+            // Al reiniciar, el archivo se abre vacío y los asientos se vuelven a marcar desde el diario
+            DiarioVentas reabierto = new DiarioVentas(archivoDiario);
+            Ticketek recuperado = Ticketek.recuperar(null, reabierto, new ArchivoAsientos(carpeta));
+            Funcion funcion = recuperado.getEspectaculo("Obra").getFuncion("11/10/25");
+            assertTrue(funcion.verificarDisponibilidad("VIP", 1));
+            assertFalse(funcion.verificarDisponibilidad("VIP", 2));
+            assertFalse(funcion.verificarDisponibilidad("VIP", 3));
+            assertEquals(2, funcion.getVendidosSector("VIP"));
+            assertEquals(funcion.getEntradas().size(), funcion.getVendidosTotal());
+            assertEquals(27, funcion.getInventario().getRachaLibreFila(0, 1));
+            List<IEntrada> juntas = recuperado.venderMejoresEntradas("Obra", "11/10/25", "ana@mail.com", "1234", "VIP", 2);
+            assertEquals(4, ((Entrada) juntas.get(0)).devolverAsiento());
+            assertEquals(5, ((Entrada) juntas.get(1)).devolverAsiento());
+
+            // Archivar la función suelta el archivo y lo borra
+            Reloj.usar(Clock.fixed(Instant.parse("2025-10-20T12:00:00Z"), ZoneId.of("America/Argentina/Buenos_Aires")));
+            assertEquals(1, recuperado.archivarFuncionesPasadas());
+            try (Stream<Path> archivos = Files.list(carpeta)) {
+                assertEquals(0, archivos.count());
+            }
+            reabierto.close();
+        } finally {
+            try (Stream<Path> archivos = Files.list(carpeta)) {
+                for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                    Files.deleteIfExists(archivo);
+                }
+            }
+            Files.deleteIfExists(carpeta);
+            Files.deleteIfExists(archivoDiario);
+        }
+    }
+
+    @Test
+    public void ej28_entradasCompactasConservanCodigoUbicacionYPrecio() {
+        Usuario nores = ((Ticketek) ticketek).getUsuario("nores@campus.ungs.edu.ar");
+        List<IEntrada> campo = ticketek.venderEntrada("Coldplay en vivo", "30/07/25", "nores@campus.ungs.edu.ar", "1234", 2);
+        List<IEntrada> vip = ticketek.venderEntrada("La sirenita", "28/07/25", "nores@campus.ungs.edu.ar", "1234", "VIP", new int[]{31, 32});
+
+        for (IEntrada entrada : campo) {
+            Entrada e = (Entrada) entrada;
+            assertEquals("CAMPO", e.ubicacion());
+            assertEquals("Campo", e.devolverSector());
+            assertEquals(-1, e.devolverAsiento());
+            assertEquals(-1, e.devolverFila());
+            assertSame(e, nores.getEntrada(e.devolverCodigo()));
+            assertEquals(e.devolverCodigo(), UUID.fromString(e.devolverCodigo()).toString());
+        }
+        Entrada primera = (Entrada) vip.get(0);
+        assertEquals("VIP f:2 a:31", primera.ubicacion());
+        assertEquals("VIP f:2 a:32", vip.get(1).ubicacion());
+        assertEquals(((Ticketek) ticketek).getEspectaculo("La sirenita").getFuncion("28/07/25").devolverPrecio("VIP"), primera.precio(), 0.001);
+        assertEquals("La sirenita", primera.getNombreEspectaculo());
+        assertTrue(nores.getEntradas().containsKey(primera.devolverCodigo()));
+        assertNull(nores.getEntrada("no-es-un-codigo"));
+
+        assertTrue(ticketek.anularEntrada(primera, "1234"));
+        assertNull(nores.getEntrada(primera.devolverCodigo()));
+        assertFalse(nores.listarEntradas().contains(primera));
+        assertEquals(vip.get(1), nores.getEntrada(vip.get(1).toString().split(" ")[1]));
+    }
+
+    @Test
+    public void ej29_exportadorEscribeEntradasOcupacionYRecaudacion() throws Exception {
+        Ticketek sistema = (Ticketek) ticketek;
+        ExportadorEntradas csv = new ExportadorEntradas(sistema, ExportadorEntradas.Formato.CSV);
+        StringWriter salida = new StringWriter();
+        assertEquals(8, csv.exportarEntradasEspectaculo("La sirenita", salida));
+        String[] lineas = salida.toString().split("\n");
+        assertEquals(9, lineas.length);
+        assertEquals("codigo,espectaculo,fecha,sede,sector,fila,asiento,precio,email", lineas[0]);
+        assertTrue(salida.toString().contains(",La sirenita,25/07/25,Teatro Gran Rex,Baja,1,1,"));
+
+        Path archivo = Files.createTempFile("ticketek-exportacion", ".ndjson");
+        try {
+            ExportadorEntradas ndjson = new ExportadorEntradas(sistema, ExportadorEntradas.Formato.NDJSON);
+            try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.WRITE)) {
+                assertEquals(11, ndjson.exportarEntradasUsuario("javierm@campus.ungs.edu.ar", canal));
+            }
+            List<String> objetos = Files.readAllLines(archivo);
+            assertEquals(11, objetos.size());
+            for (String objeto : objetos) {
+                assertTrue(objeto.startsWith("{\"codigo\":\"") && objeto.endsWith("\"email\":\"javierm@campus.ungs.edu.ar\"}"));
+            }
+            assertEquals(3, objetos.stream().filter(o -> o.contains("\"fila\":null,\"asiento\":null")).count());
+        } finally {
+            Files.deleteIfExists(archivo);
+        }
+
+        StringWriter ocupacion = new StringWriter();
+        csv.exportarOcupacion(ocupacion);
+        assertTrue(ocupacion.toString().contains("\nLa sirenita,25/07/25,Teatro Gran Rex,Baja,4,300\n"));
+        assertTrue(ocupacion.toString().contains("\nColdplay en vivo,30/07/25,La bombonera,Campo,3,200\n"));
+
+        StringWriter recaudacion = new StringWriter();
+        csv.exportarRecaudacion(recaudacion);
+        assertTrue(recaudacion.toString().contains("\nColdplay en vivo,La bombonera,540000.00\n"));
+
+        ticketek.registrarSede("Estadio Grande", "calle 13", 10);
+        ticketek.registrarEspectaculo("Gala");
+        ticketek.agregarFuncion("Gala", "20/10/25", "Estadio Grande", 3333333.35);
+        ticketek.venderEntrada("Gala", "20/10/25", "nores@campus.ungs.edu.ar", "1234", 3);
+        StringWriter grande = new StringWriter();
+        csv.exportarRecaudacion(grande);
+        assertTrue(grande.toString().contains("\nGala,Estadio Grande,10000000.05\n"));
+        StringWriter entradas = new StringWriter();
+        csv.exportarEntradasEspectaculo("Gala", entradas);
+        assertTrue(entradas.toString().contains(",3333333.35,nores@campus.ungs.edu.ar\n"));
+    }
+
+    @Test
+    public void ej30_importadorCargaCatalogoEInformaRechazosPorLinea() {
+        Ticketek sistema = new Ticketek();
+        ImportadorCatalogo importador = new ImportadorCatalogo(sistema);
+        List<String> csv = List.of(
+                "tipo,nombre,direccion,capacidad,asientosPorFila,puestos,precioConsumicion,sectores,capacidades,porcentajes,email,apellido,contrasenia,espectaculo,fecha,sede,precio",
+                "estadio,\"Estadio, Norte\",calle 1,500",
+                "teatro,Teatro Sur,calle 2,1000,30,,,VIP;Comun;Baja;Alta,100;200;300;400,70;40;50;0",
+                "miniestadio,Mini Oeste,calle 3,500,30,30,15000,VIP;Comun;Baja;Alta,50;100;150;200,70;40;50;0",
+                "estadio,Teatro Sur,calle 4,100",
+                "usuario,Ana,,,,,,,,,ana@mail.com,Gomez,1234",
+                "usuario,Ana2,,,,,,,,,ana@mail.com,Gomez,1234",
+                "espectaculo,Recital",
+                "funcion,,,,,,,,,,,,,Recital,10/10/25,\"Estadio, Norte\",100",
+                "funcion,,,,,,,,,,,,,Recital,11/10/25,Teatro Sur,200",
+                "funcion,,,,,,,,,,,,,Recital,11/10/25,Mini Oeste,200",
+                "funcion,,,,,,,,,,,,,Obra,12/10/25,Teatro Sur,200",
+                "funcion,,,,,,,,,,,,,Recital,31/09/25,Mini Oeste,200",
+                "platea,X");
+
+        ImportadorCatalogo.Resultado resultado = importador.importar(csv, ExportadorEntradas.Formato.CSV);
+        assertEquals(7, resultado.getImportados());
+        List<Integer> lineas = new LinkedList<>();
+        for (ImportadorCatalogo.Rechazo rechazo : resultado.getRechazos()) {
+            lineas.add(rechazo.getLinea());
+        }
+        assertEquals(List.of(5, 7, 11, 12, 13, 14), lineas);
+        assertNotNull(sistema.getSede("Estadio, Norte"));
+        assertTrue(sistema.getSede("Mini Oeste").esNumerada());
+        assertNotNull(sistema.getEspectaculo("Recital").getFuncion("11/10/25"));
+        assertEquals("Ana", sistema.getUsuario("ana@mail.com").getNombre());
+
+        List<String> ndjson = List.of(
+                "{\"tipo\":\"usuario\",\"email\":\"beto@mail.com\",\"nombre\":\"Beto\",\"apellido\":\"Paz\",\"contrasenia\":\"1234\"}",
+                "{\"tipo\":\"teatro\",\"nombre\":\"Teatro \\\"Este\\\"\",\"direccion\":\"calle 5\",\"capacidad\":1000,\"asientosPorFila\":30,"
+                        + "\"sectores\":[\"VIP\",\"Comun\",\"Baja\",\"Alta\"],\"capacidades\":[100,200,300,400],\"porcentajes\":[70,40,50,0]}",
+                "{\"tipo\":\"espectaculo\",\"nombre\":\"Recital\"}",
+                "{\"tipo\":\"funcion\",\"espectaculo\":\"Recital\",\"fecha\":\"13/10/25\",\"sede\":\"Teatro \\\"Este\\\"\",\"precio\":300}",
+                "{\"tipo\":\"usuario\",\"email\":");
+        resultado = importador.importar(ndjson, ExportadorEntradas.Formato.NDJSON);
+        assertEquals(3, resultado.getImportados());
+        assertEquals(2, resultado.getRechazos().size());
+        assertEquals(3, resultado.getRechazos().get(0).getLinea());
+        assertEquals(5, resultado.getRechazos().get(1).getLinea());
+        assertNotNull(sistema.getEspectaculo("Recital").getFuncion("13/10/25"));
+        assertNotNull(sistema.getSede("Teatro \"Este\""));
+    }
+
+    @Test
+    public void ej31_recaudacionEnCentavosCoincideConLasEntradasBajoConcurrencia() throws Exception {
+        ticketek.registrarSede("Estadio Centavos", "calle 9", 10000);
+        ticketek.registrarEspectaculo("Precio raro");
+        ticketek.agregarFuncion("Precio raro", "15/10/25", "Estadio Centavos", 0.1);
+        ticketek.agregarFuncion("Precio raro", "20/10/25", "Teatro Colón", 33333.33);
+
+        ExecutorService hilos = Executors.newFixedThreadPool(8);
+        List<Future<List<IEntrada>>> compras = new LinkedList<>();
+        for (int i = 0; i < 400; i++) {
+            int cantidad = i % 3 + 1;
+            compras.add(hilos.submit(() -> ticketek.venderEntrada("Precio raro", "15/10/25", "nores@campus.ungs.edu.ar", "1234", cantidad)));
+        }
+        for (int i = 0; i < 40; i++) {
+            int asiento = i + 1;
+            compras.add(hilos.submit(() -> ticketek.venderEntrada("Precio raro", "20/10/25", "javierm@campus.ungs.edu.ar", "1234", "Baja", new int[]{asiento, asiento + 100})));
+        }
+        hilos.shutdown();
+        assertTrue(hilos.awaitTermination(30, TimeUnit.SECONDS));
+
+        List<IEntrada> vendidas = new LinkedList<>();
+        for (Future<List<IEntrada>> compra : compras) {
+            vendidas.addAll(compra.get());
+        }
+        for (int i = 0; i < vendidas.size(); i += 7) {
+            assertTrue(ticketek.anularEntrada(vendidas.get(i), "1234"));
+        }
+        long centavos = 0;
+        long centavosCampo = 0;
+        for (int i = 0; i < vendidas.size(); i++) {
+            if (i % 7 != 0) {
+                long precio = Math.round(vendidas.get(i).precio() * 100);
+                centavos += precio;
+                if (vendidas.get(i).ubicacion().equals("CAMPO")) {
+                    centavosCampo += precio;
+                }
+            }
+        }
+        Espectaculo espectaculo = ((Ticketek) ticketek).getEspectaculo("Precio raro");
+        assertEquals(centavos, espectaculo.getCentavosTotales());
+        assertEquals(centavosCampo, espectaculo.getCentavosPorSede("Estadio Centavos"));
+        assertEquals(centavos - centavosCampo, espectaculo.getCentavosPorSede("Teatro Colón"));
+        assertEquals(centavos / 100.0, ticketek.totalRecaudado("Precio raro"), 0.0);
+    }
+
+    @Test
+    public void ej32_serieTemporalSumaVentasYAnulacionesPorMinutoYHora() {
+        ZoneId zona = ZoneId.of("America/Argentina/Buenos_Aires");
+        Instant inicio = Instant.parse("2025-06-01T12:00:10Z");
+        Funcion funcion = ((Ticketek) ticketek).getEspectaculo("Coldplay en vivo").getFuncion("31/07/25");
+        long precio = Math.round(funcion.devolverPrecio("Campo") * 100);
+
+        Reloj.usar(Clock.fixed(inicio, zona));
+        ticketek.venderEntrada("Coldplay en vivo", "31/07/25", "nores@campus.ungs.edu.ar", "1234", 3);
+        Reloj.usar(Clock.fixed(inicio.plusSeconds(120), zona));
+        List<IEntrada> segunda = ticketek.venderEntrada("Coldplay en vivo", "31/07/25", "javierm@campus.ungs.edu.ar", "1234", 2);
+        ticketek.anularEntrada(segunda.get(0), "1234");
+
+        SerieTemporal serie = funcion.getSerie();
+        assertEquals(2, serie.ventasUltimosSegundos(60));
+        assertEquals(2, serie.ventasUltimosMinutos(1));
+        assertEquals(5, serie.ventasUltimosMinutos(5));
+        assertEquals(1.0, serie.velocidadVentasPorMinuto(5), 1e-9);
+        assertEquals(1, serie.anulacionesUltimosMinutos(5));
+        assertEquals(4 * precio, serie.centavosUltimosMinutos(5));
+        long[] porHora = serie.centavosPorHoraHoy();
+        assertEquals(10, porHora.length);
+        assertEquals(4 * precio, porHora[9]);
+        assertEquals(0, porHora[8]);
+
+        SerieTemporal sede = funcion.getSede().getSerie();
+        // La sede suma también las 6 entradas de Coldplay vendidas en init(), al mismo precio
+        assertEquals(11, sede.ventasUltimosMinutos(5));
+        assertEquals(10 * precio, sede.centavosUltimosMinutos(5));
+
+        Reloj.usar(Clock.fixed(inicio.plusSeconds(2 * 3600), zona));
+        assertEquals(0, serie.ventasUltimosMinutos(60));
+        assertEquals(5, serie.ventasUltimasHoras(3));
+        assertEquals(4 * precio, serie.centavosPorHoraHoy()[9]);
+    }
+
+    @Test
+    public void ej33_mapaOcupacionPorFilaSeActualizaYSeReutiliza() {
+        Funcion funcion = ((Ticketek) ticketek).getEspectaculo("La sirenita").getFuncion("28/07/25");
+        List<IEntrada> vip = ticketek.venderEntrada("La sirenita", "28/07/25", "nores@campus.ungs.edu.ar", "1234", "VIP", new int[]{29, 30, 31, 32, 61});
+
+        MapaOcupacion mapa = funcion.getMapaOcupacion(null);
+        assertEquals(4, mapa.cantidadFilas(0));
+        assertEquals(10, mapa.getCapacidadFila(0, 4));
+        assertEquals(2, mapa.getVendidos(0, 1));
+        assertEquals(2, mapa.getVendidos(0, 2));
+        assertEquals(1, mapa.getVendidos(0, 3));
+        assertEquals(0, mapa.getVendidos(0, 4));
+        assertEquals(4, mapa.getVendidos(1, 1));
+        assertEquals(funcion.getVendidosSector("VIP"), mapa.getVendidosSector(0));
+        assertEquals(2.0 / 30, mapa.getOcupacion(0, 2), 1e-9);
+
+        ticketek.anularEntrada(vip.get(2), "1234");
+        ticketek.venderEntrada("La sirenita", "28/07/25", "nores@campus.ungs.edu.ar", "1234", "VIP", new int[]{100});
+        assertSame(mapa, funcion.getMapaOcupacion(mapa));
+        assertEquals(2, mapa.getVendidos(0, 1));
+        assertEquals(1, mapa.getVendidos(0, 2));
+        assertEquals(1, mapa.getVendidos(0, 4));
+        assertEquals(funcion.getVendidosSector("VIP"), mapa.getVendidosSector(0));
+
+        Funcion otraSede = ((Ticketek) ticketek).getEspectaculo("Stand up Comedy").getFuncion("30/07/25");
+        assertNotSame(mapa, otraSede.getMapaOcupacion(mapa));
+
+        Funcion campo = ((Ticketek) ticketek).getEspectaculo("Coldplay en vivo").getFuncion("30/07/25");
+        assertThrows(UnsupportedOperationException.class, () -> campo.getMapaOcupacion(null));
+
+        Funcion pasada = ((Ticketek) ticketek).funcionEnSede("Mini Arena Norte", "10/04/25");
+        MapaOcupacion antes = pasada.getMapaOcupacion(null);
+        ((Ticketek) ticketek).archivarFuncionesPasadas();
+        assertTrue(pasada.estaArchivada());
+        MapaOcupacion archivado = pasada.getMapaOcupacion(mapa);
+        assertSame(archivado, pasada.getMapaOcupacion(archivado));
+        for (int s = 0; s < antes.cantidadSectores(); s++) {
+            for (int f = 1; f <= antes.cantidadFilas(s); f++) {
+                assertEquals(antes.getVendidos(s, f), archivado.getVendidos(s, f));
+            }
+        }
+    }
+
+    @Test
+    public void ej34_rankingsDeRecaudacionYOcupacionSeMantienenAlDia() {
+        Ticketek sistema = (Ticketek) ticketek;
+        ticketek.registrarSede("Estadio Chico", "calle 10", 10);
+        ticketek.registrarEspectaculo("Final");
+        ticketek.agregarFuncion("Final", "20/10/25", "Estadio Chico", 1000000000.0);
+
+        String retencion = sistema.retenerEntradas("Final", "20/10/25", "nores@campus.ungs.edu.ar", "1234", 4, 60000);
+        Ranking.Posicion<Funcion> primera = sistema.topFuncionesPorOcupacion(1).get(0);
+        assertSame(sistema.getEspectaculo("Final").getFuncion("20/10/25"), primera.getClave());
+        assertEquals(400000, primera.getValor());
+        sistema.liberarRetencion(retencion, "1234");
+        assertNotSame(primera.getClave(), sistema.topFuncionesPorOcupacion(1).get(0).getClave());
+
+        List<IEntrada> vendidas = ticketek.venderEntrada("Final", "20/10/25", "nores@campus.ungs.edu.ar", "1234", 10);
+        assertEquals(1000000, sistema.topFuncionesPorOcupacion(1).get(0).getValor());
+        assertEquals("Final", sistema.topEspectaculosPorRecaudacion(1).get(0).getClave());
+        assertEquals("Estadio Chico", sistema.topSedesPorRecaudacion(1).get(0).getClave());
+
+        for (int i = 0; i < 9; i++) {
+            ticketek.anularEntrada(vendidas.get(i), "1234");
+        }
+        assertEquals(100000, sistema.topFuncionesPorOcupacion(3).stream()
+                .filter(p -> p.getClave().getSede().getNombre().equals("Estadio Chico"))
+                .findFirst().get().getValor());
+
+        List<Ranking.Posicion<String>> espectaculos = sistema.topEspectaculosPorRecaudacion(10);
+        assertEquals(sistema.getEspectaculos().size(), espectaculos.size());
+        for (int i = 0; i < espectaculos.size(); i++) {
+            Ranking.Posicion<String> posicion = espectaculos.get(i);
+            assertEquals(sistema.getEspectaculo(posicion.getClave()).getCentavosTotales(), posicion.getValor());
+            if (i > 0) {
+                assertTrue(espectaculos.get(i - 1).getValor() >= posicion.getValor());
+            }
+        }
+        assertEquals(Espectaculo.aCentavos(1000000000.0), sistema.topSedesPorRecaudacion(10).stream()
+                .filter(p -> p.getClave().equals("Estadio Chico")).findFirst().get().getValor());
+        long bombonera = 0;
+        for (Espectaculo espectaculo : sistema.getEspectaculos().values()) {
+            bombonera += espectaculo.getCentavosPorSede("La bombonera");
+        }
+        assertEquals(bombonera, sistema.topSedesPorRecaudacion(10).stream()
+                .filter(p -> p.getClave().equals("La bombonera")).findFirst().get().getValor());
+        assertTrue(sistema.topSedesPorRecaudacion(0).isEmpty());
+    }
+
+    @Test
+    public void ej35_cupoSinNumerarNoSeSobrevendeNiSeSobredevuelve() throws Exception {
+        ticketek.registrarSede("Estadio Diez", "calle 11", 10);
+        ticketek.registrarEspectaculo("Cupo");
+        ticketek.agregarFuncion("Cupo", "20/10/25", "Estadio Diez", 100.0);
+        Funcion funcion = ((Ticketek) ticketek).getEspectaculo("Cupo").getFuncion("20/10/25");
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> ventas = new LinkedList<>();
+        for (int i = 0; i < 32; i++) {
+            ventas.add(pool.submit(() -> funcion.venderAsiento(1)));
+        }
+        int vendidas = 0;
+        for (Future<Boolean> venta : ventas) {
+            if (venta.get())
+                vendidas++;
+        }
+        assertEquals(10, vendidas);
+        assertEquals(Integer.valueOf(0), funcion.getDisponiblesSinNumerar());
+
+        List<Future<Boolean>> devoluciones = new LinkedList<>();
+        for (int i = 0; i < 32; i++) {
+            devoluciones.add(pool.submit(() -> {
+                try {
+                    funcion.sumarAsiento(1);
+                    return true;
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            }));
+        }
+        int devueltas = 0;
+        for (Future<Boolean> devolucion : devoluciones) {
+            if (devolucion.get())
+                devueltas++;
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertEquals(10, devueltas);
+        assertEquals(Integer.valueOf(10), funcion.getDisponiblesSinNumerar());
+        assertThrows(IllegalArgumentException.class, () -> funcion.venderAsiento(0));
+        assertThrows(IllegalArgumentException.class, () -> funcion.venderAsiento(-1));
+        assertThrows(IllegalArgumentException.class, () -> ticketek.venderEntrada("Cupo", "20/10/25", "nores@campus.ungs.edu.ar", "1234", 0));
+        assertEquals(Integer.valueOf(10), funcion.getDisponiblesSinNumerar());
+    }
+
+    @Test
+    public void ej36_calendarioAdmiteAltasConcurrentesEnOrden() throws Exception {
+        ticketek.registrarSede("Estadio Temporada", "calle 12", 100);
+        ticketek.registrarEspectaculo("Temporada");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> altas = new LinkedList<>();
+        for (int mes = 12; mes >= 1; mes--) {
+            for (int dia = 28; dia >= 1; dia--) {
+                String fecha = String.format("%02d/%02d/26", dia, mes);
+                altas.add(pool.submit(() -> ticketek.agregarFuncion("Temporada", fecha, "Estadio Temporada", 100.0)));
+            }
+        }
+        for (Future<?> alta : altas) {
+            alta.get();
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+
+        Espectaculo espectaculo = ((Ticketek) ticketek).getEspectaculo("Temporada");
+        List<Funcion> funciones = espectaculo.getFunciones();
+        assertEquals(12 * 28, funciones.size());
+        for (int i = 1; i < funciones.size(); i++) {
+            assertTrue(funciones.get(i - 1).getFecha().compareTo(funciones.get(i).getFecha()) < 0);
+        }
+        assertEquals("01/01/26", funciones.get(0).getFecha().toString());
+        assertNotNull(espectaculo.getFuncion("15/06/26"));
+        assertThrows(IllegalArgumentException.class, () -> ticketek.agregarFuncion("Temporada", "15/06/26", "Teatro Colón", 100.0));
+    }
+
+    @Test
+    public void ej37_fechaAnalizaFormatosValidosYRechazaInvalidos() {
+        assertEquals(new Fecha(1, 2, 2025), Fecha.desdeString("1/2/25"));
+        assertEquals(new Fecha(1, 2, 2025), Fecha.desdeString("01/02/25"));
+        assertEquals(new Fecha(29, 2, 2024), Fecha.desdeString("29/02/24"));
+        assertEquals(new Fecha(31, 12, 2099), Fecha.desdeString("31/12/99"));
+        assertEquals(new Fecha(1, 1, 2000), Fecha.desdeString("01/01/00"));
+        assertEquals(new Fecha(5, 6, 2007), Fecha.desdeString("5/6/7"));
+
+        for (String invalida : new String[]{"29/02/25", "31/04/25", "00/01/25", "01/00/25", "01/13/25", "32/01/25"}) {
+            assertThrows(invalida, DateTimeException.class, () -> Fecha.desdeString(invalida));
+        }
+        for (String mal : new String[]{"", "01/01", "01/01/", "/01/25", "1//25", "01/01/2025", "001/01/25",
+                "01-01-25", "01/01/25/", " 01/01/25", "01/O1/25"}) {
+            assertThrows(mal, NumberFormatException.class, () -> Fecha.desdeString(mal));
+        }
+    }
+
+    @Test
+    public void ej38_cacheDeFechasNoSeVaciaDeGolpe() {
+        List<String> textos = new LinkedList<>();
+        for (int anio = 0; anio < 100 && textos.size() <= 5000; anio++) {
+            for (int mes = 1; mes <= 12; mes++) {
+                for (int dia = 1; dia <= 28; dia++) {
+                    textos.add(dia + "/" + mes + "/" + anio);
+                }
+            }
+        }
+        Fecha primera = Fecha.desdeString(textos.get(0));
+        assertSame(primera, Fecha.desdeString(textos.get(0)));
+        assertEquals(primera, Fecha.desdeString(new String(textos.get(0))));
+
+        List<Fecha> ultimas = new LinkedList<>();
+        for (String texto : textos) {
+            Fecha fecha = Fecha.desdeString(texto);
+            if (ultimas.size() == 100) {
+                ultimas.remove(0);
+            }
+            ultimas.add(fecha);
+        }
+        List<String> ultimosTextos = textos.subList(textos.size() - 100, textos.size());
+        int enCache = 0;
+        for (int i = 0; i < 100; i++) {
+            Fecha otraVez = Fecha.desdeString(ultimosTextos.get(i));
+            assertEquals(ultimas.get(i), otraVez);
+            if (otraVez == ultimas.get(i))
+                enCache++;
+        }
+        // Un texto nuevo solo desplaza al que ocupaba su ranura: casi todas las fechas recientes siguen en caché
+        assertTrue(enCache >= 50);
+    }
+
+    @Test
+    public void ej39_rankingsCoincidenConLaRecaudacionBajoConcurrencia() throws Exception {
+        Ticketek sistema = (Ticketek) ticketek;
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> tareas = new LinkedList<>();
+        for (int i = 0; i < 200; i++) {
+            int asiento = i + 1;
+            tareas.add(pool.submit(() -> {
+                List<IEntrada> campo = ticketek.venderEntrada("Coldplay en vivo", "31/07/25", "nores@campus.ungs.edu.ar", "1234", 1);
+                if (asiento % 3 == 0) {
+                    ticketek.anularEntrada(campo.get(0), "1234");
+                }
+                List<IEntrada> platea = ticketek.venderEntrada("El Rey Leon", "29/07/25", "javierm@campus.ungs.edu.ar", "1234", "Alta", new int[]{asiento});
+                if (asiento % 5 == 0) {
+                    ticketek.anularEntrada(platea.get(0), "1234");
+                }
+                if (asiento % 10 == 0) {
+                    sistema.topFuncionesPorOcupacion(3);
+                }
+            }));
+        }
+        for (Future<?> tarea : tareas) {
+            tarea.get();
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+
+        for (Ranking.Posicion<String> posicion : sistema.topEspectaculosPorRecaudacion(10)) {
+            assertEquals(sistema.getEspectaculo(posicion.getClave()).getCentavosTotales(), posicion.getValor());
+        }
+        Funcion coldplay = sistema.getEspectaculo("Coldplay en vivo").getFuncion("31/07/25");
+        Funcion reyLeon = sistema.getEspectaculo("El Rey Leon").getFuncion("29/07/25");
+        for (Ranking.Posicion<Funcion> posicion : sistema.topFuncionesPorOcupacion(50)) {
+            Funcion funcion = posicion.getClave();
+            assertEquals((long) funcion.getVendidosTotal() * 1000000 / funcion.getCapacidadTotal(), posicion.getValor());
+        }
+        assertEquals(coldplay, sistema.topFuncionesPorOcupacion(1).get(0).getClave());
+        assertTrue(sistema.topFuncionesPorOcupacion(50).stream().anyMatch(p -> p.getClave() == reyLeon));
+    }
+
+    @Test
+    public void ej40_funcionesArchivadasRechazanVentasAnulacionesYCambios() {
+        Ticketek sistema = (Ticketek) ticketek;
+        ticketek.agregarFuncion("Coldplay en vivo", "15/05/25", "El monumental", 130000.0);
+        List<IEntrada> campo = ticketek.venderEntrada("Coldplay en vivo", "15/05/25", "nores@campus.ungs.edu.ar", "1234", 2);
+        IEntrada platea = null;
+        for (IEntrada entrada : ticketek.listarTodasLasEntradasDelUsuario("nores@campus.ungs.edu.ar", "1234")) {
+            if (entrada.toString().contains("Stand up Comedy - 10/04/25")) {
+                platea = entrada;
+            }
+        }
+        assertNotNull(platea);
+        assertEquals(3, sistema.archivarFuncionesPasadas());
+
+        // Con el reloj antes de las funciones archivadas, el rechazo no depende de que sean pasadas
+        Reloj.usar(Clock.fixed(Instant.parse("2025-03-01T12:00:00Z"), ZoneId.of("America/Argentina/Buenos_Aires")));
+        assertThrows(IllegalArgumentException.class, () ->
+                ticketek.venderEntrada("Coldplay en vivo", "15/05/25", "javierm@campus.ungs.edu.ar", "1234", 1));
+        assertTrue(ticketek.venderEntrada("Stand up Comedy", "10/04/25", "javierm@campus.ungs.edu.ar", "1234", "VIP", new int[]{20}).isEmpty());
+
+        IEntrada archivada = platea;
+        assertTrue(assertThrows(RuntimeException.class, () -> ticketek.anularEntrada(campo.get(0), "1234"))
+                .getMessage().contains("archivada"));
+        assertTrue(assertThrows(RuntimeException.class, () -> ticketek.anularEntrada(archivada, "1234"))
+                .getMessage().contains("archivada"));
+        assertTrue(assertThrows(RuntimeException.class, () -> ticketek.cambiarEntrada(archivada, "1234", "30/07/25", "VIP", 21))
+                .getMessage().contains("archivada"));
+
+        IEntrada futura = ticketek.venderEntrada("Stand up Comedy", "30/07/25", "nores@campus.ungs.edu.ar", "1234", "Alta", new int[]{50}).get(0);
+        assertThrows(RuntimeException.class, () -> ticketek.cambiarEntrada(futura, "1234", "10/04/25", "VIP", 21));
+        assertTrue(assertThrows(RuntimeException.class, () -> ticketek.cambiarEntrada(campo.get(1), "1234", "01/08/25"))
+                .getMessage().contains("archivada"));
+        assertFalse(((Entrada) futura).estaAnulada());
+        assertFalse(((Entrada) campo.get(0)).estaAnulada());
+        assertEquals(2, sistema.getEspectaculo("Coldplay en vivo").getFuncion("15/05/25").getResumen().getCantidadEntradas());
+    }
+
+    @Test
+    public void ej41_operacionesQueNoLleganAlDiarioSeDeshacen() throws Exception {
+        Path archivo = Files.createTempFile("ticketek", ".diario");
+        try {
+            DiarioVentas diario = new DiarioVentas(archivo);
+            Ticketek sistema = new Ticketek(diario);
+            sistema.registrarUsuario("ana@mail.com", "Ana", "Perez", "1234");
+            sistema.registrarSede("Estadio Norte", "calle 9", 1000);
+            sistema.registrarSede("Teatro Sur", "calle 10", 1000, asientosPorFilaTeatro, sectores_teatro, capacidad_teatro, porcentajeAdicionalTeatro);
+            sistema.registrarEspectaculo("Recital");
+            sistema.agregarFuncion("Recital", "10/10/25", "Estadio Norte", 100.0);
+            sistema.agregarFuncion("Recital", "11/10/25", "Teatro Sur", 200.0);
+            IEntrada vip = sistema.venderEntrada("Recital", "11/10/25", "ana@mail.com", "1234", "VIP", new int[]{1}).get(0);
+            long durable = diario.getSecuenciaDurable();
+            double recaudado = sistema.totalRecaudado("Recital");
 
-}
\ No newline at end of file
+            // Con el canal cerrado la próxima escritura falla y el diario queda fuera de servicio
+            diario.close();
+            assertThrows(RuntimeException.class, () -> sistema.venderEntrada("Recital", "10/10/25", "ana@mail.com", "1234", 2));
+            assertThrows(RuntimeException.class, () -> sistema.venderEntrada("Recital", "11/10/25", "ana@mail.com", "1234", "VIP", new int[]{2}));
+            assertThrows(RuntimeException.class, () -> sistema.anularEntrada(vip, "1234"));
+            assertThrows(RuntimeException.class, () -> sistema.registrarUsuario("beto@mail.com", "Beto", "Gomez", "1234"));
+            assertThrows(RuntimeException.class, () -> sistema.agregarFuncion("Recital", "12/10/25", "Estadio Norte", 100.0));
+            assertEquals(durable, diario.getSecuenciaDurable());
+
+            // Nada de lo que no llegó al diario queda en memoria
+            assertEquals(recaudado, sistema.totalRecaudado("Recital"), 1e-9);
+            assertEquals(codigos(List.of(vip)), codigos(sistema.listarTodasLasEntradasDelUsuario("ana@mail.com", "1234")));
+            assertFalse(((Entrada) vip).estaAnulada());
+            assertEquals(1000, (int) sistema.getEspectaculo("Recital").getFuncion("10/10/25").getDisponiblesSinNumerar());
+            Funcion teatro = sistema.getEspectaculo("Recital").getFuncion("11/10/25");
+            assertFalse(teatro.verificarDisponibilidad("VIP", 1));
+            assertTrue(teatro.verificarDisponibilidad("VIP", 2));
+            assertFalse(sistema.autenticarUsuario("beto@mail.com", "1234"));
+            assertNull(sistema.getEspectaculo("Recital").getFuncion("12/10/25"));
+            assertTrue(sistema.verificarDisponibilidad("Estadio Norte", Fecha.desdeString("12/10/25")));
+
+            // La venta registrada, con su código guardado como dos long, se reconstruye igual
+            DiarioVentas reabierto = new DiarioVentas(archivo);
+            Ticketek recuperado = Ticketek.recuperar(null, reabierto);
+            assertEquals(codigos(List.of(vip)), codigos(recuperado.listarTodasLasEntradasDelUsuario("ana@mail.com", "1234")));
+            assertEquals(recaudado, recuperado.totalRecaudado("Recital"), 1e-9);
+            reabierto.close();
+        } finally {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    @Test
+    public void ej42_instantaneasDuranteAltasYVentasNoDuplicanNiPierdenOperaciones() throws Exception {
+        Path carpeta = Files.createTempDirectory("ticketek");
+        Path archivoDiario = carpeta.resolve("ventas.diario");
+        Path archivoInstantanea = carpeta.resolve("estado.instantanea");
+        try {
+            DiarioVentas diario = new DiarioVentas(archivoDiario);
+            Ticketek sistema = new Ticketek(diario);
+            sistema.registrarUsuario("ana@mail.com", "Ana", "Perez", "1234");
+
+            // Cada tarea da de alta su sede, su espectáculo y su función y vende en ella,
+            // mientras el hilo principal toma instantáneas
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            List<Future<?>> tareas = new LinkedList<>();
+            for (int i = 0; i < 40; i++) {
+                String sufijo = String.valueOf(i);
+                tareas.add(pool.submit(() -> {
+                    sistema.registrarSede("Estadio " + sufijo, "calle " + sufijo, 100);
+                    sistema.registrarEspectaculo("Show " + sufijo);
+                    sistema.agregarFuncion("Show " + sufijo, "10/10/25", "Estadio " + sufijo, 100.0);
+                    sistema.venderEntrada("Show " + sufijo, "10/10/25", "ana@mail.com", "1234", 2);
+                }));
+            }
+            for (int i = 0; i < 5; i++) {
+                sistema.guardarInstantanea(archivoInstantanea);
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+            pool.shutdown();
+            diario.close();
+
+            DiarioVentas reabierto = new DiarioVentas(archivoDiario);
+            Ticketek recuperado = Ticketek.recuperar(archivoInstantanea, reabierto);
+            for (int i = 0; i < 40; i++) {
+                assertEquals(200.0, recuperado.totalRecaudado("Show " + i), 0.01);
+                assertEquals(98, (int) recuperado.getEspectaculo("Show " + i).getFuncion("10/10/25").getDisponiblesSinNumerar());
+            }
+            assertEquals(codigos(sistema.listarTodasLasEntradasDelUsuario("ana@mail.com", "1234")),
+                    codigos(recuperado.listarTodasLasEntradasDelUsuario("ana@mail.com", "1234")));
+            reabierto.close();
+        } finally {
+            Files.deleteIfExists(archivoDiario);
+            Files.deleteIfExists(archivoInstantanea);
+            Files.deleteIfExists(carpeta);
+        }
+    }
+
+    @Test
+    public void ej43_funcionDeHoyNoSeArchivaYSigueVendiendose() {
+        Ticketek sistema = (Ticketek) ticketek;
+        ticketek.agregarFuncion("Coldplay en vivo", "01/06/25", "El monumental", 130000.0);
+        assertEquals(2, sistema.archivarFuncionesPasadas());
+
+        Funcion hoy = sistema.getEspectaculo("Coldplay en vivo").getFuncion("01/06/25");
+        assertFalse(hoy.estaArchivada());
+        assertEquals(2, ticketek.venderEntrada("Coldplay en vivo", "01/06/25", "nores@campus.ungs.edu.ar", "1234", 2).size());
+        assertEquals(2, hoy.getVendidosTotal());
+    }
+
+    @Test
+    public void ej44_diarioDaniadoAntesDelFinalNoSeTrunca() throws Exception {
+        Path archivo = Files.createTempFile("ticketek", ".diario");
+        try {
+            DiarioVentas diario = new DiarioVentas(archivo);
+            Ticketek sistema = new Ticketek(diario);
+            sistema.registrarUsuario("ana@mail.com", "Ana", "Perez", "1234");
+            sistema.registrarEspectaculo("Recital");
+            sistema.registrarEspectaculo("Obra");
+            diario.close();
+            byte[] original = Files.readAllBytes(archivo);
+
+            // Un byte dañado en el primer registro no es una escritura interrumpida: no se trunca nada
+            byte[] daniado = original.clone();
+            daniado[20] ^= 1;
+            Files.write(archivo, daniado);
+            assertThrows(RuntimeException.class, () -> new DiarioVentas(archivo));
+            assertEquals(original.length, Files.size(archivo));
+
+            // Bloques reservados en cero al final sí se descartan
+            Files.write(archivo, original);
+            Files.write(archivo, new byte[64], StandardOpenOption.APPEND);
+            DiarioVentas reabierto = new DiarioVentas(archivo);
+            assertEquals(3, reabierto.getSecuenciaDurable());
+            reabierto.close();
+            assertEquals(original.length, Files.size(archivo));
+        } finally {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    @Test
+    public void ej45_contraseniasNoSeGuardanEnTextoEnDiarioNiInstantanea() throws Exception {
+        Path carpeta = Files.createTempDirectory("ticketek");
+        Path archivoDiario = carpeta.resolve("ventas.diario");
+        Path archivoInstantanea = carpeta.resolve("estado.instantanea");
+        String contrasenia = "clave-secreta-987";
+        try {
+            DiarioVentas diario = new DiarioVentas(archivoDiario);
+            Ticketek sistema = new Ticketek(diario);
+            sistema.registrarUsuario("ana@mail.com", "Ana", "Perez", contrasenia);
+            sistema.guardarInstantanea(archivoInstantanea);
+            sistema.registrarUsuario("beto@mail.com", "Beto", "Gomez", contrasenia);
+            diario.close();
+
+            for (Path archivo : List.of(archivoDiario, archivoInstantanea)) {
+                String contenido = new String(Files.readAllBytes(archivo), StandardCharsets.ISO_8859_1);
+                assertFalse(archivo.toString(), contenido.contains(contrasenia));
+            }
+
+            DiarioVentas reabierto = new DiarioVentas(archivoDiario);
+            Ticketek recuperado = Ticketek.recuperar(archivoInstantanea, reabierto);
+            assertTrue(recuperado.autenticarUsuario("ana@mail.com", contrasenia));
+            assertTrue(recuperado.autenticarUsuario("beto@mail.com", contrasenia));
+            assertFalse(recuperado.autenticarUsuario("ana@mail.com", "otra"));
+            reabierto.close();
+        } finally {
+            Files.deleteIfExists(archivoDiario);
+            Files.deleteIfExists(archivoInstantanea);
+            Files.deleteIfExists(carpeta);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void ej46_cambiarSedeReubicaLaEntradaEnElOrdenDelUsuario() {
+        Ticketek sistema = (Ticketek) ticketek;
+        ticketek.agregarFuncion("Coldplay en vivo", "17/09/25", "El monumental", 130000.0);
+        Entrada entrada = (Entrada) ticketek.venderEntrada("Coldplay en vivo", "17/09/25",
+                "nores@campus.ungs.edu.ar", "1234", 1).get(0);
+        Usuario usuario = sistema.getUsuario("nores@campus.ungs.edu.ar");
+        assertTrue(usuario.listarEntradasFuturas().contains(entrada));
+
+        entrada.cambiarSede("La bombonera", Fecha.desdeString("01/05/25"));
+        assertEquals("La bombonera", entrada.devolverSede());
+        assertFalse(usuario.listarEntradasFuturas().contains(entrada));
+        assertTrue(usuario.listarEntradasPasadas().contains(entrada));
+
+        int antes = usuario.cantidadEntradas();
+        usuario.reembolsarEntrada(entrada);
+        assertEquals(antes - 1, usuario.cantidadEntradas());
+        assertFalse(usuario.listarEntradas().contains(entrada));
+        assertEquals(antes - 1, usuario.listarEntradas().size());
+    }
+
+    @Test
+    public void ej47_mejoresAsientosEnVariasFilasCoincidenConElRecorridoLineal() {
+        int capacidad = 97;
+        int porFila = 10;
+        InventarioAsientos inventario = new InventarioAsientos(new InventarioAsientos(new int[] { capacidad }, porFila));
+        boolean[] vendido = new boolean[capacidad];
+        java.util.Random azar = new java.util.Random(7);
+        for (int paso = 0; paso < 5000; paso++) {
+            int asiento = azar.nextInt(capacidad) + 1;
+            int operacion = azar.nextInt(10);
+            if (operacion < 5) {
+                assertEquals(!vendido[asiento - 1], inventario.vender(0, asiento));
+                vendido[asiento - 1] = true;
+            } else if (operacion < 8) {
+                assertEquals(vendido[asiento - 1], inventario.liberar(0, asiento));
+                vendido[asiento - 1] = false;
+            } else {
+                int cantidad = azar.nextInt(30) + 1;
+                int[] esperados = mejoresAsientosEsperados(vendido, porFila, cantidad);
+                int[] obtenidos = inventario.venderMejoresAsientos(0, cantidad);
+                assertArrayEquals("paso " + paso, esperados, obtenidos);
+                if (obtenidos != null) {
+                    for (int vendidoAhora : obtenidos) {
+                        vendido[vendidoAhora - 1] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ubicación que elige venderMejoresAsientos, calculada recorriendo todas las filas: la primera
+     * racha suficiente de la primera fila que la tenga o, si no hay, las rachas más largas del primer
+     * grupo de filas consecutivas con lugar que sumen la cantidad.
+     */
+    private static int[] mejoresAsientosEsperados(boolean[] vendido, int porFila, int cantidad) {
+        int filas = (vendido.length + porFila - 1) / porFila;
+        int[][] rachas = new int[filas][];
+        for (int f = 0; f < filas; f++) {
+            int fin = Math.min((f + 1) * porFila, vendido.length);
+            rachas[f] = new int[] { 0, 0 };
+            for (int i = f * porFila; i < fin; ) {
+                if (vendido[i]) {
+                    i++;
+                    continue;
+                }
+                int j = i;
+                while (j < fin && !vendido[j]) {
+                    j++;
+                }
+                if (j - i >= cantidad) {
+                    int[] asientos = new int[cantidad];
+                    for (int k = 0; k < cantidad; k++) {
+                        asientos[k] = i + k + 1;
+                    }
+                    return asientos;
+                }
+                if (j - i > rachas[f][1]) {
+                    rachas[f] = new int[] { i, j - i };
+                }
+                i = j;
+            }
+        }
+        int primera = 0;
+        int acumulado = 0;
+        for (int f = 0; f < filas; f++) {
+            if (rachas[f][1] == 0) {
+                primera = f + 1;
+                acumulado = 0;
+                continue;
+            }
+            acumulado += rachas[f][1];
+            if (acumulado >= cantidad) {
+                int[] asientos = new int[cantidad];
+                int tomados = 0;
+                for (int g = primera; tomados < cantidad; g++) {
+                    int cuantos = Math.min(rachas[g][1], cantidad - tomados);
+                    for (int k = 0; k < cuantos; k++) {
+                        asientos[tomados++] = rachas[g][0] + k + 1;
+                    }
+                }
+                return asientos;
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> codigos(List<IEntrada> entradas) {
+        Set<String> codigos = new HashSet<>();
+        for (IEntrada entrada : entradas) {
+            codigos.add(((Entrada) entrada).devolverCodigo());
+        }
+        return codigos;
+    }
+}
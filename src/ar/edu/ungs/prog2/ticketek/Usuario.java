@@ -1,27 +1,51 @@
 package ar.edu.ungs.prog2.ticketek;
-import java.util.Iterator;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 /**
  * Clase que representa a un usuario del sistema Ticketek.
  * Un usuario tiene email, nombre, apellido, contraseña y un conjunto de entradas compradas.
+ * Las entradas se guardan ordenadas por fecha de la función, con un índice auxiliar por código,
+ * de modo que las entradas futuras y pasadas son vistas de un extremo del orden y no filtros de todas.
+ * Ninguno de los dos índices guarda el código como texto: ambos usan la propia entrada, que se
+ * compara por su código de 128 bits.
+ *
+ * La contraseña se verifica contra una huella "sal:hash" (sal aleatoria de 16 bytes y SHA-256 de
+ * la sal seguida de la contraseña, ambos en Base64). Solo la huella se guarda en el diario y en
+ * las instantáneas; un usuario recuperado desde disco no conoce su contraseña en texto.
  *
  * IREP (Invariante de Representación):
  * - email != null && !email.isEmpty()
  * - nombre != null && !nombre.isEmpty()
  * - apellido != null && !apellido.isEmpty()
- * - contrasenia != null && !contrasenia.isEmpty()
+ * - contrasenia == null (usuario recuperado desde disco) || !contrasenia.isEmpty()
+ * - huellaContrasenia != null y tiene el formato "sal:hash"
  * - entradas != null (puede estar vacío pero no null)
- * - Para todo codigoEntrada en entradas.keySet(): codigoEntrada != null && !codigoEntrada.isEmpty()
- * - Para toda entrada en entradas.values(): entrada != null
+ * - Para toda clave en entradas.keySet(): entradas.get(clave) == clave (el índice por código
+ *   devuelve la entrada a partir de una entrada de búsqueda con el mismo código)
  * - Para toda entrada en entradas.values(): entrada.getEmailUsuario().equals(this.email)
- * - No existen códigos de entradas duplicados (garantizado por HashMap)
- * - verificarContrasenia(c) == true sii c.equals(this.contrasenia)
+ * - No existen códigos de entradas duplicados (garantizado por el mapa)
+ * - entradas admite compras y reembolsos concurrentes (ConcurrentHashMap)
+ * - entradasPorFecha contiene exactamente las entradas de entradas.values(), ordenadas por
+ *   {@link Entrada#POR_FECHA}
+ * - Para toda entrada en entradas.values(): el titular de la entrada es este usuario
+ * - verificarContrasenia(c) == true sii el SHA-256 de la sal de huellaContrasenia seguida de c
+ *   coincide con su hash
  * - listarEntradasFuturas() devuelve solo entradas donde entrada.esFutura() == true
+ * - listarEntradasPasadas() devuelve solo entradas donde entrada.esFutura() == false
  * - toString() devuelve formato "nombre apellido (email)"
+ * - versionAlta es la versión del estado de Ticketek en que se registró el usuario (0 antes de registrarlo)
  */
 public class Usuario {
 
@@ -29,7 +53,12 @@ public class Usuario {
     private String nombre;
     private String apellido;
     private String contrasenia;
-    private Map<String, Entrada> entradas;
+    private final String huellaContrasenia;
+    private Map<Entrada, Entrada> entradas;
+    private NavigableSet<Entrada> entradasPorFecha;
+    private volatile long versionAlta;
+
+    private static final SecureRandom ALEATORIO = new SecureRandom();
 
     /**
      * Constructor que crea un usuario con su email, nombre, apellido y contraseña.
@@ -41,12 +70,45 @@ public class Usuario {
      * @param contrasenia  Contraseña del usuario
      */
     public Usuario(String email, String nombre, String apellido, String contrasenia) {
-    	chequeosConstructor(email, nombre, apellido, contrasenia);
+        this(email, nombre, apellido, contrasenia, huella(contrasenia));
+    }
+
+    /**
+     * Constructor común: la contraseña en texto es null cuando el usuario se restaura desde
+     * el diario o una instantánea, que solo guardan la huella.
+     *
+     * @param email             Email único del usuario
+     * @param nombre            Nombre del usuario
+     * @param apellido          Apellido del usuario
+     * @param contrasenia       Contraseña en texto, o null si solo se conoce la huella
+     * @param huellaContrasenia Huella "sal:hash" de la contraseña
+     */
+    private Usuario(String email, String nombre, String apellido, String contrasenia, String huellaContrasenia) {
+        chequeosConstructor(email, nombre, apellido, huellaContrasenia);
+        if (huellaContrasenia.indexOf(':') < 0) {
+            throw new IllegalArgumentException("La huella de la contraseña no es válida");
+        }
         this.email = email;
         this.nombre = nombre;
         this.apellido = apellido;
         this.contrasenia = contrasenia;
-        this.entradas = new HashMap<>();
+        this.huellaContrasenia = huellaContrasenia;
+        this.entradas = new ConcurrentHashMap<>();
+        this.entradasPorFecha = new ConcurrentSkipListSet<>(Entrada.POR_FECHA);
+    }
+
+    /**
+     * Crea un usuario a partir de la huella de su contraseña, tal como la guardan el diario y las instantáneas.
+     *
+     * @param email             Email único del usuario
+     * @param nombre            Nombre del usuario
+     * @param apellido          Apellido del usuario
+     * @param huellaContrasenia Huella "sal:hash" de la contraseña
+     * @return Usuario que verifica contraseñas contra la huella y no conoce la contraseña en texto
+     * @throws IllegalArgumentException si algún dato es inválido
+     */
+    static Usuario restaurar(String email, String nombre, String apellido, String huellaContrasenia) {
+        return new Usuario(email, nombre, apellido, null, huellaContrasenia);
     }
     
     
@@ -57,7 +119,7 @@ public class Usuario {
      * @param email        Correo electrónico del usuario (no puede ser nulo ni vacío).
      * @param nombre       Nombre del usuario (no puede ser nulo ni vacío).
      * @param apellido     Apellido del usuario (no puede ser nulo ni vacío).
-     * @param contrasenia  Contraseña del usuario (no puede ser nula ni vacía).
+     * @param contrasenia  Huella de la contraseña del usuario (no puede ser nula ni vacía).
      *
      * @throws IllegalArgumentException si alguno de los parámetros es inválido.
      */
@@ -83,8 +145,45 @@ public class Usuario {
      * @return true si coincide, false en caso contrario
      */
     public boolean verificarContrasenia(String contraseniaRecibida) {
+        if (contraseniaRecibida == null) {
+            return false;
+        }
+        int separador = huellaContrasenia.indexOf(':');
+        byte[] sal = Base64.getDecoder().decode(huellaContrasenia.substring(0, separador));
+        byte[] esperado = Base64.getDecoder().decode(huellaContrasenia.substring(separador + 1));
+        return MessageDigest.isEqual(esperado, hash(sal, contraseniaRecibida));
+    }
 
-        return this.contrasenia.equals(contraseniaRecibida);
+    /**
+     * Calcula la huella de una contraseña con una sal aleatoria nueva.
+     *
+     * @param contrasenia Contraseña en texto
+     * @return Huella "sal:hash" con ambas partes en Base64
+     * @throws IllegalArgumentException si la contraseña es nula o vacía
+     */
+    private static String huella(String contrasenia) {
+        if (contrasenia == null || contrasenia.isEmpty()) {
+            throw new IllegalArgumentException("La contraseña no puede estar vacía");
+        }
+        byte[] sal = new byte[16];
+        ALEATORIO.nextBytes(sal);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return base64.encodeToString(sal) + ":" + base64.encodeToString(hash(sal, contrasenia));
+    }
+
+    /**
+     * @param sal         Sal de la huella
+     * @param contrasenia Contraseña en texto
+     * @return SHA-256 de la sal seguida de la contraseña en UTF-8
+     */
+    private static byte[] hash(byte[] sal, String contrasenia) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(sal);
+            return sha.digest(contrasenia.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 no está disponible", e);
+        }
     }
 
     /**
@@ -94,7 +193,21 @@ public class Usuario {
      * @param entrada       Objeto Entrada comprado
      */
     public void comprarEntrada(String codigoEntrada, Entrada entrada) {
-        entradas.put(codigoEntrada, entrada);
+        if (!entrada.devolverCodigo().equals(codigoEntrada)) {
+            throw new IllegalArgumentException("El código no corresponde a la entrada");
+        }
+        comprarEntrada(entrada);
+    }
+
+    /**
+     * Registra la compra de una entrada.
+     * 
+     * @param entrada Objeto Entrada comprado
+     */
+    public void comprarEntrada(Entrada entrada) {
+        entrada.asignarTitular(this);
+        entradas.put(entrada, entrada);
+        entradasPorFecha.add(entrada);
     }
 
     /**
@@ -103,36 +216,83 @@ public class Usuario {
      * @param codigoEntrada Código único de la entrada a eliminar
      */
     public void reembolsarEntrada(String codigoEntrada) {
-        entradas.remove(codigoEntrada);
+        Entrada entrada = getEntrada(codigoEntrada);
+        if (entrada != null) {
+            reembolsarEntrada(entrada);
+        }
     }
 
     /**
-     * Devuelve una lista con todas las entradas del usuario (pasadas y futuras).
+     * Elimina una entrada del usuario, simulando un reembolso o cancelación.
      * 
-     * @return Lista de objetos Entrada
+     * @param entrada Entrada a eliminar
      */
-    public List<Entrada> listarEntradas() {
-        return new ArrayList<>(entradas.values());
+    public void reembolsarEntrada(Entrada entrada) {
+        Entrada quitada = entradas.remove(entrada);
+        if (quitada != null) {
+            entradasPorFecha.remove(quitada);
+            quitada.asignarTitular(null);
+        }
     }
 
     /**
-     * Devuelve una lista con las entradas futuras (no vencidas) del usuario.
-     * 
-     * @return Lista de entradas cuya fecha es futura
-     */
-    public List<Entrada> listarEntradasFuturas() {
-        List<Entrada> lista = new ArrayList<>();
-        Iterator<Entrada> iterator = listarEntradas().iterator();
-        
-        while (iterator.hasNext()) {
-            Entrada entrada = iterator.next();
-            if (entrada.esFutura()) {
-                lista.add(entrada);
-            }
+     * Cambia la fecha de una entrada del usuario sin romper el orden de entradasPorFecha:
+     * la entrada sale del conjunto ordenado, se aplica el cambio y vuelve a entrar.
+     * Mientras dura el cambio la entrada no aparece en los listados por fecha.
+     *
+     * @param entrada Entrada a modificar
+     * @param cambio  Modificación de la fecha (y ubicación) de la entrada
+     */
+    synchronized void reubicar(Entrada entrada, Runnable cambio) {
+        boolean estaba = entradasPorFecha.remove(entrada);
+        cambio.run();
+        if (estaba) {
+            entradasPorFecha.add(entrada);
         }
+    }
 
-        return lista;
-        
+    /**
+     * Devuelve todas las entradas del usuario (pasadas y futuras), en orden cronológico.
+     * La colección es una vista no modificable: no copia las entradas y refleja compras y reembolsos posteriores.
+     * 
+     * @return Vista de las entradas del usuario
+     */
+    public Collection<Entrada> listarEntradas() {
+        return Collections.unmodifiableCollection(entradasPorFecha);
+    }
+
+    /**
+     * Devuelve las entradas futuras (no vencidas) del usuario, en orden cronológico.
+     * Es una vista no modificable desde el día siguiente al actual del {@link Reloj}: no recorre ni copia las entradas pasadas.
+     * 
+     * @return Vista de las entradas cuya fecha es futura
+     */
+    public Collection<Entrada> listarEntradasFuturas() {
+        return Collections.unmodifiableCollection(entradasPorFecha.tailSet(primeraClaveFutura(), true));
+    }
+
+    /**
+     * Devuelve las entradas pasadas (de hoy o anteriores) del usuario, en orden cronológico.
+     * Es una vista no modificable hasta el día actual del {@link Reloj}: no recorre ni copia las entradas futuras.
+     * 
+     * @return Vista de las entradas cuya fecha no es futura
+     */
+    public Collection<Entrada> listarEntradasPasadas() {
+        return Collections.unmodifiableCollection(entradasPorFecha.headSet(primeraClaveFutura(), false));
+    }
+
+    /**
+     * @return Cantidad de entradas del usuario
+     */
+    public int cantidadEntradas() {
+        return entradas.size();
+    }
+
+    /**
+     * @return Entrada de búsqueda menor o igual a cualquier entrada de una función posterior a hoy
+     */
+    private static Entrada primeraClaveFutura() {
+        return Entrada.sonda(Reloj.hoy() + 1, Long.MIN_VALUE, Long.MIN_VALUE);
     }
 
     /**
@@ -160,10 +320,16 @@ public class Usuario {
     }
 
     /**
-     * @return Mapa con las entradas del usuario, donde la clave es el código de la entrada
+     * Como los índices no guardan los códigos como texto, el mapa se arma en cada llamada.
+     *
+     * @return Mapa no modificable de las entradas del usuario, donde la clave es el código de la entrada
      */
     public Map<String, Entrada> getEntradas() {
-        return entradas;
+        Map<String, Entrada> porCodigo = new HashMap<>();
+        for (Entrada entrada : entradas.keySet()) {
+            porCodigo.put(entrada.devolverCodigo(), entrada);
+        }
+        return Collections.unmodifiableMap(porCodigo);
     }
 
     /**
@@ -173,18 +339,43 @@ public class Usuario {
      * @return Entrada correspondiente o null si no existe
      */
     public Entrada getEntrada(String codigoEntrada) {
-        return entradas.get(codigoEntrada);
+        UUID codigo;
+        try {
+            codigo = UUID.fromString(codigoEntrada);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+        return getEntrada(codigo);
+    }
+
+    /**
+     * Obtiene una entrada específica por su código, sin pasar por su representación en texto.
+     * 
+     * @param codigo Código de la entrada buscada
+     * @return Entrada correspondiente o null si no existe
+     */
+    Entrada getEntrada(UUID codigo) {
+        return entradas.get(Entrada.sonda(0, codigo.getMostSignificantBits(), codigo.getLeastSignificantBits()));
     }
 
     /**
      * Devuelve la contraseña del usuario.
      * 
-     * @return La contraseña del usuario.
+     * @return La contraseña del usuario, o null si el usuario se recuperó desde disco (solo se guarda su huella).
+     * @deprecated La contraseña no se persiste; para autenticar usar {@link #verificarContrasenia(String)}.
      */
+    @Deprecated
     public String getContrasenia() {
         return contrasenia;
     }
 
+    /**
+     * @return Huella "sal:hash" de la contraseña, la única forma en que se persiste
+     */
+    String getHuellaContrasenia() {
+        return huellaContrasenia;
+    }
+
     /**
      * Devuelve el email del usuario.
      * 
@@ -194,4 +385,19 @@ public class Usuario {
         return email;
     }
 
+    /**
+     * Registra la versión del estado de Ticketek en que se dio de alta el usuario.
+     *
+     * @param version Versión del estado al dar de alta
+     */
+    void marcarAlta(long version) {
+        this.versionAlta = version;
+    }
+
+    /**
+     * @return Versión del estado de Ticketek en que se dio de alta el usuario
+     */
+    long getVersionAlta() {
+        return versionAlta;
+    }
 }